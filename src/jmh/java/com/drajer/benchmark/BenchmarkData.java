@@ -0,0 +1,181 @@
+package com.drajer.benchmark;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.model.dstu2.resource.Bundle.Entry;
+import com.drajer.eca.model.ActionRepo;
+import com.drajer.ecrapp.model.Eicr;
+import com.drajer.ecrapp.service.EicrRRService;
+import com.drajer.sof.model.Dstu2FhirData;
+import com.drajer.sof.model.LaunchDetails;
+import com.drajer.sof.model.R4FhirData;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.TimeZone;
+import org.apache.commons.io.IOUtils;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Condition;
+import org.hl7.fhir.r4.model.DiagnosticReport;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Immunization;
+import org.hl7.fhir.r4.model.Location;
+import org.hl7.fhir.r4.model.Medication;
+import org.hl7.fhir.r4.model.MedicationRequest;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Practitioner;
+
+/**
+ *
+ *
+ * <h1>BenchmarkData</h1>
+ *
+ * This class loads the sample data from the test resources which is used by the benchmarks, and
+ * sets up the application singletons which the generators use outside of a Spring context.
+ */
+public class BenchmarkData {
+
+  public static final String R4_LOADING_QUERY_BUNDLE =
+      "SampleTestData/r4-loading-query-bundle-sample1.json";
+  public static final String DSTU2_PATIENT = "DSTU2/Patient/Patient_12742571.json";
+  public static final String DSTU2_ENCOUNTER = "DSTU2/Encounter/Encounter_97953900.json";
+  public static final String DSTU2_PRACTITIONER = "DSTU2/Practitioner/Practitioner_4122622.json";
+  public static final String DSTU2_CONDITIONS = "DSTU2/Condition/ConditionBundle_d2572364249.json";
+  public static final String DSTU2_OBSERVATIONS = "DSTU2/Observation/ObservationBundle_1.json";
+  public static final String ERSD_BUNDLE = "Bsa/Scenarios/kars/ErsdV2/ErsdV2Bundle1.json";
+  public static final String RR_XML = "R4/Misc/TestRRXml.xml";
+
+  public static final FhirContext R4_CONTEXT = FhirContext.forR4();
+  public static final FhirContext DSTU2_CONTEXT = FhirContext.forDstu2();
+
+  private BenchmarkData() {}
+
+  /** Sets up the application state required by the eICR generators. */
+  public static void initializeGenerators() {
+
+    TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+
+    EicrRRService rrService = mock(EicrRRService.class);
+    when(rrService.getMaxVersionId(any(Eicr.class))).thenReturn(0);
+    ActionRepo.getInstance().setEicrRRService(rrService);
+  }
+
+  public static String readResource(String name) {
+
+    try (InputStream in = BenchmarkData.class.getClassLoader().getResourceAsStream(name)) {
+
+      if (in == null) {
+        throw new IllegalArgumentException("Benchmark resource not found: " + name);
+      }
+      return IOUtils.toString(in, StandardCharsets.UTF_8);
+
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public static Bundle readR4Bundle(String name) {
+    return R4_CONTEXT.newJsonParser().parseResource(Bundle.class, readResource(name));
+  }
+
+  /**
+   * Creates the R4 data from a loading query bundle. A new instance is created for each eICR since
+   * the generators add resources to the lists of the data.
+   */
+  public static R4FhirData newR4FhirData(Bundle bundle) {
+
+    R4FhirData data = new R4FhirData();
+    data.setData(bundle);
+
+    for (BundleEntryComponent ent : bundle.getEntry()) {
+
+      if (ent.getResource() instanceof Patient) {
+        data.setPatient((Patient) ent.getResource());
+      } else if (ent.getResource() instanceof Encounter) {
+        data.setEncounter((Encounter) ent.getResource());
+      } else if (ent.getResource() instanceof Practitioner) {
+        data.setPractitioner((Practitioner) ent.getResource());
+        data.getPractitionersList().add((Practitioner) ent.getResource());
+      } else if (ent.getResource() instanceof Location) {
+        data.setLocation((Location) ent.getResource());
+      } else if (ent.getResource() instanceof Organization) {
+        data.setOrganization((Organization) ent.getResource());
+      } else if (ent.getResource() instanceof Condition) {
+        data.getConditions().add((Condition) ent.getResource());
+      } else if (ent.getResource() instanceof Observation) {
+        data.getLabResults().add((Observation) ent.getResource());
+      } else if (ent.getResource() instanceof DiagnosticReport) {
+        data.getDiagReports().add((DiagnosticReport) ent.getResource());
+      } else if (ent.getResource() instanceof Immunization) {
+        data.getImmunizations().add((Immunization) ent.getResource());
+      } else if (ent.getResource() instanceof MedicationRequest) {
+        data.getMedicationRequests().add((MedicationRequest) ent.getResource());
+      } else if (ent.getResource() instanceof Medication) {
+        data.getMedicationList().add((Medication) ent.getResource());
+      }
+    }
+
+    return data;
+  }
+
+  /**
+   * Creates the DSTU2 data with the sample Patient, Encounter, Practitioner, Conditions and
+   * Observations. The DSTU2 generators do not modify the lists of the data, so the instance can be
+   * reused across eICRs.
+   */
+  public static Dstu2FhirData readDstu2FhirData() {
+
+    ca.uhn.fhir.model.dstu2.resource.Bundle bundle =
+        new ca.uhn.fhir.model.dstu2.resource.Bundle();
+    bundle.addEntry().setResource(readDstu2Resource(DSTU2_PATIENT));
+    bundle.addEntry().setResource(readDstu2Resource(DSTU2_ENCOUNTER));
+    bundle.addEntry().setResource(readDstu2Resource(DSTU2_PRACTITIONER));
+
+    Dstu2FhirData data = new Dstu2FhirData();
+    data.setData(bundle);
+
+    for (Entry ent : readDstu2SearchBundle(DSTU2_CONDITIONS).getEntry()) {
+      data.getConditions().add((ca.uhn.fhir.model.dstu2.resource.Condition) ent.getResource());
+    }
+
+    for (Entry ent : readDstu2SearchBundle(DSTU2_OBSERVATIONS).getEntry()) {
+      data.getLabResults().add((ca.uhn.fhir.model.dstu2.resource.Observation) ent.getResource());
+    }
+
+    return data;
+  }
+
+  public static LaunchDetails newLaunchDetails(String fhirVersion) {
+
+    LaunchDetails ld = new LaunchDetails();
+
+    ld.setId(1);
+    ld.setEhrServerURL("http://localhost/fhir");
+    ld.setLaunchPatientId("12742571");
+    ld.setEncounterId("97953900");
+    ld.setFhirVersion(fhirVersion);
+    ld.setAssigningAuthorityId("2.16.840.1.113883.1.1.1.1.1");
+    ld.setSetId("12742571|97953900");
+    ld.setVersionNumber(1);
+    ld.setxRequestId("benchmark");
+    ld.setIsCovid(true);
+
+    return ld;
+  }
+
+  private static IResource readDstu2Resource(String name) {
+    return (IResource) DSTU2_CONTEXT.newJsonParser().parseResource(readResource(name));
+  }
+
+  private static ca.uhn.fhir.model.dstu2.resource.Bundle readDstu2SearchBundle(String name) {
+    return (ca.uhn.fhir.model.dstu2.resource.Bundle) readDstu2Resource(name);
+  }
+}
@@ -0,0 +1,98 @@
+package com.drajer.benchmark;
+
+import com.drajer.cdafromr4.CdaBodyGenerator;
+import com.drajer.sof.model.LaunchDetails;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ *
+ * <h1>CdaBodyGenerationBenchmark</h1>
+ *
+ * This class measures the creation of the CDA eICR body from R4 data with the sections generated
+ * by the calling thread, and in parallel on a pool of sectionThreads threads. The pool is built
+ * like the one of CdaSectionExecutor, so sections which do not fit in its bounded queue are
+ * generated by the calling thread. The time of each body is sampled, so the results include the
+ * p50 and p99 latency, and the benchmark runs on several threads to include the contention of
+ * eICRs created at the same time for the pool.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class CdaBodyGenerationBenchmark {
+
+  /** The number of threads generating the sections, 0 to generate them on the calling thread. */
+  @Param({"0", "4", "8"})
+  public int sectionThreads;
+
+  /** The capacity of the queue of the pool, as set by cda.sections.parallel.queue-capacity. */
+  @Param({"16"})
+  public int queueCapacity;
+
+  private Bundle r4Bundle;
+  private LaunchDetails r4Details;
+  private ThreadPoolExecutor executor;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+
+    BenchmarkData.initializeGenerators();
+
+    r4Bundle = BenchmarkData.readR4Bundle(BenchmarkData.R4_LOADING_QUERY_BUNDLE);
+    r4Details = BenchmarkData.newLaunchDetails("4.0.1");
+
+    if (sectionThreads > 0) {
+      AtomicInteger count = new AtomicInteger(0);
+      executor =
+          new ThreadPoolExecutor(
+              sectionThreads,
+              sectionThreads,
+              0L,
+              TimeUnit.MILLISECONDS,
+              new ArrayBlockingQueue<>(queueCapacity),
+              r -> {
+                Thread t = new Thread(r, "CdaSection-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+              });
+    }
+    CdaBodyGenerator.setSectionExecutor(executor);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+
+    CdaBodyGenerator.setSectionExecutor(null);
+
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  @Benchmark
+  public String cdaBodyFromR4() {
+    return CdaBodyGenerator.generateCdaBody(BenchmarkData.newR4FhirData(r4Bundle), r4Details);
+  }
+}
@@ -0,0 +1,114 @@
+package com.drajer.benchmark;
+
+import com.drajer.cdafromdstu2.Dstu2CdaEicrGenerator;
+import com.drajer.cdafromr4.CdaEicrGeneratorFromR4;
+import com.drajer.ecrapp.model.Eicr;
+import com.drajer.fhirecr.FhirEicrGeneratorFromR4;
+import com.drajer.sof.model.Dstu2FhirData;
+import com.drajer.sof.model.LaunchDetails;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ *
+ *
+ * <h1>EicrGenerationBenchmark</h1>
+ *
+ * This class measures the creation of the CDA eICR from R4 and DSTU2 data, and of the FHIR eICR
+ * from R4 data, using the sample loading query data from the test resources. The R4 CDA eICR is
+ * measured both as a String and written to a Writer without creating the String.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EicrGenerationBenchmark {
+
+  private Bundle r4Bundle;
+  private LaunchDetails r4Details;
+  private Dstu2FhirData dstu2Data;
+  private LaunchDetails dstu2Details;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+
+    BenchmarkData.initializeGenerators();
+
+    r4Bundle = BenchmarkData.readR4Bundle(BenchmarkData.R4_LOADING_QUERY_BUNDLE);
+    r4Details = BenchmarkData.newLaunchDetails("4.0.1");
+
+    dstu2Data = BenchmarkData.readDstu2FhirData();
+    dstu2Details = BenchmarkData.newLaunchDetails("1.0.2");
+  }
+
+  @Benchmark
+  public String cdaEicrFromR4() {
+    return CdaEicrGeneratorFromR4.convertR4FhirBundletoCdaEicr(
+        BenchmarkData.newR4FhirData(r4Bundle), r4Details, new Eicr());
+  }
+
+  @Benchmark
+  public void cdaEicrFromR4ToWriter(Blackhole bh) {
+    CdaEicrGeneratorFromR4.writeR4FhirBundleAsCdaEicr(
+        BenchmarkData.newR4FhirData(r4Bundle), r4Details, new Eicr(), new BlackholeWriter(bh));
+  }
+
+  @Benchmark
+  public String cdaEicrFromDstu2() {
+    return Dstu2CdaEicrGenerator.convertDstu2FhirBundletoCdaEicr(
+        dstu2Data, dstu2Details, new Eicr());
+  }
+
+  @Benchmark
+  public String fhirEicrFromR4() {
+    return FhirEicrGeneratorFromR4.convertR4FhirBundletoCdaEicr(
+        BenchmarkData.newR4FhirData(r4Bundle));
+  }
+
+  /** Writer consuming the characters of the eICR, as when it is written to a stream. */
+  private static final class BlackholeWriter extends Writer {
+
+    private final Blackhole bh;
+
+    private BlackholeWriter(Blackhole bh) {
+      this.bh = bh;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      bh.consume(cbuf);
+      bh.consume(len);
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+      bh.consume(str);
+      bh.consume(len);
+    }
+
+    @Override
+    public void flush() {
+      // Nothing is buffered.
+    }
+
+    @Override
+    public void close() {
+      // Nothing to release.
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.drajer.benchmark;
+
+import com.drajer.cda.parser.CdaRrModel;
+import com.drajer.cda.parser.RrParser;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ *
+ * <h1>RrParserBenchmark</h1>
+ *
+ * This class measures the parsing of the sample Reportability Response from the test resources.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RrParserBenchmark {
+
+  private RrParser parser;
+  private String rrXml;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    parser = new RrParser();
+    rrXml = BenchmarkData.readResource(BenchmarkData.RR_XML);
+  }
+
+  @Benchmark
+  public CdaRrModel parseRr() {
+    return parser.parse(rrXml);
+  }
+}
@@ -0,0 +1,193 @@
+package com.drajer.benchmark;
+
+import ca.uhn.fhir.fhirpath.IFhirPath;
+import com.drajer.bsa.kar.model.KnowledgeArtifact;
+import com.drajer.bsa.kar.model.ValueSetIndex;
+import com.drajer.bsa.utils.BsaServiceUtils;
+import com.drajer.bsa.utils.FhirPathEvaluator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.ExpressionNode;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.r4.model.ValueSet.ConceptSetComponent;
+import org.hl7.fhir.r4.model.ValueSet.ValueSetExpansionContainsComponent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ *
+ * <h1>TriggerMatchingBenchmark</h1>
+ *
+ * This class measures the matching of codes against the ValueSets of the eRSD from the test
+ * resources, with and without the ValueSet index of the Knowledge Artifact, and the evaluation of
+ * the FHIRPath expressions used by the eRSD code filters and conditions, parsed on every evaluation
+ * and compiled once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TriggerMatchingBenchmark {
+
+  private static final int CODES_PER_VALUESET = 5;
+
+  // Encounter condition of the eRSD with the normal reporting duration of 14 days.
+  private static final String ENCOUNTER_CONDITION =
+      "Encounter.where((status = 'in-progress' and period.start + 1 day * 14 >= now())"
+          + " or (status = 'finished' and period.end + 72 hours >= now())).exists()";
+
+  @Param({"code", "code.coding.where(system = 'http://loinc.org').code"})
+  public String codeFilterPath;
+
+  private final IFhirPath fhirPath = BenchmarkData.R4_CONTEXT.newFhirPath();
+  private final FhirPathEvaluator fhirPathEvaluator =
+      new FhirPathEvaluator(BenchmarkData.R4_CONTEXT, 100);
+
+  private ExpressionNode compiledCodeFilterPath;
+
+  private List<ValueSet> valueSets;
+  private ValueSetIndex valueSetIndex;
+  private List<Coding> codes;
+  private List<Resource> resources;
+  private Encounter encounter;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+
+    KnowledgeArtifact kar = new KnowledgeArtifact();
+    valueSets = new ArrayList<>();
+    codes = new ArrayList<>();
+
+    Bundle ersd = BenchmarkData.readR4Bundle(BenchmarkData.ERSD_BUNDLE);
+    for (BundleEntryComponent ent : ersd.getEntry()) {
+
+      if (ent.getResource() instanceof ValueSet) {
+        ValueSet vs = (ValueSet) ent.getResource();
+        kar.addDependentValueSet(vs);
+        valueSets.add(vs);
+        addSampleCodes(vs);
+      }
+    }
+
+    valueSetIndex = kar.getValueSetIndex();
+    compiledCodeFilterPath = fhirPathEvaluator.compile(codeFilterPath);
+
+    // Codes which are not present in any ValueSet, the worst case for the linear search.
+    int matching = codes.size();
+    for (int i = 0; i < matching; i++) {
+      codes.add(new Coding("http://snomed.info/sct", "0000" + i, null));
+    }
+
+    Bundle data = BenchmarkData.readR4Bundle(BenchmarkData.R4_LOADING_QUERY_BUNDLE);
+    resources = new ArrayList<>();
+    for (BundleEntryComponent ent : data.getEntry()) {
+      resources.add(ent.getResource());
+      if (ent.getResource() instanceof Encounter) {
+        encounter = (Encounter) ent.getResource();
+      }
+    }
+  }
+
+  @Benchmark
+  public int indexedValueSetMatching() {
+    int matches = 0;
+    for (ValueSet vs : valueSets) {
+      for (Coding c : codes) {
+        if (BsaServiceUtils.isCodePresentInValueSet(
+            valueSetIndex, vs, c.getSystem(), c.getCode())) {
+          matches++;
+        }
+      }
+    }
+    return matches;
+  }
+
+  @Benchmark
+  public int linearValueSetMatching() {
+    int matches = 0;
+    for (ValueSet vs : valueSets) {
+      for (Coding c : codes) {
+        if (BsaServiceUtils.isCodePresentInValueSet(vs, c.getSystem(), c.getCode())) {
+          matches++;
+        }
+      }
+    }
+    return matches;
+  }
+
+  @Benchmark
+  public int fhirPathCodeFilter() {
+    int results = 0;
+    for (Resource res : resources) {
+      List<IBase> values = fhirPath.evaluate(res, codeFilterPath, IBase.class);
+      results += values.size();
+    }
+    return results;
+  }
+
+  @Benchmark
+  public int compiledFhirPathCodeFilter() {
+    int results = 0;
+    for (Resource res : resources) {
+      List<Base> values = fhirPathEvaluator.evaluate(res, compiledCodeFilterPath);
+      results += values.size();
+    }
+    return results;
+  }
+
+  @Benchmark
+  public int cachedFhirPathCodeFilter() {
+    int results = 0;
+    for (Resource res : resources) {
+      List<Base> values = fhirPathEvaluator.evaluate(res, codeFilterPath);
+      results += values.size();
+    }
+    return results;
+  }
+
+  @Benchmark
+  public List<IBase> fhirPathEncounterCondition() {
+    return fhirPath.evaluate(encounter, ENCOUNTER_CONDITION, IBase.class);
+  }
+
+  private void addSampleCodes(ValueSet vs) {
+
+    List<Coding> sample = new ArrayList<>();
+
+    for (ConceptSetComponent csc : vs.getCompose().getInclude()) {
+      if (csc.hasSystem()) {
+        csc.getConcept()
+            .forEach(crc -> sample.add(new Coding(csc.getSystem(), crc.getCode(), null)));
+      }
+    }
+
+    for (ValueSetExpansionContainsComponent contains : vs.getExpansion().getContains()) {
+      if (contains.hasSystem()) {
+        sample.add(new Coding(contains.getSystem(), contains.getCode(), null));
+      }
+    }
+
+    codes.addAll(sample.subList(0, Math.min(CODES_PER_VALUESET, sample.size())));
+  }
+}
@@ -0,0 +1,284 @@
+package com.drajer.bsa.auth;
+
+import com.drajer.bsa.model.FhirServerDetails;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>AccessTokenCache</h1>
+ *
+ * This class caches the access tokens retrieved for the Healthcare Settings and the Public Health
+ * Authorities, so that a token is requested from the authorization server only when the cached
+ * token is about to expire instead of for every job. A token is cached for the expires_in duration
+ * returned by the authorization server and is refreshed in the background a configurable number of
+ * seconds (the skew) before it expires, provided the token was used since it was last retrieved.
+ *
+ * <p>Concurrent requests for the same server wait for a single token request instead of each
+ * requesting a token. The tokens handed out are copies whose expires_in is the remaining lifetime
+ * of the cached token, so that callers computing the expiration time from expires_in stay correct.
+ *
+ * <p>The cache is keyed by the type and id of the server details along with the urls, client id,
+ * scopes and credentials, so that a token is not reused after the configuration is changed.
+ */
+@Component
+public class AccessTokenCache {
+
+  private final Logger logger = LoggerFactory.getLogger(AccessTokenCache.class);
+
+  private static final String EXPIRES_IN = "expires_in";
+  private static final String KEY_SEPARATOR = "|";
+
+  /** Flag to indicate if the tokens are cached. */
+  @Value("${token.cache.enabled:false}")
+  private Boolean enabled;
+
+  /** The number of seconds before the expiration when a token is refreshed. */
+  @Value("${token.cache.refresh-skew-seconds:60}")
+  private long refreshSkewSeconds;
+
+  /** Flag to indicate if the tokens are refreshed in the background before they expire. */
+  @Value("${token.cache.background-refresh.enabled:true}")
+  private Boolean backgroundRefreshEnabled;
+
+  private final ConcurrentHashMap<String, CachedToken> tokens = new ConcurrentHashMap<>();
+
+  private final ConcurrentHashMap<String, CompletableFuture<CachedToken>> pendingRequests =
+      new ConcurrentHashMap<>();
+
+  private ScheduledThreadPoolExecutor refreshExecutor;
+
+  public AccessTokenCache() {
+    enabled = false;
+    refreshSkewSeconds = 60;
+    backgroundRefreshEnabled = true;
+  }
+
+  public AccessTokenCache(
+      Boolean enabled, long refreshSkewSeconds, Boolean backgroundRefreshEnabled) {
+    this.enabled = enabled;
+    this.refreshSkewSeconds = refreshSkewSeconds;
+    this.backgroundRefreshEnabled = backgroundRefreshEnabled;
+    initialize();
+  }
+
+  @PostConstruct
+  public void initialize() {
+
+    if (isEnabled() && Boolean.TRUE.equals(backgroundRefreshEnabled) && refreshExecutor == null) {
+      AtomicInteger count = new AtomicInteger(0);
+      refreshExecutor =
+          new ScheduledThreadPoolExecutor(
+              1,
+              r -> {
+                Thread t = new Thread(r, "AccessTokenRefresh-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+              });
+      refreshExecutor.setRemoveOnCancelPolicy(true);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (refreshExecutor != null) {
+      refreshExecutor.shutdownNow();
+    }
+  }
+
+  public boolean isEnabled() {
+    return Boolean.TRUE.equals(enabled);
+  }
+
+  /**
+   * The method returns the cached token for the server, and retrieves a new token using the
+   * tokenRetriever when there is no cached token or the cached token is about to expire.
+   *
+   * @param fsd The Healthcare Setting or Public Health Authority.
+   * @param tokenRetriever The authorization service method which retrieves a new token.
+   * @return The token response, or null when a token could not be retrieved.
+   */
+  public JSONObject getToken(
+      FhirServerDetails fsd, Function<FhirServerDetails, JSONObject> tokenRetriever) {
+
+    if (!isEnabled()) {
+      return tokenRetriever.apply(fsd);
+    }
+
+    String key = getKey(fsd);
+    CachedToken token = tokens.get(key);
+
+    if (token == null || !token.isFresh(System.currentTimeMillis())) {
+
+      logger.debug(" Retrieving access token for {}", fsd.getFhirServerBaseURL());
+      token = retrieveToken(key, fsd, tokenRetriever);
+
+      if (token == null) {
+        return null;
+      }
+    }
+
+    token.used = true;
+    return token.copy(System.currentTimeMillis());
+  }
+
+  /** Removes the cached tokens for the server, for example after the token was rejected. */
+  public void invalidate(FhirServerDetails fsd) {
+
+    String prefix = fsd.getClass().getSimpleName() + KEY_SEPARATOR + fsd.getId() + KEY_SEPARATOR;
+    tokens.keySet().removeIf(key -> key.startsWith(prefix));
+  }
+
+  public int size() {
+    return tokens.size();
+  }
+
+  private CachedToken retrieveToken(
+      String key, FhirServerDetails fsd, Function<FhirServerDetails, JSONObject> tokenRetriever) {
+
+    CompletableFuture<CachedToken> request = new CompletableFuture<>();
+    CompletableFuture<CachedToken> pending = pendingRequests.putIfAbsent(key, request);
+
+    if (pending != null) {
+      // Another thread is already retrieving the token for the same server.
+      try {
+        return pending.join();
+      } catch (Exception e) {
+        logger.error(" Error waiting for the access token of {}", fsd.getFhirServerBaseURL(), e);
+        return null;
+      }
+    }
+
+    try {
+      CachedToken token = null;
+      JSONObject response = tokenRetriever.apply(fsd);
+
+      if (response != null) {
+        token = store(key, fsd, tokenRetriever, response);
+      }
+
+      request.complete(token);
+      return token;
+
+    } catch (RuntimeException e) {
+      request.completeExceptionally(e);
+      throw e;
+    } finally {
+      pendingRequests.remove(key, request);
+    }
+  }
+
+  private CachedToken store(
+      String key,
+      FhirServerDetails fsd,
+      Function<FhirServerDetails, JSONObject> tokenRetriever,
+      JSONObject response) {
+
+    long now = System.currentTimeMillis();
+    long expiresInSec = response.optLong(EXPIRES_IN, 0);
+    CachedToken token = new CachedToken(response, now + TimeUnit.SECONDS.toMillis(expiresInSec));
+
+    if (expiresInSec <= refreshSkewSeconds) {
+      // Tokens which expire within the skew are used once and not cached.
+      logger.debug(" Not caching access token expiring in {} seconds", expiresInSec);
+      tokens.remove(key);
+      return token;
+    }
+
+    tokens.put(key, token);
+
+    if (refreshExecutor != null) {
+      long delay = TimeUnit.SECONDS.toMillis(expiresInSec - refreshSkewSeconds);
+      refreshExecutor.schedule(
+          () -> refresh(key, fsd, tokenRetriever, token), delay, TimeUnit.MILLISECONDS);
+    }
+
+    return token;
+  }
+
+  private void refresh(
+      String key,
+      FhirServerDetails fsd,
+      Function<FhirServerDetails, JSONObject> tokenRetriever,
+      CachedToken token) {
+
+    if (tokens.get(key) != token) {
+      // The token was replaced or invalidated since the refresh was scheduled.
+      return;
+    }
+
+    if (!token.used) {
+      // Servers without activity are not kept alive, the next request retrieves a new token.
+      logger.debug(" Removing unused access token for {}", fsd.getFhirServerBaseURL());
+      tokens.remove(key, token);
+      return;
+    }
+
+    try {
+      logger.info(" Refreshing access token for {}", fsd.getFhirServerBaseURL());
+      if (retrieveToken(key, fsd, tokenRetriever) == null) {
+        tokens.remove(key, token);
+      }
+    } catch (Exception e) {
+      logger.error(" Error refreshing access token for {}", fsd.getFhirServerBaseURL(), e);
+      tokens.remove(key, token);
+    }
+  }
+
+  private static String getKey(FhirServerDetails fsd) {
+
+    return fsd.getClass().getSimpleName()
+        + KEY_SEPARATOR
+        + fsd.getId()
+        + KEY_SEPARATOR
+        + fsd.getAuthType()
+        + KEY_SEPARATOR
+        + fsd.getFhirServerBaseURL()
+        + KEY_SEPARATOR
+        + fsd.getTokenUrl()
+        + KEY_SEPARATOR
+        + fsd.getClientId()
+        + KEY_SEPARATOR
+        + fsd.getScopes()
+        + KEY_SEPARATOR
+        + Objects.hash(fsd.getClientSecret(), fsd.getUsername(), fsd.getPassword());
+  }
+
+  private class CachedToken {
+
+    private final JSONObject response;
+    private final long expirationTime;
+    private volatile boolean used;
+
+    private CachedToken(JSONObject response, long expirationTime) {
+      this.response = response;
+      this.expirationTime = expirationTime;
+    }
+
+    private boolean isFresh(long now) {
+      return now < expirationTime - TimeUnit.SECONDS.toMillis(refreshSkewSeconds);
+    }
+
+    private JSONObject copy(long now) {
+
+      JSONObject copy = new JSONObject(response.toString());
+      if (response.has(EXPIRES_IN)) {
+        copy.put(EXPIRES_IN, Math.max(0, TimeUnit.MILLISECONDS.toSeconds(expirationTime - now)));
+      }
+      return copy;
+    }
+  }
+}
@@ -29,19 +29,21 @@ public class AuthorizationUtils {
   @Autowired
   AuthorizationService passwordAuthorizationService;
 
+  @Autowired AccessTokenCache accessTokenCache;
+
   public JSONObject getToken(FhirServerDetails fsd) {
     JSONObject token;
     BsaTypes.AuthenticationType authTYpe = BsaTypes.getAuthenticationType(fsd.getAuthType());
     switch (authTYpe) {
       case USER_NAME_PWD:
-        token = passwordAuthorizationService.getAuthorizationToken(fsd);
+        token = accessTokenCache.getToken(fsd, passwordAuthorizationService::getAuthorizationToken);
         break;
       case SOF_BACKEND:
-        token = backendAuthorizationService.getAuthorizationToken(fsd);
+        token = accessTokenCache.getToken(fsd, backendAuthorizationService::getAuthorizationToken);
         break;
       case SYSTEM:
       case MULTI_TENANT_SYSTEM_LAUNCH:
-        token = ehrAuthorizationService.getAuthorizationToken(fsd);
+        token = accessTokenCache.getToken(fsd, ehrAuthorizationService::getAuthorizationToken);
         break;
       case UNKNOWN:
       case SOF_PROVIDER:
@@ -56,4 +58,15 @@ public class AuthorizationUtils {
     logger.info("Returning token {}", token);
     return token;
   }
+
+  /**
+   * Discards the cached token of the server, so that the next call to getToken retrieves a new one.
+   * Called when the server rejected the token before its expiration.
+   *
+   * @param fsd the server whose token was rejected
+   */
+  public void invalidateToken(FhirServerDetails fsd) {
+    logger.info("Invalidating the cached access token of {}", fsd.getFhirServerBaseURL());
+    accessTokenCache.invalidate(fsd);
+  }
 }
@@ -1,5 +1,6 @@
 package com.drajer.bsa.auth.impl;
 
+import com.drajer.bsa.auth.AccessTokenCache;
 import com.drajer.bsa.auth.AuthorizationService;
 import com.drajer.bsa.model.FhirServerDetails;
 import com.drajer.sof.model.Response;
@@ -17,6 +18,7 @@ import java.security.cert.CertificateException;
 import java.util.Date;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.nio.file.*;
 import java.security.*;
@@ -26,6 +28,7 @@ import net.minidev.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -69,6 +72,16 @@ public class BackendAuthorizationServiceImpl implements AuthorizationService {
   @Value("${backendauth.privatekey.path}")
   String path;
 
+  @Autowired RestTemplate restTemplate;
+
+  @Autowired AccessTokenCache accessTokenCache;
+
+  /** The token endpoints discovered for the EHR base urls, used when the token cache is enabled. */
+  private final ConcurrentHashMap<String, String> tokenEndpoints = new ConcurrentHashMap<>();
+
+  /** The private keys read from the key files, used when the token cache is enabled. */
+  private final ConcurrentHashMap<String, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+
   /**
    * @param url base url of ehr
    * @param fsd knowledge artifact data
@@ -76,12 +89,11 @@ public class BackendAuthorizationServiceImpl implements AuthorizationService {
    * @throws KeyStoreException in case of invalid public/private keys
    */
   public JSONObject connectToServer(String url, FhirServerDetails fsd) throws KeyStoreException {
-    RestTemplate resTemplate = new RestTemplate();
     String tokenEndpoint;
 
     tokenEndpoint = fsd.getTokenUrl();
     if (tokenEndpoint == null || tokenEndpoint.isEmpty()) {
-      tokenEndpoint = getTokenEndpoint(url);
+      tokenEndpoint = getCachedTokenEndpoint(url);
     }
     String clientId = fsd.getClientId();
     String scopes = fsd.getScopes();
@@ -97,7 +109,7 @@ public class BackendAuthorizationServiceImpl implements AuthorizationService {
     map.add("client_assertion_type", "urn:ietf:params:oauth:client-assertion-type:jwt-bearer");
     map.add("client_assertion", jwt);
     HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(map, headers);
-    ResponseEntity<?> response = resTemplate.postForEntity(tokenEndpoint, request, Response.class);
+    ResponseEntity<?> response = restTemplate.postForEntity(tokenEndpoint, request, Response.class);
     return new JSONObject(Objects.requireNonNull(response.getBody()));
   }
 
@@ -119,16 +131,15 @@ public class BackendAuthorizationServiceImpl implements AuthorizationService {
    * @return token endpoint from the server's capability statement
    */
   public String getTokenEndpoint(String url) {
-    RestTemplate resTemplate = new RestTemplate();
     try {
       ResponseEntity<String> response =
-          resTemplate.getForEntity(String.format("%s/%s", url, WELL_KNOWN), String.class);
+          restTemplate.getForEntity(String.format("%s/%s", url, WELL_KNOWN), String.class);
       JSONArray result = JsonPath.read(response.getBody(), "$.token_endpoint");
       return result.get(0).toString();
     } catch (Exception e1) {
       try {
         ResponseEntity<String> response =
-            resTemplate.getForEntity(String.format("%s/metadata", url), String.class);
+            restTemplate.getForEntity(String.format("%s/metadata", url), String.class);
         // jsonpath allows filtering through lists with '?', where '@' represents the current
         // element
         JSONArray result =
@@ -156,7 +167,7 @@ public class BackendAuthorizationServiceImpl implements AuthorizationService {
   public String generateJwt(String clientId, String aud) throws KeyStoreException {
 
     try {
-      PrivateKey key = getPrivateKey(path);
+      PrivateKey key = getCachedPrivateKey(path);
 
       return Jwts.builder()
           .setIssuer(clientId)
@@ -177,6 +188,43 @@ public class BackendAuthorizationServiceImpl implements AuthorizationService {
     return null;
   }
 
+  /**
+   * @param url base ehr url
+   * @return the token endpoint, discovered once per base url when the token cache is enabled
+   */
+  private String getCachedTokenEndpoint(String url) {
+
+    if (!accessTokenCache.isEnabled()) {
+      return getTokenEndpoint(url);
+    }
+
+    String tokenEndpoint = tokenEndpoints.get(url);
+    if (tokenEndpoint == null) {
+      tokenEndpoint = getTokenEndpoint(url);
+      tokenEndpoints.put(url, tokenEndpoint);
+    }
+    return tokenEndpoint;
+  }
+
+  /**
+   * @param path String representation of the path to the private key
+   * @return the private key, read once per path when the token cache is enabled
+   */
+  private PrivateKey getCachedPrivateKey(String path)
+      throws IOException, InvalidKeySpecException, NoSuchAlgorithmException {
+
+    if (!accessTokenCache.isEnabled()) {
+      return getPrivateKey(path);
+    }
+
+    PrivateKey key = privateKeys.get(path);
+    if (key == null) {
+      key = getPrivateKey(path);
+      privateKeys.put(path, key);
+    }
+    return key;
+  }
+
   /**
    * @param path String representation of the path to the private key
    * @return a private key file's contents
@@ -31,6 +31,8 @@ import org.hl7.fhir.r4.model.ResourceType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -57,6 +59,11 @@ public class PatientLaunchController {
 
   private static final String FHIR_VERSION = "fhirVersion";
   private static final String X_REQUEST_ID = "X-Request-ID";
+  private static final String RETRY_AFTER_SECONDS = "30";
+
+  /** Flag to indicate if launches are queued and processed asynchronously. */
+  @Value("${notification.async.enabled:false}")
+  private Boolean asyncEnabled;
 
   /**
    * The method is the API to launch a patient instance within the app for processing. In addition
@@ -65,6 +72,9 @@ public class PatientLaunchController {
    * be a GUID. 'X-Correlation-ID' - This can be used for correlation across clients and server
    * request / responses. This is expected to be a GUID.
    *
+   * <p>When asynchronous processing is enabled, the launch is queued and the API returns 202
+   * (Accepted) with a tracking id that can be used with the /api/notificationStatus API.
+   *
    * @param launchContext - Contains the context of the launch.
    * @param request - Request parameters
    * @param response - Response parameters.
@@ -97,6 +107,10 @@ public class PatientLaunchController {
 
       if (!StringUtils.isEmpty(requestId)) {
 
+        if (Boolean.TRUE.equals(asyncEnabled)) {
+          return enqueueLaunch(launchContext, hs, request, response);
+        }
+
         Bundle nb = getNotificationBundle(launchContext, hs, true);
 
         notificationReceiver.processNotification(nb, request, response, launchContext);
@@ -195,6 +209,44 @@ public class PatientLaunchController {
     return "Patient Instance re-launched for processing successfully";
   }
 
+  /**
+   * The method queues the launch for asynchronous processing and sets the HTTP status to 202
+   * (Accepted). The processing status can be tracked using the id of the NotificationContext
+   * returned in the response.
+   */
+  private String enqueueLaunch(
+      PatientLaunchContext launchContext,
+      HealthcareSetting hs,
+      HttpServletRequest request,
+      HttpServletResponse response) {
+
+    if (!notificationReceiver.canAcceptNotification()) {
+      logger.error(" Rejecting patient launch since the notification queue is full ");
+      response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+      throw new ResponseStatusException(
+          HttpStatus.SERVICE_UNAVAILABLE, "Too many launches are waiting to be processed ");
+    }
+
+    Bundle nb = getNotificationBundle(launchContext, hs, true);
+
+    NotificationContext nc =
+        notificationReceiver.enqueueNotification(nb, request, response, launchContext);
+
+    if (nc == null) {
+      throw new ResponseStatusException(
+          HttpStatus.BAD_REQUEST, "Unable to create the notification context for the launch ");
+    }
+
+    logger.info(
+        " Patient launch was queued for patientId: {}, encounterId: {}, trackingId: {}",
+        launchContext.getPatientId(),
+        launchContext.getEncounterId(),
+        nc.getId());
+
+    response.setStatus(HttpStatus.ACCEPTED.value());
+    return "Patient Instance accepted for processing, tracking id : " + nc.getId();
+  }
+
   /**
    * Create a NotificationBundle using the patientId and encounterId parameters.
    *
@@ -1,8 +1,11 @@
 package com.drajer.bsa.controller;
 
 import ca.uhn.fhir.parser.IParser;
+import com.drajer.bsa.model.NotificationContext;
 import com.drajer.bsa.model.PatientLaunchContext;
+import com.drajer.bsa.service.NotificationContextService;
 import com.drajer.bsa.service.SubscriptionNotificationReceiver;
+import java.util.UUID;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.hl7.fhir.r4.model.Bundle;
@@ -11,9 +14,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
@@ -30,8 +37,17 @@ public class SubscriptionNotificationReceiverController {
   private final Logger logger =
       LoggerFactory.getLogger(SubscriptionNotificationReceiverController.class);
 
+  private static final String TRACKING_ID = "trackingId";
+  private static final String RETRY_AFTER_SECONDS = "30";
+
   @Autowired SubscriptionNotificationReceiver subscriptionProcessor;
 
+  @Autowired NotificationContextService ncService;
+
+  /** Flag to indicate if notifications are queued and processed asynchronously. */
+  @Value("${notification.async.enabled:false}")
+  private Boolean asyncEnabled;
+
   @Autowired
   @Qualifier("jsonParser")
   IParser jsonParser;
@@ -65,6 +81,10 @@ public class SubscriptionNotificationReceiverController {
 
         logger.info(" Successfully parsed incoming notification as bundle ");
 
+        if (Boolean.TRUE.equals(asyncEnabled)) {
+          return enqueueNotification(bund, request, response, launchContext);
+        }
+
         subscriptionProcessor.processNotification(bund, request, response, launchContext);
 
         logger.info(" Finished processing notification ");
@@ -97,4 +117,74 @@ public class SubscriptionNotificationReceiverController {
       return new ResponseEntity<>(responseObject, HttpStatus.BAD_REQUEST);
     }
   }
+
+  /**
+   * This method is used to retrieve the processing status of a notification or patient launch that
+   * was queued for asynchronous processing.
+   *
+   * @param trackingId The tracking id returned when the notification was accepted.
+   * @return The processing status of the notification, or 404 (Not Found) when the tracking id is
+   *     unknown.
+   */
+  @CrossOrigin
+  @GetMapping("/api/notificationStatus/{trackingId}")
+  public ResponseEntity<Object> getNotificationStatus(@PathVariable("trackingId") UUID trackingId) {
+
+    NotificationContext nc = ncService.getNotificationContext(trackingId);
+
+    JSONObject responseObject = new JSONObject();
+
+    if (nc == null) {
+      responseObject.put("status", "error");
+      responseObject.put("message", "Unknown tracking id " + trackingId);
+      return new ResponseEntity<>(responseObject.toString(), HttpStatus.NOT_FOUND);
+    }
+
+    responseObject.put(TRACKING_ID, nc.getId().toString());
+    responseObject.put("status", nc.getNotificationProcessingStatus());
+    responseObject.put("triggerEvent", nc.getTriggerEvent());
+    responseObject.put("patientId", nc.getPatientId());
+    responseObject.put("notificationResourceId", nc.getNotificationResourceId());
+    responseObject.put("lastUpdated", nc.getLastUpdated());
+    return new ResponseEntity<>(responseObject.toString(), HttpStatus.OK);
+  }
+
+  private ResponseEntity<Object> enqueueNotification(
+      Bundle bund,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      PatientLaunchContext launchContext) {
+
+    JSONObject responseObject = new JSONObject();
+
+    if (!subscriptionProcessor.canAcceptNotification()) {
+
+      logger.error(" Rejecting notification since the notification queue is full ");
+
+      responseObject.put("status", "error");
+      responseObject.put("message", "Too many notifications are waiting to be processed.");
+      HttpHeaders headers = new HttpHeaders();
+      headers.set(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+      return new ResponseEntity<>(
+          responseObject.toString(), headers, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    NotificationContext nc =
+        subscriptionProcessor.enqueueNotification(bund, request, response, launchContext);
+
+    if (nc == null) {
+
+      responseObject.put("status", "error");
+      responseObject.put(
+          "message",
+          "Unable to derive the notification context from the notification bundle, hence the notification cannot be queued.");
+      return new ResponseEntity<>(responseObject.toString(), HttpStatus.BAD_REQUEST);
+    }
+
+    logger.info(" Queued notification for processing with tracking id {}", nc.getId());
+
+    responseObject.put("status", "accepted");
+    responseObject.put(TRACKING_ID, nc.getId().toString());
+    return new ResponseEntity<>(responseObject.toString(), HttpStatus.ACCEPTED);
+  }
 }
@@ -0,0 +1,30 @@
+package com.drajer.bsa.dao;
+
+import com.drajer.bsa.model.DirectOutboundMessage;
+import java.util.Date;
+import java.util.List;
+
+public interface DirectOutboundQueueDao {
+
+  DirectOutboundMessage saveOrUpdate(DirectOutboundMessage message);
+
+  /**
+   * Returns the messages which are pending or whose claim expired, and whose next attempt is due,
+   * in the order of their next attempt.
+   */
+  List<DirectOutboundMessage> getDueMessages(Date now, int maxResults);
+
+  /**
+   * Claims the message for sending until the given time. The message is not claimed when it was
+   * updated by another instance since it was read.
+   *
+   * @return true when the message was claimed.
+   */
+  boolean claim(DirectOutboundMessage message, Date claimedUntil);
+
+  /** Updates the status, the attempts, the next attempt and the error of a claimed message. */
+  void updateAttempt(DirectOutboundMessage message);
+
+  /** Deletes a claimed message once sent. */
+  void delete(DirectOutboundMessage message);
+}
@@ -25,6 +25,14 @@ public interface HealthcareSettingsDao {
    */
   public HealthcareSetting saveOrUpdate(HealthcareSetting hsd);
 
+  /**
+   * Method to store the EHR access token of a HealthcareSetting. The token is not part of the
+   * configuration, so the cached copies of the HealthcareSetting are not refreshed.
+   *
+   * @param hsd The HealthcareSetting with the new access token.
+   */
+  public void updateAccessToken(HealthcareSetting hsd);
+
   /**
    * Method to retrieve a HealthcareSetting.
    *
@@ -56,4 +64,12 @@ public interface HealthcareSettingsDao {
    * @return Returns the list of KnowledgeArtifactStatus by Healthcare Setting Id.
    */
   public List<KnowledgeArtifactStatus> getKarsActiveByHsId(Integer id);
+
+  /**
+   * Method to record a change to a HealthcareSetting or the status of its KARs, so that the cached
+   * copies of the HealthcareSetting are refreshed.
+   *
+   * @param id The HealthcareSetting Id which was changed.
+   */
+  public void incrementConfigVersion(Integer id);
 }
@@ -39,4 +39,12 @@ public interface NotificationContextDao {
    * @return Returns the NotificationContext for the provided url.
    */
   public NotificationContext getNotificationContextByUrl(String url);
+
+  /**
+   * Method to count the NotificationContexts with a processing status.
+   *
+   * @param status The notification processing status to be counted.
+   * @return Returns the number of NotificationContexts with the status.
+   */
+  public long getNotificationContextCountByStatus(String status);
 }
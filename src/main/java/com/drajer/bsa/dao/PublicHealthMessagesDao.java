@@ -1,9 +1,12 @@
 package com.drajer.bsa.dao;
 
 import com.drajer.bsa.model.PublicHealthMessage;
+import com.drajer.ecrapp.dao.KeysetPage;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public interface PublicHealthMessagesDao {
 
@@ -17,8 +20,37 @@ public interface PublicHealthMessagesDao {
 
   PublicHealthMessage getBySubmittedDataId(String subId);
 
+  /**
+   * Returns the PublicHealthMessage for the submitted data id without the submitted data, the
+   * response data and the trigger match status. The returned instance is not attached to the
+   * session and has to be saved using updateResponse.
+   */
+  PublicHealthMessage getMetadataBySubmittedDataId(String subId);
+
+  /** Updates only the response attributes of the PublicHealthMessage. */
+  void updateResponse(PublicHealthMessage message);
+
+  /**
+   * Updates only the submission status of the PublicHealthMessage, and the submission time when
+   * not null.
+   */
+  void updateSubmissionStatus(UUID id, String status, Date submissionTime);
+
+  /** Returns the trigger match status of the latest version of the matching messages. */
+  String getLatestTriggerMatchStatus(Map<String, String> searchParams);
+
   List<PublicHealthMessage> getPublicHealthMessage(Map<String, String> searchParams);
 
+  /**
+   * Passes a page of the messages matching the search parameters to the consumer, one message at a
+   * time. In summary mode the messages do not have the submitted data, the response data and the
+   * trigger match status.
+   *
+   * @return The cursor of the next page, or null when there are no more messages.
+   */
+  String getPublicHealthMessages(
+      Map<String, String> searchParams, KeysetPage page, Consumer<PublicHealthMessage> consumer);
+
   List<PublicHealthMessage> getByXRequestId(String xRequestId);
 
   PublicHealthMessage getBySubmittedMessageId(String messageId);
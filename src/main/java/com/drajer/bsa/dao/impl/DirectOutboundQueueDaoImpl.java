@@ -0,0 +1,117 @@
+package com.drajer.bsa.dao.impl;
+
+import com.drajer.bsa.dao.DirectOutboundQueueDao;
+import com.drajer.bsa.model.DirectOutboundMessage;
+import com.drajer.bsa.model.DirectOutboundMessage.Status;
+import com.drajer.ecrapp.dao.AbstractDao;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.hibernate.Criteria;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ *
+ *
+ * <h1>DirectOutboundQueueDaoImpl</h1>
+ *
+ * This Implementation class to perform the operations on the queue of the eICRs sent using Direct.
+ * The updates of a message are conditional on its version, so that a message claimed by another
+ * instance of the application is left untouched.
+ */
+@Repository
+@Transactional
+public class DirectOutboundQueueDaoImpl extends AbstractDao implements DirectOutboundQueueDao {
+
+  private static final String NEXT_ATTEMPT_TIME = "nextAttemptTime";
+
+  private static final String CLAIM =
+      "update DirectOutboundMessage set status = :status,"
+          + " nextAttemptTime = :nextAttemptTime,"
+          + " version = version + 1,"
+          + " lastUpdated = :lastUpdated"
+          + " where id = :id and version = :version";
+
+  private static final String UPDATE_ATTEMPT =
+      "update DirectOutboundMessage set status = :status,"
+          + " attempts = :attempts,"
+          + " nextAttemptTime = :nextAttemptTime,"
+          + " lastError = :lastError,"
+          + " version = version + 1,"
+          + " lastUpdated = :lastUpdated"
+          + " where id = :id and version = :version";
+
+  private static final String DELETE =
+      "delete from DirectOutboundMessage where id = :id and version = :version";
+
+  @Override
+  public DirectOutboundMessage saveOrUpdate(DirectOutboundMessage message) {
+    getSession().saveOrUpdate(message);
+    return message;
+  }
+
+  @Override
+  public List<DirectOutboundMessage> getDueMessages(Date now, int maxResults) {
+    Criteria criteria = getSession().createCriteria(DirectOutboundMessage.class);
+    criteria.add(Restrictions.in("status", Arrays.asList(Status.PENDING, Status.SENDING)));
+    criteria.add(Restrictions.le(NEXT_ATTEMPT_TIME, now));
+    criteria.addOrder(Order.asc(NEXT_ATTEMPT_TIME));
+    criteria.setMaxResults(maxResults);
+    return criteria.list();
+  }
+
+  @Override
+  public boolean claim(DirectOutboundMessage message, Date claimedUntil) {
+
+    int count =
+        getSession()
+            .createQuery(CLAIM)
+            .setParameter("status", Status.SENDING)
+            .setParameter(NEXT_ATTEMPT_TIME, claimedUntil)
+            .setParameter("lastUpdated", new Date())
+            .setParameter("id", message.getId())
+            .setParameter("version", message.getVersion())
+            .executeUpdate();
+
+    if (count == 1) {
+      message.setStatus(Status.SENDING);
+      message.setNextAttemptTime(claimedUntil);
+      message.setVersion(message.getVersion() + 1);
+      return true;
+    }
+
+    return false;
+  }
+
+  @Override
+  public void updateAttempt(DirectOutboundMessage message) {
+
+    int count =
+        getSession()
+            .createQuery(UPDATE_ATTEMPT)
+            .setParameter("status", message.getStatus())
+            .setParameter("attempts", message.getAttempts())
+            .setParameter(NEXT_ATTEMPT_TIME, message.getNextAttemptTime())
+            .setParameter("lastError", message.getLastError())
+            .setParameter("lastUpdated", new Date())
+            .setParameter("id", message.getId())
+            .setParameter("version", message.getVersion())
+            .executeUpdate();
+
+    if (count == 1) {
+      message.setVersion(message.getVersion() + 1);
+    }
+  }
+
+  @Override
+  public void delete(DirectOutboundMessage message) {
+    getSession()
+        .createQuery(DELETE)
+        .setParameter("id", message.getId())
+        .setParameter("version", message.getVersion())
+        .executeUpdate();
+  }
+}
@@ -0,0 +1,255 @@
+package com.drajer.bsa.dao.impl;
+
+import com.drajer.bsa.kar.model.HealthcareSettingOperationalKnowledgeArtifacts;
+import com.drajer.bsa.kar.model.KnowledgeArtifactStatus;
+import com.drajer.bsa.model.HealthcareSetting;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ *
+ *
+ * <h1>HealthcareSettingCache</h1>
+ *
+ * This class caches the HealthcareSettings along with the status of their Knowledge Artifacts, so
+ * that the HealthcareSetting and the Knowledge Artifact status are not queried for every
+ * notification, scheduled job and RR. Changes made on this instance invalidate the cached
+ * HealthcareSetting immediately. Changes made by other instances of the application are detected
+ * using the config_version column of the HealthcareSetting, which is checked when the cached copy
+ * was not verified within the configured interval.
+ *
+ * <p>Each lookup returns a copy of the cached HealthcareSetting, so that the changes made by a job,
+ * such as the access token, do not affect other jobs. The Knowledge Artifact status objects are
+ * shared between the copies and are not expected to be modified by the jobs.
+ */
+@Component
+public class HealthcareSettingCache {
+
+  private final Logger logger = LoggerFactory.getLogger(HealthcareSettingCache.class);
+
+  /** Flag to indicate if the HealthcareSettings are cached. */
+  @Value("${hs.cache.enabled:false}")
+  private Boolean enabled;
+
+  /**
+   * The number of seconds after which the version of a cached HealthcareSetting is checked against
+   * the database. When set to 0, the version is checked for every lookup.
+   */
+  @Value("${hs.cache.version-check-seconds:10}")
+  private long versionCheckSeconds;
+
+  private final ConcurrentHashMap<Integer, CachedSetting> settingsById = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Integer> idsByUrl = new ConcurrentHashMap<>();
+
+  public HealthcareSettingCache() {
+    enabled = false;
+    versionCheckSeconds = 10;
+  }
+
+  public HealthcareSettingCache(Boolean enabled, long versionCheckSeconds) {
+    this.enabled = enabled;
+    this.versionCheckSeconds = versionCheckSeconds;
+  }
+
+  public boolean isEnabled() {
+    return Boolean.TRUE.equals(enabled);
+  }
+
+  /**
+   * The method returns a copy of the cached HealthcareSetting.
+   *
+   * @param id The id of the HealthcareSetting.
+   * @param versionLoader Returns the current config version of the HealthcareSetting from the
+   *     database, or null when the HealthcareSetting no longer exists.
+   * @return The copy of the cached HealthcareSetting, or null when it is not cached or outdated.
+   */
+  public HealthcareSetting getById(Integer id, Function<Integer, Integer> versionLoader) {
+
+    if (!isEnabled() || id == null) {
+      return null;
+    }
+
+    CachedSetting cached = settingsById.get(id);
+
+    if (cached == null || !isCurrent(cached, () -> versionLoader.apply(id))) {
+      return null;
+    }
+
+    return copy(cached.setting);
+  }
+
+  /**
+   * The method returns a copy of the cached HealthcareSetting.
+   *
+   * @param url The FHIR Server base url of the HealthcareSetting.
+   * @param versionLoader Returns the current config version of the HealthcareSetting with the url
+   *     from the database, or null when there is no HealthcareSetting with the url.
+   * @return The copy of the cached HealthcareSetting, or null when it is not cached or outdated.
+   */
+  public HealthcareSetting getByUrl(String url, Function<String, Integer> versionLoader) {
+
+    if (!isEnabled() || url == null) {
+      return null;
+    }
+
+    Integer id = idsByUrl.get(url);
+    CachedSetting cached = id != null ? settingsById.get(id) : null;
+
+    if (cached == null
+        || !url.equals(cached.setting.getFhirServerBaseURL())
+        || !isCurrent(cached, () -> versionLoader.apply(url))) {
+      return null;
+    }
+
+    return copy(cached.setting);
+  }
+
+  /**
+   * The method caches a copy of the HealthcareSetting which was read from the database along with
+   * the status of its Knowledge Artifacts.
+   */
+  public void put(HealthcareSetting hs) {
+
+    if (!isEnabled() || hs == null || hs.getId() == null) {
+      return;
+    }
+
+    CachedSetting cached = new CachedSetting(copy(hs), getVersion(hs.getConfigVersion()));
+    settingsById.put(hs.getId(), cached);
+    idsByUrl.put(hs.getFhirServerBaseURL(), hs.getId());
+  }
+
+  /**
+   * The method stores the new EHR access token in the cached HealthcareSetting, so that the next
+   * jobs of this instance reuse the token. The config version of the cached copy is unchanged.
+   */
+  public void updateAccessToken(HealthcareSetting hs) {
+
+    if (!isEnabled() || hs.getId() == null) {
+      return;
+    }
+
+    settingsById.computeIfPresent(
+        hs.getId(),
+        (id, cached) -> {
+          HealthcareSetting setting = copy(cached.setting);
+          setting.setEhrAccessToken(hs.getEhrAccessToken());
+          setting.setEhrAccessTokenExpiryDuration(hs.getEhrAccessTokenExpiryDuration());
+          setting.setEhrAccessTokenExpirationTime(hs.getEhrAccessTokenExpirationTime());
+          setting.setDefaultProviderId(hs.getDefaultProviderId());
+
+          CachedSetting updated = new CachedSetting(setting, cached.version);
+          updated.verifiedTime = cached.verifiedTime;
+          return updated;
+        });
+  }
+
+  /** Removes the HealthcareSetting from the cache after it was changed. */
+  public void invalidate(Integer id) {
+
+    if (id == null) {
+      return;
+    }
+
+    CachedSetting cached = settingsById.remove(id);
+    if (cached != null) {
+      logger.info(" Removed HealthcareSetting {} from the cache", id);
+      idsByUrl.remove(cached.setting.getFhirServerBaseURL(), id);
+    }
+  }
+
+  /**
+   * Removes the HealthcareSetting from the cache after it was changed by the current transaction.
+   * It is removed again once the transaction has completed, since until then other threads read and
+   * cache the HealthcareSetting as it was before the change, and the current thread caches the
+   * change which may still be rolled back.
+   */
+  public void invalidateOnCompletion(Integer id) {
+
+    invalidate(id);
+
+    if (id != null && TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+              invalidate(id);
+            }
+          });
+    }
+  }
+
+  public int size() {
+    return settingsById.size();
+  }
+
+  private boolean isCurrent(CachedSetting cached, Supplier<Integer> currentVersion) {
+
+    long now = System.currentTimeMillis();
+    if (now - cached.verifiedTime < TimeUnit.SECONDS.toMillis(versionCheckSeconds)) {
+      return true;
+    }
+
+    Integer version = currentVersion.get();
+    if (version == null || getVersion(version) != cached.version) {
+      logger.info(
+          " HealthcareSetting {} changed from version {} to {}, refreshing the cached copy",
+          cached.setting.getId(),
+          cached.version,
+          version);
+      invalidate(cached.setting.getId());
+      return false;
+    }
+
+    cached.verifiedTime = now;
+    return true;
+  }
+
+  private static int getVersion(Integer configVersion) {
+    return configVersion != null ? configVersion : 0;
+  }
+
+  static HealthcareSetting copy(HealthcareSetting hs) {
+
+    HealthcareSetting copy = new HealthcareSetting();
+    ReflectionUtils.shallowCopyFieldState(Hibernate.unproxy(hs), copy);
+
+    if (hs.getKars() != null) {
+
+      HealthcareSettingOperationalKnowledgeArtifacts kars =
+          new HealthcareSettingOperationalKnowledgeArtifacts();
+      kars.setId(hs.getKars().getId());
+
+      for (KnowledgeArtifactStatus stat : hs.getKars().getArtifactStatus()) {
+        kars.addArtifactStatus(stat);
+      }
+
+      copy.setKars(kars);
+    }
+
+    return copy;
+  }
+
+  private static class CachedSetting {
+
+    private final HealthcareSetting setting;
+    private final int version;
+    private volatile long verifiedTime;
+
+    private CachedSetting(HealthcareSetting setting, int version) {
+      this.setting = setting;
+      this.version = version;
+      this.verifiedTime = System.currentTimeMillis();
+    }
+  }
+}
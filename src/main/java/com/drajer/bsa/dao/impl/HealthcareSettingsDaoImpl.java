@@ -10,7 +10,9 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.List;
 import org.hibernate.Criteria;
+import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,8 +35,22 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 public class HealthcareSettingsDaoImpl extends AbstractDao implements HealthcareSettingsDao {
 
+  /** Increments the config version, which invalidates the cached copies in all the instances. */
+  static final String INCREMENT_CONFIG_VERSION =
+      "update healthcare_setting set config_version = coalesce(config_version, 0) + 1"
+          + " where id = :id";
+
+  /** Stores a new EHR access token without changing the config version. */
+  static final String UPDATE_ACCESS_TOKEN =
+      "update HealthcareSetting set ehrAccessToken = :token,"
+          + " ehrAccessTokenExpiryDuration = :expiryDuration,"
+          + " ehrAccessTokenExpirationTime = :expirationTime,"
+          + " defaultProviderId = :defaultProviderId where id = :id";
+
   @Autowired KnowledgeArtifactRepositorySystem knowledgeArtifactRepositorySystem;
 
+  @Autowired HealthcareSettingCache hsCache;
+
   private final Logger logger = LoggerFactory.getLogger(HealthcareSettingsDaoImpl.class);
   /**
    * Method to create or update a HealthcareSetting.
@@ -57,10 +73,37 @@ public class HealthcareSettingsDaoImpl extends AbstractDao implements Healthcare
       }
     }
 
-    getSession().saveOrUpdate(hsd);
+    if (hsCache.isEnabled() && hsd.getId() != null) {
+      // The HealthcareSetting may be a copy from the cache, while another copy is in the session.
+      getSession().merge(hsd);
+    } else {
+      getSession().saveOrUpdate(hsd);
+    }
+
+    incrementConfigVersion(hsd.getId());
     return hsd;
   }
 
+  @Override
+  public void updateAccessToken(HealthcareSetting hsd) {
+
+    if (hsd.getId() == null) {
+      saveOrUpdate(hsd);
+      return;
+    }
+
+    getSession()
+        .createQuery(UPDATE_ACCESS_TOKEN)
+        .setParameter("token", hsd.getEhrAccessToken())
+        .setParameter("expiryDuration", hsd.getEhrAccessTokenExpiryDuration())
+        .setParameter("expirationTime", hsd.getEhrAccessTokenExpirationTime())
+        .setParameter("defaultProviderId", hsd.getDefaultProviderId())
+        .setParameter("id", hsd.getId())
+        .executeUpdate();
+
+    hsCache.updateAccessToken(hsd);
+  }
+
   /**
    * Method to retrieve a HealthcareSetting.
    *
@@ -69,9 +112,18 @@ public class HealthcareSettingsDaoImpl extends AbstractDao implements Healthcare
    */
   @Override
   public HealthcareSetting getHealthcareSettingById(Integer id) {
+
+    HealthcareSetting cached = hsCache.getById(id, this::getConfigVersionById);
+    if (cached != null) {
+      return cached;
+    }
+
     HealthcareSetting hs = getSession().get(HealthcareSetting.class, id);
 
-    if (hs != null) setKars(hs);
+    if (hs != null) {
+      setKars(hs);
+      hsCache.put(hs);
+    }
 
     return hs;
   }
@@ -84,11 +136,20 @@ public class HealthcareSettingsDaoImpl extends AbstractDao implements Healthcare
    */
   @Override
   public HealthcareSetting getHealthcareSettingByUrl(String url) {
+
+    HealthcareSetting cached = hsCache.getByUrl(url, this::getConfigVersionByUrl);
+    if (cached != null) {
+      return cached;
+    }
+
     Criteria criteria = getSession().createCriteria(HealthcareSetting.class);
     criteria.add(Restrictions.eq("fhirServerBaseURL", url));
     HealthcareSetting hs = (HealthcareSetting) criteria.uniqueResult();
 
-    if (hs != null) setKars(hs);
+    if (hs != null) {
+      setKars(hs);
+      hsCache.put(hs);
+    }
 
     return hs;
   }
@@ -124,6 +185,49 @@ public class HealthcareSettingsDaoImpl extends AbstractDao implements Healthcare
     }
   }
 
+  @Override
+  public void incrementConfigVersion(Integer id) {
+
+    // The version is only used to refresh the cached copies.
+    if (id == null || !hsCache.isEnabled()) {
+      return;
+    }
+
+    getSession()
+        .createNativeQuery(INCREMENT_CONFIG_VERSION)
+        .addSynchronizedEntityClass(HealthcareSetting.class)
+        .setParameter("id", id)
+        .executeUpdate();
+
+    hsCache.invalidateOnCompletion(id);
+  }
+
+  private Integer getConfigVersionById(Integer id) {
+    return getConfigVersion(Restrictions.idEq(id));
+  }
+
+  private Integer getConfigVersionByUrl(String url) {
+    return getConfigVersion(Restrictions.eq("fhirServerBaseURL", url));
+  }
+
+  /** Returns the config version, 0 when it was never incremented or null when there is no row. */
+  private Integer getConfigVersion(Criterion restriction) {
+
+    Criteria criteria = getSession().createCriteria(HealthcareSetting.class);
+    criteria.add(restriction);
+    criteria.setProjection(
+        Projections.projectionList()
+            .add(Projections.id())
+            .add(Projections.property("configVersion")));
+    Object[] row = (Object[]) criteria.uniqueResult();
+
+    if (row == null) {
+      return null;
+    }
+
+    return row[1] != null ? (Integer) row[1] : 0;
+  }
+
   @Override
   public List<KnowledgeArtifactStatus> getKarsActiveByHsId(Integer id) {
 
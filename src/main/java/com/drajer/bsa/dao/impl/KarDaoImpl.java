@@ -1,5 +1,6 @@
 package com.drajer.bsa.dao.impl;
 
+import com.drajer.bsa.dao.HealthcareSettingsDao;
 import com.drajer.bsa.dao.KarDao;
 import com.drajer.bsa.kar.model.KnowledgeArtifactStatus;
 import com.drajer.bsa.model.KnowledgeArtifactRepository;
@@ -10,6 +11,7 @@ import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,6 +21,8 @@ public class KarDaoImpl extends AbstractDao implements KarDao {
 
   private final Logger logger = LoggerFactory.getLogger(KarDaoImpl.class);
 
+  @Autowired HealthcareSettingsDao hsDao;
+
   @Override
   public KnowledgeArtifactRepository saveOrUpdate(KnowledgeArtifactRepository kar) {
     getSession().saveOrUpdate(kar);
@@ -46,6 +50,9 @@ public class KarDaoImpl extends AbstractDao implements KarDao {
   @Override
   public KnowledgeArtifactStatus saveOrUpdateKARStatus(KnowledgeArtifactStatus karStatus) {
     getSession().saveOrUpdate(karStatus);
+
+    // The KAR status is part of the HealthcareSetting cached for the jobs.
+    hsDao.incrementConfigVersion(karStatus.getHsId());
     return karStatus;
   }
 
@@ -5,6 +5,7 @@ import com.drajer.bsa.model.NotificationContext;
 import com.drajer.ecrapp.dao.AbstractDao;
 import java.util.UUID;
 import org.hibernate.Criteria;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
@@ -59,4 +60,19 @@ public class NotificationContextDaoImpl extends AbstractDao implements Notificat
     criteria.add(Restrictions.eq("fhirServerBaseURL", url));
     return (NotificationContext) criteria.uniqueResult();
   }
+
+  /**
+   * Method to count the NotificationContexts with a processing status.
+   *
+   * @param status The notification processing status to be counted.
+   * @return Returns the number of NotificationContexts with the status.
+   */
+  @Override
+  public long getNotificationContextCountByStatus(String status) {
+    Criteria criteria = getSession().createCriteria(NotificationContext.class);
+    criteria.add(Restrictions.eq("notificationProcessingStatus", status));
+    criteria.setProjection(Projections.rowCount());
+    Long count = (Long) criteria.uniqueResult();
+    return count != null ? count : 0;
+  }
 }
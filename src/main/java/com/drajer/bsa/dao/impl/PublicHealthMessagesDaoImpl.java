@@ -3,12 +3,20 @@ package com.drajer.bsa.dao.impl;
 import com.drajer.bsa.dao.PublicHealthMessagesDao;
 import com.drajer.bsa.model.PublicHealthMessage;
 import com.drajer.ecrapp.dao.AbstractDao;
+import com.drajer.ecrapp.dao.KeysetPage;
+import com.drajer.ecrapp.payload.PayloadStores;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.ProjectionList;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.transform.Transformers;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -16,6 +24,8 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 public class PublicHealthMessagesDaoImpl extends AbstractDao implements PublicHealthMessagesDao {
 
+  @Autowired PayloadStores payloadStores;
+
   public static final String SUBMITTED_DATA_ID = "submittedDataId";
   public static final String SUBMITTED_VERSION_NUMBER = "submittedVersionNumber";
   public static final String RESPONSE_DATA_ID = "responseDataId";
@@ -31,6 +41,61 @@ public class PublicHealthMessagesDaoImpl extends AbstractDao implements PublicHe
   public static final String RESPONSE_MESSAGE_ID = "responseMessageId";
   public static final String RESPONSE_PROCESSING_INS = "responseProcessingInstruction";
   public static final String RESPONSE_PROCESSING_STATUS = "responseProcessingStatus";
+  public static final String TRIGGER_MATCH_STATUS = "triggerMatchStatus";
+
+  /**
+   * The attributes of the PublicHealthMessage other than the submitted data, the response data and
+   * the trigger match status, which can be large and are not needed to correlate the messages.
+   * These are also the attributes returned by the searches in summary mode.
+   */
+  public static final String[] METADATA_ATTRIBUTES = {
+    "id",
+    FHIR_SERVER_URL,
+    PATIENT_ID,
+    ENCOUNTER_ID,
+    NOTIFIED_RESOURCE_ID,
+    NOTIFIED_RESOURCE_TYPE,
+    KAR_UNIQUE_ID,
+    "notificationId",
+    X_CORRELATION_ID,
+    X_REQUEST_ID,
+    "submittedMessageType",
+    SUBMITTED_DATA_ID,
+    SUBMITTED_VERSION_NUMBER,
+    SUBMITTED_MESSAGE_ID,
+    "submissionMessageStatus",
+    "submissionTime",
+    "responseMessageType",
+    RESPONSE_DATA_ID,
+    RESPONSE_MESSAGE_ID,
+    RESPONSE_PROCESSING_INS,
+    RESPONSE_PROCESSING_STATUS,
+    "responseReceivedTime",
+    "responseEhrDocRefId",
+    "initiatingAction",
+    "patientLinkerId",
+    "lastUpdated"
+  };
+
+  private static final String UPDATE_RESPONSE =
+      "update PublicHealthMessage set xRequestId = :xRequestId,"
+          + " cdaResponseData = :cdaResponseData,"
+          + " responseDataId = :responseDataId,"
+          + " responseMessageType = :responseMessageType,"
+          + " responseReceivedTime = :responseReceivedTime,"
+          + " responseProcessingInstruction = :responseProcessingInstruction,"
+          + " responseProcessingStatus = :responseProcessingStatus,"
+          + " responseEhrDocRefId = :responseEhrDocRefId"
+          + " where id = :id";
+
+  private static final String UPDATE_SUBMISSION_STATUS =
+      "update PublicHealthMessage set submissionMessageStatus = :submissionMessageStatus"
+          + " where id = :id";
+
+  private static final String UPDATE_SUBMISSION_STATUS_AND_TIME =
+      "update PublicHealthMessage set submissionMessageStatus = :submissionMessageStatus,"
+          + " submissionTime = :submissionTime"
+          + " where id = :id";
 
   @Override
   public PublicHealthMessage saveOrUpdate(PublicHealthMessage message) {
@@ -51,14 +116,12 @@ public class PublicHealthMessagesDaoImpl extends AbstractDao implements PublicHe
     criteria.add(Restrictions.eq(NOTIFIED_RESOURCE_TYPE, message.getNotifiedResourceType()));
     criteria.add(Restrictions.eq(PATIENT_ID, message.getPatientId()));
     criteria.add(Restrictions.eq(KAR_UNIQUE_ID, message.getKarUniqueId()));
+    criteria.setProjection(Projections.max(SUBMITTED_VERSION_NUMBER));
 
-    criteria.addOrder(Order.desc(SUBMITTED_VERSION_NUMBER));
-    criteria.setMaxResults(1);
-
-    PublicHealthMessage result = (PublicHealthMessage) criteria.uniqueResult();
+    Integer result = (Integer) criteria.uniqueResult();
 
     if (result != null) {
-      return result.getSubmittedVersionNumber();
+      return result;
     }
     return 0;
   }
@@ -77,6 +140,24 @@ public class PublicHealthMessagesDaoImpl extends AbstractDao implements PublicHe
     return criteria.addOrder(Order.desc(SUBMITTED_VERSION_NUMBER)).list();
   }
 
+  @Override
+  public String getPublicHealthMessages(
+      Map<String, String> searchParams, KeysetPage page, Consumer<PublicHealthMessage> consumer) {
+    Criteria criteria = getSession().createCriteria(PublicHealthMessage.class);
+    prepareCriteria(criteria, searchParams);
+    return scrollPage(criteria, PublicHealthMessage.class, page, METADATA_ATTRIBUTES, consumer);
+  }
+
+  @Override
+  public String getLatestTriggerMatchStatus(Map<String, String> searchParams) {
+    Criteria criteria = getSession().createCriteria(PublicHealthMessage.class);
+    prepareCriteria(criteria, searchParams);
+    criteria.setProjection(Projections.property(TRIGGER_MATCH_STATUS));
+    criteria.addOrder(Order.desc(SUBMITTED_VERSION_NUMBER));
+    criteria.setMaxResults(1);
+    return (String) criteria.uniqueResult();
+  }
+
   @Override
   public List<PublicHealthMessage> getByXRequestId(String xRequestId) {
     Criteria criteria = getSession().createCriteria(PublicHealthMessage.class);
@@ -112,6 +193,58 @@ public class PublicHealthMessagesDaoImpl extends AbstractDao implements PublicHe
     return (PublicHealthMessage) criteria.uniqueResult();
   }
 
+  @Override
+  public PublicHealthMessage getMetadataBySubmittedDataId(String subId) {
+
+    Criteria criteria = getSession().createCriteria(PublicHealthMessage.class);
+    criteria.add(Restrictions.eq(SUBMITTED_DATA_ID, subId));
+
+    ProjectionList projections = Projections.projectionList();
+    for (String attribute : METADATA_ATTRIBUTES) {
+      projections.add(Projections.property(attribute), attribute);
+    }
+    criteria.setProjection(projections);
+    criteria.setResultTransformer(Transformers.aliasToBean(PublicHealthMessage.class));
+
+    return (PublicHealthMessage) criteria.uniqueResult();
+  }
+
+  @Override
+  public void updateResponse(PublicHealthMessage message) {
+
+    getSession()
+        .createQuery(UPDATE_RESPONSE)
+        .setParameter("xRequestId", message.getxRequestId())
+        .setParameter("cdaResponseData", payloadStores.store(message.getCdaResponseData()))
+        .setParameter("responseDataId", message.getResponseDataId())
+        .setParameter("responseMessageType", message.getResponseMessageType())
+        .setParameter("responseReceivedTime", message.getResponseReceivedTime())
+        .setParameter("responseProcessingInstruction", message.getResponseProcessingInstruction())
+        .setParameter("responseProcessingStatus", message.getResponseProcessingStatus())
+        .setParameter("responseEhrDocRefId", message.getResponseEhrDocRefId())
+        .setParameter("id", message.getId())
+        .executeUpdate();
+  }
+
+  @Override
+  public void updateSubmissionStatus(UUID id, String status, Date submissionTime) {
+
+    if (submissionTime == null) {
+      getSession()
+          .createQuery(UPDATE_SUBMISSION_STATUS)
+          .setParameter("submissionMessageStatus", status)
+          .setParameter("id", id)
+          .executeUpdate();
+    } else {
+      getSession()
+          .createQuery(UPDATE_SUBMISSION_STATUS_AND_TIME)
+          .setParameter("submissionMessageStatus", status)
+          .setParameter("submissionTime", submissionTime)
+          .setParameter("id", id)
+          .executeUpdate();
+    }
+  }
+
   public static void prepareCriteria(Criteria criteria, Map<String, String> searchParams) {
 
     if (searchParams.get(SUBMITTED_DATA_ID) != null) {
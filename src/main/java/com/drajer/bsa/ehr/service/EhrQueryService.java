@@ -72,8 +72,21 @@ public interface EhrQueryService {
 
   JSONObject getAuthorizationToken(HealthcareSetting hs);
 
+  void invalidateAuthorizationToken(HealthcareSetting hs);
+
   public void executeQuery(KarProcessingData kd, String dataReqId, FhirQueryFilter query);
 
+  /**
+   * The method is used to execute a set of queries for the data requirements of an action. The
+   * queries may be executed concurrently, queries which are related to other queries in the set via
+   * relatedDataId are executed after the queries they depend on.
+   *
+   * @param kd The processing context which contains information such as patient, encounter,
+   *     previous data etc.
+   * @param queries The queries to be executed keyed by the data requirement id.
+   */
+  public void executeQueries(KarProcessingData kd, Map<String, FhirQueryFilter> queries);
+
   public FhirContext getContext();
 
   public String substituteContextParams(KarProcessingData data, String str);
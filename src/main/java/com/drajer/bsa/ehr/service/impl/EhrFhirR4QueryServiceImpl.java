@@ -10,6 +10,8 @@ import com.drajer.bsa.kar.model.FhirQueryFilter;
 import com.drajer.bsa.model.HealthcareSetting;
 import com.drajer.bsa.model.KarProcessingData;
 import com.drajer.bsa.utils.BsaServiceUtils;
+import com.drajer.sof.utils.FhirClientEndpoint;
+import com.drajer.sof.utils.FhirClientRegistry;
 import com.drajer.sof.utils.FhirContextInitializer;
 import com.drajer.sof.utils.ResourceUtils;
 import com.microsoft.sqlserver.jdbc.StringUtils;
@@ -18,14 +20,18 @@ import java.io.FileFilter;
 import java.io.InputStream;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
 import org.apache.commons.io.FileUtils;
@@ -33,7 +39,6 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.lang3.time.DateFormatUtils;
 import org.apache.commons.lang3.time.DateUtils;
-import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.r4.model.Attachment;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
@@ -46,16 +51,14 @@ import org.hl7.fhir.r4.model.Encounter;
 import org.hl7.fhir.r4.model.Encounter.EncounterLocationComponent;
 import org.hl7.fhir.r4.model.Encounter.EncounterParticipantComponent;
 import org.hl7.fhir.r4.model.Enumerations;
-import org.hl7.fhir.r4.model.Location;
 import org.hl7.fhir.r4.model.MedicationAdministration;
 import org.hl7.fhir.r4.model.MedicationDispense;
 import org.hl7.fhir.r4.model.MedicationRequest;
-import org.hl7.fhir.r4.model.Organization;
 import org.hl7.fhir.r4.model.Period;
-import org.hl7.fhir.r4.model.Practitioner;
 import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.ResourceType;
+import org.hl7.fhir.r4.model.Type;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -131,6 +134,25 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
   /** The FHIR Context Initializer necessary to retrieve FHIR resources */
   @Autowired FhirContextInitializer fhirContextInitializer;
 
+  /** The registry of the connection pools of the FHIR servers */
+  @Autowired FhirClientRegistry clientRegistry;
+
+  /** The cache of resources read from the EHR */
+  @Autowired EhrResourceCache resourceCache;
+
+  /** The paginator used to retrieve all the pages of a search result */
+  @Autowired FhirBundlePaginator fhirBundlePaginator;
+
+  /** The resolver used to retrieve referenced resources together */
+  @Autowired FhirReferenceResolver referenceResolver;
+
+  /** The executor used to run the queries of an action concurrently */
+  @Autowired ParallelQueryExecutor parallelQueryExecutor;
+
+  /** Flag to indicate if the queries of an action can be executed concurrently. */
+  @Value("${ehr.query.parallel.enabled:false}")
+  Boolean parallelQueriesEnabled;
+
   /**
    * The attribute contains the directory of custom query files. Each Kar will have its own file
    * with custom queries.
@@ -388,40 +410,60 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
   }
 
   /**
+   * The client uses the pooled connections of the FHIR server of the HealthcareSetting, and reads
+   * the access token for every request, so that an expired token is refreshed while the client is
+   * in use.
+   *
    * @param kd The data object for getting the healthcareSetting and notification context from
    * @param context The HAPI FHIR context for making a FHIR client with
    * @return
    */
   public IGenericClient getClient(KarProcessingData kd, FhirContext context) {
 
-    String accessToken = null;
+    FhirClientEndpoint endpoint =
+        clientRegistry.getEndpoint(
+            context,
+            kd.getHealthcareSetting().getFhirServerBaseURL(),
+            kd.getHealthcareSetting().getClientId());
+
+    return fhirContextInitializer.createClient(
+        endpoint,
+        () -> getAccessToken(kd),
+        () -> invalidateAccessToken(kd),
+        kd.getNotificationContext().getxRequestId());
+  }
+
+  private synchronized void invalidateAccessToken(KarProcessingData kd) {
+
+    logger.warn(
+        " Access Token was rejected by {}, a new token will be retrieved for the next request ",
+        kd.getHealthcareSetting().getFhirServerBaseURL());
+    authUtils.invalidateToken(kd.getHealthcareSetting());
+    kd.getHealthcareSetting().setEhrAccessTokenExpirationTime(null);
+  }
+
+  private String getAccessToken(KarProcessingData kd) {
 
     if (kd.hasValidAccessToken()) {
 
-      accessToken = kd.getAccessToken();
       logger.debug(
           " Reusing Valid Access Token: {}, Expiration Time: {}",
-          accessToken,
+          kd.getAccessToken(),
           kd.getHealthcareSetting().getEhrAccessTokenExpirationTime());
 
     } else {
 
       retrieveAndUpdateAccessToken(kd);
-      accessToken = kd.getAccessToken();
       logger.debug(
           " Generated New Access Token: {}, Expiration Time: {}",
-          accessToken,
+          kd.getAccessToken(),
           kd.getHealthcareSetting().getEhrAccessTokenExpirationTime());
     }
 
-    return fhirContextInitializer.createClient(
-        context,
-        kd.getHealthcareSetting().getFhirServerBaseURL(),
-        accessToken,
-        kd.getNotificationContext().getxRequestId());
+    return kd.getAccessToken();
   }
 
-  private void retrieveAndUpdateAccessToken(KarProcessingData data) {
+  private synchronized void retrieveAndUpdateAccessToken(KarProcessingData data) {
 
     logger.info(" Retrieving New Access Token since the old one is not valid anymore ");
     JSONObject tokenResponse = authUtils.getToken(data.getHealthcareSetting());
@@ -442,7 +484,7 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
 
     data.getHealthcareSetting().setEhrAccessTokenExpirationTime(Date.from(expirationInstantTime));
 
-    hsDao.saveOrUpdate(data.getHealthcareSetting());
+    hsDao.updateAccessToken(data.getHealthcareSetting());
 
     /**
      * data.getNotificationContext().setEhrAccessToken(accessToken);
@@ -509,108 +551,95 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
     kd.getContextEncounterId();
     Set<Resource> res = kd.getResourcesByType(ResourceType.Encounter.toString());
 
-    Set<Resource> practitioners = new HashSet<>();
-    Set<Resource> locations = new HashSet<>();
-    Set<Resource> organizations = new HashSet<>();
-    Map<String, String> practitionerMap = new HashMap<>();
+    Set<String> practitionerIds = new LinkedHashSet<>();
+    Set<String> organizationIds = new LinkedHashSet<>();
+    Set<String> locationIds = new LinkedHashSet<>();
 
     for (Resource r : res) {
 
       Encounter encounter = (Encounter) r;
 
-      // Load Practitioners
+      // Collect Practitioners
       if (encounter.getParticipant() != null) {
 
-        List<EncounterParticipantComponent> participants = encounter.getParticipant();
-
-        for (EncounterParticipantComponent participant : participants) {
+        for (EncounterParticipantComponent participant : encounter.getParticipant()) {
           if (participant.getIndividual() != null) {
-            Reference practitionerReference = participant.getIndividual();
-            String practitionerID = practitionerReference.getReferenceElement().getIdPart();
-            if (!practitionerMap.containsKey(practitionerID)
-                && !kd.containsResourceWithId(practitionerID)) {
-              Practitioner practitioner =
-                  (Practitioner)
-                      getResourceById(
-                          client, context, ResourceType.Practitioner.toString(), practitionerID);
-              if (practitioner != null && !practitionerMap.containsKey(practitionerID)) {
-                practitioners.add(practitioner);
-                kd.storeResourceById(practitionerID, practitioner);
-                practitionerMap.put(practitionerID, ResourceType.Practitioner.toString());
-              }
-            }
-          } // Individual != null
-        } // For all participants
-      } // For participant != null
-
-      // Load Organizations
-      if (Boolean.TRUE.equals(encounter.hasServiceProvider())) {
-        Reference organizationReference = encounter.getServiceProvider();
-        if (organizationReference.hasReferenceElement()
-            && !kd.containsResourceWithId(
-                organizationReference.getReferenceElement().getIdPart())) {
-          Organization organization =
-              (Organization)
-                  getResourceById(
-                      client,
-                      context,
-                      "Organization",
-                      organizationReference.getReferenceElement().getIdPart());
-          if (organization != null) {
-            organizations.add(organization);
-            kd.storeResourceById(
-                organizationReference.getReferenceElement().getIdPart(), organization);
+            addUnresolvedReference(
+                kd, participant.getIndividual(), ResourceType.Practitioner, practitionerIds);
           }
         }
       }
 
-      // Load Locations
+      // Collect Organizations
+      if (Boolean.TRUE.equals(encounter.hasServiceProvider())
+          && encounter.getServiceProvider().hasReferenceElement()) {
+        addUnresolvedReference(
+            kd, encounter.getServiceProvider(), ResourceType.Organization, organizationIds);
+      }
+
+      // Collect Locations
       if (Boolean.TRUE.equals(encounter.hasLocation())) {
-        List<EncounterLocationComponent> enocunterLocations = encounter.getLocation();
-        for (EncounterLocationComponent location : enocunterLocations) {
-          if (location.hasLocation()
-              && !kd.containsResourceWithId(
-                  location.getLocation().getReferenceElement().getIdPart())) {
-            Reference locationReference = location.getLocation();
-            Location locationResource =
-                (Location)
-                    getResourceById(
-                        client,
-                        context,
-                        "Location",
-                        locationReference.getReferenceElement().getIdPart());
-            if (locationResource != null) {
-              locations.add(locationResource);
-              kd.storeResourceById(
-                  locationReference.getReferenceElement().getIdPart(), locationResource);
-            }
+        for (EncounterLocationComponent location : encounter.getLocation()) {
+          if (location.hasLocation()) {
+            addUnresolvedReference(kd, location.getLocation(), ResourceType.Location, locationIds);
           }
         }
       }
     } // for all encounters
 
-    if (!practitioners.isEmpty()) {
+    // Retrieve the referenced resources using as few requests as possible for each type.
+    loadReferencedResources(client, context, kd, ResourceType.Practitioner, practitionerIds);
+    loadReferencedResources(client, context, kd, ResourceType.Organization, organizationIds);
+    loadReferencedResources(client, context, kd, ResourceType.Location, locationIds);
 
-      Map<ResourceType, Set<Resource>> resMap = new EnumMap<>(ResourceType.class);
-      resMap.put(ResourceType.Practitioner, practitioners);
-      kd.addResourcesByType(resMap);
+    return kd.getFhirInputDataByType();
+  }
+
+  /**
+   * The method adds the id of the referenced resource, unless the resource has already been
+   * retrieved or the reference is to a different resource type.
+   */
+  private void addUnresolvedReference(
+      KarProcessingData kd, Reference ref, ResourceType type, Set<String> ids) {
+
+    String id = ref.getReferenceElement().getIdPart();
+    String refType = ref.getReferenceElement().getResourceType();
+
+    if (id != null
+        && (refType == null || refType.equals(type.toString()))
+        && !kd.containsResourceWithId(id)) {
+      ids.add(id);
     }
+  }
 
-    if (!locations.isEmpty()) {
+  /** The method retrieves the referenced resources and adds them to the KarProcessingData. */
+  private void loadReferencedResources(
+      IGenericClient client,
+      FhirContext context,
+      KarProcessingData kd,
+      ResourceType type,
+      Set<String> ids) {
 
-      Map<ResourceType, Set<Resource>> resMap = new EnumMap<>(ResourceType.class);
-      resMap.put(ResourceType.Location, locations);
-      kd.addResourcesByType(resMap);
+    if (ids.isEmpty()) {
+      return;
+    }
+
+    Map<String, Resource> resolved =
+        referenceResolver.resolve(
+            client, type.toString(), ids, (t, id) -> getResourceById(client, context, t, id));
+
+    Set<Resource> resources = new HashSet<>();
+    for (Map.Entry<String, Resource> entry : resolved.entrySet()) {
+      resources.add(entry.getValue());
+      kd.storeResourceById(entry.getKey(), entry.getValue());
     }
 
-    if (!organizations.isEmpty()) {
+    if (!resources.isEmpty()) {
 
       Map<ResourceType, Set<Resource>> resMap = new EnumMap<>(ResourceType.class);
-      resMap.put(ResourceType.Organization, organizations);
+      resMap.put(type, resources);
       kd.addResourcesByType(resMap);
     }
-
-    return kd.getFhirInputDataByType();
   }
 
   public HashMap<ResourceType, Set<Resource>> loadSecondaryResources(KarProcessingData kd) {
@@ -658,7 +687,7 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
 
       if (resource != null) {
         populateSecondaryResources(
-            genericClient, context, resource, data, resource.getResourceType());
+            genericClient, context, Collections.singletonList(resource), data);
       }
 
     } catch (BaseServerResponseException responseException) {
@@ -680,12 +709,23 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
     logger.info("FhirContext: {}", context);
     Set<Resource> resources = new HashSet<>();
     try {
+      List<Resource> cached =
+          resourceCache.getSearchResults(genericClient.getServerBase(), searchUrl);
+      if (cached != null) {
+        logger.info(" Using cached search results for {}", searchUrl);
+        resources.addAll(cached);
+        return resources;
+      }
+
       Bundle bundle = genericClient.search().byUrl(searchUrl).returnBundle(Bundle.class).execute();
-      getAllR4RecordsUsingPagination(genericClient, bundle);
-      List<BundleEntryComponent> bc = bundle.getEntry();
+      List<BundleEntryComponent> bc =
+          fhirBundlePaginator.getAllEntries(
+              genericClient, bundle, getResourceTypeFromUrl(searchUrl));
       for (BundleEntryComponent comp : bc) {
         resources.add(comp.getResource());
       }
+      resourceCache.putSearchResults(
+          genericClient.getServerBase(), searchUrl, new ArrayList<>(resources));
     } catch (Exception e) {
       logger.error(e.getMessage(), e);
     }
@@ -707,7 +747,13 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
   public Resource getResourceById(
       IGenericClient genericClient, FhirContext context, String resourceName, String resourceId) {
 
-    Resource resource = null;
+    Resource resource =
+        resourceCache.getResource(genericClient.getServerBase(), resourceName, resourceId);
+
+    if (resource != null) {
+      logger.info("Using cached Resource : {} with Id : {}", resourceName, resourceId);
+      return resource;
+    }
 
     try {
 
@@ -716,6 +762,8 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
       resource =
           (Resource) (genericClient.read().resource(resourceName).withId(resourceId).execute());
 
+      resourceCache.putResource(genericClient.getServerBase(), resourceName, resourceId, resource);
+
     } catch (BaseServerResponseException responseException) {
       if (responseException.getOperationOutcome() != null) {
         logger.debug(
@@ -753,13 +801,12 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
 
       Bundle bundle = genericClient.search().byUrl(searchUrl).returnBundle(Bundle.class).execute();
 
-      getAllR4RecordsUsingPagination(genericClient, bundle);
+      if (bundle != null) {
 
-      if (bundle.getEntry() != null) {
-        logger.info(
-            "Total No of Entries {} retrieved : {}", resourceName, bundle.getEntry().size());
+        List<BundleEntryComponent> bc =
+            fhirBundlePaginator.getAllEntries(genericClient, bundle, resourceName);
 
-        List<BundleEntryComponent> bc = bundle.getEntry();
+        logger.info("Total No of Entries {} retrieved : {}", resourceName, bc.size());
 
         if (bc != null) {
 
@@ -807,19 +854,14 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
     }
   }
 
-  private void getAllR4RecordsUsingPagination(IGenericClient genericClient, Bundle bundle) {
+  private String getResourceTypeFromUrl(String searchUrl) {
 
-    if (bundle.hasEntry()) {
-      List<BundleEntryComponent> entriesList = bundle.getEntry();
-      if (bundle.hasLink() && bundle.getLink(IBaseBundle.LINK_NEXT) != null) {
-        logger.info(
-            "Found Next Page in Bundle :{}", bundle.getLink(IBaseBundle.LINK_NEXT).getUrl());
-        Bundle nextPageBundleResults = genericClient.loadPage().next(bundle).execute();
-        entriesList.addAll(nextPageBundleResults.getEntry());
-        nextPageBundleResults.setEntry(entriesList);
-        getAllR4RecordsUsingPagination(genericClient, nextPageBundleResults);
-      }
+    String path = searchUrl;
+    if (path.contains(SEARCH_QUERY_CHARACTERS)) {
+      path = path.substring(0, path.indexOf(SEARCH_QUERY_CHARACTERS));
     }
+
+    return path.substring(path.lastIndexOf('/') + 1);
   }
 
   public DocumentReference constructR4DocumentReference(
@@ -911,6 +953,12 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
     return authUtils.getToken(hs);
   }
 
+  @Override
+  public void invalidateAuthorizationToken(HealthcareSetting hs) {
+
+    authUtils.invalidateToken(hs);
+  }
+
   @Override
   public void executeQuery(KarProcessingData data, String dataReqId, FhirQueryFilter query) {
 
@@ -957,6 +1005,40 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
     }
   }
 
+  @Override
+  public void executeQueries(KarProcessingData data, Map<String, FhirQueryFilter> queries) {
+
+    if (queries == null || queries.isEmpty()) {
+      return;
+    }
+
+    if (Boolean.TRUE.equals(parallelQueriesEnabled) && queries.size() > 1) {
+
+      logger.info(" Executing {} queries concurrently ", queries.size());
+
+      // Refresh the access token once on this thread, so that the worker threads only reuse it.
+      if (!data.hasValidAccessToken()) {
+        retrieveAndUpdateAccessToken(data);
+      }
+
+      // Queries still running after the timeout must not add their resources once this returns.
+      KarProcessingData.QueryResultGate gate = data.openQueryResultGate();
+      try {
+        parallelQueryExecutor.execute(
+            data.getNotificationContext().getFhirServerBaseUrl(),
+            queries,
+            id -> data.getKar().getFirstClassRelatedDataId(id),
+            (key, value) ->
+                data.runWithQueryResultGate(gate, () -> executeQuery(data, key, value)));
+      } finally {
+        data.closeQueryResultGate(gate);
+      }
+
+    } else {
+      queries.forEach((key, value) -> executeQuery(data, key, value));
+    }
+  }
+
   private String createSearchUrl(KarProcessingData data, String queryToExecute) {
 
     String finalQuery = data.getNotificationContext().getFhirServerBaseUrl() + "/" + queryToExecute;
@@ -994,30 +1076,61 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
     try {
       logger.info("Getting data for resource type {} using query: {}", resType, searchUrl);
 
-      Bundle bundle = genericClient.search().byUrl(searchUrl).returnBundle(Bundle.class).execute();
+      Set<Resource> pagedResources = new HashSet<>();
+      HashMap<ResourceType, Set<Resource>> pagedResourcesByType = new HashMap<>();
+      Consumer<List<BundleEntryComponent>> pageProcessor =
+          page -> {
+            List<Resource> pageResources = new ArrayList<>();
+            for (BundleEntryComponent comp : page) {
 
-      getAllR4RecordsUsingPagination(genericClient, bundle);
-      if (bundle.hasEntry() && bundle.getEntry().size() > 0) {
+              logger.debug(" Adding Resource Id : {}", comp.getResource().getId());
+              pagedResources.add(comp.getResource());
+              pageResources.add(comp.getResource());
 
-        logger.info(
-            "Total No of Entries when searching for ResourceType: {} retrieved was: {}",
-            resType,
-            bundle.getEntry().size());
+              sortResourcesByType(comp, pagedResourcesByType);
+            }
 
-        List<BundleEntryComponent> bc = bundle.getEntry();
+            // Retrieve the secondary resources referenced from the page together.
+            populateSecondaryResources(genericClient, context, pageResources, kd);
+          };
 
-        resources = new HashSet<>();
-        resMapById = new HashMap<>();
-        resMapType = new HashMap<>();
-        for (BundleEntryComponent comp : bc) {
+      List<BundleEntryComponent> bc = null;
+      List<Resource> cached =
+          resourceCache.getSearchResults(genericClient.getServerBase(), searchUrl);
 
-          logger.debug(" Adding Resource Id : {}", comp.getResource().getId());
-          resources.add(comp.getResource());
+      if (cached != null) {
 
-          sortResourcesByType(comp, resMapType);
-          populateSecondaryResources(
-              genericClient, context, comp.getResource(), kd, comp.getResource().getResourceType());
+        logger.info(" Using cached search results for {}", searchUrl);
+        bc = new ArrayList<>();
+        for (Resource res : cached) {
+          bc.add(new BundleEntryComponent().setResource(res));
         }
+        pageProcessor.accept(bc);
+
+      } else {
+
+        Bundle bundle =
+            genericClient.search().byUrl(searchUrl).returnBundle(Bundle.class).execute();
+
+        // Process each page as it arrives, so that secondary resources are retrieved while the
+        // next page is being prefetched.
+        bc = fhirBundlePaginator.getAllEntries(genericClient, bundle, resType, pageProcessor);
+
+        List<Resource> results = new ArrayList<>();
+        bc.forEach(comp -> results.add(comp.getResource()));
+        resourceCache.putSearchResults(genericClient.getServerBase(), searchUrl, results);
+      }
+
+      if (!bc.isEmpty()) {
+
+        logger.info(
+            "Total No of Entries when searching for ResourceType: {} retrieved was: {}",
+            resType,
+            bc.size());
+
+        resources = pagedResources;
+        resMapById = new HashMap<>();
+        resMapType = pagedResourcesByType;
 
         resMapById.put(dataReqId, resources);
         kd.addResourcesByType(resMapType);
@@ -1056,119 +1169,88 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
   private void populateSecondaryResources(
       IGenericClient genericClient,
       FhirContext context,
-      Resource res,
-      KarProcessingData kd,
-      ResourceType rType) {
-
-    if (res != null && rType == ResourceType.MedicationRequest) {
-      MedicationRequest mreq = (MedicationRequest) res;
-
-      // Retrieve any medications
-      if (mreq.getMedication() instanceof Reference) {
-        Reference medRef = (Reference) mreq.getMedication();
-        Resource secRes = kd.getResourceById(medRef.getReferenceElement().getIdPart());
-
-        if (secRes == null) {
-          secRes =
-              getResourceById(
-                  genericClient,
-                  context,
-                  ResourceType.Medication.toString(),
-                  medRef.getReferenceElement().getIdPart());
-        }
+      Collection<Resource> resources,
+      KarProcessingData kd) {
 
-        if (secRes != null) {
+    Set<String> medicationIds = new LinkedHashSet<>();
+    Set<String> observationIds = new LinkedHashSet<>();
 
-          logger.info(
-              " Adding secondary Medication resource for MedicationRequest with id {}",
-              secRes.getId());
-          kd.addResourceByType(secRes.getResourceType(), secRes);
-          kd.storeResourceById(medRef.getReferenceElement().getIdPart(), secRes);
-        }
-      }
-    } else if (res != null && rType == ResourceType.MedicationAdministration) {
-
-      MedicationAdministration mAdm = (MedicationAdministration) res;
-
-      // Retrieve any medications
-      if (mAdm.getMedication() instanceof Reference) {
-        Reference medRef = (Reference) mAdm.getMedication();
-        Resource secRes = kd.getResourceById(medRef.getReferenceElement().getIdPart());
-
-        if (secRes == null) {
-          secRes =
-              getResourceById(
-                  genericClient,
-                  context,
-                  ResourceType.Medication.toString(),
-                  medRef.getReferenceElement().getIdPart());
-        }
+    for (Resource res : resources) {
 
-        if (secRes != null) {
+      if (res == null) {
+        continue;
+      }
 
-          logger.info(
-              " Adding secondary Medication resource for MedicationAdministration with id {}",
-              secRes.getId());
-          kd.addResourceByType(secRes.getResourceType(), secRes);
-          kd.storeResourceById(medRef.getReferenceElement().getIdPart(), secRes);
+      // Collect the referenced medications and the results of the reports.
+      if (res.getResourceType() == ResourceType.MedicationRequest) {
+        addSecondaryReference(((MedicationRequest) res).getMedication(), medicationIds);
+      } else if (res.getResourceType() == ResourceType.MedicationAdministration) {
+        addSecondaryReference(((MedicationAdministration) res).getMedication(), medicationIds);
+      } else if (res.getResourceType() == ResourceType.MedicationDispense) {
+        addSecondaryReference(((MedicationDispense) res).getMedication(), medicationIds);
+      } else if (res.getResourceType() == ResourceType.DiagnosticReport) {
+        for (Reference r : ((DiagnosticReport) res).getResult()) {
+          addSecondaryReference(r, observationIds);
         }
       }
-    } else if (res != null && rType == ResourceType.MedicationDispense) {
-
-      MedicationDispense mDisp = (MedicationDispense) res;
+    }
 
-      // Retrieve any medications
-      if (mDisp.getMedication() instanceof Reference) {
-        Reference medRef = (Reference) mDisp.getMedication();
-        Resource secRes = kd.getResourceById(medRef.getReferenceElement().getIdPart());
+    addSecondaryResources(genericClient, context, kd, ResourceType.Medication, medicationIds);
+    addSecondaryResources(genericClient, context, kd, ResourceType.Observation, observationIds);
+  }
 
-        if (secRes == null) {
-          getResourceById(
-              genericClient,
-              context,
-              ResourceType.Medication.toString(),
-              medRef.getReferenceElement().getIdPart());
-        }
+  private void addSecondaryReference(Type ref, Set<String> ids) {
 
-        if (secRes != null) {
+    if (ref instanceof Reference) {
+      String id = ((Reference) ref).getReferenceElement().getIdPart();
 
-          logger.info(
-              " Adding secondary Medidcation resource for MedicationDispense with id {}",
-              secRes.getId());
-          kd.addResourceByType(secRes.getResourceType(), secRes);
-          kd.storeResourceById(medRef.getReferenceElement().getIdPart(), secRes);
-        }
+      // Contained resources cannot be read from the EHR.
+      if (id != null && !id.startsWith("#")) {
+        ids.add(id);
       }
-    } else if (res != null && rType == ResourceType.DiagnosticReport) {
-
-      DiagnosticReport report = (DiagnosticReport) res;
+    }
+  }
 
-      if (report.getResult() != null) {
+  /**
+   * The method adds the secondary resources to the KarProcessingData. Resources which are not
+   * already present are retrieved together for all the resources of a page.
+   */
+  private void addSecondaryResources(
+      IGenericClient genericClient,
+      FhirContext context,
+      KarProcessingData kd,
+      ResourceType type,
+      Set<String> ids) {
 
-        List<Reference> components = report.getResult();
+    if (ids.isEmpty()) {
+      return;
+    }
 
-        for (Reference r : components) {
+    Map<String, Resource> secondaryResources = new HashMap<>();
+    Set<String> unresolved = new LinkedHashSet<>();
 
-          Resource secRes = kd.getResourceById(r.getReferenceElement().getIdPart());
+    for (String id : ids) {
+      Resource secRes = kd.getResourceById(id);
+      if (secRes != null) {
+        secondaryResources.put(id, secRes);
+      } else {
+        unresolved.add(id);
+      }
+    }
 
-          if (secRes == null) {
-            getResourceById(
-                genericClient,
-                context,
-                ResourceType.Observation.toString(),
-                r.getReferenceElement().getIdPart());
-          }
+    secondaryResources.putAll(
+        referenceResolver.resolve(
+            genericClient,
+            type.toString(),
+            unresolved,
+            (t, id) -> getResourceById(genericClient, context, t, id)));
 
-          if (secRes != null) {
+    for (Map.Entry<String, Resource> entry : secondaryResources.entrySet()) {
 
-            logger.info(
-                " Adding secondary Observation resource for Diagnostic Report with id {}",
-                secRes.getId());
-            kd.addResourceByType(secRes.getResourceType(), secRes);
-            kd.storeResourceById(r.getReferenceElement().getIdPart(), secRes);
-          }
-        }
-      }
+      Resource secRes = entry.getValue();
+      logger.info(" Adding secondary {} resource with id {}", type, secRes.getId());
+      kd.addResourceByType(secRes.getResourceType(), secRes);
+      kd.storeResourceById(entry.getKey(), secRes);
     }
   }
 
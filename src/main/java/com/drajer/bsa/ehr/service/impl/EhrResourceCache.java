@@ -0,0 +1,360 @@
+package com.drajer.bsa.ehr.service.impl;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>EhrResourceCache</h1>
+ *
+ * This class caches the FHIR resources read from the EHR, so that resources such as the Patient,
+ * Encounter, Practitioner, Location and Medication are not refetched for every KAR and every timer
+ * execution for the same patient. The cache is keyed by the FHIR Server base url, the resource type
+ * and the resource id or the search url. Entries expire after a configurable time to live and the
+ * least recently used entries are evicted when the cache is full.
+ *
+ * <p>A resource that is received with a newer meta.lastUpdated or meta.versionId than the cached
+ * copy replaces the cached copy. Copies of the cached resources are handed out so that callers
+ * cannot modify the cached state. The cached resources are never modified, so the copies are made
+ * outside of the lock of the cache.
+ */
+@Component
+public class EhrResourceCache {
+
+  private final Logger logger = LoggerFactory.getLogger(EhrResourceCache.class);
+
+  private static final String KEY_SEPARATOR = "|";
+  private static final String SEARCH_KEY = "search";
+  private static final String RESOURCE_TYPE_SEPARATOR = "\\|";
+  private static final String DEFAULT_RESOURCE_TYPES =
+      "Patient|Encounter|Practitioner|Location|Organization|Medication";
+
+  /** Flag to indicate if the cache is enabled. */
+  @Value("${ehr.cache.enabled:false}")
+  private Boolean enabled;
+
+  /** The maximum number of entries held in the cache. */
+  @Value("${ehr.cache.max-entries:10000}")
+  private int maxEntries;
+
+  /** The time in seconds after which an entry is expired. */
+  @Value("${ehr.cache.ttl-seconds:300}")
+  private long ttlSeconds;
+
+  /** The resource types that are cached when read by id, separated by | */
+  @Value("${ehr.cache.resource-types:" + DEFAULT_RESOURCE_TYPES + "}")
+  private String resourceTypes;
+
+  /** Flag to indicate if search results are cached in addition to reads by id. */
+  @Value("${ehr.cache.search.enabled:false}")
+  private Boolean searchEnabled;
+
+  @Autowired(required = false)
+  MeterRegistry meterRegistry;
+
+  private Set<String> cachedResourceTypes = new HashSet<>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  public EhrResourceCache() {
+    enabled = false;
+    maxEntries = 10000;
+    ttlSeconds = 300;
+    resourceTypes = DEFAULT_RESOURCE_TYPES;
+    searchEnabled = false;
+  }
+
+  public EhrResourceCache(
+      Boolean enabled,
+      int maxEntries,
+      long ttlSeconds,
+      String resourceTypes,
+      Boolean searchEnabled) {
+    this.enabled = enabled;
+    this.maxEntries = maxEntries;
+    this.ttlSeconds = ttlSeconds;
+    this.resourceTypes = resourceTypes;
+    this.searchEnabled = searchEnabled;
+    initialize();
+  }
+
+  @PostConstruct
+  public void initialize() {
+
+    if (resourceTypes != null && !resourceTypes.trim().isEmpty()) {
+      cachedResourceTypes =
+          new HashSet<>(Arrays.asList(resourceTypes.split(RESOURCE_TYPE_SEPARATOR)));
+    }
+
+    if (meterRegistry != null) {
+      FunctionCounter.builder("ehr.resource.cache.hits", hits, AtomicLong::get)
+          .description("Number of EHR resource cache hits")
+          .register(meterRegistry);
+      FunctionCounter.builder("ehr.resource.cache.misses", misses, AtomicLong::get)
+          .description("Number of EHR resource cache misses")
+          .register(meterRegistry);
+      FunctionCounter.builder("ehr.resource.cache.evictions", evictions, AtomicLong::get)
+          .description("Number of entries evicted from the EHR resource cache")
+          .register(meterRegistry);
+      Gauge.builder("ehr.resource.cache.size", this, EhrResourceCache::size)
+          .description("Number of entries in the EHR resource cache")
+          .register(meterRegistry);
+    }
+  }
+
+  public boolean isEnabled() {
+    return Boolean.TRUE.equals(enabled);
+  }
+
+  public boolean isSearchEnabled() {
+    return isEnabled() && Boolean.TRUE.equals(searchEnabled);
+  }
+
+  public boolean isCacheable(String resourceType) {
+    return isEnabled() && cachedResourceTypes.contains(resourceType);
+  }
+
+  /**
+   * @param baseUrl The FHIR Server base url
+   * @param resourceType The resource type
+   * @param id The resource id
+   * @return A copy of the cached resource or null when the resource is not cached.
+   */
+  public Resource getResource(String baseUrl, String resourceType, String id) {
+
+    if (!isCacheable(resourceType)) {
+      return null;
+    }
+
+    List<Resource> cached = get(getKey(baseUrl, resourceType, id));
+    return cached != null && !cached.isEmpty() ? cached.get(0) : null;
+  }
+
+  /**
+   * The method caches the resource read by id, unless a newer version of the resource is already
+   * cached.
+   */
+  public void putResource(String baseUrl, String resourceType, String id, Resource resource) {
+
+    if (resource == null || !isCacheable(resourceType)) {
+      return;
+    }
+
+    String key = getKey(baseUrl, resourceType, id);
+    CacheEntry entry = new CacheEntry(copy(resource));
+
+    synchronized (entries) {
+      CacheEntry existing = entries.get(key);
+      if (existing != null
+          && !existing.isExpired()
+          && isNewer(existing.resources.get(0), resource)) {
+        logger.debug(" Newer version of {} already cached, not replacing it ", key);
+        return;
+      }
+      put(key, entry);
+    }
+  }
+
+  /**
+   * @param baseUrl The FHIR Server base url
+   * @param searchUrl The search url
+   * @return Copies of the cached search results or null when the search is not cached.
+   */
+  public List<Resource> getSearchResults(String baseUrl, String searchUrl) {
+
+    if (!isSearchEnabled()) {
+      return null;
+    }
+
+    return get(getKey(baseUrl, SEARCH_KEY, searchUrl));
+  }
+
+  /**
+   * The method caches the results of the search. Any of the resources which are cached by id and
+   * are older than the search results are replaced, so that reads by id see the newer versions.
+   */
+  public void putSearchResults(String baseUrl, String searchUrl, List<Resource> resources) {
+
+    if (!isEnabled() || resources == null) {
+      return;
+    }
+
+    List<Resource> copies = new ArrayList<>(resources.size());
+    for (Resource res : resources) {
+      copies.add(copy(res));
+      invalidateIfNewer(baseUrl, res);
+    }
+
+    if (isSearchEnabled()) {
+      synchronized (entries) {
+        put(getKey(baseUrl, SEARCH_KEY, searchUrl), new CacheEntry(copies));
+      }
+    }
+  }
+
+  /** The method removes the cached copy of the resource if the resource passed in is newer. */
+  public void invalidateIfNewer(String baseUrl, Resource resource) {
+
+    if (resource == null || !isCacheable(resource.fhirType())) {
+      return;
+    }
+
+    String key = getKey(baseUrl, resource.fhirType(), resource.getIdElement().getIdPart());
+
+    synchronized (entries) {
+      CacheEntry existing = entries.get(key);
+      if (existing != null && isNewer(resource, existing.resources.get(0))) {
+        logger.debug(" Invalidating cached resource {} since a newer version was received ", key);
+        entries.remove(key);
+      }
+    }
+  }
+
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  private List<Resource> get(String key) {
+
+    CacheEntry entry;
+
+    synchronized (entries) {
+      entry = entries.get(key);
+
+      if (entry == null || entry.isExpired()) {
+        if (entry != null) {
+          entries.remove(key);
+        }
+        misses.incrementAndGet();
+        return null;
+      }
+    }
+
+    hits.incrementAndGet();
+    List<Resource> copies = new ArrayList<>(entry.resources.size());
+    for (Resource res : entry.resources) {
+      copies.add(copy(res));
+    }
+    return copies;
+  }
+
+  private void put(String key, CacheEntry entry) {
+
+    entries.put(key, entry);
+
+    // Remove expired entries first and then the least recently used ones.
+    if (entries.size() > maxEntries) {
+      Iterator<Map.Entry<String, CacheEntry>> it = entries.entrySet().iterator();
+      while (it.hasNext() && entries.size() > maxEntries) {
+        Map.Entry<String, CacheEntry> e = it.next();
+        if (e.getValue().isExpired()) {
+          it.remove();
+          evictions.incrementAndGet();
+        }
+      }
+      it = entries.entrySet().iterator();
+      while (it.hasNext() && entries.size() > maxEntries) {
+        it.next();
+        it.remove();
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  /** @return true if first is a newer version of the resource than second. */
+  private boolean isNewer(Resource first, Resource second) {
+
+    if (first == null || second == null || !first.hasMeta() || !second.hasMeta()) {
+      return false;
+    }
+
+    Date firstUpdated = first.getMeta().getLastUpdated();
+    Date secondUpdated = second.getMeta().getLastUpdated();
+
+    if (firstUpdated != null && secondUpdated != null && !firstUpdated.equals(secondUpdated)) {
+      return firstUpdated.after(secondUpdated);
+    }
+
+    String firstVersion = first.getMeta().getVersionId();
+    String secondVersion = second.getMeta().getVersionId();
+
+    if (firstVersion != null && secondVersion != null && !firstVersion.equals(secondVersion)) {
+      try {
+        return Long.parseLong(firstVersion) > Long.parseLong(secondVersion);
+      } catch (NumberFormatException e) {
+        // Version ids are opaque, so treat a different version as newer.
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private Resource copy(Resource res) {
+    return res != null ? res.copy() : null;
+  }
+
+  private String getKey(String baseUrl, String type, String id) {
+    return baseUrl + KEY_SEPARATOR + type + KEY_SEPARATOR + id;
+  }
+
+  private class CacheEntry {
+
+    private final List<Resource> resources;
+    private final long createdAt;
+
+    CacheEntry(Resource resource) {
+      this.resources = Collections.singletonList(resource);
+      this.createdAt = System.currentTimeMillis();
+    }
+
+    CacheEntry(List<Resource> resources) {
+      this.resources = Collections.unmodifiableList(resources);
+      this.createdAt = System.currentTimeMillis();
+    }
+
+    boolean isExpired() {
+      return System.currentTimeMillis() - createdAt > ttlSeconds * 1000;
+    }
+  }
+}
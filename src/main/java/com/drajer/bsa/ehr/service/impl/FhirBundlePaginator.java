@@ -0,0 +1,289 @@
+package com.drajer.bsa.ehr.service.impl;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>FhirBundlePaginator</h1>
+ *
+ * This class follows the next links of a FHIR search result and collects the entries of all pages
+ * into a single list. Pages are loaded in a loop rather than recursively, and the next page can
+ * optionally be prefetched while the entries of the current page are processed. The number of pages
+ * and entries retrieved can be capped globally and per resource type. When a page cannot be loaded
+ * the error is rethrown, so that callers never mistake the entries of the pages loaded so far for
+ * the complete search result.
+ */
+@Component
+public class FhirBundlePaginator {
+
+  private final Logger logger = LoggerFactory.getLogger(FhirBundlePaginator.class);
+
+  private static final String RESOURCE_SEPARATOR = "\\|";
+  private static final String LIMIT_SEPARATOR = ":";
+
+  /** Flag to indicate if the next page is loaded while the current page is being processed. */
+  @Value("${ehr.pagination.prefetch.enabled:false}")
+  private Boolean prefetchEnabled;
+
+  /** The number of threads used for prefetching pages. */
+  @Value("${ehr.pagination.prefetch.threads:8}")
+  private int prefetchThreads;
+
+  /** The maximum number of pages retrieved for a search, including the first page. */
+  @Value("${ehr.pagination.max-pages:1000}")
+  private int defaultMaxPages;
+
+  /** The maximum number of entries retrieved for a search. */
+  @Value("${ehr.pagination.max-entries:100000}")
+  private int defaultMaxEntries;
+
+  /** Per resource type page limits in the form Observation:50|MedicationRequest:20 */
+  @Value("${ehr.pagination.resource-max-pages:}")
+  private String resourceMaxPages;
+
+  /** Per resource type entry limits in the form Observation:10000|MedicationRequest:2000 */
+  @Value("${ehr.pagination.resource-max-entries:}")
+  private String resourceMaxEntries;
+
+  private Map<String, Integer> maxPagesByType = new HashMap<>();
+
+  private Map<String, Integer> maxEntriesByType = new HashMap<>();
+
+  private ExecutorService prefetchExecutor;
+
+  public FhirBundlePaginator() {
+    prefetchEnabled = false;
+    prefetchThreads = 8;
+    defaultMaxPages = 1000;
+    defaultMaxEntries = 100000;
+  }
+
+  public FhirBundlePaginator(
+      Boolean prefetchEnabled,
+      int defaultMaxPages,
+      int defaultMaxEntries,
+      String resourceMaxPages,
+      String resourceMaxEntries) {
+    this.prefetchEnabled = prefetchEnabled;
+    this.prefetchThreads = 2;
+    this.defaultMaxPages = defaultMaxPages;
+    this.defaultMaxEntries = defaultMaxEntries;
+    this.resourceMaxPages = resourceMaxPages;
+    this.resourceMaxEntries = resourceMaxEntries;
+    initialize();
+  }
+
+  @PostConstruct
+  public void initialize() {
+
+    maxPagesByType = parseLimits(resourceMaxPages);
+    maxEntriesByType = parseLimits(resourceMaxEntries);
+
+    if (Boolean.TRUE.equals(prefetchEnabled) && prefetchExecutor == null) {
+      AtomicInteger count = new AtomicInteger(0);
+      prefetchExecutor =
+          Executors.newFixedThreadPool(
+              prefetchThreads,
+              r -> {
+                Thread t = new Thread(r, "FhirPagePrefetch-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+              });
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (prefetchExecutor != null) {
+      prefetchExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * The method returns the entries of the bundle and all the subsequent pages.
+   *
+   * @param client The client used to load the next pages.
+   * @param bundle The first page of the search result.
+   * @param resourceType The resource type searched, used to apply the limits.
+   * @return The entries of all the pages.
+   * @throws RuntimeException when one of the next pages cannot be loaded.
+   */
+  public List<BundleEntryComponent> getAllEntries(
+      IGenericClient client, Bundle bundle, String resourceType) {
+    return getAllEntries(client, bundle, resourceType, null);
+  }
+
+  /**
+   * The method returns the entries of the bundle and all the subsequent pages, and hands each page
+   * to the page consumer as soon as it is available. When prefetching is enabled the next page is
+   * loaded while the consumer processes the current page.
+   *
+   * @param client The client used to load the next pages.
+   * @param bundle The first page of the search result.
+   * @param resourceType The resource type searched, used to apply the limits.
+   * @param pageConsumer Optional consumer invoked with the entries of each page.
+   * @return The entries of all the pages.
+   * @throws RuntimeException when one of the next pages cannot be loaded.
+   */
+  public List<BundleEntryComponent> getAllEntries(
+      IGenericClient client,
+      Bundle bundle,
+      String resourceType,
+      Consumer<List<BundleEntryComponent>> pageConsumer) {
+
+    List<BundleEntryComponent> entries = new ArrayList<>();
+
+    if (bundle == null) {
+      return entries;
+    }
+
+    int maxPages = getMaxPages(resourceType);
+    int maxEntries = getMaxEntries(resourceType);
+    int pages = 1;
+
+    CompletableFuture<Bundle> nextPage =
+        hasNextPage(bundle) && pages < maxPages ? loadNextPage(client, bundle) : null;
+    appendPage(bundle, entries, maxEntries, pageConsumer);
+
+    while (nextPage != null && entries.size() < maxEntries) {
+
+      Bundle page = waitForPage(nextPage);
+
+      pages++;
+      logger.debug(" Loaded page {} for resource type {}", pages, resourceType);
+
+      nextPage = hasNextPage(page) && pages < maxPages ? loadNextPage(client, page) : null;
+      appendPage(page, entries, maxEntries, pageConsumer);
+    }
+
+    if (nextPage != null) {
+      nextPage.cancel(true);
+    }
+
+    if (entries.size() >= maxEntries || pages >= maxPages) {
+      logger.warn(
+          " Stopped paging for resource type {} after {} pages and {} entries",
+          resourceType,
+          pages,
+          entries.size());
+    }
+
+    return entries;
+  }
+
+  private void appendPage(
+      Bundle page,
+      List<BundleEntryComponent> entries,
+      int maxEntries,
+      Consumer<List<BundleEntryComponent>> pageConsumer) {
+
+    if (!page.hasEntry()) {
+      return;
+    }
+
+    List<BundleEntryComponent> pageEntries = page.getEntry();
+    int remaining = maxEntries - entries.size();
+    if (pageEntries.size() > remaining) {
+      pageEntries = pageEntries.subList(0, Math.max(remaining, 0));
+    }
+
+    entries.addAll(pageEntries);
+
+    if (pageConsumer != null && !pageEntries.isEmpty()) {
+      pageConsumer.accept(pageEntries);
+    }
+  }
+
+  private boolean hasNextPage(Bundle bundle) {
+    return bundle.hasLink() && bundle.getLink(IBaseBundle.LINK_NEXT) != null;
+  }
+
+  private CompletableFuture<Bundle> loadNextPage(IGenericClient client, Bundle bundle) {
+
+    logger.info("Found Next Page in Bundle :{}", bundle.getLink(IBaseBundle.LINK_NEXT).getUrl());
+
+    if (prefetchExecutor != null) {
+      return CompletableFuture.supplyAsync(
+          () -> client.loadPage().next(bundle).execute(), prefetchExecutor);
+    }
+
+    CompletableFuture<Bundle> page = new CompletableFuture<>();
+    try {
+      page.complete(client.loadPage().next(bundle).execute());
+    } catch (Exception e) {
+      page.completeExceptionally(e);
+    }
+    return page;
+  }
+
+  private Bundle waitForPage(CompletableFuture<Bundle> nextPage) {
+
+    try {
+      return nextPage.get();
+    } catch (InterruptedException e) {
+      logger.error(" Interrupted while loading next page ", e);
+      nextPage.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while loading next page", e);
+    } catch (ExecutionException e) {
+      logger.error(" Unable to load next page ", e.getCause());
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Unable to load next page", e.getCause());
+    }
+  }
+
+  public int getMaxPages(String resourceType) {
+    return maxPagesByType.getOrDefault(resourceType, defaultMaxPages);
+  }
+
+  public int getMaxEntries(String resourceType) {
+    return maxEntriesByType.getOrDefault(resourceType, defaultMaxEntries);
+  }
+
+  private Map<String, Integer> parseLimits(String limits) {
+
+    Map<String, Integer> parsed = new HashMap<>();
+
+    if (limits == null || limits.trim().isEmpty()) {
+      return parsed;
+    }
+
+    for (String limit : limits.split(RESOURCE_SEPARATOR)) {
+
+      String[] parts = limit.split(LIMIT_SEPARATOR);
+      if (parts.length == 2) {
+        try {
+          parsed.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        } catch (NumberFormatException e) {
+          logger.error(" Ignoring invalid pagination limit {}", limit);
+        }
+      } else {
+        logger.error(" Ignoring invalid pagination limit {}", limit);
+      }
+    }
+
+    return parsed;
+  }
+}
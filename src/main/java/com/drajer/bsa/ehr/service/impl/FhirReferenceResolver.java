@@ -0,0 +1,347 @@
+package com.drajer.bsa.ehr.service.impl;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.hl7.fhir.r4.model.Bundle.HTTPVerb;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>FhirReferenceResolver</h1>
+ *
+ * This class resolves a set of references to resources of the same type, such as the Practitioners
+ * of an Encounter or the Observations of a DiagnosticReport, using as few requests as possible. The
+ * resources are retrieved using an _id search or a FHIR batch Bundle, depending on the
+ * configuration. When the FHIR Server does not support the batched request, the resources are read
+ * individually, in parallel when a thread pool is configured.
+ *
+ * <p>A FHIR Server which rejects a batched request with a status indicating that the request is not
+ * supported is not sent batched requests again. After other failures, such as timeouts or server
+ * errors, the resources are read individually and the next references are requested in a batch
+ * again.
+ */
+@Component
+public class FhirReferenceResolver {
+
+  private final Logger logger = LoggerFactory.getLogger(FhirReferenceResolver.class);
+
+  private static final String ID_SEARCH_PARAM = "?_id=";
+  private static final String COUNT_SEARCH_PARAM = "&_count=";
+  private static final String ID_SEPARATOR = ",";
+  private static final String BATCH_MODE = "batch";
+
+  /** The statuses of the responses to a batched request which the FHIR Server does not support. */
+  private static final Set<Integer> UNSUPPORTED_STATUSES =
+      Collections.unmodifiableSet(new HashSet<>(Arrays.asList(400, 404, 405, 501)));
+
+  /** Flag to indicate if references are resolved using batched requests. */
+  @Value("${ehr.reference.batch.enabled:false}")
+  private Boolean batchEnabled;
+
+  /** The type of batched request, either search (using _id) or batch (using a batch Bundle). */
+  @Value("${ehr.reference.batch.mode:search}")
+  private String batchMode;
+
+  /** The maximum number of resources requested in a single batched request. */
+  @Value("${ehr.reference.batch.size:50}")
+  private int batchSize;
+
+  /** The number of threads used to read resources individually when batching is not possible. */
+  @Value("${ehr.reference.parallel.threads:4}")
+  private int parallelThreads;
+
+  @Autowired FhirBundlePaginator fhirBundlePaginator;
+
+  @Autowired EhrResourceCache resourceCache;
+
+  /** The FHIR Servers which do not support batched requests, resources are read individually. */
+  private final Set<String> unsupportedServers = ConcurrentHashMap.newKeySet();
+
+  private ExecutorService readExecutor;
+
+  public FhirReferenceResolver() {
+    batchEnabled = false;
+    batchMode = "search";
+    batchSize = 50;
+    parallelThreads = 4;
+  }
+
+  public FhirReferenceResolver(
+      Boolean batchEnabled,
+      String batchMode,
+      int batchSize,
+      int parallelThreads,
+      FhirBundlePaginator fhirBundlePaginator,
+      EhrResourceCache resourceCache) {
+    this.batchEnabled = batchEnabled;
+    this.batchMode = batchMode;
+    this.batchSize = batchSize;
+    this.parallelThreads = parallelThreads;
+    this.fhirBundlePaginator = fhirBundlePaginator;
+    this.resourceCache = resourceCache;
+    initialize();
+  }
+
+  @PostConstruct
+  public void initialize() {
+
+    if (Boolean.TRUE.equals(batchEnabled) && parallelThreads > 1 && readExecutor == null) {
+      AtomicInteger count = new AtomicInteger(0);
+      readExecutor =
+          Executors.newFixedThreadPool(
+              parallelThreads,
+              r -> {
+                Thread t = new Thread(r, "FhirReferenceRead-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+              });
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (readExecutor != null) {
+      readExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * The method resolves the references to resources of the resource type.
+   *
+   * @param client The client used to retrieve the resources.
+   * @param resourceType The type of the resources referenced.
+   * @param ids The ids of the resources referenced, duplicates are retrieved only once.
+   * @param reader The function used to read a single resource given the type and the id.
+   * @return The resources retrieved keyed by id, resources which could not be retrieved are absent.
+   */
+  public Map<String, Resource> resolve(
+      IGenericClient client,
+      String resourceType,
+      Collection<String> ids,
+      BiFunction<String, String, Resource> reader) {
+
+    Map<String, Resource> resolved = new LinkedHashMap<>();
+    Set<String> pending = new LinkedHashSet<>();
+
+    for (String id : ids) {
+      if (id != null && !id.isEmpty()) {
+        pending.add(id);
+      }
+    }
+
+    if (pending.isEmpty()) {
+      return resolved;
+    }
+
+    if (!Boolean.TRUE.equals(batchEnabled)) {
+      for (String id : pending) {
+        addResource(resolved, id, reader.apply(resourceType, id));
+      }
+      return resolved;
+    }
+
+    String baseUrl = client.getServerBase();
+
+    Iterator<String> it = pending.iterator();
+    while (it.hasNext()) {
+      String id = it.next();
+      Resource cached = resourceCache.getResource(baseUrl, resourceType, id);
+      if (cached != null) {
+        resolved.put(id, cached);
+        it.remove();
+      }
+    }
+
+    if (pending.size() > 1 && !unsupportedServers.contains(baseUrl)) {
+
+      try {
+        resolved.putAll(readBatched(client, resourceType, pending));
+
+        // Resources not returned by the batched requests are either missing or not accessible.
+        return resolved;
+
+      } catch (BaseServerResponseException e) {
+        logger.error(
+            " Batched read of {} resources failed for {} with status {}, reading the resources"
+                + " individually",
+            resourceType,
+            baseUrl,
+            e.getStatusCode(),
+            e);
+        if (UNSUPPORTED_STATUSES.contains(e.getStatusCode())) {
+          unsupportedServers.add(baseUrl);
+        }
+      } catch (Exception e) {
+        logger.error(
+            " Batched read of {} resources failed for {}, reading the resources individually",
+            resourceType,
+            baseUrl,
+            e);
+      }
+    }
+
+    resolved.putAll(readIndividually(resourceType, pending, reader));
+    return resolved;
+  }
+
+  private Map<String, Resource> readBatched(
+      IGenericClient client, String resourceType, Set<String> ids) {
+
+    Map<String, Resource> resolved = new HashMap<>();
+    List<String> idList = new ArrayList<>(ids);
+    int size = batchSize > 0 ? batchSize : idList.size();
+
+    for (int i = 0; i < idList.size(); i += size) {
+
+      List<String> chunk = idList.subList(i, Math.min(i + size, idList.size()));
+
+      logger.info(" Retrieving {} {} resources in a single request", chunk.size(), resourceType);
+
+      List<Resource> results =
+          BATCH_MODE.equalsIgnoreCase(batchMode)
+              ? readUsingBatchBundle(client, resourceType, chunk)
+              : readUsingSearch(client, resourceType, chunk);
+
+      for (Resource res : results) {
+        String id = res.getIdElement().getIdPart();
+        if (ids.contains(id)) {
+          resolved.put(id, res);
+          resourceCache.putResource(client.getServerBase(), resourceType, id, res);
+        }
+      }
+    }
+
+    return resolved;
+  }
+
+  private List<Resource> readUsingSearch(
+      IGenericClient client, String resourceType, List<String> ids) {
+
+    String searchUrl =
+        resourceType
+            + ID_SEARCH_PARAM
+            + String.join(ID_SEPARATOR, ids)
+            + COUNT_SEARCH_PARAM
+            + ids.size();
+
+    Bundle bundle = client.search().byUrl(searchUrl).returnBundle(Bundle.class).execute();
+
+    List<BundleEntryComponent> entries =
+        fhirBundlePaginator.getAllEntries(client, bundle, resourceType);
+
+    List<Resource> results = new ArrayList<>();
+    for (BundleEntryComponent comp : entries) {
+      if (comp.hasResource() && resourceType.equals(comp.getResource().fhirType())) {
+        results.add(comp.getResource());
+      }
+    }
+    return results;
+  }
+
+  private List<Resource> readUsingBatchBundle(
+      IGenericClient client, String resourceType, List<String> ids) {
+
+    Bundle batch = new Bundle();
+    batch.setType(BundleType.BATCH);
+    for (String id : ids) {
+      batch.addEntry().getRequest().setMethod(HTTPVerb.GET).setUrl(resourceType + "/" + id);
+    }
+
+    Bundle response = client.transaction().withBundle(batch).execute();
+
+    List<Resource> results = new ArrayList<>();
+    if (response != null) {
+      for (BundleEntryComponent comp : response.getEntry()) {
+        if (comp.hasResource() && resourceType.equals(comp.getResource().fhirType())) {
+          results.add(comp.getResource());
+        }
+      }
+    }
+    return results;
+  }
+
+  private Map<String, Resource> readIndividually(
+      String resourceType, Set<String> ids, BiFunction<String, String, Resource> reader) {
+
+    Map<String, Resource> resolved = new LinkedHashMap<>();
+
+    if (readExecutor == null || ids.size() == 1) {
+      for (String id : ids) {
+        addResource(resolved, id, reader.apply(resourceType, id));
+      }
+      return resolved;
+    }
+
+    Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+    Map<String, CompletableFuture<Resource>> futures = new LinkedHashMap<>();
+
+    for (String id : ids) {
+      futures.put(
+          id,
+          CompletableFuture.supplyAsync(
+              () -> {
+                if (mdcContext != null) {
+                  MDC.setContextMap(mdcContext);
+                }
+                try {
+                  return reader.apply(resourceType, id);
+                } finally {
+                  MDC.clear();
+                }
+              },
+              readExecutor));
+    }
+
+    for (Map.Entry<String, CompletableFuture<Resource>> entry : futures.entrySet()) {
+      try {
+        addResource(resolved, entry.getKey(), entry.getValue().get());
+      } catch (InterruptedException e) {
+        logger.error(" Interrupted while reading {} resources ", resourceType, e);
+        Thread.currentThread().interrupt();
+        break;
+      } catch (ExecutionException e) {
+        logger.error(
+            " Unable to read {} resource with id {}", resourceType, entry.getKey(), e.getCause());
+      }
+    }
+
+    return resolved;
+  }
+
+  private void addResource(Map<String, Resource> resolved, String id, Resource res) {
+    if (res != null) {
+      resolved.put(id, res);
+    }
+  }
+}
@@ -0,0 +1,242 @@
+package com.drajer.bsa.ehr.service.impl;
+
+import com.drajer.bsa.kar.model.FhirQueryFilter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>ParallelQueryExecutor</h1>
+ *
+ * This class executes the data requirement queries of an action concurrently. Each EHR endpoint
+ * gets its own bounded pool so that a slow EHR cannot starve the queries of other EHRs. Queries
+ * whose relatedDataId points to another query in the same set are only started after the query
+ * they depend on has completed, so that they can reuse the data that was already fetched.
+ */
+@Component
+public class ParallelQueryExecutor {
+
+  private final Logger logger = LoggerFactory.getLogger(ParallelQueryExecutor.class);
+
+  /** The maximum number of queries that are run concurrently against a single EHR endpoint. */
+  @Value("${ehr.query.parallel.threads-per-endpoint:4}")
+  private int threadsPerEndpoint;
+
+  /** The maximum time to wait for all the queries of an action to complete. */
+  @Value("${ehr.query.parallel.timeout-seconds:120}")
+  private long timeoutSeconds;
+
+  /** The pools used to run queries, keyed by the FHIR Server base url. */
+  private final ConcurrentHashMap<String, ExecutorService> endpointExecutors =
+      new ConcurrentHashMap<>();
+
+  public ParallelQueryExecutor() {
+    threadsPerEndpoint = 4;
+    timeoutSeconds = 120;
+  }
+
+  public ParallelQueryExecutor(int threadsPerEndpoint, long timeoutSeconds) {
+    this.threadsPerEndpoint = threadsPerEndpoint;
+    this.timeoutSeconds = timeoutSeconds;
+  }
+
+  /**
+   * The method executes the queries concurrently and waits for all of them to complete. When the
+   * queries do not complete within the timeout, the queries not yet started are cancelled, but the
+   * requests already sent to the EHR keep running until they complete. The queryRunner of such a
+   * query must not write into state the caller uses once this method has returned, see
+   * KarProcessingData.QueryResultGate.
+   *
+   * @param endpoint The FHIR Server base url used to select the pool.
+   * @param queries The queries to be executed keyed by the data requirement id.
+   * @param relatedIdResolver Returns the related data requirement id for a data requirement id.
+   * @param queryRunner The function that executes a single query.
+   */
+  public void execute(
+      String endpoint,
+      Map<String, FhirQueryFilter> queries,
+      Function<String, String> relatedIdResolver,
+      BiConsumer<String, FhirQueryFilter> queryRunner) {
+
+    if (queries == null || queries.isEmpty()) {
+      return;
+    }
+
+    ExecutorService executor = getExecutor(endpoint);
+    Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+    Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+
+    for (String dataReqId : queries.keySet()) {
+      schedule(
+          dataReqId,
+          queries,
+          relatedIdResolver,
+          queryRunner,
+          executor,
+          mdcContext,
+          futures,
+          new HashSet<>());
+    }
+
+    CompletableFuture<Void> all =
+        CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]));
+
+    try {
+      all.get(timeoutSeconds, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      logger.error(" Interrupted while waiting for queries to complete for {}", endpoint, e);
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      logger.error(" Error executing queries for {}", endpoint, e);
+    } catch (TimeoutException e) {
+      logger.error(
+          " Queries for {} did not complete within {} seconds", endpoint, timeoutSeconds, e);
+      futures.values().forEach(f -> f.cancel(true));
+    }
+  }
+
+  private CompletableFuture<Void> schedule(
+      String dataReqId,
+      Map<String, FhirQueryFilter> queries,
+      Function<String, String> relatedIdResolver,
+      BiConsumer<String, FhirQueryFilter> queryRunner,
+      ExecutorService executor,
+      Map<String, String> mdcContext,
+      Map<String, CompletableFuture<Void>> futures,
+      Set<String> visiting) {
+
+    if (futures.containsKey(dataReqId)) {
+      return futures.get(dataReqId);
+    }
+
+    visiting.add(dataReqId);
+
+    List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+    for (String relatedId : getRelatedIds(dataReqId, queries.get(dataReqId), relatedIdResolver)) {
+
+      if (queries.containsKey(relatedId) && !visiting.contains(relatedId)) {
+        logger.debug(" Query for {} depends on query for {}", dataReqId, relatedId);
+        dependencies.add(
+            schedule(
+                relatedId,
+                queries,
+                relatedIdResolver,
+                queryRunner,
+                executor,
+                mdcContext,
+                futures,
+                visiting));
+      }
+    }
+
+    FhirQueryFilter query = queries.get(dataReqId);
+    Runnable task = () -> runWithMdc(mdcContext, () -> queryRunner.accept(dataReqId, query));
+
+    CompletableFuture<Void> future;
+    if (dependencies.isEmpty()) {
+      future = CompletableFuture.runAsync(task, executor);
+    } else {
+      // Run the dependent query even when the query it depends on failed, the dependent query will
+      // then simply go to the EHR itself.
+      future =
+          CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[0]))
+              .handle((v, t) -> null)
+              .thenRunAsync(task, executor);
+    }
+
+    futures.put(dataReqId, future);
+    visiting.remove(dataReqId);
+    return future;
+  }
+
+  private Set<String> getRelatedIds(
+      String dataReqId, FhirQueryFilter query, Function<String, String> relatedIdResolver) {
+
+    Set<String> relatedIds = new HashSet<>();
+
+    if (query != null && query.getRelatedDataId() != null) {
+      relatedIds.add(query.getRelatedDataId());
+    }
+
+    String resolvedId = relatedIdResolver != null ? relatedIdResolver.apply(dataReqId) : null;
+    if (resolvedId != null) {
+      relatedIds.add(resolvedId);
+    }
+
+    relatedIds.remove(dataReqId);
+    return relatedIds;
+  }
+
+  private void runWithMdc(Map<String, String> mdcContext, Runnable runnable) {
+
+    Map<String, String> previous = MDC.getCopyOfContextMap();
+    try {
+      if (mdcContext != null) {
+        MDC.setContextMap(mdcContext);
+      }
+      runnable.run();
+    } catch (Exception e) {
+      logger.error(" Error executing query ", e);
+    } finally {
+      if (previous != null) {
+        MDC.setContextMap(previous);
+      } else {
+        MDC.clear();
+      }
+    }
+  }
+
+  private ExecutorService getExecutor(String endpoint) {
+
+    String key = endpoint != null ? endpoint : "";
+    return endpointExecutors.computeIfAbsent(
+        key, k -> Executors.newFixedThreadPool(threadsPerEndpoint, new QueryThreadFactory(k)));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+
+    logger.info(" Shutting down {} EHR query pools", endpointExecutors.size());
+    endpointExecutors.values().forEach(ExecutorService::shutdownNow);
+    endpointExecutors.clear();
+  }
+
+  private static class QueryThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger(0);
+    private final String endpoint;
+
+    QueryThreadFactory(String endpoint) {
+      this.endpoint = endpoint;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "EhrQuery-" + endpoint.hashCode() + "-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
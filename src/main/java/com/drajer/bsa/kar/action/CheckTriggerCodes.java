@@ -54,7 +54,7 @@ public class CheckTriggerCodes extends BsaAction {
 
         logger.info(" Data Requirements Exist wiht Queries, so executing queries to load data ");
         // Try to execute the queries.
-        queries.forEach((key, value) -> ehrService.executeQuery(data, key, value));
+        ehrService.executeQueries(data, queries);
 
       } else {
 
@@ -33,7 +33,7 @@ public class CompleteReporting extends BsaAction {
 
       logger.info(" Found Default/Custom Queries for execution ");
       // Try to execute the queries.
-      queries.forEach((key, value) -> ehrService.executeQuery(data, key, value));
+      ehrService.executeQueries(data, queries);
 
     } else {
 
@@ -35,7 +35,7 @@ public class InitiateReporting extends BsaAction {
     if (queries != null && !queries.isEmpty()) {
 
       // Try to execute the queries.
-      queries.forEach((key, value) -> ehrService.executeQuery(data, key, value));
+      ehrService.executeQueries(data, queries);
 
     } else {
 
@@ -22,6 +22,8 @@ import com.drajer.bsa.routing.impl.RestfulTransportImpl;
 import com.drajer.bsa.service.PublicHealthAuthorityService;
 import com.drajer.bsa.utils.BsaServiceUtils;
 import com.drajer.ecrapp.util.ApplicationUtils;
+import com.drajer.sof.utils.FhirClientEndpoint;
+import com.drajer.sof.utils.FhirClientRegistry;
 import com.drajer.sof.utils.FhirContextInitializer;
 import io.micrometer.core.instrument.util.StringUtils;
 import java.io.InputStream;
@@ -51,6 +53,7 @@ public class SubmitReport extends BsaAction {
 
   private static final int RR_CHECK_TIME = 60;
   private static final String RR_CHECK_TIME_UNITS = "s";
+  private static final int SUBMISSION_SOCKET_TIMEOUT = 120;
 
   private static final FhirContext context = FhirContext.forR4();
 
@@ -68,6 +71,8 @@ public class SubmitReport extends BsaAction {
 
   private FhirContextInitializer fhirContextInitializer;
 
+  private FhirClientRegistry clientRegistry;
+
   private String checkResponseActionId;
 
   public String getCheckResponseActionId() {
@@ -335,17 +340,22 @@ public class SubmitReport extends BsaAction {
       logger.error("Error while loading report headers from Properties File ");
     }
 
+    FhirClientEndpoint endpoint =
+        clientRegistry.getEndpoint(
+            context,
+            submissionEndpoint,
+            pha != null ? pha.getClientId() : null,
+            SUBMISSION_SOCKET_TIMEOUT,
+            ServerValidationModeEnum.NEVER);
+
+    String accessToken = token;
+    IGenericClient client =
+        fhirContextInitializer.createClient(endpoint, () -> accessToken, data.getxRequestId());
+
     // for all resources to be submitted
     logger.info("{} Resources to submit ", resourcesToSubmit.size());
     for (Resource r : resourcesToSubmit) {
 
-      IGenericClient client =
-          fhirContextInitializer.createClient(
-              context, submissionEndpoint, token, data.getxRequestId());
-
-      context.getRestfulClientFactory().setSocketTimeout(120 * 1000);
-      context.getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
-
       // All submissions are expected to be bundles
       Bundle bundleToSubmit = (Bundle) r;
 
@@ -436,6 +446,14 @@ public class SubmitReport extends BsaAction {
     this.fhirContextInitializer = fhirContextInitializer;
   }
 
+  public FhirClientRegistry getClientRegistry() {
+    return clientRegistry;
+  }
+
+  public void setClientRegistry(FhirClientRegistry clientRegistry) {
+    this.clientRegistry = clientRegistry;
+  }
+
   @Override
   public void printSummary() {
 
@@ -20,6 +20,9 @@ public class BsaCqlCondition extends BsaCondition {
 
   private Duration normalReportingDuration;
 
+  /** The evaluation context shared by the CQL conditions of the Knowledge Artifact. */
+  private CqlEvaluationContext evaluationContext;
+
   public Endpoint getDataEndpoint() {
     return dataEndpoint;
   }
@@ -68,6 +71,14 @@ public class BsaCqlCondition extends BsaCondition {
     this.normalReportingDuration = normalReportingDuration;
   }
 
+  public CqlEvaluationContext getEvaluationContext() {
+    return evaluationContext;
+  }
+
+  public void setEvaluationContext(CqlEvaluationContext evaluationContext) {
+    this.evaluationContext = evaluationContext;
+  }
+
   public BsaCqlCondition() {
     setConditionProcessor(new CqlProcessor());
   }
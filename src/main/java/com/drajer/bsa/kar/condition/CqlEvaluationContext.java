@@ -0,0 +1,185 @@
+package com.drajer.bsa.kar.condition;
+
+import ca.uhn.fhir.context.FhirContext;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
+import org.cqframework.cql.cql2elm.CqlTranslatorOptions;
+import org.cqframework.cql.cql2elm.ModelManager;
+import org.cqframework.cql.elm.execution.Library;
+import org.cqframework.cql.elm.execution.VersionedIdentifier;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Parameters;
+import org.opencds.cqf.cql.engine.data.CompositeDataProvider;
+import org.opencds.cqf.cql.engine.data.DataProvider;
+import org.opencds.cqf.cql.engine.execution.LibraryLoader;
+import org.opencds.cqf.cql.engine.model.ModelResolver;
+import org.opencds.cqf.cql.engine.retrieve.RetrieveProvider;
+import org.opencds.cqf.cql.engine.terminology.TerminologyProvider;
+import org.opencds.cqf.cql.evaluator.CqlEvaluator;
+import org.opencds.cqf.cql.evaluator.cql2elm.content.LibraryContentProvider;
+import org.opencds.cqf.cql.evaluator.engine.execution.TranslatingLibraryLoader;
+import org.opencds.cqf.cql.evaluator.engine.retrieve.BundleRetrieveProvider;
+import org.opencds.cqf.cql.evaluator.engine.retrieve.PriorityRetrieveProvider;
+import org.opencds.cqf.cql.evaluator.library.CqlFhirParametersConverter;
+
+/**
+ *
+ *
+ * <h1>CqlEvaluationContext</h1>
+ *
+ * This class holds what is needed to evaluate the CQL expressions of a Knowledge Artifact and is
+ * created once when the KAR is loaded. The libraries are translated to ELM the first time they are
+ * used and kept, the ValueSets are answered from the ValueSet index of the KAR and the model
+ * resolver and the retrieve provider of the KAR bundles are shared by all the evaluations. Only
+ * the retrieve provider of the patient data is created for each evaluation, which makes the
+ * context safe to use from multiple threads.
+ */
+public class CqlEvaluationContext {
+
+  private static final String PATIENT_CONTEXT = "Patient";
+  private static final String LIBRARY_PATH = "/Library/";
+  private static final String VERSION_SEPARATOR = "|";
+
+  private final FhirContext fhirContext;
+  private final TerminologyProvider terminologyProvider;
+  private final String modelUri;
+  private final ModelResolver modelResolver;
+  private final RetrieveProvider karRetrieveProvider;
+  private final CqlFhirParametersConverter parametersConverter;
+
+  /** Translates the libraries, the translator is not thread safe. */
+  private final LibraryLoader translatingLibraryLoader;
+
+  /** The translated libraries, keyed by the name and version of the library. */
+  private final Map<String, Library> libraries;
+
+  /**
+   * Constructor for the context.
+   *
+   * @param fhirContext The context used to read the patient data.
+   * @param libraryContentProvider The provider of the CQL libraries of the KAR.
+   * @param terminologyProvider The provider of the ValueSets of the KAR.
+   * @param karDataProvider The model, model resolver and retrieve provider of the KAR bundles.
+   * @param parametersConverter The converter of the parameters and results of the evaluations.
+   */
+  public CqlEvaluationContext(
+      FhirContext fhirContext,
+      LibraryContentProvider libraryContentProvider,
+      TerminologyProvider terminologyProvider,
+      Triple<String, ModelResolver, RetrieveProvider> karDataProvider,
+      CqlFhirParametersConverter parametersConverter) {
+
+    this.fhirContext = fhirContext;
+    this.terminologyProvider = terminologyProvider;
+    this.modelUri = karDataProvider.getLeft();
+    this.modelResolver = karDataProvider.getMiddle();
+    this.karRetrieveProvider = karDataProvider.getRight();
+    this.parametersConverter = parametersConverter;
+    this.libraries = new ConcurrentHashMap<>();
+    this.translatingLibraryLoader =
+        new TranslatingLibraryLoader(
+            new ModelManager(),
+            Collections.singletonList(libraryContentProvider),
+            CqlTranslatorOptions.defaultOptions());
+  }
+
+  /**
+   * Method to evaluate expressions of a library against the data of a patient.
+   *
+   * @param url The canonical url of the library.
+   * @param patientId The id of the patient, or null to evaluate without a patient context.
+   * @param parameters The parameters of the library.
+   * @param data The patient data, may be null.
+   * @param expressions The expressions to be evaluated.
+   * @return The results of the expressions.
+   */
+  public Parameters evaluate(
+      String url, String patientId, Parameters parameters, Bundle data, Set<String> expressions) {
+
+    RetrieveProvider retrieveProvider = karRetrieveProvider;
+
+    if (data != null) {
+      BundleRetrieveProvider patientRetrieveProvider =
+          new BundleRetrieveProvider(fhirContext, data);
+      patientRetrieveProvider.setTerminologyProvider(terminologyProvider);
+      patientRetrieveProvider.setExpandValueSets(true);
+
+      retrieveProvider =
+          new PriorityRetrieveProvider(Arrays.asList(patientRetrieveProvider, karRetrieveProvider));
+    }
+
+    DataProvider dataProvider = new CompositeDataProvider(modelResolver, retrieveProvider);
+
+    CqlEvaluator evaluator =
+        new CqlEvaluator(
+            this::loadLibrary,
+            Collections.singletonMap(modelUri, dataProvider),
+            terminologyProvider);
+
+    Pair<String, Object> context = patientId != null ? Pair.of(PATIENT_CONTEXT, patientId) : null;
+    Map<String, Object> cqlParameters =
+        parameters != null ? parametersConverter.toCqlParameters(parameters) : null;
+
+    return (Parameters)
+        parametersConverter.toFhirParameters(
+            evaluator.evaluate(getLibraryIdentifier(url), expressions, context, cqlParameters));
+  }
+
+  private Library loadLibrary(VersionedIdentifier id) {
+
+    String key = id.getId() + VERSION_SEPARATOR + id.getVersion();
+    Library library = libraries.get(key);
+
+    if (library == null) {
+      synchronized (translatingLibraryLoader) {
+        library = libraries.get(key);
+        if (library == null) {
+          library = translatingLibraryLoader.load(id);
+          libraries.put(key, library);
+        }
+      }
+    }
+
+    return library;
+  }
+
+  public int getLibraryCount() {
+    return libraries.size();
+  }
+
+  /**
+   * Method to get the identifier of a library from its canonical url, which has the form
+   * base/Library/name|version.
+   *
+   * @param url The canonical url of the library.
+   * @return The identifier of the library.
+   * @throws IllegalArgumentException when the url is not the url of a Library.
+   */
+  static VersionedIdentifier getLibraryIdentifier(String url) {
+
+    int library = url == null ? -1 : url.indexOf(LIBRARY_PATH);
+
+    if (library < 0) {
+      throw new IllegalArgumentException("Invalid library url " + url);
+    }
+
+    String name = url.substring(library + LIBRARY_PATH.length());
+    String version = null;
+
+    int separator = name.indexOf(VERSION_SEPARATOR);
+    if (separator >= 0) {
+      version = name.substring(separator + 1);
+      name = name.substring(0, separator);
+    }
+
+    return new VersionedIdentifier()
+        .withSystem(url.substring(0, library))
+        .withId(name)
+        .withVersion(version);
+  }
+}
@@ -40,17 +40,31 @@ public class CqlProcessor implements BsaConditionProcessor {
         parameters.addParameter(paramComponent);
       }
     }
-    Parameters result =
-        (Parameters)
-            this.libraryProcessor.evaluate(
-                cqlCondition.getUrl(),
-                cqlCondition.getPatientId(),
-                parameters,
-                cqlCondition.getLibraryEndpoint(),
-                cqlCondition.getTerminologyEndpoint(),
-                cqlCondition.getDataEndpoint(),
-                kd.getInputResourcesAsBundle(),
-                expressions);
+    Parameters result;
+    if (cqlCondition.getEvaluationContext() != null) {
+      // Reuse the translated libraries and terminology of the KAR, only the data is per patient.
+      result =
+          cqlCondition
+              .getEvaluationContext()
+              .evaluate(
+                  cqlCondition.getUrl(),
+                  cqlCondition.getPatientId(),
+                  parameters,
+                  kd.getInputResourcesAsBundle(),
+                  expressions);
+    } else {
+      result =
+          (Parameters)
+              this.libraryProcessor.evaluate(
+                  cqlCondition.getUrl(),
+                  cqlCondition.getPatientId(),
+                  parameters,
+                  cqlCondition.getLibraryEndpoint(),
+                  cqlCondition.getTerminologyEndpoint(),
+                  cqlCondition.getDataEndpoint(),
+                  kd.getInputResourcesAsBundle(),
+                  expressions);
+    }
 
     BooleanType value =
         (BooleanType) result.getParameter(cond.getLogicExpression().getExpression());
@@ -4,6 +4,7 @@ import com.drajer.bsa.ehr.service.EhrQueryService;
 import com.drajer.bsa.kar.action.CheckTriggerCodeStatus;
 import com.drajer.bsa.kar.model.BsaAction;
 import com.drajer.bsa.kar.model.BsaCondition;
+import com.drajer.bsa.kar.model.ValueSetIndex;
 import com.drajer.bsa.model.KarProcessingData;
 import com.drajer.bsa.utils.BsaServiceUtils;
 import com.drajer.eca.model.MatchedTriggerCodes;
@@ -330,6 +331,10 @@ public class FhirPathProcessor implements BsaConditionProcessor {
 
     if (drcfs != null) {
 
+      // Look up the value sets containing any of the codes once, instead of once per filter.
+      ValueSetIndex index = kd.getKar().getValueSetIndex();
+      Set<String> conceptValueSets = index.getValueSetsForCodeableConcept(cc);
+
       for (DataRequirementCodeFilterComponent drcf : drcfs) {
 
         if ((drcf.getPath().toLowerCase().contains("code")
@@ -337,6 +342,12 @@ public class FhirPathProcessor implements BsaConditionProcessor {
                 || drcf.getPath().equals("medication"))
             && drcf.getValueSet() != null) {
 
+          if (index.isIndexed(drcf.getValueSet())
+              && !conceptValueSets.contains(drcf.getValueSet())) {
+            logger.debug(" No match found for code in value set {}", drcf.getValueSet());
+            continue;
+          }
+
           Resource vsr =
               kd.getKar().getDependentResource(ResourceType.ValueSet, drcf.getValueSet());
 
@@ -347,7 +358,7 @@ public class FhirPathProcessor implements BsaConditionProcessor {
             String matchPath = dr.getType() + "." + drcf.getPath();
 
             Pair<Boolean, MatchedTriggerCodes> retInfo =
-                BsaServiceUtils.isCodeableConceptPresentInValueSet(vs, cc, matchPath, false);
+                BsaServiceUtils.isCodeableConceptPresentInValueSet(index, vs, cc, matchPath, false);
 
             if (retInfo != null) {
 
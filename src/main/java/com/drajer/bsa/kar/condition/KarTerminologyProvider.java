@@ -0,0 +1,87 @@
+package com.drajer.bsa.kar.condition;
+
+import com.drajer.bsa.kar.model.ValueSetIndex;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.opencds.cqf.cql.engine.runtime.Code;
+import org.opencds.cqf.cql.engine.terminology.CodeSystemInfo;
+import org.opencds.cqf.cql.engine.terminology.TerminologyProvider;
+import org.opencds.cqf.cql.engine.terminology.ValueSetInfo;
+
+/**
+ *
+ *
+ * <h1>KarTerminologyProvider</h1>
+ *
+ * This class answers the terminology requests of the CQL engine from the ValueSet index of a
+ * Knowledge Artifact, so that the ValueSets of the KAR are expanded once and the membership of a
+ * code is checked without walking the ValueSet. Requests for ValueSets which are not part of the
+ * KAR and code lookups are passed to the terminology provider of the KAR directory, one at a time
+ * since that provider is not thread safe.
+ */
+public class KarTerminologyProvider implements TerminologyProvider {
+
+  private static final String SEPARATOR = "|";
+
+  private final ValueSetIndex valueSetIndex;
+  private final TerminologyProvider delegate;
+
+  /** The expansions of the ValueSets requested by the CQL engine, keyed by the ValueSet url. */
+  private final Map<String, List<Code>> expansions;
+
+  public KarTerminologyProvider(ValueSetIndex valueSetIndex, TerminologyProvider delegate) {
+    this.valueSetIndex = valueSetIndex;
+    this.delegate = delegate;
+    this.expansions = new ConcurrentHashMap<>();
+  }
+
+  @Override
+  public boolean in(Code code, ValueSetInfo valueSet) {
+
+    if (valueSetIndex.isIndexed(valueSet.getId())) {
+      return valueSetIndex.contains(valueSet.getId(), code.getSystem(), code.getCode());
+    }
+
+    synchronized (delegate) {
+      return delegate.in(code, valueSet);
+    }
+  }
+
+  @Override
+  public Iterable<Code> expand(ValueSetInfo valueSet) {
+
+    if (valueSetIndex.isIndexed(valueSet.getId())) {
+      return expansions.computeIfAbsent(valueSet.getId(), this::getExpansion);
+    }
+
+    synchronized (delegate) {
+      return delegate.expand(valueSet);
+    }
+  }
+
+  @Override
+  public Code lookup(Code code, CodeSystemInfo codeSystem) {
+
+    synchronized (delegate) {
+      return delegate.lookup(code, codeSystem);
+    }
+  }
+
+  private List<Code> getExpansion(String url) {
+
+    List<Code> codes = new ArrayList<>();
+
+    for (String key : valueSetIndex.getCodes(url)) {
+      int separator = key.indexOf(SEPARATOR);
+      codes.add(
+          new Code()
+              .withSystem(key.substring(0, separator))
+              .withCode(key.substring(separator + 1)));
+    }
+
+    return Collections.unmodifiableList(codes);
+  }
+}
@@ -83,6 +83,12 @@ public class KnowledgeArtifact {
    */
   private HashMap<ResourceType, HashMap<String, Resource>> dependencies;
 
+  /**
+   * This attribute indexes the codes of the ValueSets present in the dependencies, so that code
+   * membership can be checked without scanning the ValueSets.
+   */
+  private ValueSetIndex valueSetIndex;
+
   /** This attribute represents the receivers of the Report created by the BSA. */
   private Set<UriType> receiverAddresses;
 
@@ -124,12 +130,14 @@ public class KnowledgeArtifact {
       } else if (res.getUrl() != null) {
         resources.put(res.getUrl(), res);
         dependencies.put(res.getResourceType(), resources);
+        valueSetIndex.addValueSet(res);
       }
     } else if (res.getUrl() != null) {
       logger.info("Resource Type does not exist, so add to map ");
       HashMap<String, Resource> resources = new HashMap<>();
       resources.put(res.getUrl(), res);
       dependencies.put(res.getResourceType(), resources);
+      valueSetIndex.addValueSet(res);
     }
   }
 
@@ -238,10 +246,15 @@ public class KnowledgeArtifact {
     actionMap = new HashMap<>();
     triggerEventActionMap = new HashMap<>();
     dependencies = new HashMap<>();
+    valueSetIndex = new ValueSetIndex();
     receiverAddresses = new HashSet<>();
     firstLevelActions = new ArrayList<>();
   }
 
+  public ValueSetIndex getValueSetIndex() {
+    return valueSetIndex;
+  }
+
   public String getKarId() {
     return karId;
   }
@@ -288,6 +301,13 @@ public class KnowledgeArtifact {
 
   public void setDependencies(HashMap<ResourceType, HashMap<String, Resource>> dependencies) {
     this.dependencies = dependencies;
+
+    valueSetIndex = new ValueSetIndex();
+    if (dependencies != null && dependencies.containsKey(ResourceType.ValueSet)) {
+      for (Resource res : dependencies.get(ResourceType.ValueSet).values()) {
+        valueSetIndex.addValueSet((ValueSet) res);
+      }
+    }
   }
 
   public String getVersionUniqueId() {
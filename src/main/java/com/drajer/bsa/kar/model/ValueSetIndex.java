@@ -0,0 +1,155 @@
+package com.drajer.bsa.kar.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.r4.model.ValueSet.ConceptReferenceComponent;
+import org.hl7.fhir.r4.model.ValueSet.ConceptSetComponent;
+import org.hl7.fhir.r4.model.ValueSet.ValueSetExpansionContainsComponent;
+
+/**
+ *
+ *
+ * <h1>ValueSetIndex</h1>
+ *
+ * This class stores the codes of the ValueSets of a Knowledge Artifact in hashed form, so that the
+ * membership of a code in a ValueSet can be checked without walking the compose and expansion
+ * elements of the ValueSet. The index is built when the ValueSets are added to the Knowledge
+ * Artifact and is only read afterwards.
+ *
+ * <p>Codes are stored using the key system|code, the same form used for matched trigger codes.
+ */
+public class ValueSetIndex {
+
+  private static final String SEPARATOR = "|";
+
+  /** The codes present in each ValueSet, keyed by the ValueSet url. */
+  private final Map<String, Set<String>> codesByValueSet;
+
+  /** The urls of the ValueSets containing a code, keyed by system|code. */
+  private final Map<String, Set<String>> valueSetsByCode;
+
+  public ValueSetIndex() {
+    codesByValueSet = new HashMap<>();
+    valueSetsByCode = new HashMap<>();
+  }
+
+  /**
+   * The method adds the codes from the compose includes and the expansion of the ValueSet to the
+   * index.
+   *
+   * @param vs The ValueSet to be indexed.
+   */
+  public void addValueSet(ValueSet vs) {
+
+    if (vs == null || vs.getUrl() == null) {
+      return;
+    }
+
+    Set<String> codes = codesByValueSet.computeIfAbsent(vs.getUrl(), k -> new HashSet<>());
+
+    if (vs.hasCompose()) {
+      for (ConceptSetComponent csc : vs.getCompose().getInclude()) {
+        if (csc.getSystem() != null) {
+          for (ConceptReferenceComponent crc : csc.getConcept()) {
+            addCode(vs.getUrl(), codes, csc.getSystem(), crc.getCode());
+          }
+        }
+      }
+    }
+
+    if (vs.hasExpansion() && vs.getExpansion().hasContains()) {
+      for (ValueSetExpansionContainsComponent vsecc : vs.getExpansion().getContains()) {
+        addCode(vs.getUrl(), codes, vsecc.getSystem(), vsecc.getCode());
+      }
+    }
+  }
+
+  private void addCode(String url, Set<String> codes, String system, String code) {
+
+    if (system != null && code != null) {
+      String key = getKey(system, code);
+      codes.add(key);
+      valueSetsByCode.computeIfAbsent(key, k -> new HashSet<>()).add(url);
+    }
+  }
+
+  /**
+   * @param url The url of the ValueSet
+   * @return true if the ValueSet has been indexed.
+   */
+  public boolean isIndexed(String url) {
+    return url != null && codesByValueSet.containsKey(url);
+  }
+
+  /**
+   * @param url The url of the ValueSet
+   * @param system The code system of the code
+   * @param code The code
+   * @return true if the code is present in the ValueSet
+   */
+  public boolean contains(String url, String system, String code) {
+
+    if (url == null || system == null || code == null) {
+      return false;
+    }
+
+    Set<String> codes = codesByValueSet.get(url);
+    return codes != null && codes.contains(getKey(system, code));
+  }
+
+  /**
+   * @param url The url of the ValueSet
+   * @return The codes of the ValueSet using the key system|code.
+   */
+  public Set<String> getCodes(String url) {
+
+    Set<String> codes = url != null ? codesByValueSet.get(url) : null;
+    return codes != null ? Collections.unmodifiableSet(codes) : Collections.emptySet();
+  }
+
+  /**
+   * @param system The code system of the code
+   * @param code The code
+   * @return The urls of the ValueSets that contain the code.
+   */
+  public Set<String> getValueSetsForCode(String system, String code) {
+
+    if (system == null || code == null) {
+      return Collections.emptySet();
+    }
+
+    Set<String> urls = valueSetsByCode.get(getKey(system, code));
+    return urls != null ? Collections.unmodifiableSet(urls) : Collections.emptySet();
+  }
+
+  /**
+   * @param cc The CodeableConcept whose codings have to be looked up
+   * @return The urls of the ValueSets that contain at least one of the codings.
+   */
+  public Set<String> getValueSetsForCodeableConcept(CodeableConcept cc) {
+
+    if (cc == null || !cc.hasCoding()) {
+      return Collections.emptySet();
+    }
+
+    Set<String> urls = new HashSet<>();
+    for (Coding c : cc.getCoding()) {
+      urls.addAll(getValueSetsForCode(c.getSystem(), c.getCode()));
+    }
+    return urls;
+  }
+
+  public int size() {
+    return codesByValueSet.size();
+  }
+
+  public static String getKey(String system, String code) {
+    return system + SEPARATOR + code;
+  }
+}
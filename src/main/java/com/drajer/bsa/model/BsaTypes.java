@@ -18,10 +18,12 @@ public final class BsaTypes {
   }
 
   public enum NotificationProcessingStatusType {
+    QUEUED,
     IN_PROGRESS,
     SUSPENDED,
     COMPLETED,
     CANCELLED,
+    FAILED,
     Unknown
   }
 
@@ -68,21 +70,31 @@ public final class BsaTypes {
     MESSAGE_REPORT,
   }
 
+  public enum SubmissionStatusType {
+    QUEUED,
+    SENT,
+    FAILED
+  }
+
   public static String getNotificationStatusTypeString(NotificationProcessingStatusType nst) {
 
-    if (nst == NotificationProcessingStatusType.IN_PROGRESS) return "IN_PROGRESS";
+    if (nst == NotificationProcessingStatusType.QUEUED) return "QUEUED";
+    else if (nst == NotificationProcessingStatusType.IN_PROGRESS) return "IN_PROGRESS";
     else if (nst == NotificationProcessingStatusType.SUSPENDED) return "SUSPENDED";
     else if (nst == NotificationProcessingStatusType.COMPLETED) return "COMPLETED";
     else if (nst == NotificationProcessingStatusType.CANCELLED) return "CANCELLED";
+    else if (nst == NotificationProcessingStatusType.FAILED) return "FAILED";
     else return UNKNOWN;
   }
 
   public static NotificationProcessingStatusType getNotificationProcessingStatusType(String s) {
 
-    if (s.contentEquals("IN_PROGRESS")) return NotificationProcessingStatusType.IN_PROGRESS;
+    if (s.contentEquals("QUEUED")) return NotificationProcessingStatusType.QUEUED;
+    else if (s.contentEquals("IN_PROGRESS")) return NotificationProcessingStatusType.IN_PROGRESS;
     else if (s.contentEquals("SUSPENDED")) return NotificationProcessingStatusType.SUSPENDED;
     else if (s.contentEquals("COMPLETED")) return NotificationProcessingStatusType.COMPLETED;
     else if (s.contentEquals("CANCELLED")) return NotificationProcessingStatusType.CANCELLED;
+    else if (s.contentEquals("FAILED")) return NotificationProcessingStatusType.FAILED;
     else return NotificationProcessingStatusType.Unknown;
   }
 
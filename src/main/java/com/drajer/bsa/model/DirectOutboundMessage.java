@@ -0,0 +1,179 @@
+package com.drajer.bsa.model;
+
+import java.util.Date;
+import java.util.UUID;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
+
+/**
+ *
+ *
+ * <h1>DirectOutboundMessage</h1>
+ *
+ * The Entity represents an eICR waiting in the outbound queue to be sent using Direct. The messages
+ * are sent by the DirectOutboundQueueJob, which claims a message by incrementing its version, so
+ * that a message is sent by only one instance of the application at a time. A message is deleted
+ * once sent, and kept with the FAILED status when all the attempts to send it failed.
+ */
+@Entity
+@Table(name = "direct_outbound_queue")
+@DynamicUpdate
+public class DirectOutboundMessage {
+
+  public enum Status {
+    PENDING,
+    SENDING,
+    FAILED
+  }
+
+  /** The attribute represents the primary key for the table and is auto generated. */
+  @Id @GeneratedValue private UUID id;
+
+  /** The attribute represents the PublicHealthMessage tracking the eICR. */
+  @Column(name = "ph_message_id", nullable = true, columnDefinition = "uuid")
+  private UUID phMessageId;
+
+  /** The attribute represents the HealthcareSetting providing the Direct account. */
+  @Column(name = "hs_id", nullable = false)
+  private Integer hsId;
+
+  @Column(name = "correlation_id", nullable = true, columnDefinition = "TEXT")
+  private String correlationId;
+
+  @Column(name = "recipient_address", nullable = false, columnDefinition = "TEXT")
+  private String recipientAddress;
+
+  /** The attribute represents the CDA eICR sent as the attachment of the message. */
+  @Column(name = "payload", nullable = false, columnDefinition = "TEXT")
+  private String payload;
+
+  @Column(name = "status", nullable = false, columnDefinition = "TEXT")
+  @Enumerated(EnumType.STRING)
+  private Status status;
+
+  /** The attribute represents the number of attempts made to send the message. */
+  @Column(name = "attempts", nullable = false)
+  private int attempts;
+
+  /**
+   * The attribute represents the time of the next attempt. While a message is being sent, it is the
+   * time after which the message can be claimed again, in case the sending instance stopped.
+   */
+  @Column(name = "next_attempt_ts", nullable = false)
+  private Date nextAttemptTime;
+
+  @Column(name = "last_error", nullable = true, columnDefinition = "TEXT")
+  private String lastError;
+
+  /** The attribute is incremented by every update, to claim the message for sending. */
+  @Column(name = "version", nullable = false)
+  private int version;
+
+  /** This attribute represents the last time when the object was updated. */
+  @Column(name = "last_updated_ts", nullable = false)
+  @CreationTimestamp
+  private Date lastUpdated;
+
+  public UUID getId() {
+    return id;
+  }
+
+  public void setId(UUID id) {
+    this.id = id;
+  }
+
+  public UUID getPhMessageId() {
+    return phMessageId;
+  }
+
+  public void setPhMessageId(UUID phMessageId) {
+    this.phMessageId = phMessageId;
+  }
+
+  public Integer getHsId() {
+    return hsId;
+  }
+
+  public void setHsId(Integer hsId) {
+    this.hsId = hsId;
+  }
+
+  public String getCorrelationId() {
+    return correlationId;
+  }
+
+  public void setCorrelationId(String correlationId) {
+    this.correlationId = correlationId;
+  }
+
+  public String getRecipientAddress() {
+    return recipientAddress;
+  }
+
+  public void setRecipientAddress(String recipientAddress) {
+    this.recipientAddress = recipientAddress;
+  }
+
+  public String getPayload() {
+    return payload;
+  }
+
+  public void setPayload(String payload) {
+    this.payload = payload;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(Status status) {
+    this.status = status;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
+
+  public Date getNextAttemptTime() {
+    return nextAttemptTime;
+  }
+
+  public void setNextAttemptTime(Date nextAttemptTime) {
+    this.nextAttemptTime = nextAttemptTime;
+  }
+
+  public String getLastError() {
+    return lastError;
+  }
+
+  public void setLastError(String lastError) {
+    this.lastError = lastError;
+  }
+
+  public int getVersion() {
+    return version;
+  }
+
+  public void setVersion(int version) {
+    this.version = version;
+  }
+
+  public Date getLastUpdated() {
+    return lastUpdated;
+  }
+
+  public void setLastUpdated(Date lastUpdated) {
+    this.lastUpdated = lastUpdated;
+  }
+}
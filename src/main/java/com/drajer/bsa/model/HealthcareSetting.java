@@ -354,6 +354,14 @@ public class HealthcareSetting implements FhirServerDetails {
   @CreationTimestamp
   private Date lastUpdated;
 
+  /**
+   * This attribute is incremented whenever the HealthcareSetting or the status of its Knowledge
+   * Artifacts is changed, so that the cached copies of the HealthcareSetting can be invalidated. It
+   * is only updated by the HealthcareSettingsDao.
+   */
+  @Column(name = "config_version", nullable = true, insertable = false, updatable = false)
+  private Integer configVersion;
+
   /**
    * This is an object that is used for convenience to exchange the information as objects. The data
    * itself gets stored in the karsActive attribute in the database.
@@ -560,6 +568,14 @@ public class HealthcareSetting implements FhirServerDetails {
     this.lastUpdated = lastUpdated;
   }
 
+  public Integer getConfigVersion() {
+    return configVersion;
+  }
+
+  public void setConfigVersion(Integer configVersion) {
+    this.configVersion = configVersion;
+  }
+
   public Boolean getRequireAud() {
     return requireAud;
   }
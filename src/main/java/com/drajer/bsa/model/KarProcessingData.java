@@ -31,6 +31,14 @@ import org.slf4j.LoggerFactory;
  * The KarProcessingData holds all the input and output data that is relevant during the application
  * of a KAR to a Patient.
  *
+ * <p>The methods that add and look up fetched resources are synchronized, since the queries of an
+ * action may be executed concurrently against the EHR. While such queries are running, the lookups
+ * return copies of the fetched resources, so that a caller can iterate them while other queries
+ * are still adding resources. Otherwise the lookups return the fetched resources themselves. The
+ * queries executed concurrently add their resources within a QueryResultGate, which is closed when
+ * the caller stops waiting for the queries, so that a query still running after a timeout does not
+ * add its resources once the action has moved on.
+ *
  * @author nbashyam
  */
 public class KarProcessingData {
@@ -171,6 +179,12 @@ public class KarProcessingData {
   /** The type of job to be executed on the infrastructure */
   private BsaJobType jobType;
 
+  /** The gate of the query running on the current thread, if it runs concurrently. */
+  private final ThreadLocal<QueryResultGate> currentQueryResultGate = new ThreadLocal<>();
+
+  /** The number of gates which are open, while queries may be adding resources concurrently. */
+  private int openQueryResultGates;
+
   public void addActionOutput(String actionId, Resource res) {
 
     if (actionOutputData.containsKey(actionId)) {
@@ -201,24 +215,24 @@ public class KarProcessingData {
     logger.info("addNotifiedResource:TO DO:{}{}", resId, res);
   }
 
-  public Set<Resource> getResourcesByType(String type) {
+  public synchronized Set<Resource> getResourcesByType(String type) {
 
     for (Map.Entry<ResourceType, Set<Resource>> entry : fhirInputDataByType.entrySet()) {
 
       if (entry.getKey().toString().contentEquals(type)) {
-        return entry.getValue();
+        return snapshotOf(entry.getValue());
       }
     }
 
     return Collections.emptySet();
   }
 
-  public Set<Resource> getResourcesByType(ResourceType type) {
+  public synchronized Set<Resource> getResourcesByType(ResourceType type) {
 
     for (Map.Entry<ResourceType, Set<Resource>> entry : fhirInputDataByType.entrySet()) {
 
       if (entry.getKey() == type) {
-        return entry.getValue();
+        return snapshotOf(entry.getValue());
       }
     }
 
@@ -264,7 +278,11 @@ public class KarProcessingData {
     return statuses;
   }
 
-  public void addResourcesByType(Map<ResourceType, Set<Resource>> res) {
+  public synchronized void addResourcesByType(Map<ResourceType, Set<Resource>> res) {
+
+    if (!acceptsQueryResults()) {
+      return;
+    }
 
     if (res != null && res.size() > 0) {
 
@@ -276,7 +294,11 @@ public class KarProcessingData {
     }
   }
 
-  public void addResourcesByType(ResourceType type, Set<Resource> res) {
+  public synchronized void addResourcesByType(ResourceType type, Set<Resource> res) {
+
+    if (!acceptsQueryResults()) {
+      return;
+    }
 
     if (res != null && !res.isEmpty()) {
 
@@ -293,7 +315,11 @@ public class KarProcessingData {
     }
   }
 
-  public void addResourceByType(ResourceType type, Resource res) {
+  public synchronized void addResourceByType(ResourceType type, Resource res) {
+
+    if (!acceptsQueryResults()) {
+      return;
+    }
 
     if (res != null) {
 
@@ -312,13 +338,22 @@ public class KarProcessingData {
     }
   }
 
-  public void addResourcesById(String id, Set<Resource> res) {
+  public synchronized void addResourcesById(String id, Set<Resource> res) {
+
+    if (!acceptsQueryResults()) {
+      return;
+    }
+
     if (res != null && !res.isEmpty()) {
       fhirInputDataById.put(id, res);
     }
   }
 
-  public void addResourceById(String dataReqId, Resource res) {
+  public synchronized void addResourceById(String dataReqId, Resource res) {
+
+    if (!acceptsQueryResults()) {
+      return;
+    }
 
     if (fhirInputDataById.containsKey(dataReqId)) {
       Set<Resource> resources = fhirInputDataById.get(dataReqId);
@@ -333,7 +368,11 @@ public class KarProcessingData {
     }
   }
 
-  public void addResourcesById(HashMap<String, Set<Resource>> res) {
+  public synchronized void addResourcesById(HashMap<String, Set<Resource>> res) {
+
+    if (!acceptsQueryResults()) {
+      return;
+    }
 
     if (res != null && res.size() > 0) {
 
@@ -362,7 +401,11 @@ public class KarProcessingData {
     }
   }
 
-  public void resetResourcesById(HashMap<String, Set<Resource>> res) {
+  public synchronized void resetResourcesById(HashMap<String, Set<Resource>> res) {
+
+    if (!acceptsQueryResults()) {
+      return;
+    }
 
     if (res != null && res.size() > 0) {
 
@@ -376,7 +419,11 @@ public class KarProcessingData {
     }
   }
 
-  public void storeResourceById(String id, Resource r) {
+  public synchronized void storeResourceById(String id, Resource r) {
+
+    if (!acceptsQueryResults()) {
+      return;
+    }
 
     if (!resourcesById.containsKey(id)) {
       resourcesById.put(id, r);
@@ -385,7 +432,7 @@ public class KarProcessingData {
     }
   }
 
-  public Resource getResourceById(String id) {
+  public synchronized Resource getResourceById(String id) {
 
     if (resourcesById.containsKey(id)) {
       return resourcesById.get(id);
@@ -493,16 +540,21 @@ public class KarProcessingData {
     this.notificationBundle = notificationBundle;
   }
 
-  public HashMap<ResourceType, Set<Resource>> getFhirInputDataByType() {
-    return fhirInputDataByType;
+  /** @return The fetched resources by type, copied while queries are running concurrently. */
+  public synchronized HashMap<ResourceType, Set<Resource>> getFhirInputDataByType() {
+    return copyOf(fhirInputDataByType);
   }
 
   public void setFhirInputDataByType(HashMap<ResourceType, Set<Resource>> fhirInputDataByType) {
     this.fhirInputDataByType = fhirInputDataByType;
   }
 
-  public HashMap<String, Set<Resource>> getFhirInputDataById() {
-    return fhirInputDataById;
+  /**
+   * @return The fetched resources by data requirement id, copied while queries are running
+   *     concurrently.
+   */
+  public synchronized HashMap<String, Set<Resource>> getFhirInputDataById() {
+    return copyOf(fhirInputDataById);
   }
 
   public void setFhirInputDataById(HashMap<String, Set<Resource>> fhirInputDataById) {
@@ -664,7 +716,7 @@ public class KarProcessingData {
     this.jobType = jobType;
   }
 
-  public boolean isDataAlreadyFetched(String dataReqId, String relatedDataId) {
+  public synchronized boolean isDataAlreadyFetched(String dataReqId, String relatedDataId) {
 
     boolean returnVal = false;
 
@@ -711,8 +763,9 @@ public class KarProcessingData {
     return this.getHealthcareSetting().getEhrAccessToken();
   }
 
-  public Set<Resource> getResourcesById(String id) {
-    return getFhirInputDataById().get(id);
+  public synchronized Set<Resource> getResourcesById(String id) {
+    Set<Resource> resources = fhirInputDataById.get(id);
+    return snapshotOf(resources);
   }
 
   public Set<Resource> getDataForId(String dataReqId, Map<String, String> relatedDataIds) {
@@ -729,7 +782,7 @@ public class KarProcessingData {
     return resources;
   }
 
-  public Set<Resource> getDataForId(String id, String relatedDataId) {
+  public synchronized Set<Resource> getDataForId(String id, String relatedDataId) {
 
     Set<Resource> resources = null;
     if (relatedDataId != null && actionOutputDataById.containsKey(relatedDataId)) {
@@ -752,7 +805,7 @@ public class KarProcessingData {
       resources = fhirInputDataById.get(id);
     }
 
-    return resources;
+    return snapshotOf(resources);
   }
 
   public Map<String, Parameters> getParametersForConditionEvaluation() {
@@ -847,10 +900,95 @@ public class KarProcessingData {
     }
   }
 
-  public boolean containsResourceWithId(String resourceId) {
+  public synchronized boolean containsResourceWithId(String resourceId) {
 
     if (resourcesById.containsKey(resourceId)) {
       return true;
     } else return false;
   }
+
+  /**
+   * Method to create the gate through which the queries executed concurrently add their resources.
+   *
+   * @return The open gate.
+   */
+  public synchronized QueryResultGate openQueryResultGate() {
+    openQueryResultGates++;
+    return new QueryResultGate();
+  }
+
+  /**
+   * Method to run a query on the current thread, adding its resources through the gate.
+   *
+   * @param gate The gate of the queries.
+   * @param query The query.
+   */
+  public void runWithQueryResultGate(QueryResultGate gate, Runnable query) {
+
+    currentQueryResultGate.set(gate);
+    try {
+      query.run();
+    } finally {
+      currentQueryResultGate.remove();
+    }
+  }
+
+  /**
+   * Method to close the gate, after which the resources of the queries still running are dropped.
+   *
+   * @param gate The gate of the queries.
+   */
+  public synchronized void closeQueryResultGate(QueryResultGate gate) {
+
+    if (gate.open) {
+      gate.open = false;
+      openQueryResultGates--;
+    }
+  }
+
+  // Called with the lock held, so that a gate is not closed while a query adds its resources.
+  private boolean acceptsQueryResults() {
+
+    QueryResultGate gate = currentQueryResultGate.get();
+
+    if (gate != null && !gate.open) {
+      logger.warn(" Dropping the resources of a query which completed after its timeout");
+      return false;
+    }
+
+    return true;
+  }
+
+  // Called with the lock held.
+  private Set<Resource> snapshotOf(Set<Resource> resources) {
+
+    if (resources == null || openQueryResultGates == 0) {
+      return resources;
+    }
+
+    return new HashSet<>(resources);
+  }
+
+  // Called with the lock held.
+  private <K> HashMap<K, Set<Resource>> copyOf(HashMap<K, Set<Resource>> resources) {
+
+    if (resources == null || openQueryResultGates == 0) {
+      return resources;
+    }
+
+    HashMap<K, Set<Resource>> copy = new HashMap<>();
+    for (Map.Entry<K, Set<Resource>> entry : resources.entrySet()) {
+      copy.put(entry.getKey(), new HashSet<>(entry.getValue()));
+    }
+
+    return copy;
+  }
+
+  /** The gate through which the queries executed concurrently add their resources. */
+  public static final class QueryResultGate {
+
+    private boolean open = true;
+
+    private QueryResultGate() {}
+  }
 }
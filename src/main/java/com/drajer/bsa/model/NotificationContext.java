@@ -1,8 +1,10 @@
 package com.drajer.bsa.model;
 
+import com.drajer.ecrapp.payload.PayloadConverter;
 import java.util.Date;
 import java.util.UUID;
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
@@ -59,7 +61,8 @@ public class NotificationContext {
   private String notificationResourceType;
 
   /**
-   * The attribute represents the status of the notification processing. IN_PROGRESS - Will be
+   * The attribute represents the status of the notification processing. QUEUED - Will be the status
+   * when the notification has been accepted and is waiting to be processed. IN_PROGRESS - Will be
    * status as long as the timers are scheduled for the encounter. SUSPENDED - Will be the status
    * when the processing is terminated in the app for any reason. (e.g Long Encounter Time threshold
    * reached). COMPLETED - Completed based on the status of the timers. CANCELLED - Launch Request
@@ -78,6 +81,7 @@ public class NotificationContext {
    * The attribute represents the data received as part of the notification. This is a FHIR Bundle,
    * stored as part of the table.
    */
+  @Convert(converter = PayloadConverter.class)
   @Column(name = "notification_data", nullable = false, columnDefinition = "TEXT")
   private String notificationData;
 
@@ -1,8 +1,10 @@
 package com.drajer.bsa.model;
 
+import com.drajer.ecrapp.payload.PayloadConverter;
 import java.util.Date;
 import java.util.UUID;
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
@@ -75,10 +77,12 @@ public class PublicHealthMessage {
   private String xRequestId;
 
   /** The attribute represents the submitted data to the TTP/PHA in FHIR format. */
+  @Convert(converter = PayloadConverter.class)
   @Column(name = "submitted_fhir_data", nullable = true, columnDefinition = "TEXT")
   private String submittedFhirData;
 
   /** The attribute represents the submitted data to the TTP/PHA in CDA format. */
+  @Convert(converter = PayloadConverter.class)
   @Column(name = "submitted_cda_data", nullable = true, columnDefinition = "TEXT")
   private String submittedCdaData;
 
@@ -126,6 +130,7 @@ public class PublicHealthMessage {
    * The attribute represents the response data received from the TTP/PHA for the healthcare setting
    * in FHIR format.
    */
+  @Convert(converter = PayloadConverter.class)
   @Column(name = "fhir_response_data", nullable = true, columnDefinition = "TEXT")
   private String fhirResponseData;
 
@@ -133,6 +138,7 @@ public class PublicHealthMessage {
    * The attribute represents the response data received from the TTP/PHA for the healthcare setting
    * in CDA format.
    */
+  @Convert(converter = PayloadConverter.class)
   @Column(name = "cda_response_data", nullable = true, columnDefinition = "TEXT")
   private String cdaResponseData;
 
@@ -140,6 +146,7 @@ public class PublicHealthMessage {
    * The attribute represents the response data received from the TTP/PHA for the healthcare setting
    * when the messages fail due to any reason. This will hold information such as FailureMDNs etc.
    */
+  @Convert(converter = PayloadConverter.class)
   @Column(name = "failure_response_data", nullable = true, columnDefinition = "TEXT")
   private String failureResponseData;
 
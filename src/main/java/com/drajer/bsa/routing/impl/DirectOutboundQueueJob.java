@@ -0,0 +1,226 @@
+package com.drajer.bsa.routing.impl;
+
+import com.drajer.bsa.dao.DirectOutboundQueueDao;
+import com.drajer.bsa.dao.HealthcareSettingsDao;
+import com.drajer.bsa.dao.PublicHealthMessagesDao;
+import com.drajer.bsa.model.BsaTypes.SubmissionStatusType;
+import com.drajer.bsa.model.DirectOutboundMessage;
+import com.drajer.bsa.model.HealthcareSetting;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>DirectOutboundQueueJob</h1>
+ *
+ * The job sends the eICRs of the outbound queue using a fixed number of threads, each sending one
+ * message at a time over a pooled SMTP connection, so that a slow HISP does not hold up the
+ * scheduler threads processing the notifications. A message which cannot be sent is retried with
+ * an exponential backoff, and is marked as FAILED once all the attempts failed. The submission
+ * status of the PublicHealthMessage is updated with the result.
+ */
+@Component
+public class DirectOutboundQueueJob {
+
+  private final Logger logger = LoggerFactory.getLogger(DirectOutboundQueueJob.class);
+
+  /** Flag to indicate if the eICRs are queued and sent by the job. */
+  @Value("${direct.outbound.queue.enabled:false}")
+  private Boolean enabled;
+
+  /** The number of messages sent concurrently. */
+  @Value("${direct.outbound.queue.threads:4}")
+  private int threads;
+
+  /** The number of due messages read from the queue at a time. */
+  @Value("${direct.outbound.queue.batch-size:20}")
+  private int batchSize;
+
+  @Value("${direct.outbound.queue.max-attempts:8}")
+  private int maxAttempts;
+
+  @Value("${direct.outbound.queue.retry.initial-delay-ms:60000}")
+  private long initialRetryDelayMs;
+
+  @Value("${direct.outbound.queue.retry.max-delay-ms:3600000}")
+  private long maxRetryDelayMs;
+
+  /** The time after which a message being sent can be claimed again by another instance. */
+  @Value("${direct.outbound.queue.claim-timeout-ms:300000}")
+  private long claimTimeoutMs;
+
+  @Autowired DirectOutboundQueueDao queueDao;
+
+  @Autowired HealthcareSettingsDao hsDao;
+
+  @Autowired PublicHealthMessagesDao phDao;
+
+  @Autowired DirectTransportImpl directTransport;
+
+  private ExecutorService executor;
+
+  @PostConstruct
+  public void initialize() {
+
+    if (Boolean.TRUE.equals(enabled)) {
+      AtomicInteger count = new AtomicInteger(0);
+      executor =
+          Executors.newFixedThreadPool(
+              threads,
+              r -> {
+                Thread t = new Thread(r, "DirectOutbound-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+              });
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  @Scheduled(
+      initialDelayString = "${direct.outbound.queue.initial-delay-ms:10000}",
+      fixedDelayString = "${direct.outbound.queue.delay-ms:5000}")
+  public void drain() {
+
+    if (!Boolean.TRUE.equals(enabled)) {
+      return;
+    }
+
+    List<DirectOutboundMessage> due;
+    int claimed;
+
+    do {
+      due = queueDao.getDueMessages(new Date(), batchSize);
+      claimed = 0;
+
+      List<Future<?>> results = new ArrayList<>();
+      for (DirectOutboundMessage message : due) {
+
+        Date claimedUntil = new Date(System.currentTimeMillis() + claimTimeoutMs);
+        if (queueDao.claim(message, claimedUntil)) {
+          claimed++;
+          results.add(executor.submit(() -> send(message)));
+        }
+      }
+
+      if (!waitFor(results)) {
+        return;
+      }
+
+    } while (due.size() == batchSize && claimed > 0);
+  }
+
+  /**
+   * Method to send a claimed message. The message is deleted once sent, and rescheduled or marked
+   * as FAILED otherwise.
+   *
+   * @param message The claimed message.
+   */
+  public void send(DirectOutboundMessage message) {
+
+    try {
+      HealthcareSetting hs = hsDao.getHealthcareSettingById(message.getHsId());
+
+      if (hs == null) {
+        throw new IllegalStateException("HealthcareSetting " + message.getHsId() + " not found");
+      }
+
+      if (!directTransport.sendEicr(
+          hs, message.getRecipientAddress(), message.getPayload(), message.getCorrelationId())) {
+        throw new IllegalStateException("Both Direct Host and SMTP Urls are empty");
+      }
+
+      queueDao.delete(message);
+      updateSubmissionStatus(message, SubmissionStatusType.SENT, new Date());
+
+      logger.info(" Sent the queued eICR {} via Direct", message.getId());
+
+    } catch (Exception e) {
+
+      message.setAttempts(message.getAttempts() + 1);
+      message.setLastError(e.getMessage());
+
+      if (message.getAttempts() >= maxAttempts) {
+
+        logger.error(
+            " Failed to send the queued eICR {} after {} attempts",
+            message.getId(),
+            message.getAttempts(),
+            e);
+
+        message.setStatus(DirectOutboundMessage.Status.FAILED);
+        queueDao.updateAttempt(message);
+        updateSubmissionStatus(message, SubmissionStatusType.FAILED, null);
+
+      } else {
+
+        long delay = getRetryDelay(message.getAttempts(), initialRetryDelayMs, maxRetryDelayMs);
+
+        logger.error(
+            " Failed to send the queued eICR {}, retrying in {} ms", message.getId(), delay, e);
+
+        message.setStatus(DirectOutboundMessage.Status.PENDING);
+        message.setNextAttemptTime(new Date(System.currentTimeMillis() + delay));
+        queueDao.updateAttempt(message);
+      }
+    }
+  }
+
+  /**
+   * Method to compute the delay before the next attempt, which doubles with every failed attempt.
+   *
+   * @param attempts The number of failed attempts.
+   * @param initialDelayMs The delay after the first failed attempt.
+   * @param maxDelayMs The maximum delay.
+   * @return The delay in milliseconds.
+   */
+  public static long getRetryDelay(int attempts, long initialDelayMs, long maxDelayMs) {
+
+    int doublings = Math.min(Math.max(attempts - 1, 0), 30);
+    return Math.min(initialDelayMs << doublings, maxDelayMs);
+  }
+
+  private void updateSubmissionStatus(
+      DirectOutboundMessage message, SubmissionStatusType status, Date submissionTime) {
+
+    if (message.getPhMessageId() != null) {
+      phDao.updateSubmissionStatus(message.getPhMessageId(), status.toString(), submissionTime);
+    }
+  }
+
+  private boolean waitFor(List<Future<?>> results) {
+
+    for (Future<?> result : results) {
+      try {
+        result.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      } catch (ExecutionException e) {
+        logger.error(" Error sending a queued eICR ", e);
+      }
+    }
+
+    return true;
+  }
+}
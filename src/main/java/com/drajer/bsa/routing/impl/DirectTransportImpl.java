@@ -1,35 +1,37 @@
 package com.drajer.bsa.routing.impl;
 
+import com.drajer.bsa.dao.DirectOutboundQueueDao;
+import com.drajer.bsa.dao.PublicHealthMessagesDao;
+import com.drajer.bsa.model.BsaTypes.SubmissionStatusType;
+import com.drajer.bsa.model.DirectOutboundMessage;
 import com.drajer.bsa.model.HealthcareSetting;
 import com.drajer.bsa.model.KarProcessingData;
+import com.drajer.bsa.model.PublicHealthMessage;
 import com.drajer.bsa.routing.DataTransportInterface;
 import com.drajer.bsa.service.RrReceiver;
 import com.drajer.ecrapp.model.EicrTypes;
 import com.drajer.ecrapp.model.ReportabilityResponse;
+import com.drajer.routing.impl.ImapMailbox;
+import com.drajer.routing.impl.ImapMailboxes;
 import java.io.File;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Date;
 import java.util.Enumeration;
-import java.util.Properties;
 import java.util.UUID;
 import javax.activation.DataHandler;
 import javax.activation.DataSource;
 import javax.mail.Address;
 import javax.mail.BodyPart;
-import javax.mail.Flags;
-import javax.mail.Folder;
 import javax.mail.Header;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Multipart;
 import javax.mail.Session;
-import javax.mail.Store;
-import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
-import javax.mail.search.FlagTerm;
 import javax.mail.util.ByteArrayDataSource;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -38,6 +40,7 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /*
@@ -51,11 +54,21 @@ public class DirectTransportImpl implements DataTransportInterface {
   private static final Logger logger = LoggerFactory.getLogger(DirectTransportImpl.class);
 
   private static final String CDA_FILE_NAME = "eICR_Report";
-  private static final String IMAP = "imap";
-  private static final String INBOX = "Inbox";
 
   @Autowired RrReceiver rrReceiver;
 
+  @Autowired ImapMailboxes mailboxes;
+
+  @Autowired SmtpTransportPool smtpPool;
+
+  @Autowired DirectOutboundQueueDao queueDao;
+
+  @Autowired PublicHealthMessagesDao phDao;
+
+  /** Flag to indicate if the eICRs are queued and sent by the DirectOutboundQueueJob. */
+  @Value("${direct.outbound.queue.enabled:false}")
+  private Boolean queueEnabled;
+
   public class DirectMimeMessage extends MimeMessage {
 
     Session sessions;
@@ -77,7 +90,8 @@ public class DirectTransportImpl implements DataTransportInterface {
 
   /**
    * The method is used to send data to a PHA/TTP using Direct Transport. As a direct client, the
-   * implementer has to connect to a HISP and then send the message via Direct.
+   * implementer has to connect to a HISP and then send the message via Direct. When the outbound
+   * queue is enabled, the eICR is added to the queue and sent by the DirectOutboundQueueJob.
    *
    * @param data - The KarProcessingData that contains the necessary data to process and send the
    *     information.
@@ -87,49 +101,22 @@ public class DirectTransportImpl implements DataTransportInterface {
 
     logger.info(" **** START Executing Direct Transmission **** ");
 
-    String payload = data.getSubmittedCdaData();
-
-    InputStream is = IOUtils.toInputStream(payload, StandardCharsets.UTF_8);
-
     HealthcareSetting hs = data.getHealthcareSetting();
 
-    try {
+    if (Boolean.TRUE.equals(queueEnabled)) {
 
-      logger.info(
-          " Sending Mail from {} to {}", hs.getDirectUser(), hs.getDirectRecipientAddress());
+      enqueue(data);
+      return;
+    }
 
-      if (!StringUtils.isEmpty(hs.getSmtpUrl())) {
+    String recipientAddr = hs.getDirectRecipientAddress();
 
-        logger.info("Using SMTP URL {} to send the data", hs.getSmtpUrl());
+    try {
 
-        sendMail(
-            hs.getSmtpUrl(),
-            hs.getDirectUser(),
-            hs.getDirectPwd(),
-            hs.getSmtpPort(),
-            hs.getDirectRecipientAddress(),
-            is,
-            CDA_FILE_NAME,
-            data.getxCorrelationId());
+      if (sendEicr(hs, recipientAddr, data.getSubmittedCdaData(), data.getxCorrelationId())) {
 
         logger.info(" Finished sending the message using Direct ");
-
-      } else if (!StringUtils.isEmpty(hs.getDirectHost())) {
-
-        logger.info("Using Direct Host to send:::::{}", hs.getDirectHost());
-
-        sendMail(
-            hs.getDirectHost(),
-            hs.getDirectUser(),
-            hs.getDirectPwd(),
-            hs.getSmtpPort(),
-            hs.getDirectRecipientAddress(),
-            is,
-            CDA_FILE_NAME,
-            data.getxCorrelationId());
-      } else {
-
-        logger.error(" Cannot send Direct message since both Direct Host and SMTP Urls are empty ");
+        updateSubmissionStatus(data.getPhm(), SubmissionStatusType.SENT);
       }
 
     } catch (Exception e) {
@@ -137,54 +124,137 @@ public class DirectTransportImpl implements DataTransportInterface {
       String msg = "Unable to send Direct Message due to a connection exception";
       logger.error(msg, e);
 
+      updateSubmissionStatus(data.getPhm(), SubmissionStatusType.FAILED);
       throw new RuntimeException(msg);
     }
   }
 
+  /**
+   * The method adds the eICR to the outbound queue, the credentials of the Direct account are read
+   * from the HealthcareSetting when the eICR is sent.
+   *
+   * @param data - The KarProcessingData that contains the eICR to send.
+   * @return The queued message.
+   */
+  public DirectOutboundMessage enqueue(KarProcessingData data) {
+
+    HealthcareSetting hs = data.getHealthcareSetting();
+
+    DirectOutboundMessage message = new DirectOutboundMessage();
+    message.setHsId(hs.getId());
+    message.setPhMessageId(data.getPhm() != null ? data.getPhm().getId() : null);
+    message.setCorrelationId(data.getxCorrelationId());
+    message.setRecipientAddress(hs.getDirectRecipientAddress());
+    message.setPayload(data.getSubmittedCdaData());
+    message.setStatus(DirectOutboundMessage.Status.PENDING);
+    message.setNextAttemptTime(new Date());
+
+    queueDao.saveOrUpdate(message);
+    updateSubmissionStatus(data.getPhm(), SubmissionStatusType.QUEUED);
+
+    logger.info(" Queued the eICR for sending via Direct with queue id {}", message.getId());
+    return message;
+  }
+
+  /**
+   * The method sends the eICR using the SMTP URL or the Direct Host of the HealthcareSetting.
+   *
+   * @param hs - The HealthcareSetting providing the Direct account.
+   * @param recipientAddr - The Direct address of the PHA/TTP.
+   * @param payload - The eICR.
+   * @param correlationId - The correlation id used as the Message-ID of the message.
+   * @return false when both the SMTP URL and the Direct Host are empty.
+   * @throws MessagingException when the message cannot be sent.
+   */
+  public boolean sendEicr(
+      HealthcareSetting hs, String recipientAddr, String payload, String correlationId)
+      throws MessagingException {
+
+    logger.info(" Sending Mail from {} to {}", hs.getDirectUser(), recipientAddr);
+
+    String host;
+    if (!StringUtils.isEmpty(hs.getSmtpUrl())) {
+
+      logger.info("Using SMTP URL {} to send the data", hs.getSmtpUrl());
+      host = hs.getSmtpUrl();
+
+    } else if (!StringUtils.isEmpty(hs.getDirectHost())) {
+
+      logger.info("Using Direct Host to send:::::{}", hs.getDirectHost());
+      host = hs.getDirectHost();
+
+    } else {
+
+      logger.error(" Cannot send Direct message since both Direct Host and SMTP Urls are empty ");
+      return false;
+    }
+
+    sendMail(
+        host,
+        hs.getDirectUser(),
+        hs.getDirectPwd(),
+        hs.getSmtpPort(),
+        recipientAddr,
+        payload.getBytes(StandardCharsets.UTF_8),
+        CDA_FILE_NAME,
+        correlationId);
+
+    return true;
+  }
+
+  /**
+   * The method sends the payload as an XML attachment using a pooled connection to the host. The
+   * attachment is built in memory from the payload.
+   */
   public void sendMail(
       String host,
       String username,
       String password,
       String port,
       String recipientAddr,
-      InputStream is,
+      byte[] payload,
       String filename,
       String correlationId)
-      throws Exception {
-
-    Properties props = new Properties();
-
-    // Setup the property to authenticate.
-    props.put("mail.smtp.auth", "true");
+      throws MessagingException {
 
-    // Trust all certificates
-    props.setProperty("mail.smtp.ssl.trust", "*");
+    String toAddr = StringUtils.deleteWhitespace(recipientAddr);
 
-    //  Enable SSL Connections from the client.
-    props.setProperty("mail.smtp.ssl.enable", "true");
+    smtpPool.send(
+        host,
+        Integer.parseInt(port),
+        username,
+        password,
+        session ->
+            createMessage(session, host, username, toAddr, payload, filename, correlationId));
 
-    Session session = Session.getInstance(props, null);
+    logger.info(" Finished sending Direct Message ");
+  }
 
-    logger.info(" Retrieve Session instance for sending Direct mail ");
+  private MimeMessage createMessage(
+      Session session,
+      String host,
+      String username,
+      String toAddr,
+      byte[] payload,
+      String filename,
+      String correlationId)
+      throws MessagingException {
 
     DirectMimeMessage message = new DirectMimeMessage(session, correlationId, host);
 
     logger.info("Setting From Address {}", username);
     message.setFrom(new InternetAddress(username));
 
-    String toAddr = StringUtils.deleteWhitespace(recipientAddr);
-
     message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(toAddr));
 
     logger.info("Finished setting recipients {}", toAddr);
 
     message.setSubject("eICR Report ");
-    message.setText(CDA_FILE_NAME);
 
     logger.info("Creating Message Body Part ");
     BodyPart mimeBodyPart = new MimeBodyPart();
     Multipart multipart = new MimeMultipart();
-    DataSource source = new ByteArrayDataSource(is, "application/xml; charset=UTF-8");
+    DataSource source = new ByteArrayDataSource(payload, "application/xml; charset=UTF-8");
     mimeBodyPart.setDataHandler(new DataHandler(source));
 
     mimeBodyPart.setFileName(filename + ".xml");
@@ -194,16 +264,27 @@ public class DirectTransportImpl implements DataTransportInterface {
     message.setContent(multipart);
 
     logger.info(" Completed constructing the Message ");
-    Transport transport = session.getTransport("smtp");
-    transport.connect(host, Integer.parseInt(port), username, password);
+    return message;
+  }
 
-    logger.info(" Connection successful to the direct host {}", host);
-    transport.sendMessage(message, message.getAllRecipients());
+  /**
+   * The method updates the submission status of the PublicHealthMessage tracking the eICR.
+   *
+   * @param phm - The PublicHealthMessage, can be null.
+   * @param status - The submission status.
+   */
+  public void updateSubmissionStatus(PublicHealthMessage phm, SubmissionStatusType status) {
 
-    logger.info("Finished sending Direct message successfully, closing connection ");
-    transport.close();
+    if (phm != null && phm.getId() != null) {
 
-    logger.info(" Finished sending Direct Message ");
+      Date submissionTime = status == SubmissionStatusType.SENT ? new Date() : null;
+      phDao.updateSubmissionStatus(phm.getId(), status.toString(), submissionTime);
+
+      phm.setSubmissionMessageStatus(status.toString());
+      if (submissionTime != null) {
+        phm.setSubmissionTime(submissionTime);
+      }
+    }
   }
 
   /**
@@ -254,7 +335,9 @@ public class DirectTransportImpl implements DataTransportInterface {
   }
 
   /**
-   * The method is used to receive the mail using HISP's INBOX using IMAP protocol.
+   * The method is used to receive the mail using HISP's INBOX using IMAP protocol. The connection
+   * to the INBOX is kept open between reads and only the messages received since the last read
+   * are fetched.
    *
    * @param host
    * @param username
@@ -267,142 +350,91 @@ public class DirectTransportImpl implements DataTransportInterface {
 
     try {
 
-      String mId;
       logger.info("Reading mail..");
       logger.info("coorleationId:{}", coorleationId);
 
-      // Properties for Javamail
-      Properties props = new Properties();
-      props.put("mail.imap.auth", "true");
-      props.put("mail.imap.ssl.enable", "true");
-      props.put("mail.imap.ssl.trust", "*");
-
-      Session session = Session.getInstance(props, null);
-
-      Store store = session.getStore(IMAP);
+      ImapMailbox mailbox =
+          mailboxes.getMailbox(
+              host, Integer.parseInt(port), username, password, this::handleMessage);
 
-      int portNum = Integer.parseInt(port);
-      logger.info("Connecting to IMAP Inbox");
-      store.connect(host, portNum, username, password);
+      int count = mailbox.read();
+      logger.info(" Finished reading {} new messages from the inbox", count);
 
-      Folder inbox = store.getFolder(INBOX);
-      inbox.open(Folder.READ_WRITE);
-
-      Flags seen = new Flags(Flags.Flag.SEEN);
-      FlagTerm unseenFlagTerm = new FlagTerm(seen, false);
-      Message[] messages = inbox.search(unseenFlagTerm);
-
-      for (Message message : messages) {
+    } catch (Exception e) {
 
-        logger.info("Found unread email");
-        message.getAllHeaders();
+      logger.error("Error while reading mail", e);
+    }
+  }
 
-        mId = getMessageId(message);
-        logger.info("Message-ID: {}", mId);
+  /**
+   * The method handles a message received in the INBOX, the XML attachments are handled as
+   * Reportability Responses.
+   *
+   * @param message
+   * @throws Exception
+   */
+  public void handleMessage(Message message) throws Exception {
 
-        Address[] froms = message.getFrom();
-        String senderAddress = froms == null ? null : ((InternetAddress) froms[0]).getAddress();
+    logger.info("Found unread email");
 
-        if (message.getContent() instanceof Multipart) {
-          Multipart multipart = (Multipart) message.getContent();
-          for (int i = 0; i < multipart.getCount(); i++) {
-            BodyPart bodyPart = multipart.getBodyPart(i);
+    String mId = getMessageId(message);
+    logger.info("Message-ID: {}", mId);
 
-            if (bodyPart.getFileName() != null
-                && (bodyPart.getFileName().contains(".xml")
-                    || bodyPart.getFileName().contains(".XML"))) {
+    Address[] froms = message.getFrom();
+    String senderAddress = froms == null ? null : ((InternetAddress) froms[0]).getAddress();
 
-              logger.debug("Found XML Attachment");
+    if (message.getContent() instanceof Multipart) {
+      Multipart multipart = (Multipart) message.getContent();
+      for (int i = 0; i < multipart.getCount(); i++) {
+        BodyPart bodyPart = multipart.getBodyPart(i);
 
-              try (InputStream stream = bodyPart.getInputStream()) {
+        if (bodyPart.getFileName() != null
+            && (bodyPart.getFileName().contains(".xml")
+                || bodyPart.getFileName().contains(".XML"))) {
 
-                ReportabilityResponse data = new ReportabilityResponse();
-                data.setResponseType(EicrTypes.RrType.REPORTABILITY_RESPONSE.toString());
-                String rrXml = "<?xml version=\"1.0\"?>";
-                rrXml += IOUtils.toString(stream, StandardCharsets.UTF_8);
-                data.setRrXml(rrXml);
+          logger.debug("Found XML Attachment");
 
-                String filename = UUID.randomUUID() + ".xml";
-                FileUtils.writeStringToFile(
-                    new File(filename), data.getRrXml(), StandardCharsets.UTF_8);
+          try (InputStream stream = bodyPart.getInputStream()) {
 
-                // Invoke the rrReceiver Handler for handling Reportability Response.
-                logger.debug(" RrXML : {}", data.getRrXml());
+            ReportabilityResponse data = new ReportabilityResponse();
+            data.setResponseType(EicrTypes.RrType.REPORTABILITY_RESPONSE.toString());
+            String rrXml = "<?xml version=\"1.0\"?>";
+            rrXml += IOUtils.toString(stream, StandardCharsets.UTF_8);
+            data.setRrXml(rrXml);
 
-                rrReceiver.handleReportabilityResponse(data, mId);
-              }
+            String filename = UUID.randomUUID() + ".xml";
+            FileUtils.writeStringToFile(
+                new File(filename), data.getRrXml(), StandardCharsets.UTF_8);
 
-              logger.info(
-                  " Need to determine what to do with the response received from :  {}",
-                  senderAddress);
-            } else {
+            // Invoke the rrReceiver Handler for handling Reportability Response.
+            logger.debug(" RrXML : {}", data.getRrXml());
 
-              logger.info(" Not an XML attachment, so ignoring the multipart file ");
-            }
+            rrReceiver.handleReportabilityResponse(data, mId);
           }
-        } else {
-
-          // Handle Processed and Failure MDN Messages
-          // The MDN format according to RFC3798 is as outlined at
-          // https://datatracker.ietf.org/doc/html/rfc3798#section-3.2.6:
 
-          // Retrieve the Disposition Header
-
-          // Parse to remove the Disposition Mode attribute and retrieve Disposition Type
-
-          // If Type is Processed, dispatchedjust ignore it.
-          // If Type is failed - process Failure MDN
+          logger.info(
+              " Need to determine what to do with the response received from :  {}",
+              senderAddress);
+        } else {
 
-          logger.info("Not a multipart email, so ignoring for now ");
+          logger.info(" Not an XML attachment, so ignoring the multipart file ");
         }
-      } // for all messages
-
-      // Close the inbox since all the reads are done.
-      inbox.close(true);
-
-      // Open a new connection to remove all the deleted messages.
-      deleteMailUsingImap(host, portNum, username, password, session);
-
-    } catch (Exception e) {
-
-      logger.error("Error while reading mail", e);
-    }
-  }
-
-  /**
-   * The method connects to a Direct HISP's INBOX for a specific account and deletes all emails that
-   * have been read already.
-   *
-   * @param host
-   * @param port
-   * @param username
-   * @param password
-   * @param session
-   * @throws Exception
-   */
-  public void deleteMailUsingImap(
-      String host, int port, String username, String password, Session session) throws Exception {
-    logger.info("Deleting mail..");
-
-    Store store = session.getStore(IMAP);
+      }
+    } else {
 
-    logger.info("Connecting to IMAP Inbox");
-    store.connect(host, port, username, password);
+      // Handle Processed and Failure MDN Messages
+      // The MDN format according to RFC3798 is as outlined at
+      // https://datatracker.ietf.org/doc/html/rfc3798#section-3.2.6:
 
-    Folder inbox = store.getFolder(INBOX);
-    inbox.open(Folder.READ_WRITE);
-    Flags seen = new Flags(Flags.Flag.SEEN);
+      // Retrieve the Disposition Header
 
-    FlagTerm seenFlagTerm = new FlagTerm(seen, true);
-    Message[] messages = inbox.search(seenFlagTerm);
+      // Parse to remove the Disposition Mode attribute and retrieve Disposition Type
 
-    for (Message message : messages) {
+      // If Type is Processed, dispatchedjust ignore it.
+      // If Type is failed - process Failure MDN
 
-      logger.info(" Deleting message with id {}", getMessageId(message));
-      message.setFlag(Flags.Flag.DELETED, true);
+      logger.info("Not a multipart email, so ignoring for now ");
     }
-
-    inbox.close(true);
   }
 
   /**
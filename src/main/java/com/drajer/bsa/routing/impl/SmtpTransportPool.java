@@ -0,0 +1,260 @@
+package com.drajer.bsa.routing.impl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PreDestroy;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>SmtpTransportPool</h1>
+ *
+ * This class keeps the authenticated SMTP connections to the HISPs open between messages, so that
+ * sending an eICR does not require a new TLS handshake and login. The idle connections of each
+ * Direct account are reused most recent first, and are closed when they were idle for longer than
+ * the idle timeout or when the account has more idle connections than allowed.
+ */
+@Component
+public class SmtpTransportPool {
+
+  private static final Logger logger = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+  private static final String SMTP = "smtp";
+
+  /** The factory creating the message to send with the Session of the account. */
+  @FunctionalInterface
+  public interface MessageFactory {
+    MimeMessage create(Session session) throws MessagingException;
+  }
+
+  /** The maximum number of idle connections kept open per Direct account. */
+  @Value("${direct.smtp.pool.max-idle:4}")
+  private int maxIdle;
+
+  /** The time after which an idle connection is closed instead of reused. */
+  @Value("${direct.smtp.pool.idle-timeout-ms:60000}")
+  private long idleTimeoutMs;
+
+  @Value("${direct.smtp.connection-timeout-ms:30000}")
+  private long connectionTimeoutMs;
+
+  @Value("${direct.smtp.timeout-ms:60000}")
+  private long timeoutMs;
+
+  @Value("${direct.smtp.ssl.enable:true}")
+  private Boolean sslEnabled;
+
+  private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+
+  /**
+   * Method to send a message using a pooled connection of the Direct account. When a reused
+   * connection fails, the message is sent once more using a new connection.
+   *
+   * @param host The SMTP host.
+   * @param port The SMTP port.
+   * @param username The Direct account.
+   * @param password The password of the account.
+   * @param factory The factory creating the message.
+   * @throws MessagingException when the message cannot be sent.
+   */
+  public void send(String host, int port, String username, String password, MessageFactory factory)
+      throws MessagingException {
+
+    Account account = getAccount(host, port, username, password);
+    MimeMessage message = factory.create(account.session);
+
+    PooledTransport pooled = account.borrow();
+
+    try {
+      pooled.transport.sendMessage(message, message.getAllRecipients());
+    } catch (SendFailedException e) {
+      // The connection is still usable when the server rejected the recipients.
+      account.release(pooled);
+      throw e;
+    } catch (MessagingException e) {
+
+      pooled.close();
+
+      if (!pooled.reused) {
+        throw e;
+      }
+
+      logger.info(" Pooled connection to {} failed, sending with a new connection", host);
+      pooled = account.connect();
+      try {
+        pooled.transport.sendMessage(message, message.getAllRecipients());
+      } catch (MessagingException retryException) {
+        pooled.close();
+        throw retryException;
+      }
+    }
+
+    account.release(pooled);
+  }
+
+  public int getIdleCount(String host, int port, String username) {
+    Account account = accounts.get(getKey(host, port, username));
+    return account == null ? 0 : account.getIdleCount();
+  }
+
+  @PreDestroy
+  public void close() {
+    accounts.values().forEach(Account::close);
+    accounts.clear();
+  }
+
+  private Account getAccount(String host, int port, String username, String password) {
+
+    return accounts.compute(
+        getKey(host, port, username),
+        (key, existing) -> {
+          if (existing != null && existing.password.equals(password)) {
+            return existing;
+          }
+
+          if (existing != null) {
+            existing.close();
+          }
+
+          return new Account(host, port, username, password, getProperties());
+        });
+  }
+
+  private static String getKey(String host, int port, String username) {
+    return host + ":" + port + ":" + username;
+  }
+
+  private Properties getProperties() {
+
+    Properties props = new Properties();
+
+    // Setup the property to authenticate.
+    props.put("mail.smtp.auth", "true");
+
+    // Trust all certificates
+    props.setProperty("mail.smtp.ssl.trust", "*");
+
+    //  Enable SSL Connections from the client.
+    props.setProperty("mail.smtp.ssl.enable", String.valueOf(sslEnabled));
+
+    props.setProperty("mail.smtp.connectiontimeout", String.valueOf(connectionTimeoutMs));
+    props.setProperty("mail.smtp.timeout", String.valueOf(timeoutMs));
+    props.setProperty("mail.smtp.writetimeout", String.valueOf(timeoutMs));
+
+    return props;
+  }
+
+  /** The Session and the idle connections of a Direct account. */
+  private class Account {
+
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final Session session;
+
+    private final Deque<PooledTransport> idle = new ArrayDeque<>();
+    private boolean closed;
+
+    Account(String host, int port, String username, String password, Properties props) {
+      this.host = host;
+      this.port = port;
+      this.username = username;
+      this.password = password;
+      this.session = Session.getInstance(props, null);
+    }
+
+    PooledTransport borrow() throws MessagingException {
+
+      PooledTransport pooled;
+      while ((pooled = pollIdle()) != null) {
+
+        if (System.currentTimeMillis() - pooled.lastUsed <= idleTimeoutMs
+            && pooled.transport.isConnected()) {
+          pooled.reused = true;
+          return pooled;
+        }
+
+        pooled.close();
+      }
+
+      return connect();
+    }
+
+    PooledTransport connect() throws MessagingException {
+
+      Transport transport = session.getTransport(SMTP);
+      transport.connect(host, port, username, password);
+
+      logger.info(" Connection successful to the direct host {}", host);
+      return new PooledTransport(transport);
+    }
+
+    void release(PooledTransport pooled) {
+
+      pooled.lastUsed = System.currentTimeMillis();
+      pooled.reused = false;
+
+      synchronized (this) {
+        if (!closed && idle.size() < maxIdle) {
+          idle.addFirst(pooled);
+          return;
+        }
+      }
+
+      pooled.close();
+    }
+
+    synchronized int getIdleCount() {
+      return idle.size();
+    }
+
+    private synchronized PooledTransport pollIdle() {
+      return idle.pollFirst();
+    }
+
+    void close() {
+
+      Deque<PooledTransport> connections;
+      synchronized (this) {
+        closed = true;
+        connections = new ArrayDeque<>(idle);
+        idle.clear();
+      }
+
+      connections.forEach(PooledTransport::close);
+    }
+  }
+
+  /** A connection of an account, with the time it was last used. */
+  private static class PooledTransport {
+
+    private final Transport transport;
+    private long lastUsed;
+    private boolean reused;
+
+    PooledTransport(Transport transport) {
+      this.transport = transport;
+    }
+
+    void close() {
+      try {
+        transport.close();
+      } catch (MessagingException e) {
+        logger.debug(" Error closing the SMTP connection ", e);
+      }
+    }
+  }
+}
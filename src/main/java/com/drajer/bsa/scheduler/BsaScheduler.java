@@ -10,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -59,4 +60,30 @@ public class BsaScheduler {
                 new ScheduledJobData(karExecId, actionId, type, t, jobId, xReqId, jobtype, mdc)),
         t);
   }
+
+  /**
+   * The method queues a notification whose context has been persisted, so that it is processed by
+   * the scheduler threads instead of the thread that received the notification. The job is
+   * scheduled in a new transaction, since it is scheduled after the transaction which persisted the
+   * notification context has committed.
+   *
+   * @param notificationContextId The id of the persisted NotificationContext.
+   * @param fhirServerUrl The FHIR Server url of the HealthcareSetting.
+   * @param xReqId The request id for tracking.
+   * @param mdc The MDC context to be used while processing.
+   */
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public void scheduleNotificationJob(
+      UUID notificationContextId, String fhirServerUrl, String xReqId, Map<String, String> mdc) {
+
+    logger.info(" Queueing notification {} for processing", notificationContextId);
+
+    scheduler.schedule(
+        schedulerConfig
+            .notificationJob()
+            .instance(
+                notificationContextId.toString(),
+                new NotificationJobData(notificationContextId, fhirServerUrl, xReqId, mdc, 0)),
+        Instant.now());
+  }
 }
@@ -0,0 +1,70 @@
+package com.drajer.bsa.scheduler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>NotificationConcurrencyLimiter</h1>
+ *
+ * This class limits the number of queued notifications that are processed concurrently for each
+ * HealthcareSetting, so that a burst of notifications from one EHR does not occupy all the
+ * scheduler threads and does not overload the EHR with queries.
+ */
+@Component
+public class NotificationConcurrencyLimiter {
+
+  /** The maximum number of notifications processed concurrently per HealthcareSetting. */
+  @Value("${notification.queue.max-concurrent-per-setting:4}")
+  private int maxConcurrentPerSetting;
+
+  private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+  public NotificationConcurrencyLimiter() {
+    maxConcurrentPerSetting = 4;
+  }
+
+  public NotificationConcurrencyLimiter(int maxConcurrentPerSetting) {
+    this.maxConcurrentPerSetting = maxConcurrentPerSetting;
+  }
+
+  /**
+   * @param fhirServerUrl The FHIR Server url of the HealthcareSetting.
+   * @return true if the notification can be processed now, in which case release has to be called
+   *     once the processing is done.
+   */
+  public boolean tryAcquire(String fhirServerUrl) {
+
+    if (maxConcurrentPerSetting <= 0) {
+      return true;
+    }
+
+    return getPermits(fhirServerUrl).tryAcquire();
+  }
+
+  public void release(String fhirServerUrl) {
+
+    if (maxConcurrentPerSetting > 0) {
+      getPermits(fhirServerUrl).release();
+    }
+  }
+
+  /** @return The number of notifications currently processed for the HealthcareSetting. */
+  public int getActiveCount(String fhirServerUrl) {
+
+    if (maxConcurrentPerSetting <= 0) {
+      return 0;
+    }
+
+    return maxConcurrentPerSetting - getPermits(fhirServerUrl).availablePermits();
+  }
+
+  private Semaphore getPermits(String fhirServerUrl) {
+    return permits.computeIfAbsent(
+        fhirServerUrl != null ? fhirServerUrl : "", k -> new Semaphore(maxConcurrentPerSetting));
+  }
+}
@@ -0,0 +1,78 @@
+package com.drajer.bsa.scheduler;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ *
+ *
+ * <h1>NotificationJobData</h1>
+ *
+ * The data persisted with a queued notification job. The notification itself is stored in the
+ * NotificationContext, so the job only carries the id of the context and the details needed to
+ * apply the concurrency limits and logging before the context is loaded.
+ */
+public class NotificationJobData implements Serializable {
+
+  UUID notificationContextId;
+  String fhirServerUrl;
+  String xRequestId;
+  Map<String, String> mdcContext;
+  int attempt;
+
+  NotificationJobData(
+      UUID id, String url, String xReqId, Map<String, String> mdc, int attemptNumber) {
+    notificationContextId = id;
+    fhirServerUrl = url;
+    xRequestId = xReqId;
+    mdcContext = mdc;
+    attempt = attemptNumber;
+  }
+
+  /** @return The data for the next attempt, when the job has to be deferred. */
+  NotificationJobData nextAttempt() {
+    return new NotificationJobData(
+        notificationContextId, fhirServerUrl, xRequestId, mdcContext, attempt + 1);
+  }
+
+  public UUID getNotificationContextId() {
+    return notificationContextId;
+  }
+
+  public void setNotificationContextId(UUID notificationContextId) {
+    this.notificationContextId = notificationContextId;
+  }
+
+  public String getFhirServerUrl() {
+    return fhirServerUrl;
+  }
+
+  public void setFhirServerUrl(String fhirServerUrl) {
+    this.fhirServerUrl = fhirServerUrl;
+  }
+
+  public String getxRequestId() {
+    return xRequestId;
+  }
+
+  public void setxRequestId(String xRequestId) {
+    this.xRequestId = xRequestId;
+  }
+
+  public Map<String, String> getMdcContext() {
+    return mdcContext;
+  }
+
+  public void setMdcContext(Map<String, String> mdcContext) {
+    this.mdcContext = mdcContext;
+  }
+
+  public int getAttempt() {
+    return attempt;
+  }
+
+  public void setAttempt(int attempt) {
+    this.attempt = attempt;
+  }
+}
@@ -1,9 +1,11 @@
 package com.drajer.bsa.scheduler;
 
 import com.drajer.bsa.service.KarProcessor;
+import com.drajer.bsa.service.SubscriptionNotificationReceiver;
 import com.drajer.ecrapp.util.ApplicationUtils;
 import com.github.kagkarlsson.scheduler.task.Task;
 import com.github.kagkarlsson.scheduler.task.helper.Tasks;
+import java.time.Instant;
 import org.hibernate.ObjectDeletedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,9 +32,21 @@ public class ScheduleJobConfiguration {
 
   @Autowired KarProcessor karProcessor;
 
+  @Autowired SubscriptionNotificationReceiver notificationReceiver;
+
+  @Autowired NotificationConcurrencyLimiter concurrencyLimiter;
+
   @Value("${timer.retries:10}")
   private Integer timerRetries;
 
+  /** The delay before a notification deferred by the concurrency limits is attempted again. */
+  @Value("${notification.queue.retry-delay-seconds:15}")
+  private Integer notificationRetryDelay;
+
+  /** The number of times a notification is deferred by the concurrency limits before it fails. */
+  @Value("${notification.queue.max-deferrals:240}")
+  private Integer maxNotificationDeferrals;
+
   /** Define a one-time job which has to be manually scheduled. */
   @Bean
   public Task<ScheduledJobData> sampleOneTimeJob() {
@@ -92,4 +106,78 @@ public class ScheduleJobConfiguration {
               }
             });
   }
+
+  /**
+   * Define a one-time job which processes a notification that was accepted and queued. When the
+   * HealthcareSetting is already processing the maximum number of notifications, the job is
+   * rescheduled instead of occupying a scheduler thread, until it was deferred the maximum number
+   * of times, after which the notification is marked as FAILED.
+   */
+  @Bean
+  public Task<NotificationJobData> notificationJob() {
+    logger.info("Initializing the Notification job");
+
+    return Tasks.oneTime("BsaNotificationJob", NotificationJobData.class)
+        .onFailureRetryLater()
+        .execute(
+            (inst, ctx) -> {
+              NotificationJobData data = inst.getData();
+
+              if (!concurrencyLimiter.tryAcquire(data.getFhirServerUrl())) {
+
+                if (data.getAttempt() >= maxNotificationDeferrals) {
+
+                  logger.error(
+                      " Failing notification {} for {}, deferred {} times by the concurrency limit",
+                      data.getNotificationContextId(),
+                      data.getFhirServerUrl(),
+                      data.getAttempt());
+
+                  notificationReceiver.failQueuedNotification(data.getNotificationContextId());
+                  return;
+                }
+
+                logger.info(
+                    " Deferring notification {} for {}, attempt {}, concurrency limit reached",
+                    data.getNotificationContextId(),
+                    data.getFhirServerUrl(),
+                    data.getAttempt());
+
+                ctx.getSchedulerClient()
+                    .schedule(
+                        notificationJob()
+                            .instance(
+                                data.getNotificationContextId().toString()
+                                    + "_"
+                                    + (data.getAttempt() + 1),
+                                data.nextAttempt()),
+                        Instant.now().plusSeconds(notificationRetryDelay));
+                return;
+              }
+
+              try {
+
+                if (data.getMdcContext() != null) {
+                  MDC.setContextMap(data.getMdcContext());
+                }
+
+                logger.info(
+                    "Executing Notification Task for {}, NotificationContextId : {}, xRequestId : {}",
+                    inst.getTaskAndInstance(),
+                    data.getNotificationContextId(),
+                    data.getxRequestId());
+
+                notificationReceiver.processQueuedNotification(data.getNotificationContextId());
+
+                logger.info(
+                    "Successfully Completed Executing Notification Task for {}",
+                    inst.getTaskAndInstance());
+
+              } finally {
+                concurrencyLimiter.release(data.getFhirServerUrl());
+                logger.info(" Clearing MDC");
+                MDC.clear();
+              }
+            });
+  }
 }
@@ -1,8 +1,10 @@
 package com.drajer.bsa.service;
 
 import com.drajer.bsa.model.KarProcessingData;
+import com.drajer.bsa.model.NotificationContext;
 import com.drajer.bsa.model.PatientLaunchContext;
 import java.util.List;
+import java.util.UUID;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.hl7.fhir.r4.model.Bundle;
@@ -38,4 +40,38 @@ public interface SubscriptionNotificationReceiver {
       HttpServletRequest request,
       HttpServletResponse response,
       PatientLaunchContext launchContext);
+
+  /**
+   * The method persists the notification context and queues the notification, so that it is
+   * processed asynchronously.
+   *
+   * @param notificationBundle The bundle containing the subscription topic and the full resource
+   *     that resulted in the notification.
+   * @return The persisted NotificationContext whose id can be used to track the processing, or null
+   *     when the notification context cannot be derived from the notification.
+   */
+  public NotificationContext enqueueNotification(
+      Bundle notificationBundle,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      PatientLaunchContext launchContext);
+
+  /**
+   * The method processes a notification that was previously queued using enqueueNotification.
+   *
+   * @param notificationContextId The id of the persisted NotificationContext.
+   * @return
+   */
+  public List<KarProcessingData> processQueuedNotification(UUID notificationContextId);
+
+  /**
+   * The method marks a notification that was previously queued using enqueueNotification as
+   * FAILED, when it could not be processed.
+   *
+   * @param notificationContextId The id of the persisted NotificationContext.
+   */
+  public void failQueuedNotification(UUID notificationContextId);
+
+  /** @return true if the queue of notifications waiting to be processed is not full. */
+  public boolean canAcceptNotification();
 }
@@ -1,5 +1,6 @@
 package com.drajer.bsa.service.impl;
 
+import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
 import com.drajer.bsa.auth.AuthorizationUtils;
 import com.drajer.bsa.dao.HealthcareSettingsDao;
@@ -13,6 +14,8 @@ import com.drajer.bsa.kar.action.SubmitReport;
 import com.drajer.bsa.kar.action.ValidateReport;
 import com.drajer.bsa.kar.condition.BsaCqlCondition;
 import com.drajer.bsa.kar.condition.BsaFhirPathCondition;
+import com.drajer.bsa.kar.condition.CqlEvaluationContext;
+import com.drajer.bsa.kar.condition.KarTerminologyProvider;
 import com.drajer.bsa.kar.model.BsaAction;
 import com.drajer.bsa.kar.model.BsaRelatedAction;
 import com.drajer.bsa.kar.model.FhirQueryFilter;
@@ -35,6 +38,7 @@ import com.drajer.bsa.utils.BsaConstants;
 import com.drajer.bsa.utils.BsaServiceUtils;
 import com.drajer.bsa.utils.SubscriptionUtils;
 import com.drajer.cda.utils.CdaGeneratorConstants;
+import com.drajer.sof.utils.FhirClientRegistry;
 import com.drajer.sof.utils.FhirContextInitializer;
 import java.io.File;
 import java.io.FileFilter;
@@ -75,7 +79,13 @@ import org.hl7.fhir.r4.model.TriggerDefinition.TriggerType;
 import org.hl7.fhir.r4.model.Type;
 import org.hl7.fhir.r4.model.UriType;
 import org.hl7.fhir.r4.model.ValueSet;
+import org.opencds.cqf.cql.evaluator.builder.DataProviderFactory;
+import org.opencds.cqf.cql.evaluator.builder.EndpointConverter;
+import org.opencds.cqf.cql.evaluator.builder.EndpointInfo;
+import org.opencds.cqf.cql.evaluator.builder.LibraryContentProviderFactory;
+import org.opencds.cqf.cql.evaluator.builder.TerminologyProviderFactory;
 import org.opencds.cqf.cql.evaluator.expression.ExpressionEvaluator;
+import org.opencds.cqf.cql.evaluator.library.CqlFhirParametersConverter;
 import org.opencds.cqf.cql.evaluator.library.LibraryProcessor;
 import org.opencds.cqf.cql.evaluator.measure.r4.R4MeasureProcessor;
 import org.slf4j.Logger;
@@ -150,6 +160,19 @@ public class KarParserImpl implements KarParser {
   // Autowired to pass to FhirPathProcessors.
   @Autowired LibraryProcessor libraryProcessor;
 
+  // Autowired to create the CQL evaluation context of each KAR.
+  @Autowired FhirContext fhirContext;
+
+  @Autowired EndpointConverter endpointConverter;
+
+  @Autowired LibraryContentProviderFactory libraryContentProviderFactory;
+
+  @Autowired TerminologyProviderFactory terminologyProviderFactory;
+
+  @Autowired DataProviderFactory dataProviderFactory;
+
+  @Autowired CqlFhirParametersConverter cqlFhirParametersConverter;
+
   // Autowired to pass to Actions
   @Autowired PublicHealthMessagesDao phDao;
 
@@ -167,6 +190,8 @@ public class KarParserImpl implements KarParser {
 
   @Autowired FhirContextInitializer fhirContextInitializer;
 
+  @Autowired FhirClientRegistry clientRegistry;
+
   @Autowired PublicHealthAuthorityService publicHealthAuthorityService;
 
   // Autowired to update Persistent Kar Repos
@@ -189,6 +214,9 @@ public class KarParserImpl implements KarParser {
 
   private List<Expression> planVariableExpressions;
 
+  // The CQL evaluation context of the KAR being processed.
+  private CqlEvaluationContext cqlEvaluationContext;
+
   private static final String JSON_KAR_EXT = "json";
   private static final String RECEIVER_ADDRESS_URL =
       "http://hl7.org/fhir/us/medmorph/StructureDefinition/ext-receiverAddress";
@@ -335,6 +363,7 @@ public class KarParserImpl implements KarParser {
       logger.info(" Successfully read the KAR from File ");
 
       KnowledgeArtifact art = new KnowledgeArtifact();
+      cqlEvaluationContext = null;
 
       // Setup the Id.
       art.setKarId(karBundle.getId());
@@ -652,6 +681,9 @@ public class KarParserImpl implements KarParser {
       } catch (FHIRException ex) {
         logger.error(" Type specified is not a resource Type {}", dr.getType());
       }
+
+      // Compile the code filter paths once, instead of every time the data is filtered.
+      dr.getCodeFilter().forEach(BsaServiceUtils::compileCodeFilterPath);
     }
   }
 
@@ -676,7 +708,7 @@ public class KarParserImpl implements KarParser {
 
     CanonicalType libraryCanonical = plan.hasLibrary() ? plan.getLibrary().get(0) : null;
     if (act.hasCondition()) {
-      populateCondition(act, action, libraryCanonical, karBundleFile);
+      populateCondition(act, action, libraryCanonical, karBundleFile, art);
     }
 
     if (act.hasRelatedAction()) {
@@ -712,6 +744,7 @@ public class KarParserImpl implements KarParser {
       sr.setDirectSender(directInterface);
       sr.setRestSubmitter(restSubmitter);
       sr.setFhirContextInitializer(fhirContextInitializer);
+      sr.setClientRegistry(clientRegistry);
       sr.setAuthorizationUtils(authUtils);
       sr.setPublicHealthAuthorityService(publicHealthAuthorityService);
       populateCheckResponseAction(sr, art, plan);
@@ -784,11 +817,44 @@ public class KarParserImpl implements KarParser {
     }
   }
 
+  /**
+   * Method to get the CQL evaluation context of the KAR being processed. The context is created for
+   * the first CQL condition of the KAR and shared by the other CQL conditions, so that the
+   * libraries and ValueSets of the KAR are loaded once instead of for every evaluation.
+   *
+   * @param karEndpoint The endpoint of the directory of the KAR.
+   * @param art The KAR being processed.
+   * @return The context, or null when it cannot be created.
+   */
+  private CqlEvaluationContext getCqlEvaluationContext(
+      Endpoint karEndpoint, KnowledgeArtifact art) {
+
+    if (cqlEvaluationContext == null) {
+      try {
+        EndpointInfo endpointInfo = endpointConverter.getEndpointInfo(karEndpoint);
+
+        cqlEvaluationContext =
+            new CqlEvaluationContext(
+                fhirContext,
+                libraryContentProviderFactory.create(endpointInfo),
+                new KarTerminologyProvider(
+                    art.getValueSetIndex(), terminologyProviderFactory.create(endpointInfo)),
+                dataProviderFactory.create(endpointInfo),
+                cqlFhirParametersConverter);
+      } catch (Exception e) {
+        logger.error(" Unable to create the CQL evaluation context for the KAR ", e);
+      }
+    }
+
+    return cqlEvaluationContext;
+  }
+
   private void populateCondition(
       PlanDefinitionActionComponent ac,
       BsaAction action,
       CanonicalType libraryCanonical,
-      File karBundleFile) {
+      File karBundleFile,
+      KnowledgeArtifact art) {
 
     List<PlanDefinitionActionConditionComponent> conds = ac.getCondition();
 
@@ -819,6 +885,7 @@ public class KarParserImpl implements KarParser {
         bc.setDataEndpoint(karEndpoint);
         bc.setLogicExpression(con.getExpression());
         bc.setLibraryProcessor(libraryProcessor);
+        bc.setEvaluationContext(getCqlEvaluationContext(karEndpoint, art));
         bc.setNormalReportingDuration(null);
         action.addCondition(bc);
       } else if (con.getExpression().hasExtension(BsaConstants.ALTERNATIVE_EXPRESSION_EXTENSION_URL)
@@ -858,6 +925,7 @@ public class KarParserImpl implements KarParser {
           bc.setDataEndpoint(karEndpoint);
           bc.setLogicExpression(exp);
           bc.setLibraryProcessor(libraryProcessor);
+          bc.setEvaluationContext(getCqlEvaluationContext(karEndpoint, art));
           action.addCondition(bc);
         } else if (exp != null
             && (fromCode(exp.getLanguage()).equals(Expression.ExpressionLanguage.TEXT_FHIRPATH))
@@ -13,7 +13,6 @@ import com.drajer.bsa.model.BsaTypes.BsaJobType;
 import com.drajer.bsa.model.KarExecutionState;
 import com.drajer.bsa.model.KarProcessingData;
 import com.drajer.bsa.model.NotificationContext;
-import com.drajer.bsa.model.PublicHealthMessage;
 import com.drajer.bsa.scheduler.ScheduledJobData;
 import com.drajer.bsa.service.HealthcareSettingsService;
 import com.drajer.bsa.service.KarExecutionStateService;
@@ -23,7 +22,6 @@ import com.drajer.bsa.utils.BsaServiceUtils;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.hl7.fhir.r4.model.Bundle;
@@ -97,10 +95,10 @@ public class KarProcessorImpl implements KarProcessor {
     data.setJobType(BsaJobType.IMMEDIATE_REPORTING);
 
     // Get existing ph message for the same patient/encounter/kar/fhirserver combination.
-    PublicHealthMessage phm = getPublicHealthMessage(nc, data);
-    if (phm != null && phm.getTriggerMatchStatus() != null) {
+    String previousTriggerMatchStatus = getPreviousTriggerMatchStatus(nc, data);
+    if (previousTriggerMatchStatus != null) {
       data.setPreviousTriggerMatchStatus(
-          BsaServiceUtils.getTriggerMatchStatus(phm.getTriggerMatchStatus()));
+          BsaServiceUtils.getTriggerMatchStatus(previousTriggerMatchStatus));
     }
 
     logger.info(" *** START Executing Trigger Actions *** ");
@@ -180,10 +178,10 @@ public class KarProcessorImpl implements KarProcessor {
         kd.setJobType(data.getJobType());
 
         // Get existing ph message for the same patient/encounter/kar/fhirserver combination.
-        PublicHealthMessage phm = getPublicHealthMessage(nc, kd);
-        if (phm != null && phm.getTriggerMatchStatus() != null) {
+        String previousTriggerMatchStatus = getPreviousTriggerMatchStatus(nc, kd);
+        if (previousTriggerMatchStatus != null) {
           kd.setPreviousTriggerMatchStatus(
-              BsaServiceUtils.getTriggerMatchStatus(phm.getTriggerMatchStatus()));
+              BsaServiceUtils.getTriggerMatchStatus(previousTriggerMatchStatus));
         }
 
         // Setup the Kar Status for the specific job.
@@ -298,8 +296,7 @@ public class KarProcessorImpl implements KarProcessor {
     }
   }
 
-  private PublicHealthMessage getPublicHealthMessage(
-      NotificationContext nc, KarProcessingData data) {
+  private String getPreviousTriggerMatchStatus(NotificationContext nc, KarProcessingData data) {
 
     Map<String, String> searchParams = new HashMap<>();
     searchParams.put(PublicHealthMessagesDaoImpl.FHIR_SERVER_URL, nc.getFhirServerBaseUrl());
@@ -309,9 +306,8 @@ public class KarProcessorImpl implements KarProcessor {
     searchParams.put(
         PublicHealthMessagesDaoImpl.NOTIFIED_RESOURCE_TYPE, nc.getNotificationResourceType());
     searchParams.put(PublicHealthMessagesDaoImpl.KAR_UNIQUE_ID, data.getKar().getVersionUniqueId());
-    List<PublicHealthMessage> messages = phDao.getPublicHealthMessage(searchParams);
 
-    if (messages != null && !messages.isEmpty()) return messages.get(0);
-    else return null;
+    // Only the trigger match status of the latest version is read, not the submitted data.
+    return phDao.getLatestTriggerMatchStatus(searchParams);
   }
 }
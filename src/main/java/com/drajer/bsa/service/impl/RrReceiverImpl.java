@@ -121,7 +121,8 @@ public class RrReceiverImpl implements RrReceiver {
           rrDocId.getRootValue(),
           rrModel.getReportableType(),
           eicrDocId.getRootValue());
-      PublicHealthMessage phm = phDao.getBySubmittedDataId(eicrDocId.getRootValue());
+      // The submitted eICR is not needed to process the RR, hence only the metadata is read.
+      PublicHealthMessage phm = phDao.getMetadataBySubmittedDataId(eicrDocId.getRootValue());
 
       if (phm != null) {
 
@@ -198,7 +199,7 @@ public class RrReceiverImpl implements RrReceiver {
         }
 
         // Save the state, no matter what so that they can be reporcessed.
-        phDao.saveOrUpdate(phm);
+        phDao.updateResponse(phm);
 
       } else {
         String errorMsg =
@@ -274,7 +275,11 @@ public class RrReceiverImpl implements RrReceiver {
       // Initialize the Client
       IGenericClient client =
           fhirContextInitializer.createClient(
-              context, hs.getFhirServerBaseURL(), accessToken, phm.getxRequestId());
+              context,
+              hs.getFhirServerBaseURL(),
+              accessToken,
+              () -> ehrService.invalidateAuthorizationToken(hs),
+              phm.getxRequestId());
 
       MethodOutcome outcome = fhirContextInitializer.submitResource(client, docRef);
       if (outcome != null && outcome.getCreated()) {
@@ -7,10 +7,12 @@ import com.drajer.bsa.kar.model.HealthcareSettingOperationalKnowledgeArtifacts;
 import com.drajer.bsa.kar.model.KnowledgeArtifact;
 import com.drajer.bsa.kar.model.KnowledgeArtifactRepositorySystem;
 import com.drajer.bsa.kar.model.KnowledgeArtifactStatus;
+import com.drajer.bsa.model.BsaTypes.NotificationProcessingStatusType;
 import com.drajer.bsa.model.HealthcareSetting;
 import com.drajer.bsa.model.KarProcessingData;
 import com.drajer.bsa.model.NotificationContext;
 import com.drajer.bsa.model.PatientLaunchContext;
+import com.drajer.bsa.scheduler.BsaScheduler;
 import com.drajer.bsa.service.KarProcessor;
 import com.drajer.bsa.service.SubscriptionNotificationReceiver;
 import com.drajer.bsa.utils.SubscriptionUtils;
@@ -20,6 +22,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.hl7.fhir.r4.model.Bundle;
@@ -28,10 +31,14 @@ import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.ResourceType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * The implementation for processing subscription notifications.
@@ -50,10 +57,16 @@ public class SubscriptionNotificationReceiverImpl implements SubscriptionNotific
 
   @Autowired KnowledgeArtifactRepositorySystem knowledgeArtifactRepositorySystem;
 
+  @Autowired BsaScheduler bsaScheduler;
+
   @Autowired
   @Qualifier("jsonParser")
   IParser jsonParser;
 
+  /** The maximum number of notifications waiting to be processed, 0 for no limit. */
+  @Value("${notification.queue.max-queued:0}")
+  private long maxQueuedNotifications;
+
   private final Logger logger = LoggerFactory.getLogger(SubscriptionNotificationReceiverImpl.class);
 
   /** The method that processes the notification. */
@@ -80,236 +93,279 @@ public class SubscriptionNotificationReceiverImpl implements SubscriptionNotific
 
       ncDao.saveOrUpdate(nc);
 
-      try {
+      applyKars(nc, notificationBundle, dataList);
+
+    } else {
+
+      logger.error(
+          " Cannot process notification because the Notification context is not derivable. ");
+    }
+
+    logger.info(" End processing notification ");
+    return dataList;
+  }
+
+  @Override
+  public List<KarProcessingData> processRelaunchNotification(
+      Bundle notificationBundle,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      PatientLaunchContext launchContext) {
 
-        // Start processing the relaunch notification.
+    List<KarProcessingData> dataList = new ArrayList<>();
+    logger.info(" Stating to process notification ");
 
-        // Retrieve the settings for the FHIR Server.
-        HealthcareSetting hs = hsDao.getHealthcareSettingByUrl(nc.getFhirServerBaseUrl());
+    NotificationContext nc =
+        SubscriptionUtils.getNotificationContext(notificationBundle, request, response);
 
-        if (hs != null) {
+    if (nc != null) {
 
-          logger.info(" Found the Healthcare Settings necessary to process notifications ");
+      logger.info(" Notification Context exists for processing the notification ");
+      nc.setNotificationData(jsonParser.encodeResourceToString(notificationBundle));
 
-          // Find the KAR's active for the Healthcare Setting.
-          if (hs.getKars() != null) {
+      if (launchContext != null && launchContext.getThrottleContext() != null)
+        nc.setThrottleContext(launchContext.getThrottleContext());
 
-            // Get the Active Kars and process it.
-            HealthcareSettingOperationalKnowledgeArtifacts arfts = hs.getKars();
+      ncDao.saveOrUpdate(nc);
 
-            logger.info(
-                " Processing HealthcareSetting Operational Knowledge Artifact Status Id : {}",
-                arfts.getId());
+      applyKars(nc, notificationBundle, dataList);
 
-            Set<KnowledgeArtifactStatus> stat = arfts.getArtifactStatus();
+    } else {
 
-            for (KnowledgeArtifactStatus ks : stat) {
+      logger.error(
+          " Cannot process notification because the Notification context is not derivable. ");
+    }
 
-              if (ks.getIsActive().booleanValue()) {
+    logger.info(" End processing notification ");
+    return dataList;
+  }
 
-                logger.info(
-                    " Processing KAR with Id {} and version {}", ks.getKarId(), ks.getKarVersion());
+  /**
+   * The method persists the notification context with a QUEUED status and schedules a job to
+   * process the notification, so that the caller can return without waiting for the KARs to be
+   * applied. The job is scheduled once the transaction has committed, so that it never runs before
+   * the notification context can be read.
+   */
+  @Override
+  public NotificationContext enqueueNotification(
+      Bundle notificationBundle,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      PatientLaunchContext launchContext) {
 
-                KnowledgeArtifact kar =
-                    knowledgeArtifactRepositorySystem.getById(ks.getVersionUniqueKarId());
+    logger.info(" Queueing notification for processing ");
 
-                if (kar != null) {
+    NotificationContext nc =
+        SubscriptionUtils.getNotificationContext(notificationBundle, request, response);
 
-                  logger.info(" Processing KAR since we found the one that we needed. ");
+    if (nc != null) {
 
-                  // Setup the initial Kar
-                  KarProcessingData kd = new KarProcessingData();
-                  kd.setNotificationContext(nc);
-                  kd.setHealthcareSetting(hs);
-                  kd.setKar(kar);
-                  kd.setNotificationBundle(notificationBundle);
-                  kd.setScheduledJobData(null);
-                  kd.setKarStatus(ks);
-                  kd.setxRequestId(nc.getxRequestId());
-                  kd.setxCorrelationId(nc.getxCorrelationId());
+      nc.setNotificationData(jsonParser.encodeResourceToString(notificationBundle));
+      nc.setNotificationProcessingStatus(NotificationProcessingStatusType.QUEUED.toString());
 
-                  if (nc.getNotifiedResource() != null) {
-                    logger.info("Adding notified resource to the set of inputs ");
-                    Map<ResourceType, Set<Resource>> res = new EnumMap<>(ResourceType.class);
-                    Set<Resource> results = new HashSet<>();
-                    results.add(nc.getNotifiedResource());
-                    res.put(nc.getNotifiedResource().getResourceType(), results);
-                    kd.addResourcesByType(res);
+      if (launchContext != null && launchContext.getThrottleContext() != null)
+        nc.setThrottleContext(launchContext.getThrottleContext());
 
-                    if (nc.getNotifiedResource().getResourceType() == ResourceType.Encounter) {
-                      kd.setContextEncounter((Encounter) nc.getNotifiedResource());
-                    }
-                  }
+      ncDao.saveOrUpdate(nc);
 
-                  karProcessor.applyKarForNotification(kd);
-                  dataList.add(kd);
-                } else {
+      UUID id = nc.getId();
+      String fhirServerUrl = nc.getFhirServerBaseUrl();
+      String xReqId = nc.getxRequestId();
+      Map<String, String> mdc = MDC.getCopyOfContextMap();
 
-                  logger.error(
-                      " Unable to process notification, as the KAR is not found {}",
-                      ks.getVersionUniqueKarId());
-                }
+      runAfterCommit(() -> bsaScheduler.scheduleNotificationJob(id, fhirServerUrl, xReqId, mdc));
 
-              } else {
+    } else {
 
-                logger.info(
-                    " Skipping processing of KAR as it is inactive. {}",
-                    ks.getVersionUniqueKarId());
-              }
-            }
+      logger.error(
+          " Cannot queue notification because the Notification context is not derivable. ");
+    }
+
+    return nc;
+  }
+
+  /** Runs the task once the current transaction has committed, or now without a transaction. */
+  private static void runAfterCommit(Runnable task) {
 
-          } else {
-            logger.error(
-                " Cannot proceed with the processing because the Healthcare Settings does not contain any Knowledge Artifacts that are operational.");
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      task.run();
+      return;
+    }
+
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCommit() {
+            task.run();
           }
+        });
+  }
 
-        } else {
+  /** The method processes a notification that was queued by enqueueNotification. */
+  @Override
+  public List<KarProcessingData> processQueuedNotification(UUID notificationContextId) {
 
-          logger.error(
-              " Cannot proceed with the processing because the Healthcare Settings does not exist for {}",
-              nc.getFhirServerBaseUrl());
-        }
+    List<KarProcessingData> dataList = new ArrayList<>();
+
+    NotificationContext nc = ncDao.getNotificationContextById(notificationContextId);
+
+    if (nc != null && nc.getNotificationData() != null) {
 
-      } catch (Exception e) {
+      logger.info(" Starting to process queued notification {}", notificationContextId);
 
-        logger.error(" Error during processing of notification.", e);
+      Bundle notificationBundle = jsonParser.parseResource(Bundle.class, nc.getNotificationData());
+
+      // The notified resource is transient, so restore it from the persisted notification.
+      if (notificationBundle.getEntry().size() >= 2) {
+        nc.setNotifiedResource(notificationBundle.getEntry().get(1).getResource());
       }
 
+      nc.setNotificationProcessingStatus(NotificationProcessingStatusType.IN_PROGRESS.toString());
+      ncDao.saveOrUpdate(nc);
+
+      applyKars(nc, notificationBundle, dataList);
+
     } else {
 
       logger.error(
-          " Cannot process notification because the Notification context is not derivable. ");
+          " Cannot process queued notification because the Notification context {} is not found ",
+          notificationContextId);
     }
 
-    logger.info(" End processing notification ");
+    logger.info(" End processing queued notification ");
     return dataList;
   }
 
   @Override
-  public List<KarProcessingData> processRelaunchNotification(
-      Bundle notificationBundle,
-      HttpServletRequest request,
-      HttpServletResponse response,
-      PatientLaunchContext launchContext) {
-
-    List<KarProcessingData> dataList = new ArrayList<>();
-    logger.info(" Stating to process notification ");
+  public void failQueuedNotification(UUID notificationContextId) {
 
-    NotificationContext nc =
-        SubscriptionUtils.getNotificationContext(notificationBundle, request, response);
+    NotificationContext nc = ncDao.getNotificationContextById(notificationContextId);
 
     if (nc != null) {
 
-      logger.info(" Notification Context exists for processing the notification ");
-      nc.setNotificationData(jsonParser.encodeResourceToString(notificationBundle));
+      nc.setNotificationProcessingStatus(NotificationProcessingStatusType.FAILED.toString());
+      ncDao.saveOrUpdate(nc);
 
-      if (launchContext != null && launchContext.getThrottleContext() != null)
-        nc.setThrottleContext(launchContext.getThrottleContext());
+    } else {
 
-      ncDao.saveOrUpdate(nc);
+      logger.error(
+          " Cannot fail queued notification because the Notification context {} is not found ",
+          notificationContextId);
+    }
+  }
+
+  @Override
+  public boolean canAcceptNotification() {
 
-      try {
+    if (maxQueuedNotifications <= 0) {
+      return true;
+    }
 
-        // Start processing the notification.
+    return ncDao.getNotificationContextCountByStatus(
+            NotificationProcessingStatusType.QUEUED.toString())
+        < maxQueuedNotifications;
+  }
 
-        // Retrieve the settings for the FHIR Server.
-        HealthcareSetting hs = hsDao.getHealthcareSettingByUrl(nc.getFhirServerBaseUrl());
+  /**
+   * The method applies the active KARs of the HealthcareSetting to the notification.
+   *
+   * @param nc The notification context of the notification.
+   * @param notificationBundle The notification bundle.
+   * @param dataList The list to which the KarProcessingData of each KAR applied is added.
+   */
+  private void applyKars(
+      NotificationContext nc, Bundle notificationBundle, List<KarProcessingData> dataList) {
 
-        if (hs != null) {
+    try {
 
-          logger.info(" Found the Healthcare Settings necessary to process notifications ");
+      // Retrieve the settings for the FHIR Server.
+      HealthcareSetting hs = hsDao.getHealthcareSettingByUrl(nc.getFhirServerBaseUrl());
 
-          // Find the KAR's active for the Healthcare Setting.
-          if (hs.getKars() != null) {
+      if (hs != null) {
 
-            // Get the Active Kars and process it.
-            HealthcareSettingOperationalKnowledgeArtifacts arfts = hs.getKars();
+        logger.info(" Found the Healthcare Settings necessary to process notifications ");
 
-            logger.info(
-                " Processing HealthcareSetting Operational Knowledge Artifact Status Id : {}",
-                arfts.getId());
+        // Find the KAR's active for the Healthcare Setting.
+        if (hs.getKars() != null) {
 
-            Set<KnowledgeArtifactStatus> stat = arfts.getArtifactStatus();
+          // Get the Active Kars and process it.
+          HealthcareSettingOperationalKnowledgeArtifacts arfts = hs.getKars();
 
-            for (KnowledgeArtifactStatus ks : stat) {
+          logger.info(
+              " Processing HealthcareSetting Operational Knowledge Artifact Status Id : {}",
+              arfts.getId());
 
-              if (ks.getIsActive().booleanValue()) {
+          Set<KnowledgeArtifactStatus> stat = arfts.getArtifactStatus();
 
-                logger.info(
-                    " Processing KAR with Id {} and version {}", ks.getKarId(), ks.getKarVersion());
+          for (KnowledgeArtifactStatus ks : stat) {
 
-                KnowledgeArtifact kar =
-                    knowledgeArtifactRepositorySystem.getById(ks.getVersionUniqueKarId());
+            if (ks.getIsActive().booleanValue()) {
 
-                if (kar != null) {
+              logger.info(
+                  " Processing KAR with Id {} and version {}", ks.getKarId(), ks.getKarVersion());
 
-                  logger.info(" Processing KAR since we found the one that we needed. ");
+              KnowledgeArtifact kar =
+                  knowledgeArtifactRepositorySystem.getById(ks.getVersionUniqueKarId());
 
-                  // Setup the initial Kar
-                  KarProcessingData kd = new KarProcessingData();
-                  kd.setNotificationContext(nc);
-                  kd.setHealthcareSetting(hs);
-                  kd.setKar(kar);
-                  kd.setNotificationBundle(notificationBundle);
-                  kd.setScheduledJobData(null);
-                  kd.setKarStatus(ks);
-                  kd.setxRequestId(nc.getxRequestId());
-                  kd.setxCorrelationId(nc.getxCorrelationId());
+              if (kar != null) {
 
-                  if (nc.getNotifiedResource() != null) {
-                    logger.info("Adding notified resource to the set of inputs ");
-                    Map<ResourceType, Set<Resource>> res = new EnumMap<>(ResourceType.class);
-                    Set<Resource> results = new HashSet<>();
-                    results.add(nc.getNotifiedResource());
-                    res.put(nc.getNotifiedResource().getResourceType(), results);
-                    kd.addResourcesByType(res);
+                logger.info(" Processing KAR since we found the one that we needed. ");
 
-                    if (nc.getNotifiedResource().getResourceType() == ResourceType.Encounter) {
-                      kd.setContextEncounter((Encounter) nc.getNotifiedResource());
-                    }
-                  }
+                // Setup the initial Kar
+                KarProcessingData kd = new KarProcessingData();
+                kd.setNotificationContext(nc);
+                kd.setHealthcareSetting(hs);
+                kd.setKar(kar);
+                kd.setNotificationBundle(notificationBundle);
+                kd.setScheduledJobData(null);
+                kd.setKarStatus(ks);
+                kd.setxRequestId(nc.getxRequestId());
+                kd.setxCorrelationId(nc.getxCorrelationId());
 
-                  karProcessor.applyKarForNotification(kd);
-                  dataList.add(kd);
-                } else {
+                if (nc.getNotifiedResource() != null) {
+                  logger.info("Adding notified resource to the set of inputs ");
+                  Map<ResourceType, Set<Resource>> res = new EnumMap<>(ResourceType.class);
+                  Set<Resource> results = new HashSet<>();
+                  results.add(nc.getNotifiedResource());
+                  res.put(nc.getNotifiedResource().getResourceType(), results);
+                  kd.addResourcesByType(res);
 
-                  logger.error(
-                      " Unable to process notification, as the KAR is not found {}",
-                      ks.getVersionUniqueKarId());
+                  if (nc.getNotifiedResource().getResourceType() == ResourceType.Encounter) {
+                    kd.setContextEncounter((Encounter) nc.getNotifiedResource());
+                  }
                 }
 
+                karProcessor.applyKarForNotification(kd);
+                dataList.add(kd);
               } else {
 
-                logger.info(
-                    " Skipping processing of KAR as it is inactive. {}",
+                logger.error(
+                    " Unable to process notification, as the KAR is not found {}",
                     ks.getVersionUniqueKarId());
               }
-            }
 
-          } else {
-            logger.error(
-                " Cannot proceed with the processing because the Healthcare Settings does not contain any Knowledge Artifacts that are operational.");
+            } else {
+
+              logger.info(
+                  " Skipping processing of KAR as it is inactive. {}", ks.getVersionUniqueKarId());
+            }
           }
 
         } else {
-
           logger.error(
-              " Cannot proceed with the processing because the Healthcare Settings does not exist for {}",
-              nc.getFhirServerBaseUrl());
+              " Cannot proceed with the processing because the Healthcare Settings does not contain any Knowledge Artifacts that are operational.");
         }
 
-      } catch (Exception e) {
+      } else {
 
-        logger.error(" Error during processing of notification.", e);
+        logger.error(
+            " Cannot proceed with the processing because the Healthcare Settings does not exist for {}",
+            nc.getFhirServerBaseUrl());
       }
 
-    } else {
+    } catch (Exception e) {
 
-      logger.error(
-          " Cannot process notification because the Notification context is not derivable. ");
+      logger.error(" Error during processing of notification.", e);
     }
-
-    logger.info(" End processing notification ");
-    return dataList;
   }
 }
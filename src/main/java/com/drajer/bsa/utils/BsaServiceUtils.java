@@ -1,13 +1,13 @@
 package com.drajer.bsa.utils;
 
 import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.fhirpath.IFhirPath;
 import ca.uhn.fhir.parser.IParser;
 import com.drajer.bsa.kar.action.BsaActionStatus;
 import com.drajer.bsa.kar.action.CheckTriggerCodeStatusList;
 import com.drajer.bsa.kar.model.BsaAction;
 import com.drajer.bsa.kar.model.FhirQueryFilter;
 import com.drajer.bsa.kar.model.KnowledgeArtifact;
+import com.drajer.bsa.kar.model.ValueSetIndex;
 import com.drajer.bsa.model.BsaTypes;
 import com.drajer.bsa.model.BsaTypes.MessageType;
 import com.drajer.bsa.model.KarProcessingData;
@@ -28,8 +28,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
+import org.hl7.fhir.exceptions.FHIRException;
 import org.hl7.fhir.instance.model.api.IBase;
-import org.hl7.fhir.r4.hapi.fluentpath.FhirPathR4;
 import org.hl7.fhir.r4.model.*;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
 import org.hl7.fhir.r4.model.Bundle.BundleType;
@@ -72,6 +72,9 @@ public class BsaServiceUtils {
   @Value("${save.debug.files:true}")
   boolean saveDebugToFiles;
 
+  @Value("${fhirpath.cache.size:500}")
+  int fhirPathCacheSize;
+
   @Autowired(required = false)
   Map<String, BsaActionStatus> actions;
 
@@ -79,14 +82,39 @@ public class BsaServiceUtils {
   private static IParser FHIR_JSON_PARSER;
   private static boolean SAVE_DEBUG_TO_FILES;
 
+  /** The key of the user data holding the compiled path of a code filter. */
+  public static final String COMPILED_PATH = "compiledFhirPath";
+
   private static final String FHIR_PATH_VARIABLE_PREFIX = "%";
-  private static IFhirPath FHIR_PATH = new FhirPathR4(FhirContext.forR4());
+  private static final int DEFAULT_FHIR_PATH_CACHE_SIZE = 500;
+  private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+  private static FhirPathEvaluator FHIR_PATH =
+      new FhirPathEvaluator(FHIR_CONTEXT, DEFAULT_FHIR_PATH_CACHE_SIZE);
 
   @PostConstruct
   public void initialize() {
     DEBUG_DIRECTORY = debugDirectory;
     FHIR_JSON_PARSER = jsonParser;
     SAVE_DEBUG_TO_FILES = saveDebugToFiles;
+    FHIR_PATH = new FhirPathEvaluator(FHIR_CONTEXT, fhirPathCacheSize);
+  }
+
+  /**
+   * Method to compile the path of a code filter when the Knowledge Artifact is loaded, so that the
+   * path is not parsed again every time the filter is applied.
+   *
+   * @param codeFilter The code filter of a data requirement.
+   */
+  public static void compileCodeFilterPath(
+      DataRequirement.DataRequirementCodeFilterComponent codeFilter) {
+
+    if (codeFilter.hasPath()) {
+      try {
+        codeFilter.setUserData(COMPILED_PATH, FHIR_PATH.compile(codeFilter.getPath()));
+      } catch (FHIRException e) {
+        logger.error("Invalid FHIRPath {} in code filter", codeFilter.getPath(), e);
+      }
+    }
   }
 
   public static String getFhirPathVariableString(String id) {
@@ -223,7 +251,11 @@ public class BsaServiceUtils {
     // any of the codes match its a match.
 
     // we dont know what this will return
-    List<IBase> search = FHIR_PATH.evaluate(resource, codeFilter.getPath(), IBase.class);
+    ExpressionNode compiled = (ExpressionNode) codeFilter.getUserData(COMPILED_PATH);
+    List<Base> search =
+        compiled != null
+            ? FHIR_PATH.evaluate(resource, compiled)
+            : FHIR_PATH.evaluate(resource, codeFilter.getPath());
     if (search == null || search.isEmpty()) {
       return false;
     }
@@ -251,11 +283,12 @@ public class BsaServiceUtils {
 
   public static boolean matchesValueSet(IBase ib, String url, KarProcessingData kd) {
     ValueSet vs = (ValueSet) kd.getKar().getDependentResource(ResourceType.ValueSet, url);
+    ValueSetIndex index = kd.getKar().getValueSetIndex();
     if (ib instanceof Coding) {
       Coding coding = (Coding) ib;
-      return isCodePresentInValueSet(vs, coding.getSystem(), coding.getCode());
+      return isCodePresentInValueSet(index, vs, coding.getSystem(), coding.getCode());
     } else if (ib instanceof CodeableConcept) {
-      return isCodeableConceptPresentInValueSet(vs, (CodeableConcept) ib);
+      return isCodeableConceptPresentInValueSet(index, vs, (CodeableConcept) ib);
     }
     return false;
   }
@@ -297,13 +330,24 @@ public class BsaServiceUtils {
   }
 
   public static Boolean isCodeableConceptPresentInValueSet(ValueSet vs, CodeableConcept cc) {
+    return isCodeableConceptPresentInValueSet(null, vs, cc);
+  }
+
+  public static Boolean isCodeableConceptPresentInValueSet(
+      ValueSetIndex index, ValueSet vs, CodeableConcept cc) {
     return cc.getCoding()
         .stream()
-        .anyMatch(coding -> isCodePresentInValueSet(vs, coding.getSystem(), coding.getCode()));
+        .anyMatch(
+            coding -> isCodePresentInValueSet(index, vs, coding.getSystem(), coding.getCode()));
   }
 
   public static Pair<Boolean, MatchedTriggerCodes> isCodeableConceptPresentInValueSet(
       ValueSet vs, CodeableConcept cd, String path, boolean valElem) {
+    return isCodeableConceptPresentInValueSet(null, vs, cd, path, valElem);
+  }
+
+  public static Pair<Boolean, MatchedTriggerCodes> isCodeableConceptPresentInValueSet(
+      ValueSetIndex index, ValueSet vs, CodeableConcept cd, String path, boolean valElem) {
 
     Pair<Boolean, MatchedTriggerCodes> retVal = null;
     boolean matchFound = false;
@@ -313,7 +357,7 @@ public class BsaServiceUtils {
 
       for (Coding c : cd.getCoding()) {
 
-        Pair<Boolean, Pair<String, String>> retInfo = isCodingPresentInValueSet(vs, c);
+        Pair<Boolean, Pair<String, String>> retInfo = isCodingPresentInValueSet(index, vs, c);
 
         if (retInfo != null) {
 
@@ -365,13 +409,19 @@ public class BsaServiceUtils {
 
   public static Pair<Boolean, Pair<String, String>> isCodingPresentInValueSet(
       ValueSet vs, Coding coding) {
+    return isCodingPresentInValueSet(null, vs, coding);
+  }
+
+  public static Pair<Boolean, Pair<String, String>> isCodingPresentInValueSet(
+      ValueSetIndex index, ValueSet vs, Coding coding) {
 
     Pair<Boolean, Pair<String, String>> retVal = null;
 
     if (coding != null
         && coding.hasCode()
         && coding.hasSystem()
-        && Boolean.TRUE.equals(isCodePresentInValueSet(vs, coding.getSystem(), coding.getCode()))) {
+        && Boolean.TRUE.equals(
+            isCodePresentInValueSet(index, vs, coding.getSystem(), coding.getCode()))) {
       Pair<String, String> matchedCodeInfo = new Pair<>(coding.getSystem(), coding.getCode());
       retVal = new Pair<>(true, matchedCodeInfo);
     }
@@ -379,6 +429,26 @@ public class BsaServiceUtils {
     return retVal;
   }
 
+  /**
+   * The method checks the presence of the code in the ValueSet using the index of the Knowledge
+   * Artifact when the ValueSet is indexed, and scans the ValueSet otherwise.
+   *
+   * @param index The ValueSet index of the Knowledge Artifact, may be null.
+   * @param vs The ValueSet
+   * @param system The code system
+   * @param code The code
+   * @return true if the code is present in the ValueSet
+   */
+  public static Boolean isCodePresentInValueSet(
+      ValueSetIndex index, ValueSet vs, String system, String code) {
+
+    if (index != null && vs != null && index.isIndexed(vs.getUrl())) {
+      return index.contains(vs.getUrl(), system, code);
+    }
+
+    return isCodePresentInValueSet(vs, system, code);
+  }
+
   public static Boolean isCodePresentInValueSet(ValueSet vs, String system, String code) {
 
     boolean retVal = false;
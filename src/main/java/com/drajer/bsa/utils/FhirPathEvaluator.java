@@ -0,0 +1,98 @@
+package com.drajer.bsa.utils;
+
+import ca.uhn.fhir.context.FhirContext;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.hl7.fhir.exceptions.FHIRException;
+import org.hl7.fhir.r4.hapi.ctx.HapiWorkerContext;
+import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.ExpressionNode;
+import org.hl7.fhir.r4.utils.FHIRPathEngine;
+
+/**
+ *
+ *
+ * <h1>FhirPathEvaluator</h1>
+ *
+ * This class evaluates FHIRPath expressions which are parsed once instead of on every evaluation.
+ * The expressions of the Knowledge Artifacts are compiled when the artifacts are loaded, the other
+ * expressions are compiled on first use and kept in a bounded least recently used cache. A parsed
+ * expression can be shared between threads, while each thread uses its own engine, as the engine
+ * is not thread safe.
+ */
+public class FhirPathEvaluator {
+
+  private final ThreadLocal<FHIRPathEngine> engines;
+  private final Map<String, ExpressionNode> expressions;
+
+  /**
+   * Constructor for the evaluator.
+   *
+   * @param fhirContext The context used by the engines.
+   * @param cacheSize The maximum number of ad-hoc expressions kept compiled.
+   */
+  public FhirPathEvaluator(FhirContext fhirContext, int cacheSize) {
+
+    engines =
+        ThreadLocal.withInitial(
+            () ->
+                new FHIRPathEngine(
+                    new HapiWorkerContext(fhirContext, fhirContext.getValidationSupport())));
+
+    expressions =
+        Collections.synchronizedMap(
+            new LinkedHashMap<String, ExpressionNode>(16, 0.75f, true) {
+              @Override
+              protected boolean removeEldestEntry(Map.Entry<String, ExpressionNode> eldest) {
+                return size() > cacheSize;
+              }
+            });
+  }
+
+  /**
+   * Method to parse an expression.
+   *
+   * @param expression The FHIRPath expression.
+   * @return The parsed expression.
+   * @throws FHIRException when the expression is not valid.
+   */
+  public ExpressionNode compile(String expression) {
+    return engines.get().parse(expression);
+  }
+
+  /**
+   * Method to evaluate a parsed expression.
+   *
+   * @param base The element the expression is evaluated against.
+   * @param compiled The parsed expression.
+   * @return The result of the expression.
+   */
+  public List<Base> evaluate(Base base, ExpressionNode compiled) {
+    return engines.get().evaluate(base, compiled);
+  }
+
+  /**
+   * Method to evaluate an expression, which is parsed only if it is not in the cache.
+   *
+   * @param base The element the expression is evaluated against.
+   * @param expression The FHIRPath expression.
+   * @return The result of the expression.
+   */
+  public List<Base> evaluate(Base base, String expression) {
+
+    ExpressionNode compiled = expressions.get(expression);
+
+    if (compiled == null) {
+      compiled = compile(expression);
+      expressions.put(expression, compiled);
+    }
+
+    return evaluate(base, compiled);
+  }
+
+  public int getCacheSize() {
+    return expressions.size();
+  }
+}
@@ -2,6 +2,8 @@ package com.drajer.cda.parser;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.UnaryOperator;
+import javax.xml.stream.XMLStreamReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
@@ -30,15 +32,30 @@ public class CdaParserUtilities {
     CdaIi templateID = null;
 
     if (templateElement != null) {
-      templateID = new CdaIi();
-      if (!isEmpty(templateElement.getAttribute("root"))) {
-        templateID.setRootValue(templateElement.getAttribute("root"));
-        logger.info(" Root Value = {} ", templateID.getRootValue());
-      }
-      if (!isEmpty(templateElement.getAttribute("extension"))) {
-        templateID.setExtValue(templateElement.getAttribute("extension"));
-        logger.info(" Root Value = {} ", templateID.getExtValue());
-      }
+      templateID = readTemplateId(templateElement::getAttribute);
+    }
+    return templateID;
+  }
+
+  /**
+   * Reads the template id from the current start element of the reader.
+   *
+   * @param reader The reader positioned on the start element.
+   * @return The template id of the element.
+   */
+  public static CdaIi readTemplateId(XMLStreamReader reader) {
+    return readTemplateId(name -> getAttribute(reader, name));
+  }
+
+  private static CdaIi readTemplateId(UnaryOperator<String> attributes) {
+    CdaIi templateID = new CdaIi();
+    if (!isEmpty(attributes.apply("root"))) {
+      templateID.setRootValue(attributes.apply("root"));
+      logger.info(" Root Value = {} ", templateID.getRootValue());
+    }
+    if (!isEmpty(attributes.apply("extension"))) {
+      templateID.setExtValue(attributes.apply("extension"));
+      logger.info(" Root Value = {} ", templateID.getExtValue());
     }
     return templateID;
   }
@@ -46,29 +63,72 @@ public class CdaParserUtilities {
   public static CdaCode readCode(Element codeElement) {
     CdaCode code = null;
     if (codeElement != null) {
-      code = new CdaCode();
-      if (!isEmpty(codeElement.getAttribute("code"))) {
-        code.setCode(codeElement.getAttribute("code"));
-      }
-      if (!isEmpty(codeElement.getAttribute("codeSystem"))) {
-        code.setCodeSystem(codeElement.getAttribute("codeSystem"));
-      }
-      if (!isEmpty(codeElement.getAttribute("codeSystemName"))) {
-        code.setCodeSystemName(codeElement.getAttribute("codeSystemName"));
-      }
-      if (!isEmpty(codeElement.getAttribute("displayName"))) {
-        code.setDisplayName(codeElement.getAttribute("displayName"));
-      }
-      if (!isEmpty(codeElement.getAttribute("xsi:type"))) {
-        code.setXpath(codeElement.getAttribute("xsi:type"));
-      }
-      if (!isEmpty(codeElement.getAttribute("nullFlavor"))) {
-        code.setNullFlavor(codeElement.getAttribute("nullFlavor"));
-      }
+      code = readCode(codeElement::getAttribute);
     }
     return code;
   }
 
+  /**
+   * Reads the code from the current start element of the reader.
+   *
+   * @param reader The reader positioned on the start element.
+   * @return The code of the element.
+   */
+  public static CdaCode readCode(XMLStreamReader reader) {
+    return readCode(name -> getAttribute(reader, name));
+  }
+
+  private static CdaCode readCode(UnaryOperator<String> attributes) {
+    CdaCode code = new CdaCode();
+    if (!isEmpty(attributes.apply("code"))) {
+      code.setCode(attributes.apply("code"));
+    }
+    if (!isEmpty(attributes.apply("codeSystem"))) {
+      code.setCodeSystem(attributes.apply("codeSystem"));
+    }
+    if (!isEmpty(attributes.apply("codeSystemName"))) {
+      code.setCodeSystemName(attributes.apply("codeSystemName"));
+    }
+    if (!isEmpty(attributes.apply("displayName"))) {
+      code.setDisplayName(attributes.apply("displayName"));
+    }
+    if (!isEmpty(attributes.apply("xsi:type"))) {
+      code.setXpath(attributes.apply("xsi:type"));
+    }
+    if (!isEmpty(attributes.apply("nullFlavor"))) {
+      code.setNullFlavor(attributes.apply("nullFlavor"));
+    }
+    return code;
+  }
+
+  /**
+   * Returns the value of the attribute of the current start element of the reader.
+   *
+   * @param reader The reader positioned on the start element.
+   * @param qualifiedName The name of the attribute including the prefix, for example xsi:type.
+   * @return The value of the attribute, or null if the element does not have the attribute.
+   */
+  public static String getAttribute(XMLStreamReader reader, String qualifiedName) {
+    for (int i = 0; i < reader.getAttributeCount(); i++) {
+      if (qualifiedName.equals(
+          getQualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)))) {
+        return reader.getAttributeValue(i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the name including the prefix, as used by the CDA documents. Readers which are not
+   * namespace aware may already include the prefix in the local name.
+   */
+  public static String getQualifiedName(String prefix, String localName) {
+    if (prefix == null || prefix.isEmpty() || localName.indexOf(':') >= 0) {
+      return localName;
+    }
+    return prefix + ":" + localName;
+  }
+
   public static boolean isEmpty(final String str) {
     return str == null || str.trim().length() == 0;
   }
@@ -83,6 +83,10 @@ public class CdaRrModel {
     return setId;
   }
 
+  public void setSetId(CdaIi setId) {
+    this.setId = setId;
+  }
+
   public void setSetId(List<CdaIi> setIds) {
     if (!CollectionUtils.isEmpty(setIds)) {
       this.setId = setIds.get(0);
@@ -93,6 +97,10 @@ public class CdaRrModel {
     return patientId;
   }
 
+  public void setPatientId(CdaIi patientId) {
+    this.patientId = patientId;
+  }
+
   public void setPatientId(List<CdaIi> patientIds) {
     if (!CollectionUtils.isEmpty(patientIds)) {
       this.patientId = patientIds.get(0);
@@ -103,6 +111,10 @@ public class CdaRrModel {
     return encounterId;
   }
 
+  public void setEncounterId(CdaIi encounterId) {
+    this.encounterId = encounterId;
+  }
+
   public void setEncounterId(List<CdaIi> encounterIds) {
     if (!CollectionUtils.isEmpty(encounterIds)) {
       this.encounterId = encounterIds.get(0);
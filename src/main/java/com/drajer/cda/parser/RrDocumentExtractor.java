@@ -0,0 +1,221 @@
+package com.drajer.cda.parser;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ *
+ *
+ * <h1>RrDocumentExtractor</h1>
+ *
+ * This class extracts the data elements required for the CdaRrModel in a single pass over the
+ * Reportability Response, without building a DOM for the document. The elements are selected
+ * using the same rules as the following XPath expressions, with the first match in document order
+ * being used.
+ *
+ * <ul>
+ *   <li>RR document id : /ClinicalDocument/id[not(@nullFlavor)]
+ *   <li>eICR document : //externalDocument[not(@nullFlavor) and
+ *       ./templateId[@root='2.16.840.1.113883.10.20.15.2.3.10']], with the eICR document id and the
+ *       set id read from ./id[not(@nullFlavor)] and ./setId[not(@nullFlavor)]
+ *   <li>Reportability status : //observation[not(@nullFlavor) and
+ *       ./templateId[@root='2.16.840.1.113883.10.20.15.2.3.19']]/value[not(@nullFlavor)]
+ *   <li>Patient id : /ClinicalDocument/recordTarget/patientRole/id[not(@nullFlavor)]
+ *   <li>Encounter id : //encompassingEncounter/id[not(@nullFlavor)]
+ * </ul>
+ *
+ * An instance is used to read a single document and is not thread safe.
+ */
+class RrDocumentExtractor {
+
+  static final String EICR_EXTERNAL_DOC_TEMPLATE_ID = "2.16.840.1.113883.10.20.15.2.3.10";
+  static final String RR_STATUS_OBS_TEMPLATE_ID = "2.16.840.1.113883.10.20.15.2.3.19";
+
+  private static final String CLINICAL_DOCUMENT = "ClinicalDocument";
+  private static final String EXTERNAL_DOCUMENT = "externalDocument";
+  private static final String OBSERVATION = "observation";
+  private static final String RECORD_TARGET = "recordTarget";
+  private static final String PATIENT_ROLE = "patientRole";
+  private static final String ENCOMPASSING_ENCOUNTER = "encompassingEncounter";
+  private static final String ID = "id";
+  private static final String SET_ID = "setId";
+  private static final String TEMPLATE_ID = "templateId";
+  private static final String VALUE = "value";
+  private static final String NULL_FLAVOR = "nullFlavor";
+  private static final String ROOT = "root";
+
+  /** An element which is open at the current position of the reader. */
+  private static class Frame {
+
+    private final String name;
+    private final long position;
+    private final Frame parent;
+    private final boolean nullFlavor;
+
+    // Data collected for externalDocument and observation elements.
+    private boolean templateMatched;
+    private CdaIi firstId;
+    private CdaIi firstSetId;
+    private CdaCode firstValue;
+
+    private Frame(String name, long position, Frame parent, boolean nullFlavor) {
+      this.name = name;
+      this.position = position;
+      this.parent = parent;
+      this.nullFlavor = nullFlavor;
+    }
+
+    private boolean isCandidate(String candidateName) {
+      return !nullFlavor && candidateName.equals(name);
+    }
+  }
+
+  private final Deque<Frame> openElements = new ArrayDeque<>();
+  private long position;
+
+  private CdaIi rrDocId;
+  private CdaIi patientId;
+  private CdaIi encounterId;
+
+  private Frame eicrDocument;
+  private Frame statusObservation;
+
+  void read(XMLStreamReader reader) throws XMLStreamException {
+
+    while (reader.hasNext()) {
+
+      int event = reader.next();
+
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        startElement(reader);
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        endElement();
+      } else if (event == XMLStreamConstants.DTD) {
+        throw new XMLStreamException("DOCTYPE is not allowed in a Reportability Response");
+      }
+    }
+  }
+
+  private void startElement(XMLStreamReader reader) {
+
+    String name = CdaParserUtilities.getQualifiedName(reader.getPrefix(), reader.getLocalName());
+    boolean nullFlavor = CdaParserUtilities.getAttribute(reader, NULL_FLAVOR) != null;
+    Frame parent = openElements.peek();
+
+    openElements.push(new Frame(name, position++, parent, nullFlavor));
+
+    if (parent == null) {
+      return;
+    }
+
+    switch (name) {
+      case ID:
+        if (!nullFlavor) {
+          readId(reader, parent);
+        }
+        break;
+
+      case SET_ID:
+        if (!nullFlavor && parent.isCandidate(EXTERNAL_DOCUMENT) && parent.firstSetId == null) {
+          parent.firstSetId = CdaParserUtilities.readTemplateId(reader);
+        }
+        break;
+
+      case TEMPLATE_ID:
+        String root = CdaParserUtilities.getAttribute(reader, ROOT);
+        if ((parent.isCandidate(EXTERNAL_DOCUMENT) && EICR_EXTERNAL_DOC_TEMPLATE_ID.equals(root))
+            || (parent.isCandidate(OBSERVATION) && RR_STATUS_OBS_TEMPLATE_ID.equals(root))) {
+          parent.templateMatched = true;
+        }
+        break;
+
+      case VALUE:
+        if (!nullFlavor && parent.isCandidate(OBSERVATION) && parent.firstValue == null) {
+          parent.firstValue = CdaParserUtilities.readCode(reader);
+        }
+        break;
+
+      default:
+        break;
+    }
+  }
+
+  private void readId(XMLStreamReader reader, Frame parent) {
+
+    if (rrDocId == null && parent.parent == null && CLINICAL_DOCUMENT.equals(parent.name)) {
+      rrDocId = CdaParserUtilities.readTemplateId(reader);
+    }
+
+    if (parent.isCandidate(EXTERNAL_DOCUMENT) && parent.firstId == null) {
+      parent.firstId = CdaParserUtilities.readTemplateId(reader);
+    }
+
+    if (encounterId == null && ENCOMPASSING_ENCOUNTER.equals(parent.name)) {
+      encounterId = CdaParserUtilities.readTemplateId(reader);
+    }
+
+    if (patientId == null && isPatientRole(parent)) {
+      patientId = CdaParserUtilities.readTemplateId(reader);
+    }
+  }
+
+  private boolean isPatientRole(Frame frame) {
+
+    Frame recordTarget = frame.parent;
+    Frame document = recordTarget != null ? recordTarget.parent : null;
+
+    return PATIENT_ROLE.equals(frame.name)
+        && recordTarget != null
+        && RECORD_TARGET.equals(recordTarget.name)
+        && document != null
+        && document.parent == null
+        && CLINICAL_DOCUMENT.equals(document.name);
+  }
+
+  private void endElement() {
+
+    Frame frame = openElements.pop();
+
+    // Nested elements end before their parents, so the position decides the document order.
+    if (frame.templateMatched) {
+      if (frame.isCandidate(EXTERNAL_DOCUMENT)
+          && (eicrDocument == null || frame.position < eicrDocument.position)) {
+        eicrDocument = frame;
+      } else if (frame.isCandidate(OBSERVATION)
+          && (statusObservation == null || frame.position < statusObservation.position)) {
+        statusObservation = frame;
+      }
+    }
+  }
+
+  CdaIi getRrDocId() {
+    return rrDocId;
+  }
+
+  boolean hasEicrDocument() {
+    return eicrDocument != null;
+  }
+
+  CdaIi getEicrDocId() {
+    return eicrDocument != null ? eicrDocument.firstId : null;
+  }
+
+  CdaIi getSetId() {
+    return eicrDocument != null ? eicrDocument.firstSetId : null;
+  }
+
+  CdaCode getReportableStatus() {
+    return statusObservation != null ? statusObservation.firstValue : null;
+  }
+
+  CdaIi getPatientId() {
+    return patientId;
+  }
+
+  CdaIi getEncounterId() {
+    return encounterId;
+  }
+}
@@ -1,20 +1,20 @@
 package com.drajer.cda.parser;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BOMInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 @Service
@@ -22,123 +22,136 @@ public class RrParser {
 
   private final Logger logger = LoggerFactory.getLogger(RrParser.class);
 
+  private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+  // The factory is configured once and only used to create readers, which is thread safe.
+  private static final XMLInputFactory xmlInputFactory = createXmlInputFactory();
+
+  // DocumentBuilders are not thread safe, so each thread uses its own builder.
+  private static final ThreadLocal<DocumentBuilder> documentBuilder =
+      ThreadLocal.withInitial(RrParser::createDocumentBuilder);
+
+  private static XMLInputFactory createXmlInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
+  private static DocumentBuilder createDocumentBuilder() {
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+      return factory.newDocumentBuilder();
+    } catch (ParserConfigurationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   public Document initDoc(String cdaFile)
       throws ParserConfigurationException, SAXException, IOException {
     logger.debug("Initializing Document ");
-    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-    factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-    DocumentBuilder builder = factory.newDocumentBuilder();
+    DocumentBuilder builder = documentBuilder.get();
+    builder.reset();
     return builder.parse(
         new BOMInputStream(IOUtils.toInputStream(cdaFile, StandardCharsets.UTF_8.name())));
   }
 
+  /**
+   * The method parses the Reportability Response in a single pass using a streaming reader, so the
+   * method can be called concurrently and does not build a DOM for the document.
+   *
+   * @param cdaFile The Reportability Response.
+   * @return The data elements of the Reportability Response, or null if it is not well formed.
+   */
   public CdaRrModel parse(String cdaFile) {
-    try {
 
-      Document doc = initDoc(cdaFile);
+    XMLStreamReader reader = null;
 
-      logger.debug("Creating Model");
-      CdaRrModel model = new CdaRrModel();
-
-      // Parse the id element.
-      try {
-
-        logger.info(" Setting the clinical document ids ");
-        model.setRrDocId(
-            CdaParserUtilities.readTemplateIdList(
-                (NodeList) CdaParserConstants.DOC_ID_EXP.evaluate(doc, XPathConstants.NODESET)));
+    try {
 
-        logger.info(
-            " RrDocId root = {} , extension = {} ",
-            ((model.getRrDocId() != null) ? model.getRrDocId().getRootValue() : null),
-            ((model.getRrDocId() != null) ? model.getRrDocId().getExtValue() : null));
+      StringReader in = new StringReader(cdaFile);
+      if (!cdaFile.isEmpty() && cdaFile.charAt(0) == BYTE_ORDER_MARK) {
+        in.skip(1);
+      }
 
-        // Extract the Eicr Doc Id
-        Element nd =
-            (Element) CdaParserConstants.EICR_DOC_ID_EXP.evaluate(doc, XPathConstants.NODE);
+      reader = xmlInputFactory.createXMLStreamReader(in);
 
-        if (nd != null) {
-          logger.info(" Eicr Document Reference Found ");
+      RrDocumentExtractor extractor = new RrDocumentExtractor();
+      extractor.read(reader);
 
-          model.setEicrDocId(
-              CdaParserUtilities.readTemplateIdList(
-                  (NodeList) CdaParserConstants.REL_ID_EXP.evaluate(nd, XPathConstants.NODESET)));
+      logger.debug("Creating Model");
+      CdaRrModel model = new CdaRrModel();
 
-          logger.info(
-              " EicrDocId root = {} , extension = {} ",
-              ((model.getEicrDocId() != null) ? model.getEicrDocId().getRootValue() : null),
-              ((model.getEicrDocId() != null) ? model.getEicrDocId().getExtValue() : null));
+      // Parse the id element.
+      logger.info(" Setting the clinical document ids ");
+      model.setRrDocId(extractor.getRrDocId());
 
-          model.setSetId(
-              CdaParserUtilities.readTemplateIdList(
-                  (NodeList) CdaParserConstants.SET_ID_EXP.evaluate(nd, XPathConstants.NODESET)));
-          logger.info(
-              "SetID = {}", ((model.getSetId() != null) ? model.getSetId().getExtValue() : null));
+      logger.info(
+          " RrDocId root = {} , extension = {} ",
+          ((model.getRrDocId() != null) ? model.getRrDocId().getRootValue() : null),
+          ((model.getRrDocId() != null) ? model.getRrDocId().getExtValue() : null));
 
-          // Determine status
-          Element rrstatusElem =
-              (Element) CdaParserConstants.RR_STATUS_OBS_EXP.evaluate(doc, XPathConstants.NODE);
+      // Extract the Eicr Doc Id
+      if (extractor.hasEicrDocument()) {
+        logger.info(" Eicr Document Reference Found ");
 
-          if (rrstatusElem != null) {
+        model.setEicrDocId(extractor.getEicrDocId());
 
-            logger.debug(" Found the Reportability Status Node ");
-            Element resultValue =
-                (Element)
-                    CdaParserConstants.REL_VAL_EXP.evaluate(rrstatusElem, XPathConstants.NODE);
+        logger.info(
+            " EicrDocId root = {} , extension = {} ",
+            ((model.getEicrDocId() != null) ? model.getEicrDocId().getRootValue() : null),
+            ((model.getEicrDocId() != null) ? model.getEicrDocId().getExtValue() : null));
 
-            if (resultValue != null) {
+        model.setSetId(extractor.getSetId());
+        logger.info(
+            "SetID = {}", ((model.getSetId() != null) ? model.getSetId().getExtValue() : null));
 
-              logger.debug(" Found the Reportability Status Value Node ");
-              CdaCode val = CdaParserUtilities.readCode(resultValue);
+        // Determine status
+        CdaCode val = extractor.getReportableStatus();
 
-              if (val != null) {
+        if (val != null) {
 
-                logger.debug(" Setting the Reportability Status ");
-                model.setReportableType(val.getCode());
-                model.setReportableStatus(val);
-              }
-            }
-          }
+          logger.debug(" Setting the Reportability Status ");
+          model.setReportableType(val.getCode());
+          model.setReportableStatus(val);
         }
+      }
 
-        if (model.getSetId() == null) {
-
-          model.setPatientId(
-              CdaParserUtilities.readTemplateIdList(
-                  (NodeList)
-                      CdaParserConstants.PATIENT_ID_EXP.evaluate(doc, XPathConstants.NODESET)));
-
-          model.setEncounterId(
-              CdaParserUtilities.readTemplateIdList(
-                  (NodeList)
-                      CdaParserConstants.ENCOUNTER_ID_EXP.evaluate(doc, XPathConstants.NODESET)));
+      if (model.getSetId() == null) {
 
-          logger.info(
-              "Patient Id = {}, Encounter Id = {}",
-              ((model.getPatientId() != null) ? model.getPatientId().getExtValue() : null),
-              ((model.getEncounterId() != null) ? model.getEncounterId().getExtValue() : null));
-        }
+        model.setPatientId(extractor.getPatientId());
+        model.setEncounterId(extractor.getEncounterId());
 
-      } catch (XPathExpressionException e) {
-        logger.error("Failed to resolve xPath", e);
+        logger.info(
+            "Patient Id = {}, Encounter Id = {}",
+            ((model.getPatientId() != null) ? model.getPatientId().getExtValue() : null),
+            ((model.getEncounterId() != null) ? model.getEncounterId().getExtValue() : null));
       }
 
       logger.info("Returning Parsed Model");
 
       return model;
-    } catch (ParserConfigurationException e1) {
-
-      logger.error("Caught Parser config Exception", e1);
 
-    } catch (SAXException e1) {
+    } catch (XMLStreamException | IOException e) {
 
-      logger.error("Caught SAX Exception", e1);
+      logger.error("Caught XML Stream Exception", e);
 
-    } catch (IOException e1) {
-
-      logger.error("Caught IO  Exception", e1);
+    } finally {
+      closeReader(reader);
     }
 
     return null;
   }
+
+  private void closeReader(XMLStreamReader reader) {
+    if (reader != null) {
+      try {
+        reader.close();
+      } catch (XMLStreamException e) {
+        logger.debug("Unable to close the XML Stream Reader", e);
+      }
+    }
+  }
 }
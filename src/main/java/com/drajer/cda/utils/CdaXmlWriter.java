@@ -0,0 +1,252 @@
+package com.drajer.cda.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import org.apache.commons.io.output.StringBuilderWriter;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.text.StringEscapeUtils;
+
+/**
+ *
+ *
+ * <h1>CdaXmlWriter</h1>
+ *
+ * This class writes the CDA elements directly to a Writer instead of creating a String for each
+ * element. The output of each method is identical to the output of the corresponding method in
+ * CdaGeneratorUtils, for example startElement produces the same XML as getXmlForStartElement.
+ * Values which are escaped by CdaGeneratorUtils are escaped as they are written, without creating
+ * the escaped String.
+ */
+public class CdaXmlWriter {
+
+  private final Writer out;
+
+  public CdaXmlWriter(Writer out) {
+    this.out = out;
+  }
+
+  public CdaXmlWriter(StringBuilder sb) {
+    this(new StringBuilderWriter(sb));
+  }
+
+  /** Writes an XML fragment that has already been generated. */
+  public CdaXmlWriter append(String xml) {
+    write(xml);
+    return this;
+  }
+
+  /** Same output as CdaGeneratorUtils.getXmlHeaderForClinicalDocument. */
+  public CdaXmlWriter clinicalDocumentHeader() {
+
+    write(CdaGeneratorConstants.DOC_HEADER_XML);
+    write(CdaGeneratorConstants.CLINICAL_DOC_HEADER_XML);
+    cd(CdaGeneratorConstants.REALM_CODE_EL_NAME, CdaGeneratorConstants.US_REALM_CODE_VAL);
+
+    write(CdaGeneratorConstants.START_XMLTAG);
+    write(CdaGeneratorConstants.TYPEID_ROOT);
+    quoted(CdaGeneratorConstants.CDA_DOC_ROOT, false);
+    attribute(CdaGeneratorConstants.EXTENSION, CdaGeneratorConstants.CDA_DOC_EXT, false);
+    write(CdaGeneratorConstants.END_XMLTAG_NEWLN);
+
+    templateId(CdaGeneratorConstants.CCDA_CCD_TEMPLATE_ID1);
+    templateId(
+        CdaGeneratorConstants.CCDA_CCD_TEMPLATE_ID1, CdaGeneratorConstants.US_REALM_HEADER_EXT);
+    templateId(
+        CdaGeneratorConstants.PUBLIC_HEALTH_TEMPLATE_ID, CdaGeneratorConstants.PUBLIC_HEALTH_EXT);
+    return this;
+  }
+
+  /** Same output as CdaGeneratorUtils.getEndXMLHeaderForCdaDocument. */
+  public CdaXmlWriter endClinicalDocument() {
+    write(CdaGeneratorConstants.END_HEADER_CLINICAL_DOC);
+    return this;
+  }
+
+  /** Same output as CdaGeneratorUtils.getXmlForStartElement. */
+  public CdaXmlWriter startElement(String name) {
+    write(CdaGeneratorConstants.START_XMLTAG);
+    write(name);
+    write(CdaGeneratorConstants.RIGHT_ANGLE_BRACKET);
+    write("\n");
+    return this;
+  }
+
+  /** Same output as CdaGeneratorUtils.getXmlForEndElement. */
+  public CdaXmlWriter endElement(String name) {
+    write(CdaGeneratorConstants.START_XMLTAG);
+    write(CdaGeneratorConstants.FORWARD_SLASH);
+    write(name);
+    write(CdaGeneratorConstants.RIGHT_ANGLE_BRACKET);
+    write("\n");
+    return this;
+  }
+
+  /** Same output as CdaGeneratorUtils.getXmlForTemplateId. */
+  public CdaXmlWriter templateId(String root) {
+    write(CdaGeneratorConstants.START_XMLTAG);
+    write("templateId root=");
+    quoted(root, false);
+    write(CdaGeneratorConstants.END_XMLTAG_NEWLN);
+    return this;
+  }
+
+  /** Same output as CdaGeneratorUtils.getXmlForTemplateId with an extension. */
+  public CdaXmlWriter templateId(String root, String extension) {
+    write(CdaGeneratorConstants.START_XMLTAG);
+    write("templateId root=");
+    quoted(root, false);
+    attribute(CdaGeneratorConstants.EXTENSION, extension, false);
+    write(CdaGeneratorConstants.END_XMLTAG_NEWLN);
+    return this;
+  }
+
+  /** Same output as CdaGeneratorUtils.getXmlForII. */
+  public CdaXmlWriter ii(String root) {
+    write(CdaGeneratorConstants.START_XMLTAG);
+    write(CdaGeneratorConstants.ID_ROOT);
+    quoted(root, false);
+    write(CdaGeneratorConstants.END_XMLTAG_NEWLN);
+    return this;
+  }
+
+  /** Same output as CdaGeneratorUtils.getXmlForII with an extension. */
+  public CdaXmlWriter ii(String root, String ext) {
+    write(CdaGeneratorConstants.START_XMLTAG);
+    write(CdaGeneratorConstants.ID_ROOT);
+    quoted(root, false);
+    attribute(CdaGeneratorConstants.EXTENSION, ext, false);
+    write(CdaGeneratorConstants.END_XMLTAG_NEWLN);
+    return this;
+  }
+
+  /** Same output as CdaGeneratorUtils.getXmlForIIWithElName. */
+  public CdaXmlWriter iiWithElName(String elName, String root) {
+    write(CdaGeneratorConstants.START_XMLTAG);
+    write(elName);
+    write(" root=");
+    quoted(root, false);
+    write(CdaGeneratorConstants.END_XMLTAG_NEWLN);
+    return this;
+  }
+
+  /** Same output as CdaGeneratorUtils.getXmlForIIWithElName with an extension. */
+  public CdaXmlWriter iiWithElName(String elName, String root, String ext) {
+    write(CdaGeneratorConstants.START_XMLTAG);
+    write(elName);
+    write(" root=");
+    quoted(root, false);
+    attribute(CdaGeneratorConstants.EXTENSION, ext, false);
+    write(CdaGeneratorConstants.END_XMLTAG_NEWLN);
+    return this;
+  }
+
+  /** Same output as CdaGeneratorUtils.getXmlForCD. */
+  public CdaXmlWriter cd(String cdName, String code) {
+    write(CdaGeneratorConstants.START_XMLTAG);
+    write(cdName);
+    attribute(CdaGeneratorConstants.CODE_WITH_EQUAL, code, true);
+    write(CdaGeneratorConstants.END_XMLTAG_NEWLN);
+    return this;
+  }
+
+  /** Same output as CdaGeneratorUtils.getXmlForCD with a code system. */
+  public CdaXmlWriter cd(String cdName, String code, String codeSystem) {
+    write(CdaGeneratorConstants.START_XMLTAG);
+    write(cdName);
+    attribute(CdaGeneratorConstants.CODE_WITH_EQUAL, code, true);
+    attribute(CdaGeneratorConstants.CODESYSTEM_WITH_EQUAL, codeSystem, false);
+    write(CdaGeneratorConstants.END_XMLTAG_NEWLN);
+    return this;
+  }
+
+  /** Same output as CdaGeneratorUtils.getXmlForCD with a code system name and display name. */
+  public CdaXmlWriter cd(
+      String cdName, String code, String codeSystem, String codeSystemName, String displayName) {
+    write(CdaGeneratorConstants.START_XMLTAG);
+    write(cdName);
+    attribute(CdaGeneratorConstants.CODE_WITH_EQUAL, code, true);
+    attribute(CdaGeneratorConstants.CODESYSTEM_WITH_EQUAL, codeSystem, false);
+    attribute(CdaGeneratorConstants.CODESYSTEMNAME_WITH_EQUAL, codeSystemName, false);
+    if (!StringUtils.isEmpty(displayName)) {
+      attribute(CdaGeneratorConstants.DISPLAYNAME_WITH_EQUAL, displayName, true);
+    }
+    write(CdaGeneratorConstants.END_XMLTAG_NEWLN);
+    return this;
+  }
+
+  /** Same output as CdaGeneratorUtils.getXmlForValue. */
+  public CdaXmlWriter value(String elName, String val) {
+    write(CdaGeneratorConstants.START_XMLTAG);
+    write(elName);
+    attribute(CdaGeneratorConstants.VALUE_WITH_EQUAL, val, false);
+    write(CdaGeneratorConstants.END_XMLTAG_NEWLN);
+    return this;
+  }
+
+  /** Same output as CdaGeneratorUtils.getXmlForEffectiveTime. */
+  public CdaXmlWriter effectiveTime(String elName, String value) {
+    return value(elName, value);
+  }
+
+  /** Same output as CdaGeneratorUtils.getXmlForText. */
+  public CdaXmlWriter text(String elName, String text) {
+    write(CdaGeneratorConstants.START_XMLTAG);
+    write(elName);
+    write(CdaGeneratorConstants.RIGHT_ANGLE_BRACKET);
+    writeEscaped(text);
+    write(CdaGeneratorConstants.START_XMLTAG);
+    write(CdaGeneratorConstants.FORWARD_SLASH);
+    write(elName);
+    write(CdaGeneratorConstants.RIGHT_ANGLE_BRACKET);
+    write("\n");
+    return this;
+  }
+
+  public void flush() {
+    try {
+      out.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void attribute(String nameWithEqual, String value, boolean escape) {
+    write(CdaGeneratorConstants.SPACE);
+    write(nameWithEqual);
+    quoted(value, escape);
+  }
+
+  private void quoted(String value, boolean escape) {
+    write(CdaGeneratorConstants.DOUBLE_QUOTE);
+    if (escape) {
+      writeEscaped(value);
+    } else {
+      write(value);
+    }
+    write(CdaGeneratorConstants.DOUBLE_QUOTE);
+  }
+
+  private void writeEscaped(String value) {
+
+    if (value == null) {
+      // String concatenation writes null values as "null".
+      write(null);
+      return;
+    }
+
+    try {
+      StringEscapeUtils.ESCAPE_XML10.translate(value, out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void write(String value) {
+    try {
+      out.write(value != null ? value : "null");
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -1,11 +1,23 @@
 package com.drajer.cdafromr4;
 
 import com.drajer.cda.utils.CdaGeneratorConstants;
-import com.drajer.cda.utils.CdaGeneratorUtils;
+import com.drajer.cda.utils.CdaXmlWriter;
 import com.drajer.sof.model.LaunchDetails;
 import com.drajer.sof.model.R4FhirData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
 public class CdaBodyGenerator {
 
@@ -13,49 +25,162 @@ public class CdaBodyGenerator {
 
   private static final Logger logger = LoggerFactory.getLogger(CdaBodyGenerator.class);
 
+  // The sections of the body, in the order they are written to the eICR.
+  private static final List<Section> SECTIONS =
+      Collections.unmodifiableList(
+          Arrays.asList(
+              new Section("Problem", CdaProblemGenerator::generateProblemSection),
+              new Section("Encounter", CdaEncounterGenerator::generateEncounterSection),
+              new Section("Result Section", CdaResultGenerator::generateResultsSection),
+              new Section(
+                  "Medication Administered Section",
+                  CdaMedicationGenerator::generateMedicationSection),
+              new Section(
+                  "Immunization Section", CdaImmunizationGenerator::generateImmunizationSection),
+              new Section(
+                  "Social History Section",
+                  CdaSocialHistoryGenerator::generateSocialHistorySection),
+              new Section(
+                  "Plan Of Treatment Section",
+                  CdaPlanOfTreatmentGenerator::generatePlanOfTreatmentSection),
+              new Section(
+                  "History of Present Illness Section",
+                  (data, details) ->
+                      CdaHistoryOfPresentIllnessGenerator.generateHistoryOfPresentIllnessSection(
+                          data)),
+              new Section(
+                  "Reason For Visit Section",
+                  (data, details) ->
+                      CdaReasonForVisitGenerator.generateReasonForVisitSection(data))));
+
+  // Executor generating the sections in parallel, the sections are generated by the calling thread
+  // when null.
+  private static volatile ExecutorService sectionExecutor;
+
+  /**
+   * Method to set the executor used to generate the sections of the body in parallel. The sections
+   * are always written in the same order, so the body is identical to the one generated by the
+   * calling thread alone.
+   *
+   * @param executor The executor, or null to generate the sections on the calling thread.
+   */
+  public static void setSectionExecutor(ExecutorService executor) {
+    sectionExecutor = executor;
+  }
+
   public static String generateCdaBody(R4FhirData data, LaunchDetails details) {
 
     StringBuilder eICRBody = new StringBuilder();
+    generateCdaBody(data, details, new CdaXmlWriter(eICRBody));
+    return eICRBody.toString();
+  }
+
+  public static void generateCdaBody(
+      R4FhirData data, LaunchDetails details, CdaXmlWriter eICRBody) {
 
-    eICRBody.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME));
-    eICRBody.append(
-        CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.STRUC_BODY_EL_NAME));
+    eICRBody.startElement(CdaGeneratorConstants.COMP_EL_NAME);
+    eICRBody.startElement(CdaGeneratorConstants.STRUC_BODY_EL_NAME);
 
     if (data != null) {
 
-      logger.info("Starting Problem generation ");
-      eICRBody.append(CdaProblemGenerator.generateProblemSection(data, details));
+      ExecutorService executor = sectionExecutor;
 
-      logger.info("Starting Encounter generation ");
-      eICRBody.append(CdaEncounterGenerator.generateEncounterSection(data, details));
+      if (executor != null) {
+        generateSectionsInParallel(data, details, eICRBody, executor);
+      } else {
+        for (Section section : SECTIONS) {
+          eICRBody.append(section.generate(data, details));
+        }
+      }
+    }
 
-      logger.info("Starting Result Section generation ");
-      eICRBody.append(CdaResultGenerator.generateResultsSection(data, details));
+    eICRBody.endElement(CdaGeneratorConstants.STRUC_BODY_EL_NAME);
+    eICRBody.endElement(CdaGeneratorConstants.COMP_EL_NAME);
+  }
 
-      logger.info("Starting Medication Administered Section generation ");
-      eICRBody.append(CdaMedicationGenerator.generateMedicationSection(data, details));
+  private static void generateSectionsInParallel(
+      R4FhirData data, LaunchDetails details, CdaXmlWriter eICRBody, ExecutorService executor) {
 
-      logger.info("Starting Immunization Section generation ");
-      eICRBody.append(CdaImmunizationGenerator.generateImmunizationSection(data, details));
+    List<Future<String>> results = new ArrayList<>(SECTIONS.size());
+    Map<String, String> mdcContext = MDC.getCopyOfContextMap();
 
-      logger.info("Starting Social History Section generation ");
-      eICRBody.append(CdaSocialHistoryGenerator.generateSocialHistorySection(data, details));
+    for (Section section : SECTIONS) {
 
-      logger.info("Starting Plan Of Treatment Section generation ");
-      eICRBody.append(CdaPlanOfTreatmentGenerator.generatePlanOfTreatmentSection(data, details));
+      FutureTask<String> task = new FutureTask<>(() -> section.generate(data, details, mdcContext));
 
-      logger.info("Starting History of Present Illness Section generation ");
-      eICRBody.append(
-          CdaHistoryOfPresentIllnessGenerator.generateHistoryOfPresentIllnessSection(data));
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        // The pool is saturated or shut down, generate the section on the calling thread.
+        task.run();
+      }
 
-      logger.info("Starting Reason For Visit Section generation ");
-      eICRBody.append(CdaReasonForVisitGenerator.generateReasonForVisitSection(data));
+      results.add(task);
     }
 
-    eICRBody.append(
-        CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.STRUC_BODY_EL_NAME));
-    eICRBody.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME));
+    for (int i = 0; i < results.size(); i++) {
+      eICRBody.append(getSection(results.get(i), SECTIONS.get(i), data, details));
+    }
+  }
 
-    return eICRBody.toString();
+  private static String getSection(
+      Future<String> result, Section section, R4FhirData data, LaunchDetails details) {
+
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      result.cancel(false);
+      return section.generate(data, details);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /** A section of the body and its generator. */
+  private static final class Section {
+
+    private final String name;
+    private final BiFunction<R4FhirData, LaunchDetails, String> generator;
+
+    Section(String name, BiFunction<R4FhirData, LaunchDetails, String> generator) {
+      this.name = name;
+      this.generator = generator;
+    }
+
+    String generate(R4FhirData data, LaunchDetails details) {
+      logger.info("Starting {} generation ", name);
+      return generator.apply(data, details);
+    }
+
+    /**
+     * Generates the section with the MDC of the thread creating the eICR, and restores the MDC of
+     * the current thread afterwards, which is the same thread when the section could not be queued.
+     */
+    String generate(R4FhirData data, LaunchDetails details, Map<String, String> mdcContext) {
+
+      Map<String, String> previous = MDC.getCopyOfContextMap();
+      setMdc(mdcContext);
+      try {
+        return generate(data, details);
+      } finally {
+        setMdc(previous);
+      }
+    }
+
+    private static void setMdc(Map<String, String> context) {
+      if (context != null) {
+        MDC.setContextMap(context);
+      } else {
+        MDC.clear();
+      }
+    }
   }
 }
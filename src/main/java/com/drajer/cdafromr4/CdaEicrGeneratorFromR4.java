@@ -1,9 +1,10 @@
 package com.drajer.cdafromr4;
 
-import com.drajer.cda.utils.CdaGeneratorUtils;
+import com.drajer.cda.utils.CdaXmlWriter;
 import com.drajer.ecrapp.model.Eicr;
 import com.drajer.sof.model.LaunchDetails;
 import com.drajer.sof.model.R4FhirData;
+import java.io.Writer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,12 +12,40 @@ public class CdaEicrGeneratorFromR4 {
 
   private static final Logger logger = LoggerFactory.getLogger(CdaEicrGeneratorFromR4.class);
 
+  // Sized for a typical eICR, so that the buffer does not grow while most eICRs are written.
+  private static final int INITIAL_BUFFER_CAPACITY = 64 * 1024;
+
   private CdaEicrGeneratorFromR4() {}
 
   public static String convertR4FhirBundletoCdaEicr(
       R4FhirData data, LaunchDetails details, Eicr ecr) {
 
-    StringBuilder eICR = new StringBuilder();
+    StringBuilder eICR = new StringBuilder(INITIAL_BUFFER_CAPACITY);
+    writeR4FhirBundleAsCdaEicr(data, details, ecr, new CdaXmlWriter(eICR));
+
+    String eicrXml = eICR.toString();
+    logger.debug("Created new eICR {}", eicrXml);
+    return eicrXml;
+  }
+
+  /**
+   * The method writes the eICR directly to the writer without creating the eICR as a String.
+   *
+   * @param data The FHIR data used to create the eICR.
+   * @param details The launch details of the patient.
+   * @param ecr The Eicr whose document details are populated.
+   * @param out The writer to which the eICR is written.
+   */
+  public static void writeR4FhirBundleAsCdaEicr(
+      R4FhirData data, LaunchDetails details, Eicr ecr, Writer out) {
+
+    CdaXmlWriter writer = new CdaXmlWriter(out);
+    writeR4FhirBundleAsCdaEicr(data, details, ecr, writer);
+    writer.flush();
+  }
+
+  private static void writeR4FhirBundleAsCdaEicr(
+      R4FhirData data, LaunchDetails details, Eicr ecr, CdaXmlWriter eICR) {
 
     if (data != null) {
 
@@ -27,11 +56,9 @@ public class CdaEicrGeneratorFromR4 {
 
       if (Boolean.TRUE.equals(data.hasRequiredDataForEicr())) {
         logger.info("Bundle has required data for Eicr");
-        eICR.append(CdaHeaderGenerator.createCdaHeader(data, details, ecr));
-        eICR.append(CdaBodyGenerator.generateCdaBody(data, details));
-        eICR.append(CdaGeneratorUtils.getEndXMLHeaderForCdaDocument());
-
-        logger.debug("Created new eICR {}", eICR);
+        CdaHeaderGenerator.createCdaHeader(data, details, ecr, eICR);
+        CdaBodyGenerator.generateCdaBody(data, details, eICR);
+        eICR.endClinicalDocument();
 
       } else {
         String msg = "Fhir Data not ready/missing to be used for creating a CDA Document";
@@ -43,7 +70,5 @@ public class CdaEicrGeneratorFromR4 {
 
       logger.error("No Fhir Bundle Available to create CDA Documents");
     }
-
-    return eICR.toString();
   }
 }
@@ -2,6 +2,7 @@ package com.drajer.cdafromr4;
 
 import com.drajer.cda.utils.CdaGeneratorConstants;
 import com.drajer.cda.utils.CdaGeneratorUtils;
+import com.drajer.cda.utils.CdaXmlWriter;
 import com.drajer.eca.model.ActionRepo;
 import com.drajer.ecrapp.model.Eicr;
 import com.drajer.sof.model.LaunchDetails;
@@ -65,14 +66,20 @@ public class CdaHeaderGenerator {
   public static String createCdaHeader(R4FhirData data, LaunchDetails details, Eicr ecr) {
 
     StringBuilder eICRHeader = new StringBuilder();
+    createCdaHeader(data, details, ecr, new CdaXmlWriter(eICRHeader));
+    return eICRHeader.toString();
+  }
+
+  public static void createCdaHeader(
+      R4FhirData data, LaunchDetails details, Eicr ecr, CdaXmlWriter eICRHeader) {
 
     if (data != null) {
 
-      eICRHeader.append(CdaGeneratorUtils.getXmlHeaderForClinicalDocument());
+      eICRHeader.clinicalDocumentHeader();
 
       // Set the clinical document id.
       String docId = CdaGeneratorUtils.getGuid();
-      eICRHeader.append(CdaGeneratorUtils.getXmlForII(docId));
+      eICRHeader.ii(docId);
       ecr.setEicrDocId(docId);
       ecr.setxCorrelationId(docId);
 
@@ -84,50 +91,42 @@ public class CdaHeaderGenerator {
       ecr.setDocVersion(details.getVersionNumber());
       ecr.setxRequestId(details.getxRequestId());
 
-      eICRHeader.append(
-          CdaGeneratorUtils.getXmlForCD(
-              CdaGeneratorConstants.CODE_EL_NAME,
-              CdaGeneratorConstants.PH_DOC_CODE,
-              CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
-              CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
-              CdaGeneratorConstants.PH_DOC_DISPLAY_NAME));
+      eICRHeader.cd(
+          CdaGeneratorConstants.CODE_EL_NAME,
+          CdaGeneratorConstants.PH_DOC_CODE,
+          CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
+          CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
+          CdaGeneratorConstants.PH_DOC_DISPLAY_NAME);
 
-      eICRHeader.append(
-          CdaGeneratorUtils.getXmlForText(
-              CdaGeneratorConstants.TITLE_EL_NAME, CdaGeneratorConstants.PH_DOC_DISPLAY_NAME));
+      eICRHeader.text(
+          CdaGeneratorConstants.TITLE_EL_NAME, CdaGeneratorConstants.PH_DOC_DISPLAY_NAME);
 
-      eICRHeader.append(
-          CdaGeneratorUtils.getXmlForEffectiveTime(
-              CdaGeneratorConstants.EFF_TIME_EL_NAME, CdaGeneratorUtils.getCurrentDateTime()));
+      eICRHeader.effectiveTime(
+          CdaGeneratorConstants.EFF_TIME_EL_NAME, CdaGeneratorUtils.getCurrentDateTime());
 
-      eICRHeader.append(
-          CdaGeneratorUtils.getXmlForCD(
-              CdaGeneratorConstants.CONFIDENTIALITY_EL_NAME,
-              CdaGeneratorConstants.CONFIDENTIALITY_CODE,
-              CdaGeneratorConstants.CONFIDENTIALITY_CODE_SYTEM));
+      eICRHeader.cd(
+          CdaGeneratorConstants.CONFIDENTIALITY_EL_NAME,
+          CdaGeneratorConstants.CONFIDENTIALITY_CODE,
+          CdaGeneratorConstants.CONFIDENTIALITY_CODE_SYTEM);
 
-      eICRHeader.append(
-          CdaGeneratorUtils.getXmlForCD(
-              CdaGeneratorConstants.LANGUAGE_CODE_EL_NAME, CdaGeneratorConstants.LANGUAGE_CODE));
+      eICRHeader.cd(
+          CdaGeneratorConstants.LANGUAGE_CODE_EL_NAME, CdaGeneratorConstants.LANGUAGE_CODE);
 
-      eICRHeader.append(
-          CdaGeneratorUtils.getXmlForIIWithElName(
-              CdaGeneratorConstants.SET_ID_EL_NAME,
-              details.getAssigningAuthorityId(),
-              String.valueOf(details.getSetId())));
+      eICRHeader.iiWithElName(
+          CdaGeneratorConstants.SET_ID_EL_NAME,
+          details.getAssigningAuthorityId(),
+          String.valueOf(details.getSetId()));
 
       Integer vernum = ActionRepo.getInstance().getEicrRRService().getMaxVersionId(ecr);
 
       if (vernum == 0) {
-        eICRHeader.append(
-            CdaGeneratorUtils.getXmlForValue(
-                CdaGeneratorConstants.VERSION_EL_NAME, Integer.toString(ecr.getDocVersion())));
+        eICRHeader.value(
+            CdaGeneratorConstants.VERSION_EL_NAME, Integer.toString(ecr.getDocVersion()));
       } else {
         // Setup version number for ecr.
         ecr.setDocVersion(vernum + 1);
-        eICRHeader.append(
-            CdaGeneratorUtils.getXmlForValue(
-                CdaGeneratorConstants.VERSION_EL_NAME, Integer.toString(ecr.getDocVersion())));
+        eICRHeader.value(
+            CdaGeneratorConstants.VERSION_EL_NAME, Integer.toString(ecr.getDocVersion()));
       }
 
       Bundle bundle = data.getData();
@@ -190,8 +189,6 @@ public class CdaHeaderGenerator {
 
       throw new RuntimeException(msg);
     }
-
-    return eICRHeader.toString();
   }
 
   private static String getParticipantXml(LaunchDetails details, R4FhirData data, Patient patient) {
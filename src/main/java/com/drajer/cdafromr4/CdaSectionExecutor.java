@@ -0,0 +1,75 @@
+package com.drajer.cdafromr4;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>CdaSectionExecutor</h1>
+ *
+ * This class creates the bounded pool used by the CdaBodyGenerator to generate the sections of the
+ * eICR body in parallel, when enabled. The pool has a fixed number of threads and a bounded queue,
+ * and a section which cannot be queued is generated by the thread creating the eICR, so that many
+ * eICRs created at the same time do not wait behind each other for the pool.
+ */
+@Component
+public class CdaSectionExecutor {
+
+  private static final Logger logger = LoggerFactory.getLogger(CdaSectionExecutor.class);
+
+  /** Flag to indicate if the sections of the eICR body are generated in parallel. */
+  @Value("${cda.sections.parallel.enabled:false}")
+  private Boolean enabled;
+
+  /** The number of threads generating the sections. */
+  @Value("${cda.sections.parallel.threads:4}")
+  private int threads;
+
+  /** The number of sections waiting for a thread of the pool. */
+  @Value("${cda.sections.parallel.queue-capacity:100}")
+  private int queueCapacity;
+
+  private ThreadPoolExecutor executor;
+
+  @PostConstruct
+  public void initialize() {
+
+    if (Boolean.TRUE.equals(enabled)) {
+
+      logger.info(" Generating the eICR sections in parallel using {} threads", threads);
+
+      AtomicInteger count = new AtomicInteger(0);
+      executor =
+          new ThreadPoolExecutor(
+              threads,
+              threads,
+              0L,
+              TimeUnit.MILLISECONDS,
+              new ArrayBlockingQueue<>(queueCapacity),
+              r -> {
+                Thread t = new Thread(r, "CdaSection-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+              });
+
+      CdaBodyGenerator.setSectionExecutor(executor);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (executor != null) {
+      CdaBodyGenerator.setSectionExecutor(null);
+      executor.shutdownNow();
+    }
+  }
+}
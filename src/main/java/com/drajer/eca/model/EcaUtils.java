@@ -27,7 +27,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.collections4.SetUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.hl7.fhir.r4.model.CodeableConcept;
 import org.hl7.fhir.r4.model.Encounter;
@@ -122,7 +121,13 @@ public class EcaUtils {
           codesToMatchAgainst.size());
     }
 
-    Set<String> intersection = SetUtils.intersection(codesToMatch, codesToMatchAgainst);
+    // Probe the precomputed trigger codes with each patient code.
+    Set<String> intersection = new HashSet<>();
+    for (String code : codesToMatch) {
+      if (codesToMatchAgainst.contains(code)) {
+        intersection.add(code);
+      }
+    }
 
     if (intersection != null && !intersection.isEmpty()) {
 
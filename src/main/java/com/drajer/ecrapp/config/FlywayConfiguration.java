@@ -0,0 +1,80 @@
+package com.drajer.ecrapp.config;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import javax.sql.DataSource;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+
+/**
+ *
+ *
+ * <h1>FlywayConfiguration</h1>
+ *
+ * This class applies the versioned schema migrations, such as the indexes used by the DAO queries,
+ * using Flyway. The tables are created and updated by Hibernate from the entity mappings, hence the
+ * migrations are applied after the SessionFactory is created instead of by the Spring Boot Flyway
+ * auto configuration, which runs before the tables exist on a new database.
+ *
+ * <p>Existing databases without the Flyway history table are baselined at version 0, so that all
+ * the migrations are applied to them.
+ *
+ * <p>The {vendor} placeholder in the locations is replaced by the id of the database, such as
+ * postgresql or h2, for the migrations which use database specific SQL.
+ */
+@Configuration
+public class FlywayConfiguration {
+
+  public static final String BASELINE_VERSION = "0";
+  public static final String VENDOR_PLACEHOLDER = "{vendor}";
+
+  @Value("${db.migration.locations:classpath:db/migration,classpath:db/vendor/{vendor}}")
+  private String[] locations;
+
+  @Bean(initMethod = "migrate")
+  @DependsOn("sessionFactory")
+  @ConditionalOnProperty(name = "db.migration.enabled", havingValue = "true", matchIfMissing = true)
+  public Flyway flyway(DataSource dataSource) {
+    return createFlyway(dataSource, locations);
+  }
+
+  /**
+   * Creates the Flyway instance used to migrate the database.
+   *
+   * @param dataSource The data source of the database to be migrated.
+   * @param locations The locations of the migration scripts.
+   * @return The Flyway instance.
+   */
+  public static Flyway createFlyway(DataSource dataSource, String... locations) {
+    return Flyway.configure()
+        .dataSource(dataSource)
+        .locations(resolveLocations(dataSource, locations))
+        .baselineOnMigrate(true)
+        .baselineVersion(BASELINE_VERSION)
+        .load();
+  }
+
+  private static String[] resolveLocations(DataSource dataSource, String... locations) {
+
+    if (Arrays.stream(locations).noneMatch(location -> location.contains(VENDOR_PLACEHOLDER))) {
+      return locations;
+    }
+
+    String vendor;
+    try (Connection connection = dataSource.getConnection()) {
+      vendor = DatabaseDriver.fromJdbcUrl(connection.getMetaData().getURL()).getId();
+    } catch (SQLException e) {
+      throw new IllegalStateException("Unable to determine the database to migrate", e);
+    }
+
+    return Arrays.stream(locations)
+        .map(location -> location.replace(VENDOR_PLACEHOLDER, vendor))
+        .toArray(String[]::new);
+  }
+}
@@ -4,13 +4,16 @@ import com.zaxxer.hikari.HikariDataSource;
 import java.util.Properties;
 import javax.sql.DataSource;
 import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.core.env.Environment;
 import org.springframework.orm.hibernate5.HibernateTransactionManager;
 import org.springframework.orm.hibernate5.LocalSessionFactoryBean;
+import org.springframework.orm.hibernate5.SpringBeanContainer;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 @Configuration
@@ -18,19 +21,24 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
 @PropertySource(value = {"classpath:application.properties"})
 public class HibernateConfiguration {
 
+  public static final String[] ENTITY_PACKAGES = {
+    "com.drajer.ersd.model",
+    "com.drajer.sof.model",
+    "com.drajer.eca.model",
+    "com.drajer.ecrapp.model",
+    "com.drajer.bsa.model",
+    "com.drajer.bsa.kar.model"
+  };
+
   @Autowired private Environment environment;
 
+  @Autowired private ConfigurableListableBeanFactory beanFactory;
+
   @Bean
   public LocalSessionFactoryBean sessionFactory() {
     LocalSessionFactoryBean sessionFactory = new LocalSessionFactoryBean();
     sessionFactory.setDataSource(dataSource());
-    sessionFactory.setPackagesToScan(
-        "com.drajer.ersd.model",
-        "com.drajer.sof.model",
-        "com.drajer.eca.model",
-        "com.drajer.ecrapp.model",
-        "com.drajer.bsa.model",
-        "com.drajer.bsa.kar.model");
+    sessionFactory.setPackagesToScan(ENTITY_PACKAGES);
     sessionFactory.setHibernateProperties(hibernateProperties());
     return sessionFactory;
   }
@@ -67,6 +75,9 @@ public class HibernateConfiguration {
     properties.put(
         "hibernate.id.new_generator_mappings",
         environment.getRequiredProperty("hibernate.id.new_generator_mappings"));
+
+    // Attribute converters, such as the PayloadConverter, are created by Spring.
+    properties.put(AvailableSettings.BEAN_CONTAINER, new SpringBeanContainer(beanFactory));
     return properties;
   }
 
@@ -0,0 +1,80 @@
+package com.drajer.ecrapp.config;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ *
+ *
+ * <h1>TriggerCodeSet</h1>
+ *
+ * An immutable set of trigger codes in the form system|code. The codes are interned and stored in
+ * a sorted array, which takes considerably less memory than a HashSet for the large trigger code
+ * value sets, and membership is checked using a binary search.
+ */
+public final class TriggerCodeSet extends AbstractSet<String> {
+
+  private static final TriggerCodeSet EMPTY = new TriggerCodeSet(new String[0]);
+
+  private final String[] codes;
+
+  private TriggerCodeSet(String[] codes) {
+    this.codes = codes;
+  }
+
+  public static TriggerCodeSet empty() {
+    return EMPTY;
+  }
+
+  public static TriggerCodeSet of(Collection<String> values) {
+
+    if (values == null || values.isEmpty()) {
+      return EMPTY;
+    }
+
+    String[] sorted =
+        values
+            .stream()
+            .filter(v -> v != null)
+            .map(String::intern)
+            .distinct()
+            .sorted()
+            .toArray(String[]::new);
+    return new TriggerCodeSet(sorted);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof String && Arrays.binarySearch(codes, o) >= 0;
+  }
+
+  @Override
+  public int size() {
+    return codes.length;
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+
+    return new Iterator<String>() {
+
+      private int index = 0;
+
+      @Override
+      public boolean hasNext() {
+        return index < codes.length;
+      }
+
+      @Override
+      public String next() {
+        if (index >= codes.length) {
+          throw new NoSuchElementException();
+        }
+        return codes[index++];
+      }
+    };
+  }
+}
@@ -1,6 +1,7 @@
 package com.drajer.ecrapp.config;
 
 import com.drajer.ecrapp.util.ApplicationUtils;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -25,6 +26,14 @@ public class ValueSetSingleton {
   private Map<String, Set<ValueSet>> grouperToValueSetMap;
   private Map<String, Set<ValueSet>> grouperToEmergentValueSetMap;
 
+  /**
+   * The trigger codes for each trigger path, computed when the eRSD is loaded. The maps are
+   * replaced as a whole when the codes are refreshed, so readers always see a consistent snapshot.
+   */
+  private volatile Map<String, TriggerCodeSet> triggerCodesByPath = Collections.emptyMap();
+
+  private volatile Map<String, TriggerCodeSet> emergentTriggerCodesByPath = Collections.emptyMap();
+
   public void print() {
 
     if (logger.isInfoEnabled()) {
@@ -226,8 +235,72 @@ public class ValueSetSingleton {
     }
   }
 
+  /** The method recomputes the trigger codes for all the trigger paths and swaps them in. */
+  public synchronized void refreshTriggerCodes() {
+
+    Map<String, TriggerCodeSet> codes = new HashMap<>();
+    Map<String, TriggerCodeSet> emergentCodes = new HashMap<>();
+
+    for (String path : getTriggerPathToGrouperMap().keySet()) {
+      codes.put(path, TriggerCodeSet.of(buildValueSetsAsStringForGrouper(path)));
+      emergentCodes.put(path, TriggerCodeSet.of(buildEmergentValueSetsAsStringForGrouper(path)));
+    }
+
+    triggerCodesByPath = Collections.unmodifiableMap(codes);
+    emergentTriggerCodesByPath = Collections.unmodifiableMap(emergentCodes);
+
+    logger.info(" Refreshed Trigger Codes for {} trigger paths", codes.size());
+  }
+
+  /**
+   * The method recomputes the trigger codes for a single trigger path and swaps them in.
+   *
+   * @param path The trigger path, for e.g Condition.code
+   */
+  public synchronized void refreshTriggerCodes(String path) {
+
+    Map<String, TriggerCodeSet> codes = new HashMap<>(triggerCodesByPath);
+    Map<String, TriggerCodeSet> emergentCodes = new HashMap<>(emergentTriggerCodesByPath);
+
+    codes.put(path, TriggerCodeSet.of(buildValueSetsAsStringForGrouper(path)));
+    emergentCodes.put(path, TriggerCodeSet.of(buildEmergentValueSetsAsStringForGrouper(path)));
+
+    triggerCodesByPath = Collections.unmodifiableMap(codes);
+    emergentTriggerCodesByPath = Collections.unmodifiableMap(emergentCodes);
+
+    logger.debug(
+        " Refreshed Trigger Codes for path {}, Codes = {}, Emergent Codes = {}",
+        path,
+        codes.get(path).size(),
+        emergentCodes.get(path).size());
+  }
+
   public Set<String> getValueSetsAsStringForGrouper(String path) {
 
+    TriggerCodeSet codes = triggerCodesByPath.get(path);
+
+    if (codes == null) {
+      logger.debug("Trigger Codes not computed for path {}, computing them now", path);
+      return TriggerCodeSet.of(buildValueSetsAsStringForGrouper(path));
+    }
+
+    return codes;
+  }
+
+  public Set<String> getEmergentValueSetsAsStringForGrouper(String path) {
+
+    TriggerCodeSet codes = emergentTriggerCodesByPath.get(path);
+
+    if (codes == null) {
+      logger.debug("Emergent Trigger Codes not computed for path {}, computing them now", path);
+      return TriggerCodeSet.of(buildEmergentValueSetsAsStringForGrouper(path));
+    }
+
+    return codes;
+  }
+
+  private Set<String> buildValueSetsAsStringForGrouper(String path) {
+
     String grouperId = null;
     Set<String> retVal = new HashSet<>();
     Set<ValueSet> grouperValueSet = getTriggerPathToGrouperMap().get(path);
@@ -252,7 +325,7 @@ public class ValueSetSingleton {
     return retVal;
   }
 
-  public Set<String> getEmergentValueSetsAsStringForGrouper(String path) {
+  private Set<String> buildEmergentValueSetsAsStringForGrouper(String path) {
 
     String grouperId = null;
     Set<String> retVal = new HashSet<>();
@@ -1,8 +1,12 @@
 package com.drajer.ecrapp.controller;
 
+import com.drajer.ecrapp.dao.KeysetPage;
 import com.drajer.ecrapp.model.Eicr;
 import com.drajer.ecrapp.service.EicrRRService;
+import com.drajer.ecrapp.util.KeysetPageWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -12,11 +16,13 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 public class EicrController {
@@ -24,8 +30,31 @@ public class EicrController {
   public static final String ERROR_IN_PROCESSING_THE_REQUEST = "Error in Processing the Request";
   private final Logger logger = LoggerFactory.getLogger(EicrController.class);
 
+  /** The search parameters supported by the paged search. */
+  private static final List<String> SEARCH_PARAMS =
+      Arrays.asList(
+          "eicrId",
+          "eicrDocId",
+          "responseDocId",
+          "setId",
+          "patientId",
+          "encounterId",
+          "version",
+          "fhirServerUrl",
+          "xRequestId");
+
   @Autowired EicrRRService eicrRRService;
 
+  @Autowired ObjectMapper mapper;
+
+  /** The number of eICRs of a page when the page size is not requested. */
+  @Value("${api.page.default-size:100}")
+  private int defaultPageSize;
+
+  /** The maximum number of eICRs of a page. */
+  @Value("${api.page.max-size:500}")
+  private int maxPageSize;
+
   @CrossOrigin
   @GetMapping(value = "/api/eicrData", produces = MediaType.APPLICATION_JSON_VALUE)
   public ResponseEntity<Object> getEicrData(
@@ -92,6 +121,52 @@ public class EicrController {
     return new ResponseEntity<>(eicrData.toString(), HttpStatus.OK);
   }
 
+  /**
+   * The method returns a page of the eICRs matching the search parameters, in the order of their
+   * last update. The response is written while the eICRs are read from the database and contains
+   * the cursor to request the next page with. In summary mode the eICR and RR documents are left
+   * out.
+   */
+  @CrossOrigin
+  @GetMapping(value = "/api/eicrData/page", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> getEicrPage(
+      @RequestParam Map<String, String> requestParams,
+      @RequestParam(name = "cursor", required = false) String cursor,
+      @RequestParam(name = "pageSize", required = false) Integer pageSize,
+      @RequestParam(name = "summary", required = false, defaultValue = "false") boolean summary) {
+
+    Map<String, String> searchParams = new HashMap<>();
+    for (String name : SEARCH_PARAMS) {
+      String value = requestParams.get(name);
+      if (value != null && !value.isEmpty()) {
+        searchParams.put(name, value);
+      }
+    }
+
+    int size = pageSize != null ? Math.min(pageSize, maxPageSize) : defaultPageSize;
+
+    KeysetPage page;
+    try {
+      // The numeric parameters are checked before the response is started.
+      for (String name : new String[] {"eicrId", "version"}) {
+        if (searchParams.containsKey(name)) {
+          Integer.parseInt(searchParams.get(name));
+        }
+      }
+      page = KeysetPage.after(cursor, size, summary, Integer::valueOf);
+    } catch (IllegalArgumentException e) {
+      logger.error(ERROR_IN_PROCESSING_THE_REQUEST, e);
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ERROR_IN_PROCESSING_THE_REQUEST);
+    }
+
+    logger.info("Retrieving page of EICR based on request {}, summary = {}", searchParams, summary);
+
+    return new ResponseEntity<>(
+        KeysetPageWriter.<Eicr>write(
+            mapper, consumer -> eicrRRService.getEicrData(searchParams, page, consumer)),
+        HttpStatus.OK);
+  }
+
   @CrossOrigin
   @GetMapping(value = "/api/responseData", produces = MediaType.APPLICATION_JSON_VALUE)
   public ResponseEntity<Object> getRRData(
@@ -1,15 +1,21 @@
 package com.drajer.ecrapp.controller;
 
 import com.drajer.bsa.model.PublicHealthMessage;
+import com.drajer.ecrapp.dao.KeysetPage;
 import com.drajer.ecrapp.service.PhMessageService;
+import com.drajer.ecrapp.util.KeysetPageWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -18,6 +24,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 public class PhMessageController {
@@ -25,8 +32,34 @@ public class PhMessageController {
   public static final String ERROR_IN_PROCESSING_THE_REQUEST = "Error in Processing the Request";
   private final Logger logger = LoggerFactory.getLogger(PhMessageController.class);
 
+  /** The search parameters supported by the paged search. */
+  private static final List<String> SEARCH_PARAMS =
+      Arrays.asList(
+          "fhirServerBaseUrl",
+          "patientId",
+          "encounterId",
+          "xRequestId",
+          "submittedDataId",
+          "version",
+          "responseDataId",
+          "responseProcessingInstruction",
+          "notifiedResourceId",
+          "notifiedResourceType",
+          "karUniqueId",
+          "notificationId");
+
   @Autowired PhMessageService phMessageService;
 
+  @Autowired ObjectMapper mapper;
+
+  /** The number of messages of a page when the page size is not requested. */
+  @Value("${api.page.default-size:100}")
+  private int defaultPageSize;
+
+  /** The maximum number of messages of a page. */
+  @Value("${api.page.max-size:500}")
+  private int maxPageSize;
+
   @CrossOrigin
   @GetMapping(value = "/api/phMessage", produces = MediaType.APPLICATION_JSON_VALUE)
   public ResponseEntity<Object> getPhMessageDetails(
@@ -134,4 +167,47 @@ public class PhMessageController {
       throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ERROR_IN_PROCESSING_THE_REQUEST);
     }
   }
+
+  /**
+   * The method returns a page of the messages matching the search parameters, in the order of
+   * their last update. The response is written while the messages are read from the database and
+   * contains the cursor to request the next page with. In summary mode the submitted data, the
+   * response data and the trigger match status are left out.
+   */
+  @CrossOrigin
+  @GetMapping(value = "/api/phMessage/page", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> getPhMessagePage(
+      @RequestParam Map<String, String> requestParams,
+      @RequestParam(name = "cursor", required = false) String cursor,
+      @RequestParam(name = "pageSize", required = false) Integer pageSize,
+      @RequestParam(name = "summary", required = false, defaultValue = "false") boolean summary) {
+
+    Map<String, String> searchParams = new HashMap<>();
+    for (String name : SEARCH_PARAMS) {
+      String value = requestParams.get(name);
+      if (value != null && !value.isEmpty()) {
+        searchParams.put(name, value);
+      }
+    }
+
+    int size = pageSize != null ? Math.min(pageSize, maxPageSize) : defaultPageSize;
+
+    KeysetPage page;
+    try {
+      page = KeysetPage.after(cursor, size, summary, UUID::fromString);
+    } catch (IllegalArgumentException e) {
+      logger.error(ERROR_IN_PROCESSING_THE_REQUEST, e);
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ERROR_IN_PROCESSING_THE_REQUEST);
+    }
+
+    logger.info(
+        "Retrieving page of PublicHealthMessage based on request {}, summary = {}",
+        searchParams,
+        summary);
+
+    return new ResponseEntity<>(
+        KeysetPageWriter.<PublicHealthMessage>write(
+            mapper, consumer -> phMessageService.getPhMessageData(searchParams, page, consumer)),
+        HttpStatus.OK);
+  }
 }
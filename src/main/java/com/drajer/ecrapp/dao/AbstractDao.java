@@ -1,11 +1,26 @@
 package com.drajer.ecrapp.dao;
 
+import java.util.Date;
+import java.util.function.Consumer;
+import org.hibernate.Criteria;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.ProjectionList;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.transform.Transformers;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 public abstract class AbstractDao {
 
+  private static final String ID = "id";
+  private static final String LAST_UPDATED = "lastUpdated";
+
   @Autowired private SessionFactory sessionFactory;
 
   protected Session getSession() {
@@ -19,4 +34,73 @@ public abstract class AbstractDao {
   public void delete(Object entity) {
     getSession().delete(entity);
   }
+
+  /**
+   * Passes the entities of a page of the criteria to the consumer one at a time, in the order of
+   * their lastUpdated and id attributes. The entities are evicted from the session once consumed,
+   * so that only one entity of the page is held in memory.
+   *
+   * @param criteria The criteria selecting the entities.
+   * @param entityClass The class of the entities.
+   * @param page The page to read, with the id of its cursor parsed to the type of the id attribute.
+   * @param summaryAttributes The attributes read in summary mode, including lastUpdated and id.
+   * @param consumer The consumer of the entities.
+   * @return The cursor of the next page, or null when there are no more entities.
+   */
+  protected <T> String scrollPage(
+      Criteria criteria,
+      Class<T> entityClass,
+      KeysetPage page,
+      String[] summaryAttributes,
+      Consumer<T> consumer) {
+
+    if (!page.isFirst()) {
+      criteria.add(
+          Restrictions.or(
+              Restrictions.gt(LAST_UPDATED, page.getLastUpdated()),
+              Restrictions.and(
+                  Restrictions.eq(LAST_UPDATED, page.getLastUpdated()),
+                  Restrictions.gt(ID, page.getLastId()))));
+    }
+
+    if (page.isSummary()) {
+      ProjectionList projections = Projections.projectionList();
+      for (String attribute : summaryAttributes) {
+        projections.add(Projections.property(attribute), attribute);
+      }
+      criteria.setProjection(projections);
+      criteria.setResultTransformer(Transformers.aliasToBean(entityClass));
+    }
+
+    // One more row is read to find out if there is a next page.
+    criteria.addOrder(Order.asc(LAST_UPDATED)).addOrder(Order.asc(ID));
+    criteria.setMaxResults(page.getPageSize() + 1);
+    criteria.setFetchSize(Math.min(page.getPageSize() + 1, 100));
+
+    Object last = null;
+    int count = 0;
+
+    try (ScrollableResults results = criteria.scroll(ScrollMode.FORWARD_ONLY)) {
+      while (results.next()) {
+
+        if (count == page.getPageSize()) {
+          BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(last);
+          return KeysetPage.toCursor(
+              (Date) wrapper.getPropertyValue(LAST_UPDATED), wrapper.getPropertyValue(ID));
+        }
+
+        T entity = entityClass.cast(results.get(0));
+        consumer.accept(entity);
+
+        if (!page.isSummary()) {
+          getSession().evict(entity);
+        }
+
+        last = entity;
+        count++;
+      }
+    }
+
+    return null;
+  }
 }
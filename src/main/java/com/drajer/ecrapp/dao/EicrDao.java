@@ -4,6 +4,7 @@ import com.drajer.ecrapp.model.Eicr;
 import com.drajer.ecrapp.model.ReportabilityResponse;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface EicrDao {
 
@@ -23,6 +24,8 @@ public interface EicrDao {
 
   List<Eicr> getRRData(Map<String, String> searchParams);
 
+  String getEicrData(Map<String, String> searchParams, KeysetPage page, Consumer<Eicr> consumer);
+
   List<Eicr> getEicrAndRRByXRequestId(String xRequestId);
 
   Eicr getEicrByDocId(String docId);
@@ -0,0 +1,116 @@
+package com.drajer.ecrapp.dao;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.function.Function;
+
+/**
+ *
+ *
+ * <h1>KeysetPage</h1>
+ *
+ * This class describes a page of a search, which is read in the order of the last update and the
+ * id of the rows. Instead of an offset, the page starts after the row identified by the cursor
+ * returned with the previous page, hence reading a page is as fast for the last page as for the
+ * first one and rows inserted while paging are not returned twice. In summary mode the payload
+ * columns are not read.
+ */
+public class KeysetPage {
+
+  private static final char SEPARATOR = '|';
+
+  private final Date lastUpdated;
+  private final Object lastId;
+  private final int pageSize;
+  private final boolean summary;
+
+  private KeysetPage(Date lastUpdated, Object lastId, int pageSize, boolean summary) {
+
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("Invalid page size " + pageSize);
+    }
+
+    this.lastUpdated = lastUpdated;
+    this.lastId = lastId;
+    this.pageSize = pageSize;
+    this.summary = summary;
+  }
+
+  /**
+   * Method to create the page following the cursor.
+   *
+   * @param cursor The cursor returned with the previous page, or null for the first page.
+   * @param pageSize The maximum number of rows of the page.
+   * @param summary Flag to indicate if the payload columns are left out.
+   * @param idParser The parser of the id in the cursor, which throws an IllegalArgumentException
+   *     when the id is not valid.
+   * @return The page.
+   * @throws IllegalArgumentException when the cursor is not valid.
+   */
+  public static KeysetPage after(
+      String cursor, int pageSize, boolean summary, Function<String, ?> idParser) {
+
+    if (cursor == null || cursor.isEmpty()) {
+      return new KeysetPage(null, null, pageSize, summary);
+    }
+
+    try {
+      String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      int separator = value.indexOf(SEPARATOR);
+
+      if (separator <= 0 || separator == value.length() - 1) {
+        throw new IllegalArgumentException("Invalid cursor " + cursor);
+      }
+
+      return new KeysetPage(
+          Timestamp.from(Instant.parse(value.substring(0, separator))),
+          idParser.apply(value.substring(separator + 1)),
+          pageSize,
+          summary);
+    } catch (DateTimeParseException | IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+    }
+  }
+
+  /**
+   * Method to create the cursor of the page following a row. The time is kept with the precision
+   * of the database, so that the rows updated in the same millisecond are not skipped.
+   *
+   * @param lastUpdated The last update of the row.
+   * @param id The id of the row.
+   * @return The cursor.
+   */
+  public static String toCursor(Date lastUpdated, Object id) {
+
+    // Timestamp.toInstant keeps the nanoseconds of the value read from the database.
+    String value = lastUpdated.toInstant().toString() + SEPARATOR + id;
+
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public boolean isFirst() {
+    return lastUpdated == null;
+  }
+
+  public Date getLastUpdated() {
+    return lastUpdated;
+  }
+
+  public Object getLastId() {
+    return lastId;
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public boolean isSummary() {
+    return summary;
+  }
+}
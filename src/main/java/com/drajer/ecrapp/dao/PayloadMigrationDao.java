@@ -0,0 +1,19 @@
+package com.drajer.ecrapp.dao;
+
+import java.io.Serializable;
+
+public interface PayloadMigrationDao {
+
+  /**
+   * Moves the payloads of a batch of rows, whose columns still hold the payloads, to the configured
+   * PayloadStore. The rows are processed in the order of their ids.
+   *
+   * @param entityClass The entity whose rows are migrated.
+   * @param payloadAttributes The attributes of the entity which hold payloads.
+   * @param lastId The id of the last row of the previous batch, or null for the first batch.
+   * @param batchSize The maximum number of rows in the batch.
+   * @return The id of the last row of the batch, or null when there are no rows left.
+   */
+  Serializable migratePayloads(
+      Class<?> entityClass, String[] payloadAttributes, Serializable lastId, int batchSize);
+}
@@ -3,8 +3,12 @@ package com.drajer.ecrapp.dao;
 import com.drajer.bsa.model.PublicHealthMessage;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface PhMessageDao {
 
   List<PublicHealthMessage> getPhMessageData(Map<String, String> searchParams);
+
+  String getPhMessageData(
+      Map<String, String> searchParams, KeysetPage page, Consumer<PublicHealthMessage> consumer);
 }
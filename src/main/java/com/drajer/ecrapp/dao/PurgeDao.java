@@ -0,0 +1,39 @@
+package com.drajer.ecrapp.dao;
+
+import com.drajer.ecrapp.purge.PurgeTable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public interface PurgeDao {
+
+  /**
+   * Method to retrieve a batch of rows which can be purged.
+   *
+   * @param table The table and the condition of the rows to be purged.
+   * @param columns The columns retrieved, or null to retrieve all the columns.
+   * @param batchSize The maximum number of rows retrieved.
+   * @return The rows, with the values by lower case column name.
+   */
+  List<Map<String, Object>> getPurgeableRows(PurgeTable table, List<String> columns, int batchSize);
+
+  /**
+   * Method to delete rows, which still satisfy the purge condition of the table.
+   *
+   * @param table The table and the condition of the rows to be purged.
+   * @param keys The values of the key column of the rows.
+   * @return The number of rows deleted.
+   */
+  int deleteRows(PurgeTable table, List<Object> keys);
+
+  /**
+   * Method to remove the payload references which are still held by a column from the set, so
+   * that only the payloads which are no longer referenced remain.
+   *
+   * @param payloadColumns The columns holding payloads, by table name.
+   * @param prefix The prefix of the references.
+   * @param references The references, from which the references still in use are removed.
+   */
+  void removeReferencedPayloads(
+      Map<String, List<String>> payloadColumns, String prefix, Set<String> references);
+}
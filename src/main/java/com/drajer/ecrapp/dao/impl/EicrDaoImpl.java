@@ -2,10 +2,12 @@ package com.drajer.ecrapp.dao.impl;
 
 import com.drajer.ecrapp.dao.AbstractDao;
 import com.drajer.ecrapp.dao.EicrDao;
+import com.drajer.ecrapp.dao.KeysetPage;
 import com.drajer.ecrapp.model.Eicr;
 import com.drajer.ecrapp.model.ReportabilityResponse;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
@@ -23,6 +25,30 @@ public class EicrDaoImpl extends AbstractDao implements EicrDao {
   public static final String SET_ID = "setId";
   public static final String X_REQUEST_ID = "xRequestId";
 
+  /** The attributes of the Eicr returned by the searches in summary mode. */
+  public static final String[] SUMMARY_ATTRIBUTES = {
+    "id",
+    X_REQUEST_ID,
+    "xCorrelationId",
+    EICR_DOC_ID,
+    SET_ID,
+    "docVersion",
+    "initiatingAction",
+    "responseType",
+    "responseTypeDisplay",
+    "responseXRequestId",
+    RESPONSE_DOC_ID,
+    FHIR_SERVER_URL,
+    "launchPatientId",
+    "launchDetailsId",
+    ENCOUNTER_ID,
+    "providerUUID",
+    "ehrDocRefId",
+    "eicrProcStatus",
+    "rrProcStatus",
+    "lastUpdated"
+  };
+
   public Eicr saveOrUpdate(Eicr eicr) {
     getSession().saveOrUpdate(eicr);
     return eicr;
@@ -82,6 +108,19 @@ public class EicrDaoImpl extends AbstractDao implements EicrDao {
     return criteria.addOrder(Order.desc("id")).list();
   }
 
+  public String getEicrData(
+      Map<String, String> searchParams, KeysetPage page, Consumer<Eicr> consumer) {
+    Criteria criteria = getSession().createCriteria(Eicr.class);
+    if (searchParams.get("eicrId") != null) {
+      criteria.add(Restrictions.eq("id", Integer.parseInt(searchParams.get("eicrId"))));
+    }
+    if (searchParams.get(RESPONSE_DOC_ID) != null) {
+      criteria.add(Restrictions.eq(RESPONSE_DOC_ID, searchParams.get(RESPONSE_DOC_ID)));
+    }
+    prepareCriteria(criteria, searchParams);
+    return scrollPage(criteria, Eicr.class, page, SUMMARY_ATTRIBUTES, consumer);
+  }
+
   public List<Eicr> getEicrAndRRByXRequestId(String xRequestId) {
     Criteria criteria = getSession().createCriteria(Eicr.class);
     criteria.add(Restrictions.eq(X_REQUEST_ID, xRequestId));
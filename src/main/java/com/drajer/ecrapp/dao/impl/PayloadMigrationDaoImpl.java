@@ -0,0 +1,77 @@
+package com.drajer.ecrapp.dao.impl;
+
+import com.drajer.ecrapp.dao.AbstractDao;
+import com.drajer.ecrapp.dao.PayloadMigrationDao;
+import com.drajer.ecrapp.payload.PayloadStores;
+import java.io.Serializable;
+import java.util.List;
+import org.hibernate.Criteria;
+import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.MatchMode;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.query.Query;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+@Transactional
+public class PayloadMigrationDaoImpl extends AbstractDao implements PayloadMigrationDao {
+
+  public static final String ID = "id";
+
+  @Autowired PayloadStores payloadStores;
+
+  @Override
+  public Serializable migratePayloads(
+      Class<?> entityClass, String[] payloadAttributes, Serializable lastId, int batchSize) {
+
+    Criteria criteria = getSession().createCriteria(entityClass);
+
+    if (lastId != null) {
+      criteria.add(Restrictions.gt(ID, lastId));
+    }
+
+    // Rows with at least one payload which is not a reference yet.
+    Disjunction inlinePayloads = Restrictions.disjunction();
+    for (String attribute : payloadAttributes) {
+      inlinePayloads.add(
+          Restrictions.and(
+              Restrictions.isNotNull(attribute),
+              Restrictions.not(
+                  Restrictions.like(attribute, PayloadStores.REFERENCE_PREFIX, MatchMode.START))));
+    }
+
+    criteria.add(inlinePayloads).addOrder(Order.asc(ID)).setMaxResults(batchSize);
+    List<?> entities = criteria.list();
+
+    // The loaded entities are unchanged, so the columns are updated with the stored payloads.
+    StringBuilder update = new StringBuilder("UPDATE ").append(entityClass.getName());
+    update.append(" SET ");
+    for (int i = 0; i < payloadAttributes.length; i++) {
+      update.append(i > 0 ? ", " : "").append(payloadAttributes[i]);
+      update.append(" = :").append(payloadAttributes[i]);
+    }
+    update.append(" WHERE ").append(ID).append(" = :").append(ID);
+
+    Serializable last = null;
+    for (Object entity : entities) {
+
+      last = getSession().getIdentifier(entity);
+
+      BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(entity);
+      Query<?> query = getSession().createQuery(update.toString()).setParameter(ID, last);
+      for (String attribute : payloadAttributes) {
+        query.setParameter(
+            attribute, payloadStores.store((String) wrapper.getPropertyValue(attribute)));
+      }
+      query.executeUpdate();
+    }
+
+    getSession().clear();
+    return last;
+  }
+}
@@ -1,10 +1,13 @@
 package com.drajer.ecrapp.dao.impl;
 
+import com.drajer.bsa.dao.impl.PublicHealthMessagesDaoImpl;
 import com.drajer.bsa.model.PublicHealthMessage;
 import com.drajer.ecrapp.dao.AbstractDao;
+import com.drajer.ecrapp.dao.KeysetPage;
 import com.drajer.ecrapp.dao.PhMessageDao;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Restrictions;
 import org.springframework.stereotype.Repository;
@@ -40,6 +43,20 @@ public class PhMessageDaoImpl extends AbstractDao implements PhMessageDao {
     return null;
   }
 
+  public String getPhMessageData(
+      Map<String, String> searchParams, KeysetPage page, Consumer<PublicHealthMessage> consumer) {
+    Criteria criteria = getSession().createCriteria(PublicHealthMessage.class);
+
+    prepareCriteria(criteria, searchParams);
+
+    return scrollPage(
+        criteria,
+        PublicHealthMessage.class,
+        page,
+        PublicHealthMessagesDaoImpl.METADATA_ATTRIBUTES,
+        consumer);
+  }
+
   public static void prepareCriteria(Criteria criteria, Map<String, String> searchParams) {
 
     if (searchParams.get(FHIR_SERVER_BASE_URL) != null) {
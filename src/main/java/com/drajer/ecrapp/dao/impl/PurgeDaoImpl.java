@@ -0,0 +1,174 @@
+package com.drajer.ecrapp.dao.impl;
+
+import com.drajer.ecrapp.dao.AbstractDao;
+import com.drajer.ecrapp.dao.PurgeDao;
+import com.drajer.ecrapp.purge.PurgeTable;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ *
+ *
+ * <h1>PurgeDaoImpl</h1>
+ *
+ * The class selects and deletes the rows to be purged using JDBC, so that the rows of any table,
+ * including the tables of the scheduler, can be purged without loading the entities.
+ */
+@Repository
+@Transactional
+public class PurgeDaoImpl extends AbstractDao implements PurgeDao {
+
+  @Override
+  public List<Map<String, Object>> getPurgeableRows(
+      PurgeTable table, List<String> columns, int batchSize) {
+
+    String sql =
+        "SELECT "
+            + (columns == null ? "*" : String.join(",", columns))
+            + " FROM "
+            + table.getName()
+            + " WHERE "
+            + table.getCondition()
+            + " LIMIT ?";
+
+    return getSession()
+        .doReturningWork(
+            connection -> {
+              try (PreparedStatement statement = connection.prepareStatement(sql)) {
+
+                int index = setCutoffs(statement, table, 1);
+                statement.setInt(index, batchSize);
+
+                try (ResultSet rs = statement.executeQuery()) {
+                  return readRows(rs);
+                }
+              }
+            });
+  }
+
+  @Override
+  public int deleteRows(PurgeTable table, List<Object> keys) {
+
+    if (keys.isEmpty()) {
+      return 0;
+    }
+
+    String sql =
+        "DELETE FROM "
+            + table.getName()
+            + " WHERE "
+            + table.getKeyColumn()
+            + " IN ("
+            + String.join(",", Collections.nCopies(keys.size(), "?"))
+            + ") AND "
+            + table.getCondition();
+
+    return getSession()
+        .doReturningWork(
+            connection -> {
+              try (PreparedStatement statement = connection.prepareStatement(sql)) {
+
+                int index = 1;
+                for (Object key : keys) {
+                  statement.setObject(index++, key);
+                }
+                setCutoffs(statement, table, index);
+
+                return statement.executeUpdate();
+              }
+            });
+  }
+
+  @Override
+  public void removeReferencedPayloads(
+      Map<String, List<String>> payloadColumns, String prefix, Set<String> references) {
+
+    for (Map.Entry<String, List<String>> table : payloadColumns.entrySet()) {
+      for (String column : table.getValue()) {
+
+        if (references.isEmpty()) {
+          return;
+        }
+
+        String sql =
+            "SELECT DISTINCT "
+                + column
+                + " FROM "
+                + table.getKey()
+                + " WHERE "
+                + column
+                + " LIKE ?";
+
+        getSession()
+            .doWork(
+                connection -> {
+                  try (PreparedStatement statement = connection.prepareStatement(sql)) {
+
+                    statement.setString(1, prefix + "%");
+                    statement.setFetchSize(1000);
+
+                    try (ResultSet rs = statement.executeQuery()) {
+                      while (rs.next()) {
+                        references.remove(rs.getString(1));
+                      }
+                    }
+                  }
+                });
+      }
+    }
+  }
+
+  private static int setCutoffs(PreparedStatement statement, PurgeTable table, int index)
+      throws SQLException {
+
+    for (Date cutoff : table.getCutoffs()) {
+      statement.setTimestamp(index++, new Timestamp(cutoff.getTime()));
+    }
+    return index;
+  }
+
+  private static List<Map<String, Object>> readRows(ResultSet rs) throws SQLException {
+
+    ResultSetMetaData metadata = rs.getMetaData();
+    List<Map<String, Object>> rows = new ArrayList<>();
+
+    while (rs.next()) {
+
+      Map<String, Object> row = new LinkedHashMap<>();
+      for (int i = 1; i <= metadata.getColumnCount(); i++) {
+        row.put(metadata.getColumnLabel(i).toLowerCase(Locale.ROOT), readValue(rs.getObject(i)));
+      }
+      rows.add(row);
+    }
+
+    return rows;
+  }
+
+  private static Object readValue(Object value) throws SQLException {
+
+    // Large objects are only readable while the result set is open.
+    if (value instanceof Clob) {
+      Clob clob = (Clob) value;
+      return clob.getSubString(1, (int) clob.length());
+    } else if (value instanceof Blob) {
+      Blob blob = (Blob) value;
+      return blob.getBytes(1, (int) blob.length());
+    }
+    return value;
+  }
+}
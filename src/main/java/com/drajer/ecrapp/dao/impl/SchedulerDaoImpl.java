@@ -1,31 +1,120 @@
 package com.drajer.ecrapp.dao.impl;
 
+import com.drajer.eca.model.EventTypes.EcrActionTypes;
 import com.drajer.ecrapp.dao.AbstractDao;
 import com.drajer.ecrapp.dao.SchedulerDao;
 import com.drajer.ecrapp.model.ScheduledTasks;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.StringUtils;
 import org.hibernate.Criteria;
-import org.hibernate.criterion.MatchMode;
+import org.hibernate.criterion.Disjunction;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.type.StringType;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+/**
+ * The instance ids of the EICRTask timers have the form launchId_actionType_uuid, so the timers of
+ * a launch are found with a LIKE on the prefix of the instance id, which uses the
+ * idx_scheduled_tasks_instance_prefix index instead of scanning the table.
+ *
+ * <p>The timers scheduled by earlier versions have instance ids of the form
+ * actionType_launchId_uuid. These are not all renamed by the migration, since the executing timers
+ * are kept and instances of earlier versions may still be running during an upgrade, hence the
+ * lookups also match the earlier form.
+ */
 @Repository
 @Transactional
 public class SchedulerDaoImpl extends AbstractDao implements SchedulerDao {
 
-  private static final String TASK_INSTANCE = "task_instance";
   private static final String TASK_NAME = "task_name";
+  private static final String EICR_TASK = "EICRTask";
+
+  private static final char ESCAPE = '!';
+  private static final String SEPARATOR = "_";
+
+  /** Matches the uuid at the end of the instance id, one character at a time. */
+  private static final String UUID_PATTERN = StringUtils.repeat('_', 36);
+
+  private static final String TASK_INSTANCE_LIKE = "{alias}.task_instance like ? escape '!'";
 
   @Override
   public List<ScheduledTasks> getScheduledTasks(String actionType, String launchId) {
     Criteria criteria = getSession().createCriteria(ScheduledTasks.class);
 
-    String queryString = actionType + "_" + launchId + "_";
+    criteria.add(Restrictions.eq(TASK_NAME, EICR_TASK));
+
+    List<String> patterns = getTaskInstancePatterns(actionType, launchId);
+    if (!patterns.isEmpty()) {
+      Disjunction instances = Restrictions.disjunction();
+      for (String pattern : patterns) {
+        instances.add(
+            Restrictions.sqlRestriction(TASK_INSTANCE_LIKE, pattern, StringType.INSTANCE));
+      }
+      criteria.add(instances);
+    }
+
+    List<ScheduledTasks> tasks = criteria.list();
+
+    if (StringUtils.isEmpty(launchId) && StringUtils.isNotEmpty(actionType)) {
+      // The pattern of the earlier form cannot tell a numeric launch id from another action type.
+      Pattern timerOfAction = getTimerOfActionPattern(actionType);
+      return tasks.stream()
+          .filter(task -> timerOfAction.matcher(task.getTask_instance()).matches())
+          .collect(Collectors.toList());
+    }
+
+    return tasks;
+  }
+
+  /**
+   * Returns the LIKE patterns of the instance ids of the timers of the launch and action type, in
+   * the current and in the earlier form. The patterns of an action type match the uuid exactly, so
+   * that the timers of an action type which starts with another action type are not matched. The
+   * patterns of a launch are prefixes, except for the patterns of all the launches of an action.
+   */
+  static List<String> getTaskInstancePatterns(String actionType, String launchId) {
+
+    List<String> patterns = new ArrayList<>();
+    boolean hasAction = StringUtils.isNotEmpty(actionType);
+
+    if (StringUtils.isEmpty(launchId)) {
+      // Without a launch the patterns are only used to list the timers.
+      if (hasAction) {
+        patterns.add("%" + escape(SEPARATOR + actionType + SEPARATOR) + UUID_PATTERN);
+        patterns.add(escape(actionType + SEPARATOR) + "%" + escape(SEPARATOR) + UUID_PATTERN);
+      }
+    } else if (hasAction) {
+      patterns.add(escape(launchId + SEPARATOR + actionType + SEPARATOR) + UUID_PATTERN);
+      patterns.add(escape(actionType + SEPARATOR + launchId + SEPARATOR) + UUID_PATTERN);
+    } else {
+      patterns.add(escape(launchId + SEPARATOR) + "%");
+      for (EcrActionTypes type : EcrActionTypes.values()) {
+        patterns.add(escape(type + SEPARATOR + launchId + SEPARATOR) + UUID_PATTERN);
+      }
+    }
 
-    criteria.add(Restrictions.eq(TASK_NAME, "EICRTask"));
-    criteria.add(Restrictions.ilike(TASK_INSTANCE, queryString, MatchMode.ANYWHERE));
+    return patterns;
+  }
+
+  /** Returns the pattern of the instance ids of the timers of the action type in either form. */
+  static Pattern getTimerOfActionPattern(String actionType) {
+    String action = Pattern.quote(actionType);
+    return Pattern.compile(
+        "([0-9]+_" + action + "|" + action + "_[0-9]+)_" + StringUtils.repeat('.', 36));
+  }
 
-    return criteria.list();
+  private static String escape(String value) {
+    StringBuilder escaped = new StringBuilder(value.length() + 8);
+    for (char c : value.toCharArray()) {
+      if (c == '_' || c == '%' || c == ESCAPE) {
+        escaped.append(ESCAPE);
+      }
+      escaped.append(c);
+    }
+    return escaped.toString();
   }
 }
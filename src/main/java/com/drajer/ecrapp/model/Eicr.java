@@ -1,7 +1,9 @@
 package com.drajer.ecrapp.model;
 
+import com.drajer.ecrapp.payload.PayloadConverter;
 import java.util.Date;
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
@@ -39,6 +41,7 @@ public class Eicr {
   @Column(name = "doc_version", nullable = true, columnDefinition = "INTEGER")
   private Integer docVersion;
 
+  @Convert(converter = PayloadConverter.class)
   @Column(name = "eicr_data", nullable = true, columnDefinition = "TEXT")
   private String eicrData;
 
@@ -58,6 +61,7 @@ public class Eicr {
   @Column(name = "response_doc_id", nullable = true, columnDefinition = "TEXT")
   private String responseDocId;
 
+  @Convert(converter = PayloadConverter.class)
   @Column(name = "rr_data", nullable = true, columnDefinition = "TEXT")
   private String responseData;
 
@@ -0,0 +1,145 @@
+package com.drajer.ecrapp.payload;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Date;
+import java.util.function.LongConsumer;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ *
+ *
+ * <h1>FileSystemPayloadStore</h1>
+ *
+ * The store writes the payloads gzip compressed to files in a directory, which can be a shared
+ * volume when multiple instances of the application are deployed. The files are named after the
+ * SHA-256 hash of the payload, which is the reference kept in the column, so identical payloads
+ * are stored once and the payload is verified against the hash when it is loaded. Storing a payload
+ * which already exists advances the modification time of its file, so that a file which is being
+ * reused is not deleted by a purge which started before, or by the rollback of the transaction
+ * which created it.
+ */
+public class FileSystemPayloadStore implements PayloadStore {
+
+  public static final String TYPE = "file";
+
+  private static final String FILE_EXTENSION = ".gz";
+
+  private final Path directory;
+
+  public FileSystemPayloadStore(String directory) {
+    this.directory = Paths.get(directory).toAbsolutePath();
+  }
+
+  @Override
+  public String getType() {
+    return TYPE;
+  }
+
+  @Override
+  public String store(String payload) {
+    return store(payload, time -> {});
+  }
+
+  @Override
+  public String store(String payload, LongConsumer created) {
+
+    String hash = DigestUtils.sha256Hex(payload);
+    Path file = getFile(hash);
+
+    if (Files.exists(file) && touch(file)) {
+      return hash;
+    }
+
+    try {
+      Files.createDirectories(file.getParent());
+
+      // Write to a temporary file first, so that a partially written file is never loaded. Linking
+      // it fails when the file exists, so only one of the threads storing a payload creates it.
+      Path temp = Files.createTempFile(file.getParent(), hash, ".tmp");
+      try {
+        Files.write(temp, InlineGzipPayloadStore.compress(payload));
+        long modified = Files.getLastModifiedTime(temp).toMillis();
+        Files.createLink(file, temp);
+        created.accept(modified);
+      } catch (FileAlreadyExistsException e) {
+        // Stored concurrently by another thread or instance.
+        touch(file);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error storing payload " + hash, e);
+    }
+
+    return hash;
+  }
+
+  @Override
+  public String load(String reference) {
+
+    String payload;
+    try {
+      payload = InlineGzipPayloadStore.decompress(Files.readAllBytes(getFile(reference)));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error loading payload " + reference, e);
+    }
+
+    if (!reference.equals(DigestUtils.sha256Hex(payload))) {
+      throw new IllegalStateException("Payload " + reference + " does not match its hash");
+    }
+
+    return payload;
+  }
+
+  @Override
+  public boolean delete(String reference, Date storedBefore) {
+
+    Path file = getFile(reference);
+
+    try {
+      if (Files.getLastModifiedTime(file).toMillis() >= storedBefore.getTime()) {
+        return false;
+      }
+      return Files.deleteIfExists(file);
+    } catch (NoSuchFileException e) {
+      return false;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error deleting payload " + reference, e);
+    }
+  }
+
+  private static boolean touch(Path file) {
+
+    try {
+      // The time always advances, so that a file stored again is never mistaken for an unused one.
+      long modified = Files.getLastModifiedTime(file).toMillis();
+      long now = Math.max(System.currentTimeMillis(), modified + 1);
+      Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+      return true;
+    } catch (NoSuchFileException e) {
+      // Deleted concurrently, the payload is stored again.
+      return false;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error updating payload " + file.getFileName(), e);
+    }
+  }
+
+  private Path getFile(String hash) {
+
+    if (hash.length() < 4 || !hash.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+      throw new IllegalArgumentException("Invalid payload reference " + hash);
+    }
+
+    return directory
+        .resolve(hash.substring(0, 2))
+        .resolve(hash.substring(2, 4))
+        .resolve(hash + FILE_EXTENSION);
+  }
+}
@@ -0,0 +1,66 @@
+package com.drajer.ecrapp.payload;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.IOUtils;
+
+/**
+ *
+ *
+ * <h1>InlineGzipPayloadStore</h1>
+ *
+ * The store keeps the payload in the column, compressed using gzip and Base64 encoded. XML and JSON
+ * payloads are typically reduced to less than a fifth of their size.
+ */
+public class InlineGzipPayloadStore implements PayloadStore {
+
+  public static final String TYPE = "gzip";
+
+  @Override
+  public String getType() {
+    return TYPE;
+  }
+
+  @Override
+  public String store(String payload) {
+    return Base64.getEncoder().encodeToString(compress(payload));
+  }
+
+  @Override
+  public String load(String reference) {
+    return decompress(Base64.getDecoder().decode(reference));
+  }
+
+  @Override
+  public boolean delete(String reference, Date storedBefore) {
+    // The payload is deleted along with its column.
+    return false;
+  }
+
+  static byte[] compress(String payload) {
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length() / 4 + 64);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+      gzip.write(payload.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error compressing payload", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  static String decompress(byte[] compressed) {
+
+    try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      return IOUtils.toString(gzip, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error decompressing payload", e);
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package com.drajer.ecrapp.payload;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>PayloadConverter</h1>
+ *
+ * The converter maps the payload columns of the entities. The payload is stored using the
+ * PayloadStores when the entity is written to the database, and loaded when the entity is read, so
+ * that the entities hold the payloads themselves and creating or copying an entity does not store
+ * anything. The converter is created by Spring through the bean container of the SessionFactory.
+ */
+@Component
+@Converter
+public class PayloadConverter implements AttributeConverter<String, String> {
+
+  @Autowired PayloadStores payloadStores;
+
+  @Override
+  public String convertToDatabaseColumn(String payload) {
+    return payloadStores.store(payload);
+  }
+
+  @Override
+  public String convertToEntityAttribute(String value) {
+    return payloadStores.load(value);
+  }
+}
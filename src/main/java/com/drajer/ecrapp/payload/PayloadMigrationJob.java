@@ -0,0 +1,97 @@
+package com.drajer.ecrapp.payload;
+
+import com.drajer.bsa.model.NotificationContext;
+import com.drajer.bsa.model.PublicHealthMessage;
+import com.drajer.ecrapp.dao.PayloadMigrationDao;
+import com.drajer.ecrapp.model.Eicr;
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>PayloadMigrationJob</h1>
+ *
+ * The job moves the payloads of the rows written before the PayloadStore was configured to the
+ * store. Each run migrates one batch of rows for every entity with payloads, so that the migration
+ * of large tables is spread over time. The progress is kept in memory, hence the migration starts
+ * from the first row again when the application is restarted, skipping the rows already migrated.
+ */
+@Component
+public class PayloadMigrationJob {
+
+  private final Logger logger = LoggerFactory.getLogger(PayloadMigrationJob.class);
+
+  static final Map<Class<?>, String[]> PAYLOAD_ATTRIBUTES = new LinkedHashMap<>();
+
+  static {
+    PAYLOAD_ATTRIBUTES.put(
+        PublicHealthMessage.class,
+        new String[] {
+          "submittedFhirData",
+          "submittedCdaData",
+          "fhirResponseData",
+          "cdaResponseData",
+          "failureResponseData"
+        });
+    PAYLOAD_ATTRIBUTES.put(NotificationContext.class, new String[] {"notificationData"});
+    PAYLOAD_ATTRIBUTES.put(Eicr.class, new String[] {"eicrData", "responseData"});
+  }
+
+  /** Flag to indicate if the existing payloads are moved to the PayloadStore. */
+  @Value("${payload.migration.enabled:false}")
+  private Boolean enabled;
+
+  /** The number of rows of each table migrated per run. */
+  @Value("${payload.migration.batch-size:100}")
+  private int batchSize;
+
+  @Autowired PayloadMigrationDao payloadMigrationDao;
+
+  @Autowired PayloadStores payloadStores;
+
+  private final Map<Class<?>, Serializable> lastIds = new ConcurrentHashMap<>();
+  private final Map<Class<?>, Boolean> completed = new ConcurrentHashMap<>();
+
+  @Scheduled(
+      initialDelayString = "${payload.migration.initial-delay-ms:60000}",
+      fixedDelayString = "${payload.migration.delay-ms:1000}")
+  public void migrate() {
+
+    if (!Boolean.TRUE.equals(enabled) || !payloadStores.isEnabled()) {
+      return;
+    }
+
+    for (Map.Entry<Class<?>, String[]> entry : PAYLOAD_ATTRIBUTES.entrySet()) {
+
+      Class<?> entityClass = entry.getKey();
+      if (completed.containsKey(entityClass)) {
+        continue;
+      }
+
+      try {
+        Serializable lastId =
+            payloadMigrationDao.migratePayloads(
+                entityClass, entry.getValue(), lastIds.get(entityClass), batchSize);
+
+        if (lastId != null) {
+          logger.debug(" Migrated payloads of {} up to {}", entityClass.getSimpleName(), lastId);
+          lastIds.put(entityClass, lastId);
+        } else {
+          logger.info(" Completed migrating payloads of {}", entityClass.getSimpleName());
+          completed.put(entityClass, Boolean.TRUE);
+        }
+      } catch (Exception e) {
+        logger.error(" Error migrating payloads of {}", entityClass.getSimpleName(), e);
+      }
+    }
+  }
+}
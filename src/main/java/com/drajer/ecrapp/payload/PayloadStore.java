@@ -0,0 +1,61 @@
+package com.drajer.ecrapp.payload;
+
+import java.util.Date;
+import java.util.function.LongConsumer;
+
+/**
+ *
+ *
+ * <h1>PayloadStore</h1>
+ *
+ * The interface is implemented by the stores which hold the large payloads, such as the eICR, the
+ * Reportability Response and the notification bundles, outside of their TEXT column. The column
+ * holds the reference returned by the store, which is used to load the payload again.
+ */
+public interface PayloadStore {
+
+  /**
+   * The type of the store, which is part of the references stored in the columns.
+   *
+   * @return The type of the store.
+   */
+  public String getType();
+
+  /**
+   * Method to store a payload.
+   *
+   * @param payload The payload to be stored.
+   * @return The reference to the stored payload.
+   */
+  public String store(String payload);
+
+  /**
+   * Method to store a payload, which reports when the payload was created by the call, so that it
+   * can be deleted again when the transaction storing it is rolled back. Stores which hold the
+   * payload in the column never report a created payload.
+   *
+   * @param payload The payload to be stored.
+   * @param created Receives the modification time of the payload, when it did not exist before.
+   * @return The reference to the stored payload.
+   */
+  public default String store(String payload, LongConsumer created) {
+    return store(payload);
+  }
+
+  /**
+   * Method to load a payload.
+   *
+   * @param reference The reference returned when the payload was stored.
+   * @return The payload.
+   */
+  public String load(String reference);
+
+  /**
+   * Method to delete a payload which is no longer referenced by any column.
+   *
+   * @param reference The reference returned when the payload was stored.
+   * @param storedBefore The payload is kept when it was stored again at or after this time.
+   * @return true when the payload was deleted.
+   */
+  public boolean delete(String reference, Date storedBefore);
+}
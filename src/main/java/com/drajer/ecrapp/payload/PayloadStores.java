@@ -0,0 +1,219 @@
+package com.drajer.ecrapp.payload;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ *
+ *
+ * <h1>PayloadStores</h1>
+ *
+ * This class stores and loads the large payloads of the entities using the configured PayloadStore.
+ * The column of a stored payload holds a reference of the form payload:type:reference, while the
+ * columns of rows written before a store was configured, or of payloads shorter than the minimum
+ * length, hold the payload itself. The entities are mapped with the PayloadConverter, so payloads
+ * are only stored when an entity is written to the database, and loaded when it is read.
+ *
+ * <p>A payload stored outside of the database by a transaction which is rolled back is deleted
+ * again, unless it was stored by another transaction in the meantime.
+ *
+ * <p>Payloads are always loaded using the store of the type in the reference, so the store can be
+ * changed without migrating the existing rows.
+ */
+@Component
+public class PayloadStores {
+
+  private final Logger logger = LoggerFactory.getLogger(PayloadStores.class);
+
+  public static final String REFERENCE_PREFIX = "payload:";
+  public static final String NONE = "none";
+
+  /** The prefix of the references to payloads held outside of the database. */
+  public static final String EXTERNAL_REFERENCE_PREFIX =
+      REFERENCE_PREFIX + FileSystemPayloadStore.TYPE + ':';
+
+  private static final char TYPE_SEPARATOR = ':';
+
+  private final Map<String, PayloadStore> stores = new ConcurrentHashMap<>();
+
+  private volatile PayloadStore writeStore;
+  private volatile int minLength;
+
+  /** The type of store used to store the payloads, one of none, gzip or file. */
+  @Value("${payload.store.type:none}")
+  private String type;
+
+  /** The directory used by the file store. */
+  @Value("${payload.store.directory:payloads}")
+  private String directory;
+
+  /** Payloads shorter than the minimum length are kept in the column. */
+  @Value("${payload.store.min-length:1024}")
+  private int storeMinLength;
+
+  public PayloadStores() {
+    type = NONE;
+    directory = "payloads";
+    storeMinLength = 1024;
+  }
+
+  public PayloadStores(String type, String directory, int minLength) {
+    this.type = type;
+    this.directory = directory;
+    this.storeMinLength = minLength;
+    initialize();
+  }
+
+  @PostConstruct
+  public void initialize() {
+    configure(type, directory, storeMinLength);
+  }
+
+  /**
+   * Method to configure the store used for new payloads.
+   *
+   * @param type The type of the store, one of none, gzip or file.
+   * @param directory The directory of the file store.
+   * @param minLength The minimum length of the payloads which are stored.
+   */
+  public void configure(String type, String directory, int minLength) {
+
+    register(new InlineGzipPayloadStore());
+    register(new FileSystemPayloadStore(directory));
+
+    if (type == null || NONE.equalsIgnoreCase(type)) {
+      writeStore = null;
+    } else if (stores.containsKey(type)) {
+      writeStore = stores.get(type);
+    } else {
+      throw new IllegalArgumentException("Unknown payload store type " + type);
+    }
+
+    this.minLength = minLength;
+    logger.info(" Payload store {} configured with minimum length {}", type, minLength);
+  }
+
+  public void register(PayloadStore store) {
+    stores.put(store.getType(), store);
+  }
+
+  public boolean isEnabled() {
+    return writeStore != null;
+  }
+
+  /**
+   * Method to store a payload using the configured store.
+   *
+   * @param payload The payload.
+   * @return The value for the column, which is the reference to the stored payload or the payload
+   *     itself when no store is configured or the payload is shorter than the minimum length.
+   */
+  public String store(String payload) {
+
+    PayloadStore store = writeStore;
+
+    if (store == null || payload == null || payload.length() < minLength || isReference(payload)) {
+      return payload;
+    }
+
+    long[] created = {-1};
+    String reference = store.store(payload, time -> created[0] = time);
+
+    if (created[0] >= 0) {
+      deleteOnRollback(store, reference, created[0]);
+    }
+
+    return REFERENCE_PREFIX + store.getType() + TYPE_SEPARATOR + reference;
+  }
+
+  /**
+   * Method to load a payload.
+   *
+   * @param value The value of the column.
+   * @return The payload referenced by the value, or the value itself when it is not a reference.
+   */
+  public String load(String value) {
+
+    if (!isReference(value)) {
+      return value;
+    }
+
+    int separator = value.indexOf(TYPE_SEPARATOR, REFERENCE_PREFIX.length());
+    return getStore(value, separator).load(value.substring(separator + 1));
+  }
+
+  /**
+   * Method to delete a payload held outside of the database, once no column references it.
+   *
+   * @param value The value of the column which referenced the payload.
+   * @param storedBefore The payload is kept when it was stored again at or after this time.
+   * @return true when the payload was deleted.
+   */
+  public boolean delete(String value, Date storedBefore) {
+
+    if (!isExternalReference(value)) {
+      return false;
+    }
+
+    int separator = value.indexOf(TYPE_SEPARATOR, REFERENCE_PREFIX.length());
+    return getStore(value, separator).delete(value.substring(separator + 1), storedBefore);
+  }
+
+  public static boolean isReference(String value) {
+    return value != null && value.startsWith(REFERENCE_PREFIX);
+  }
+
+  public static boolean isExternalReference(String value) {
+    return value != null && value.startsWith(EXTERNAL_REFERENCE_PREFIX);
+  }
+
+  /**
+   * Deletes a payload created by the current transaction when the transaction is rolled back. The
+   * payload is kept when it was stored again after it was created.
+   */
+  private void deleteOnRollback(PayloadStore store, String reference, long created) {
+
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      return;
+    }
+
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCompletion(int status) {
+
+            if (status != STATUS_ROLLED_BACK) {
+              return;
+            }
+
+            try {
+              if (store.delete(reference, new Date(created + 1))) {
+                logger.info(" Deleted payload {} of a rolled back transaction", reference);
+              }
+            } catch (RuntimeException e) {
+              logger.error(" Error deleting payload {} of a rolled back transaction", reference, e);
+            }
+          }
+        });
+  }
+
+  private PayloadStore getStore(String value, int separator) {
+
+    PayloadStore store =
+        separator > 0 ? stores.get(value.substring(REFERENCE_PREFIX.length(), separator)) : null;
+
+    if (store == null) {
+      throw new IllegalStateException("No payload store for reference " + value);
+    }
+
+    return store;
+  }
+}
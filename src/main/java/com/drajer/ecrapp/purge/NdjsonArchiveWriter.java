@@ -0,0 +1,102 @@
+package com.drajer.ecrapp.purge;
+
+import com.drajer.ecrapp.payload.PayloadStores;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.json.JSONObject;
+
+/**
+ *
+ *
+ * <h1>NdjsonArchiveWriter</h1>
+ *
+ * The class writes the purged rows of a table to a gzip compressed file with one JSON object per
+ * line. Payloads held by a PayloadStore are loaded, so that the archive contains the payloads
+ * instead of the references. The file is created when the first rows are written.
+ */
+public class NdjsonArchiveWriter implements Closeable {
+
+  private static final String FILE_EXTENSION = ".ndjson.gz";
+
+  private final Path file;
+  private final PayloadStores payloadStores;
+  private Writer writer;
+
+  public NdjsonArchiveWriter(Path directory, String table, Date time, PayloadStores payloadStores) {
+    String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(time);
+    this.file = directory.resolve(table + "-" + timestamp + FILE_EXTENSION);
+    this.payloadStores = payloadStores;
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  /**
+   * Writes the rows and flushes them to the file, so that the rows are archived before they are
+   * deleted.
+   *
+   * @param rows The rows, with the values by column name.
+   * @throws IOException when the rows could not be written.
+   */
+  public void write(List<Map<String, Object>> rows) throws IOException {
+
+    if (writer == null) {
+      Files.createDirectories(file.getParent());
+      writer =
+          new BufferedWriter(
+              new OutputStreamWriter(
+                  new GZIPOutputStream(Files.newOutputStream(file), true),
+                  StandardCharsets.UTF_8));
+    }
+
+    for (Map<String, Object> row : rows) {
+
+      JSONObject json = new JSONObject();
+      for (Map.Entry<String, Object> column : row.entrySet()) {
+        json.put(column.getKey(), toJson(column.getValue()));
+      }
+
+      writer.write(json.toString());
+      writer.write('\n');
+    }
+
+    writer.flush();
+  }
+
+  private Object toJson(Object value) {
+
+    if (value == null) {
+      return JSONObject.NULL;
+    } else if (value instanceof String) {
+      return payloadStores.load((String) value);
+    } else if (value instanceof Number || value instanceof Boolean) {
+      return value;
+    } else if (value instanceof Date) {
+      return ((Date) value).toInstant().toString();
+    } else if (value instanceof byte[]) {
+      return Base64.getEncoder().encodeToString((byte[]) value);
+    } else {
+      return value.toString();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (writer != null) {
+      writer.close();
+    }
+  }
+}
@@ -0,0 +1,380 @@
+package com.drajer.ecrapp.purge;
+
+import com.drajer.ecrapp.dao.PurgeDao;
+import com.drajer.ecrapp.payload.PayloadStores;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>PurgeJob</h1>
+ *
+ * The job deletes the rows of the message, execution state, launch and scheduler tables which are
+ * older than the retention configured for each table, optionally archiving them to compressed
+ * NDJSON files first. The rows are deleted in batches, each in its own transaction, so that the
+ * tables are not locked for long. The following rows are not purged.
+ *
+ * <ul>
+ *   <li>Messages and eICRs awaiting a Reportability Response, until their own retention expires.
+ *   <li>Execution states, notification contexts and launches with a pending timer.
+ *   <li>Notification contexts with remaining execution states.
+ * </ul>
+ *
+ * A retention of 0 days keeps the rows of the table. The payload files referenced by the purged
+ * rows are deleted at the end of the purge, unless another row still references them.
+ */
+@Component
+public class PurgeJob {
+
+  private final Logger logger = LoggerFactory.getLogger(PurgeJob.class);
+
+  public static final String PURGE_TASK = "PurgeTask";
+
+  private static final String ID = "id";
+  private static final String LAST_UPDATED = "last_updated_ts < ?";
+
+  /** Matches the uuid at the end of the instance id of a timer, one character at a time. */
+  private static final String TIMER_UUID = StringUtils.repeat('_', 36);
+
+  /** The columns which hold payloads, by table name. */
+  static final Map<String, List<String>> PAYLOAD_COLUMNS = new LinkedHashMap<>();
+
+  static {
+    PAYLOAD_COLUMNS.put(
+        "ph_messages",
+        Arrays.asList(
+            "submitted_fhir_data",
+            "submitted_cda_data",
+            "fhir_response_data",
+            "cda_response_data",
+            "failure_response_data"));
+    PAYLOAD_COLUMNS.put("eicr", Arrays.asList("eicr_data", "rr_data"));
+    PAYLOAD_COLUMNS.put("notification_context", Collections.singletonList("notification_data"));
+  }
+
+  /** Flag to indicate if the tables are purged. */
+  @Value("${purge.enabled:false}")
+  private Boolean enabled;
+
+  /** The maximum number of rows deleted per transaction. */
+  @Value("${purge.batch-size:500}")
+  private int batchSize;
+
+  /** The pause between the batches, to leave room for the other transactions. */
+  @Value("${purge.batch-delay-ms:100}")
+  private long batchDelayMs;
+
+  /** Flag to indicate if the purged rows are archived. */
+  @Value("${purge.archive.enabled:false}")
+  private Boolean archiveEnabled;
+
+  @Value("${purge.archive.directory:archive}")
+  private String archiveDirectory;
+
+  @Value("${purge.retention-days.ph-messages:0}")
+  private int phMessagesRetentionDays;
+
+  @Value("${purge.retention-days.ph-messages-awaiting-rr:0}")
+  private int phMessagesAwaitingRrRetentionDays;
+
+  @Value("${purge.retention-days.eicr:0}")
+  private int eicrRetentionDays;
+
+  @Value("${purge.retention-days.eicr-awaiting-rr:0}")
+  private int eicrAwaitingRrRetentionDays;
+
+  @Value("${purge.retention-days.kar-execution-state:0}")
+  private int karExecutionStateRetentionDays;
+
+  @Value("${purge.retention-days.notification-context:0}")
+  private int notificationContextRetentionDays;
+
+  @Value("${purge.retention-days.launch-details:0}")
+  private int launchDetailsRetentionDays;
+
+  @Value("${purge.retention-days.failed-scheduled-tasks:0}")
+  private int failedScheduledTasksRetentionDays;
+
+  @Value("${db-scheduler.table-name:scheduled_tasks}")
+  private String scheduledTasksTable;
+
+  @Autowired PurgeDao purgeDao;
+
+  @Autowired PayloadStores payloadStores;
+
+  /**
+   * The method purges the tables with a retention.
+   *
+   * @return The number of rows purged.
+   */
+  public int purge() {
+
+    if (!Boolean.TRUE.equals(enabled)) {
+      return 0;
+    }
+
+    Date now = new Date();
+    int purged = 0;
+    Set<String> payloads = new HashSet<>();
+
+    for (PurgeTable table : getPurgeTables(now)) {
+      try {
+        purged += purge(table, now, payloads);
+      } catch (Exception e) {
+        logger.error(" Error purging {}", table.getName(), e);
+      }
+    }
+
+    try {
+      deletePayloads(payloads, now);
+    } catch (Exception e) {
+      logger.error(" Error deleting the payloads of the purged rows", e);
+    }
+
+    return purged;
+  }
+
+  /**
+   * The method returns the tables to be purged, in the order in which they are purged. The
+   * execution states are purged before the notification contexts they reference.
+   *
+   * @param now The current time.
+   * @return The tables to be purged.
+   */
+  public List<PurgeTable> getPurgeTables(Date now) {
+
+    List<PurgeTable> tables = new ArrayList<>();
+
+    if (phMessagesRetentionDays > 0) {
+      tables.add(
+          getAwaitingResponseTable(
+              "ph_messages",
+              "response_data_id",
+              phMessagesRetentionDays,
+              phMessagesAwaitingRrRetentionDays,
+              now));
+    }
+
+    if (eicrRetentionDays > 0) {
+      tables.add(
+          getAwaitingResponseTable(
+              "eicr", "response_doc_id", eicrRetentionDays, eicrAwaitingRrRetentionDays, now));
+    }
+
+    if (karExecutionStateRetentionDays > 0) {
+      tables.add(
+          new PurgeTable(
+              "kar_execution_state",
+              ID,
+              "nc_id IN (SELECT nc.id FROM notification_context nc WHERE nc."
+                  + LAST_UPDATED
+                  + ") AND "
+                  + getNoTimerCondition(
+                      "CONCAT('%!_', CAST(kar_execution_state.id AS VARCHAR), '!_%')"),
+              getCutoff(now, karExecutionStateRetentionDays)));
+    }
+
+    if (notificationContextRetentionDays > 0) {
+      tables.add(
+          new PurgeTable(
+              "notification_context",
+              ID,
+              LAST_UPDATED
+                  + " AND NOT EXISTS (SELECT 1 FROM kar_execution_state k"
+                  + " WHERE k.nc_id = notification_context.id)"
+                  + " AND NOT EXISTS (SELECT 1 FROM "
+                  + scheduledTasksTable
+                  + " st WHERE st.task_instance = CAST(notification_context.id AS VARCHAR))"
+                  + " AND "
+                  + getNoTimerCondition("CONCAT(CAST(notification_context.id AS VARCHAR), '!_%')"),
+              getCutoff(now, notificationContextRetentionDays)));
+    }
+
+    if (launchDetailsRetentionDays > 0) {
+      tables.add(
+          new PurgeTable(
+              "launch_details",
+              ID,
+              LAST_UPDATED
+                  + " AND "
+                  + getNoTimerCondition(
+                      "CONCAT(CAST(launch_details.id AS VARCHAR), '!_%')",
+                      "CONCAT('%!_', CAST(launch_details.id AS VARCHAR), '!_"
+                          + TIMER_UUID
+                          + "')"),
+              getCutoff(now, launchDetailsRetentionDays)));
+    }
+
+    if (failedScheduledTasksRetentionDays > 0) {
+      tables.add(
+          new PurgeTable(
+              scheduledTasksTable,
+              "task_instance",
+              "consecutive_failures > 0 AND last_failure < ? AND picked = FALSE"
+                  + " AND task_name <> '"
+                  + PURGE_TASK
+                  + "'",
+              getCutoff(now, failedScheduledTasksRetentionDays)));
+    }
+
+    return tables;
+  }
+
+  private int purge(PurgeTable table, Date now, Set<String> payloads) throws IOException {
+
+    logger.info(" Purging {}", table);
+    int purged = 0;
+
+    try (NdjsonArchiveWriter archive =
+        Boolean.TRUE.equals(archiveEnabled)
+            ? new NdjsonArchiveWriter(
+                Paths.get(archiveDirectory), table.getName(), now, payloadStores)
+            : null) {
+
+      while (true) {
+
+        List<Map<String, Object>> rows =
+            purgeDao.getPurgeableRows(table, archive != null ? null : getColumns(table), batchSize);
+
+        if (rows.isEmpty()) {
+          break;
+        }
+
+        if (archive != null) {
+          archive.write(rows);
+        }
+
+        List<Object> keys =
+            rows.stream().map(row -> row.get(table.getKeyColumn())).collect(Collectors.toList());
+        int deleted = purgeDao.deleteRows(table, keys);
+        purged += deleted;
+        addPayloads(table, rows, payloads);
+
+        if (rows.size() < batchSize || deleted == 0 || !pause()) {
+          break;
+        }
+      }
+    }
+
+    logger.info(" Purged {} rows from {}", purged, table.getName());
+    return purged;
+  }
+
+  private static List<String> getColumns(PurgeTable table) {
+
+    List<String> columns = new ArrayList<>();
+    columns.add(table.getKeyColumn());
+    columns.addAll(PAYLOAD_COLUMNS.getOrDefault(table.getName(), Collections.emptyList()));
+    return columns;
+  }
+
+  private static void addPayloads(
+      PurgeTable table, List<Map<String, Object>> rows, Set<String> payloads) {
+
+    for (String column : PAYLOAD_COLUMNS.getOrDefault(table.getName(), Collections.emptyList())) {
+      for (Map<String, Object> row : rows) {
+        Object value = row.get(column);
+        if (value instanceof String && PayloadStores.isExternalReference((String) value)) {
+          payloads.add((String) value);
+        }
+      }
+    }
+  }
+
+  /**
+   * The method deletes the payload files referenced by the purged rows. Identical payloads share a
+   * file, so the files still referenced by other rows are kept, as well as the files stored again
+   * since the purge started.
+   */
+  private void deletePayloads(Set<String> payloads, Date now) {
+
+    if (payloads.isEmpty()) {
+      return;
+    }
+
+    purgeDao.removeReferencedPayloads(
+        PAYLOAD_COLUMNS, PayloadStores.EXTERNAL_REFERENCE_PREFIX, payloads);
+
+    int deleted = 0;
+    for (String payload : payloads) {
+      try {
+        if (payloadStores.delete(payload, now)) {
+          deleted++;
+        }
+      } catch (Exception e) {
+        logger.error(" Error deleting payload {}", payload, e);
+      }
+    }
+
+    logger.info(" Deleted {} payloads of the purged rows", deleted);
+  }
+
+  private boolean pause() {
+
+    try {
+      TimeUnit.MILLISECONDS.sleep(batchDelayMs);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static PurgeTable getAwaitingResponseTable(
+      String name, String responseColumn, int retentionDays, int awaitingRetentionDays, Date now) {
+
+    if (awaitingRetentionDays <= 0) {
+      return new PurgeTable(
+          name,
+          ID,
+          LAST_UPDATED + " AND " + responseColumn + " IS NOT NULL",
+          getCutoff(now, retentionDays));
+    }
+
+    return new PurgeTable(
+        name,
+        ID,
+        LAST_UPDATED + " AND (" + responseColumn + " IS NOT NULL OR " + LAST_UPDATED + ")",
+        getCutoff(now, retentionDays),
+        getCutoff(now, awaitingRetentionDays));
+  }
+
+  /**
+   * The timers of the execution states are scheduled with task instance ids of the form
+   * actionId_type_id_uuid and the timers of the launches with task instance ids of the form
+   * id_actionType_uuid, or actionType_id_uuid for the timers scheduled by earlier versions. The
+   * notification jobs are scheduled with the id of the notification context, and the deferred
+   * notification jobs with task instance ids of the form id_attempt.
+   */
+  private String getNoTimerCondition(String... patterns) {
+    return "NOT EXISTS (SELECT 1 FROM "
+        + scheduledTasksTable
+        + " st WHERE "
+        + Arrays.stream(patterns)
+            .map(pattern -> "st.task_instance LIKE " + pattern + " ESCAPE '!'")
+            .collect(Collectors.joining(" OR "))
+        + ")";
+  }
+
+  private static Date getCutoff(Date now, int retentionDays) {
+    return new Date(now.getTime() - TimeUnit.DAYS.toMillis(retentionDays));
+  }
+}
@@ -0,0 +1,56 @@
+package com.drajer.ecrapp.purge;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ *
+ *
+ * <h1>PurgeTable</h1>
+ *
+ * The class describes the rows of a table which can be purged, using a SQL condition whose
+ * parameters are the cutoff times derived from the configured retention.
+ */
+public class PurgeTable {
+
+  private final String name;
+  private final String keyColumn;
+  private final String condition;
+  private final List<Date> cutoffs;
+
+  /**
+   * @param name The name of the table.
+   * @param keyColumn The column identifying the rows.
+   * @param condition The SQL condition selecting the rows to be purged.
+   * @param cutoffs The values of the parameters of the condition.
+   */
+  public PurgeTable(String name, String keyColumn, String condition, Date... cutoffs) {
+    this.name = name;
+    this.keyColumn = keyColumn;
+    this.condition = condition;
+    this.cutoffs = Collections.unmodifiableList(Arrays.asList(cutoffs));
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getKeyColumn() {
+    return keyColumn;
+  }
+
+  public String getCondition() {
+    return condition;
+  }
+
+  public List<Date> getCutoffs() {
+    return cutoffs;
+  }
+
+  @Override
+  public String toString() {
+    return name + " where " + condition + " " + cutoffs;
+  }
+}
@@ -0,0 +1,43 @@
+package com.drajer.ecrapp.purge;
+
+import com.github.kagkarlsson.scheduler.task.helper.RecurringTask;
+import com.github.kagkarlsson.scheduler.task.helper.Tasks;
+import com.github.kagkarlsson.scheduler.task.schedule.Schedules;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ *
+ *
+ * <h1>PurgeTaskConfiguration</h1>
+ *
+ * This class configures the recurring task which purges the tables. The task is run by the
+ * scheduler, so that only one instance of the application purges the tables at a time.
+ */
+@Configuration
+public class PurgeTaskConfiguration {
+
+  private final Logger logger = LoggerFactory.getLogger(PurgeTaskConfiguration.class);
+
+  @Autowired PurgeJob purgeJob;
+
+  /** The schedule of the purge, by default every day at 2 AM. */
+  @Value("${purge.cron:0 0 2 * * *}")
+  private String purgeCron;
+
+  @Bean
+  public RecurringTask<Void> purgeTask() {
+    logger.info("Initializing the purge task with schedule {}", purgeCron);
+
+    return Tasks.recurring(PurgeJob.PURGE_TASK, Schedules.cron(purgeCron))
+        .execute(
+            (inst, ctx) -> {
+              int purged = purgeJob.purge();
+              logger.info("Completed executing Task for {}, purged {} rows", inst, purged);
+            });
+  }
+}
@@ -1,9 +1,11 @@
 package com.drajer.ecrapp.service;
 
+import com.drajer.ecrapp.dao.KeysetPage;
 import com.drajer.ecrapp.model.Eicr;
 import com.drajer.ecrapp.model.ReportabilityResponse;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import org.json.JSONObject;
 
 /**
@@ -98,6 +100,18 @@ public interface EicrRRService {
    */
   List<JSONObject> getRRData(Map<String, String> searchParams);
 
+  /**
+   * The method is used to retrieve a page of the eICRs and RRs using various search parameters. The
+   * eICRs are passed to the consumer one at a time, in the order of their last update.
+   *
+   * @param searchParams - The supported parameters currently are EICR Id, EICR Doc Id, Response
+   *     Doc Id, Patient Id, Encounter Id, FhirServerUrl, Version, RequestId and SetId.
+   * @param page - The page to retrieve.
+   * @param consumer - The consumer of the eICRs.
+   * @return The cursor of the next page, or null when there are no more eICRs.
+   */
+  String getEicrData(Map<String, String> searchParams, KeysetPage page, Consumer<Eicr> consumer);
+
   /**
    * The method is used to handle the RR received from the PHA.
    *
@@ -1,8 +1,10 @@
 package com.drajer.ecrapp.service;
 
 import com.drajer.bsa.model.PublicHealthMessage;
+import com.drajer.ecrapp.dao.KeysetPage;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * The Interface is used to save, update or extract the ph messsage from the eCRNow Database.
@@ -19,4 +21,16 @@ public interface PhMessageService {
    * @return
    */
   List<PublicHealthMessage> getPhMessageData(Map<String, String> searchParams);
+
+  /**
+   * The method is used to retrieve a page of the ph messages by search parameters. The messages
+   * are passed to the consumer one at a time, in the order of their last update.
+   *
+   * @param searchParams - The same parameters as for getPhMessageData.
+   * @param page - The page to retrieve.
+   * @param consumer - The consumer of the messages.
+   * @return The cursor of the next page, or null when there are no more messages.
+   */
+  String getPhMessageData(
+      Map<String, String> searchParams, KeysetPage page, Consumer<PublicHealthMessage> consumer);
 }
@@ -295,6 +295,9 @@ public class PlanDefinitionProcessor {
         }
       }
 
+      // Compute the trigger codes for all the paths once the eRSD is completely loaded.
+      ValueSetSingleton.getInstance().refreshTriggerCodes();
+
       if (acts != null) {
         ActionRepo.getInstance().setActions(acts);
 
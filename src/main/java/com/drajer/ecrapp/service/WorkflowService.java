@@ -369,11 +369,7 @@ public class WorkflowService {
           staticTaskConfiguration
               .sampleOneTimeTask()
               .instance(
-                  actionType.toString()
-                      + "_"
-                      + launchDetailsId
-                      + "_"
-                      + java.util.UUID.randomUUID().toString(),
+                  getTaskInstanceId(launchDetailsId, actionType),
                   new TaskTimer(100L, launchDetailsId, actionType, t, MDC.getCopyOfContextMap())),
           t);
 
@@ -383,6 +379,14 @@ public class WorkflowService {
     return task;
   }
 
+  /**
+   * Returns a new instance id for a timer of the launch. The instance id starts with the launch id
+   * followed by the action type, so that the timers of a launch are found using the prefix.
+   */
+  public static String getTaskInstanceId(Integer launchDetailsId, EcrActionTypes actionType) {
+    return launchDetailsId + "_" + actionType + "_" + java.util.UUID.randomUUID().toString();
+  }
+
   public static Boolean checkIfTasksExists(List<ScheduledTasks> tasks, String taskInstanceId) {
 
     int numOfTasksExisting = 0;
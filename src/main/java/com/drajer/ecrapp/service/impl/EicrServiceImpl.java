@@ -10,6 +10,7 @@ import com.drajer.cda.parser.CdaRrModel;
 import com.drajer.cda.parser.RrParser;
 import com.drajer.eca.model.EventTypes;
 import com.drajer.ecrapp.dao.EicrDao;
+import com.drajer.ecrapp.dao.KeysetPage;
 import com.drajer.ecrapp.model.Eicr;
 import com.drajer.ecrapp.model.EicrTypes;
 import com.drajer.ecrapp.model.ReportabilityResponse;
@@ -24,6 +25,7 @@ import com.drajer.sof.utils.RefreshTokenScheduler;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import javax.transaction.Transactional;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.r4.model.DocumentReference;
@@ -383,6 +385,11 @@ public class EicrServiceImpl implements EicrRRService {
     return rrDataList;
   }
 
+  public String getEicrData(
+      Map<String, String> searchParams, KeysetPage page, Consumer<Eicr> consumer) {
+    return eicrDao.getEicrData(searchParams, page, consumer);
+  }
+
   public List<JSONObject> getEicrAndRRByXRequestId(String xRequestId) {
     List<Eicr> eicrList = eicrDao.getEicrAndRRByXRequestId(xRequestId);
     List<JSONObject> eicrDataList = new ArrayList<>();
@@ -1,10 +1,12 @@
 package com.drajer.ecrapp.service.impl;
 
 import com.drajer.bsa.model.PublicHealthMessage;
+import com.drajer.ecrapp.dao.KeysetPage;
 import com.drajer.ecrapp.dao.PhMessageDao;
 import com.drajer.ecrapp.service.PhMessageService;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import javax.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -18,4 +20,9 @@ public class PhMessageServiceImpl implements PhMessageService {
   public List<PublicHealthMessage> getPhMessageData(Map<String, String> searchParams) {
     return phMessageDao.getPhMessageData(searchParams);
   }
+
+  public String getPhMessageData(
+      Map<String, String> searchParams, KeysetPage page, Consumer<PublicHealthMessage> consumer) {
+    return phMessageDao.getPhMessageData(searchParams, page, consumer);
+  }
 }
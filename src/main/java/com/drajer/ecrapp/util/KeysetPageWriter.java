@@ -0,0 +1,67 @@
+package com.drajer.ecrapp.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ *
+ *
+ * <h1>KeysetPageWriter</h1>
+ *
+ * This class writes a page of a search to the response as it is read from the database, as a JSON
+ * object with the entries of the page and the cursor of the next page.
+ *
+ * <pre>
+ * {"entries":[...],"nextCursor":"..."}
+ * </pre>
+ *
+ * The nextCursor is null on the last page.
+ */
+public class KeysetPageWriter {
+
+  public static final String ENTRIES = "entries";
+  public static final String NEXT_CURSOR = "nextCursor";
+
+  private KeysetPageWriter() {}
+
+  /**
+   * Method to create the body streaming a page.
+   *
+   * @param mapper The mapper used to serialize the entries.
+   * @param query The query passing the entries of the page to the consumer, which returns the
+   *     cursor of the next page.
+   * @return The body of the response.
+   */
+  public static <T> StreamingResponseBody write(
+      ObjectMapper mapper, Function<Consumer<T>, String> query) {
+
+    return out -> {
+      try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+
+        generator.writeStartObject();
+        generator.writeArrayFieldStart(ENTRIES);
+
+        String nextCursor =
+            query.apply(
+                entry -> {
+                  try {
+                    generator.writeObject(entry);
+                  } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                  }
+                });
+
+        generator.writeEndArray();
+        generator.writeStringField(NEXT_CURSOR, nextCursor);
+        generator.writeEndObject();
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    };
+  }
+}
@@ -133,5 +133,8 @@ public class ValueSetServiceImpl implements ValueSetService {
       ValueSetSingleton.getInstance()
           .addGrouperToEmergentValueSetMap(valuSetGrouper.getId(), grouperToEmergentValueSets);
     }
+
+    // Precompute the codes to be matched for the path, instead of computing them for each patient.
+    ValueSetSingleton.getInstance().refreshTriggerCodes(path);
   }
 }
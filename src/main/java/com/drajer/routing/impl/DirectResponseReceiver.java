@@ -9,19 +9,13 @@ import java.io.File;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
-import java.util.Properties;
 import java.util.UUID;
 import javax.mail.Address;
 import javax.mail.BodyPart;
-import javax.mail.Flags;
-import javax.mail.Folder;
 import javax.mail.Header;
 import javax.mail.Message;
 import javax.mail.Multipart;
-import javax.mail.Session;
-import javax.mail.Store;
 import javax.mail.internet.InternetAddress;
-import javax.mail.search.FlagTerm;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
@@ -34,11 +28,10 @@ public class DirectResponseReceiver extends RRReceiver {
 
   private final Logger logger = LoggerFactory.getLogger(DirectResponseReceiver.class);
 
-  private static final String IMAP = "imap";
-  private static final String INBOX = "Inbox";
-
   @Autowired EicrRRService rrService;
 
+  @Autowired ImapMailboxes mailboxes;
+
   @Override
   public Object receiveRespone(Object context) {
 
@@ -58,92 +51,21 @@ public class DirectResponseReceiver extends RRReceiver {
 
     try {
 
-      String mId = "";
       logger.info("Reading mail..");
-      // Properties for Javamail
-      Properties props = new Properties();
-      props.put("mail.imap.auth", "true");
-      props.put("mail.imap.ssl.enable", "true");
-      props.put("mail.imap.ssl.trust", "*");
-
-      Session session = Session.getInstance(props, null);
-
-      Store store = session.getStore(IMAP);
       int port = Integer.parseUnsignedInt(details.getImapPort());
 
-      logger.info("Connecting to IMAP Inbox ");
-      if (details.getImapUrl() == null || details.getImapUrl().isEmpty()) {
-        logger.info(
-            "Connecting to IMAP Inbox using the imap url {} and port {}",
-            details.getDirectHost(),
-            port);
-        store.connect(
-            details.getDirectHost(), port, details.getDirectUser(), details.getDirectPwd());
-      } else {
-        logger.info(
-            "Connecting to IMAP Inbox using imap url {} and port {}",
-            details.getDirectHost(),
-            port);
-        store.connect(details.getImapUrl(), port, details.getDirectUser(), details.getDirectPwd());
+      String host = details.getImapUrl();
+      if (host == null || host.isEmpty()) {
+        host = details.getDirectHost();
       }
 
-      Folder inbox = store.getFolder(INBOX);
-      inbox.open(Folder.READ_WRITE);
-      logger.info("Opened the inbox for reading/writing ");
-
-      Flags seen = new Flags(Flags.Flag.SEEN);
-      FlagTerm unseenFlagTerm = new FlagTerm(seen, false);
-      Message[] messages = inbox.search(unseenFlagTerm);
-
-      for (Message message : messages) {
-
-        logger.info("Found unread emails");
-        Enumeration<?> headers = message.getAllHeaders();
-
-        while (headers.hasMoreElements()) {
-          Header h = (Header) headers.nextElement();
-          if (h.getName().contains("Message-ID")) {
-            mId = h.getValue();
-            logger.info("Message-ID: {}", mId);
-          }
-        }
-
-        Address[] froms = message.getFrom();
-        String senderAddress = froms == null ? null : ((InternetAddress) froms[0]).getAddress();
-        logger.info("Sender Address :{}", senderAddress);
-
-        if (message.getContent() instanceof Multipart) {
-          Multipart multipart = (Multipart) message.getContent();
-          for (int i = 0; i < multipart.getCount(); i++) {
-            BodyPart bodyPart = multipart.getBodyPart(i);
-
-            if (bodyPart.getFileName() != null
-                && (bodyPart.getFileName().contains(".xml")
-                    || bodyPart.getFileName().contains(".XML"))) {
-              String filename = UUID.randomUUID() + ".xml";
-              logger.info("Found XML Attachment");
-
-              try (InputStream stream = bodyPart.getInputStream()) {
-
-                ReportabilityResponse data = new ReportabilityResponse();
-                data.setResponseType(EicrTypes.RrType.REPORTABILITY_RESPONSE.toString());
-                String rrXml = "<?xml version=\"1.0\"?>";
-                rrXml += IOUtils.toString(stream, StandardCharsets.UTF_8);
-                data.setRrXml(rrXml);
+      logger.info("Reading IMAP Inbox using the imap url {} and port {}", host, port);
+      ImapMailbox mailbox =
+          mailboxes.getMailbox(
+              host, port, details.getDirectUser(), details.getDirectPwd(), this::handleMessage);
 
-                FileUtils.writeStringToFile(
-                    new File(filename), data.getRrXml(), StandardCharsets.UTF_8);
-
-                logger.debug(" RrXML : {}", data.getRrXml());
-
-                rrService.handleReportabilityResponse(data, mId, true);
-              }
-            }
-          }
-        }
-      }
-
-      deleteMail(details, details.getDirectUser(), details.getDirectPwd());
+      int count = mailbox.read();
+      logger.info(" Finished reading {} new messages from the inbox", count);
 
     } catch (Exception e) {
 
@@ -151,43 +73,52 @@ public class DirectResponseReceiver extends RRReceiver {
     }
   }
 
-  public void deleteMail(LaunchDetails details, String username, String password) throws Exception {
+  public void handleMessage(Message message) throws Exception {
 
-    logger.info("Deleting mail of User:{}{}", username, password);
+    String mId = "";
+    logger.info("Found unread emails");
+    Enumeration<?> headers = message.getAllHeaders();
 
-    Properties props = new Properties();
+    while (headers.hasMoreElements()) {
+      Header h = (Header) headers.nextElement();
+      if (h.getName().contains("Message-ID")) {
+        mId = h.getValue();
+        logger.info("Message-ID: {}", mId);
+      }
+    }
 
-    props.setProperty("mail.imap.ssl.trust", "*");
-    props.setProperty("mail.imap.ssl.enable", "true");
-    Session session = Session.getInstance(props, null);
+    Address[] froms = message.getFrom();
+    String senderAddress = froms == null ? null : ((InternetAddress) froms[0]).getAddress();
+    logger.info("Sender Address :{}", senderAddress);
 
-    Store store = session.getStore("imap");
-    int port = Integer.parseUnsignedInt(details.getImapPort());
+    if (message.getContent() instanceof Multipart) {
+      Multipart multipart = (Multipart) message.getContent();
+      for (int i = 0; i < multipart.getCount(); i++) {
+        BodyPart bodyPart = multipart.getBodyPart(i);
 
-    if (details.getImapUrl() == null || details.getImapUrl().isEmpty()) {
-      logger.info(
-          "Connecting to IMAP Inbox using the imap url {} and port {}",
-          details.getDirectHost(),
-          port);
-      store.connect(details.getDirectHost(), port, details.getDirectUser(), details.getDirectPwd());
-    } else {
-      logger.info(
-          "Connecting to IMAP Inbox using imap url {} and port {}", details.getDirectHost(), port);
-      store.connect(details.getImapUrl(), port, details.getDirectUser(), details.getDirectPwd());
-    }
+        if (bodyPart.getFileName() != null
+            && (bodyPart.getFileName().contains(".xml")
+                || bodyPart.getFileName().contains(".XML"))) {
+          String filename = UUID.randomUUID() + ".xml";
+          logger.info("Found XML Attachment");
 
-    Folder inbox = store.getFolder(INBOX);
-    inbox.open(Folder.READ_WRITE);
-    Flags seen = new Flags(Flags.Flag.SEEN);
+          try (InputStream stream = bodyPart.getInputStream()) {
 
-    FlagTerm seenFlagTerm = new FlagTerm(seen, true);
-    Message[] messages = inbox.search(seenFlagTerm);
+            ReportabilityResponse data = new ReportabilityResponse();
+            data.setResponseType(EicrTypes.RrType.REPORTABILITY_RESPONSE.toString());
+            String rrXml = "<?xml version=\"1.0\"?>";
+            rrXml += IOUtils.toString(stream, StandardCharsets.UTF_8);
+            data.setRrXml(rrXml);
 
-    logger.info(" Marking messages as deleted ");
-    for (Message message : messages) {
-      message.setFlag(Flags.Flag.DELETED, true);
-    }
+            FileUtils.writeStringToFile(
+                new File(filename), data.getRrXml(), StandardCharsets.UTF_8);
 
-    inbox.close(true);
+            logger.debug(" RrXML : {}", data.getRrXml());
+
+            rrService.handleReportabilityResponse(data, mId, true);
+          }
+        }
+      }
+    }
   }
 }
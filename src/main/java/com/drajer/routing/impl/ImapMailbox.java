@@ -0,0 +1,349 @@
+package com.drajer.routing.impl;
+
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.mail.FetchProfile;
+import javax.mail.Flags;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.UIDFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ *
+ * <h1>ImapMailbox</h1>
+ *
+ * This class keeps the connection to the INBOX of a Direct account open between reads, instead of
+ * connecting and logging in for every read. New messages are fetched by UID, starting after the
+ * last message read, and are deleted and expunged on the same connection once handled.
+ *
+ * <p>The mailbox can also listen for new messages, using IMAP IDLE when the server supports it and
+ * polling the open connection otherwise, so that Reportability Responses are handled as soon as
+ * they arrive. A lost connection is reopened with an exponential backoff. When the connection has a
+ * read timeout (mail.imap.timeout), the IDLE command is ended and sent again before the timeout
+ * expires, so that a quiet inbox is not mistaken for a lost connection.
+ */
+public class ImapMailbox {
+
+  private final Logger logger = LoggerFactory.getLogger(ImapMailbox.class);
+
+  private static final String IMAP = "imap";
+  private static final String INBOX = "Inbox";
+  private static final String IDLE = "IDLE";
+  private static final String READ_TIMEOUT = "mail.imap.timeout";
+
+  /** Ends the IDLE commands of the mailboxes before the read timeout of their connection. */
+  private static final ScheduledExecutorService IDLE_KEEP_ALIVE =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread t = new Thread(r, "imap-keep-alive");
+            t.setDaemon(true);
+            return t;
+          });
+
+  /** The handler of the messages received by the mailbox. */
+  @FunctionalInterface
+  public interface MessageHandler {
+    void handle(Message message) throws Exception;
+  }
+
+  private final String host;
+  private final int port;
+  private final String username;
+  private final String password;
+  private final Properties properties;
+  private final MessageHandler handler;
+
+  private final long pollIntervalMs;
+  private final long initialBackoffMs;
+  private final long maxBackoffMs;
+
+  private IMAPStore store;
+  private IMAPFolder inbox;
+  private long uidValidity = -1;
+  private long lastUid;
+
+  private Thread listener;
+  private volatile boolean closed;
+
+  /**
+   * Constructor for the mailbox, the connection is opened by the first read.
+   *
+   * @param host The IMAP host.
+   * @param port The IMAP port.
+   * @param username The Direct account.
+   * @param password The password of the account.
+   * @param properties The JavaMail properties of the connection.
+   * @param handler The handler of the new messages.
+   * @param pollIntervalMs The interval between reads when the server does not support IDLE.
+   * @param initialBackoffMs The delay before the first attempt to reconnect.
+   * @param maxBackoffMs The maximum delay between the attempts to reconnect.
+   */
+  public ImapMailbox(
+      String host,
+      int port,
+      String username,
+      String password,
+      Properties properties,
+      MessageHandler handler,
+      long pollIntervalMs,
+      long initialBackoffMs,
+      long maxBackoffMs) {
+    this.host = host;
+    this.port = port;
+    this.username = username;
+    this.password = password;
+    this.properties = properties;
+    this.handler = handler;
+    this.pollIntervalMs = pollIntervalMs;
+    this.initialBackoffMs = initialBackoffMs;
+    this.maxBackoffMs = maxBackoffMs;
+  }
+
+  /**
+   * Method to read the messages received since the last read. Messages which are not marked as
+   * seen are passed to the handler. The handled messages and the messages already seen are deleted
+   * and expunged, while messages the handler failed on are kept.
+   *
+   * @return The number of messages handled.
+   * @throws MessagingException when the mailbox cannot be read, the connection is closed.
+   */
+  public synchronized int read() throws MessagingException {
+
+    IMAPFolder folder = open();
+
+    try {
+      Message[] messages = folder.getMessagesByUID(lastUid + 1, UIDFolder.LASTUID);
+
+      FetchProfile profile = new FetchProfile();
+      profile.add(UIDFolder.FetchProfileItem.UID);
+      profile.add(FetchProfile.Item.FLAGS);
+      profile.add(FetchProfile.Item.ENVELOPE);
+      folder.fetch(messages, profile);
+
+      int handled = 0;
+      boolean deleted = false;
+
+      for (Message message : messages) {
+
+        long uid = folder.getUID(message);
+
+        // The range lastUid+1:* returns the last message when there is no newer one.
+        if (uid <= lastUid) {
+          continue;
+        }
+
+        lastUid = uid;
+
+        if (!message.isSet(Flags.Flag.SEEN)) {
+          try {
+            handler.handle(message);
+            handled++;
+          } catch (Exception e) {
+            logger.error(" Error handling message {} of {}", uid, username, e);
+            continue;
+          }
+        }
+
+        message.setFlag(Flags.Flag.DELETED, true);
+        deleted = true;
+      }
+
+      if (deleted) {
+        folder.expunge();
+      }
+
+      return handled;
+
+    } catch (MessagingException | RuntimeException e) {
+      disconnect();
+      throw e;
+    }
+  }
+
+  /** Method to start listening for new messages in a background thread, if not yet started. */
+  public synchronized void startListening() {
+
+    if (listener == null && !closed) {
+      listener = new Thread(this::listen, "imap-" + username);
+      listener.setDaemon(true);
+      listener.start();
+    }
+  }
+
+  public synchronized boolean isListening() {
+    return listener != null && listener.isAlive();
+  }
+
+  private void listen() {
+
+    long backoff = initialBackoffMs;
+
+    while (!closed) {
+      try {
+        read();
+        backoff = initialBackoffMs;
+
+        IMAPFolder folder = getInbox();
+
+        if (folder != null && ((IMAPStore) folder.getStore()).hasCapability(IDLE)) {
+          // Returns when the server reports a change, or when another thread uses the folder.
+          ScheduledFuture<?> keepAlive = scheduleKeepAlive(folder);
+          try {
+            folder.idle(true);
+          } finally {
+            if (keepAlive != null) {
+              keepAlive.cancel(false);
+            }
+          }
+        } else {
+          Thread.sleep(pollIntervalMs);
+        }
+
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+
+        if (closed) {
+          return;
+        }
+
+        logger.error(
+            " Lost the connection to the inbox of {}, retrying in {} ms", username, backoff);
+        logger.debug(" Connection error ", e);
+
+        try {
+          Thread.sleep(backoff);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+
+        backoff = Math.min(backoff * 2, maxBackoffMs);
+      }
+    }
+  }
+
+  /** Method to stop listening and close the connection. */
+  public void close() {
+
+    closed = true;
+
+    Thread thread;
+    synchronized (this) {
+      thread = listener;
+    }
+
+    // Closing the connection ends a running IDLE command.
+    disconnect();
+
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  public boolean hasPassword(String value) {
+    return password == null ? value == null : password.equals(value);
+  }
+
+  /**
+   * Method to end the IDLE command on the folder after half of the read timeout of the connection,
+   * by using the folder from another thread.
+   */
+  private ScheduledFuture<?> scheduleKeepAlive(IMAPFolder folder) {
+
+    long readTimeoutMs;
+    try {
+      readTimeoutMs = Long.parseLong(properties.getProperty(READ_TIMEOUT, "0"));
+    } catch (NumberFormatException e) {
+      readTimeoutMs = 0;
+    }
+
+    if (readTimeoutMs <= 0) {
+      return null;
+    }
+
+    return IDLE_KEEP_ALIVE.schedule(
+        () -> {
+          try {
+            folder.getMessageCount();
+          } catch (MessagingException e) {
+            logger.debug(" Error ending the IDLE command on the inbox of {}", username, e);
+          }
+        },
+        readTimeoutMs / 2,
+        TimeUnit.MILLISECONDS);
+  }
+
+  private IMAPFolder open() throws MessagingException {
+
+    if (closed) {
+      throw new MessagingException("The mailbox of " + username + " is closed");
+    }
+
+    if (inbox != null && inbox.isOpen()) {
+      return inbox;
+    }
+
+    disconnect();
+
+    logger.info("Connecting to IMAP Inbox of {} on {}:{}", username, host, port);
+    Session session = Session.getInstance(properties, null);
+
+    IMAPStore newStore = (IMAPStore) session.getStore(IMAP);
+    IMAPFolder folder;
+
+    try {
+      newStore.connect(host, port, username, password);
+
+      folder = (IMAPFolder) newStore.getFolder(INBOX);
+      folder.open(Folder.READ_WRITE);
+    } catch (MessagingException e) {
+      newStore.close();
+      throw e;
+    }
+
+    // The UIDs of a previous connection are only valid while the UIDVALIDITY is unchanged.
+    if (folder.getUIDValidity() != uidValidity) {
+      uidValidity = folder.getUIDValidity();
+      lastUid = 0;
+    }
+
+    store = newStore;
+    inbox = folder;
+
+    return inbox;
+  }
+
+  private synchronized IMAPFolder getInbox() {
+    return inbox != null && inbox.isOpen() ? inbox : null;
+  }
+
+  private void disconnect() {
+
+    IMAPStore current;
+    synchronized (this) {
+      current = store;
+      store = null;
+      inbox = null;
+    }
+
+    if (current != null) {
+      try {
+        current.close();
+      } catch (MessagingException e) {
+        logger.debug(" Error closing the connection to the inbox of {}", username, e);
+      }
+    }
+  }
+}
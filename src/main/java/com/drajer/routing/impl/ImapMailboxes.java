@@ -0,0 +1,105 @@
+package com.drajer.routing.impl;
+
+import com.drajer.routing.impl.ImapMailbox.MessageHandler;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>ImapMailboxes</h1>
+ *
+ * This class holds one ImapMailbox per Direct account, so that the receivers of the Reportability
+ * Responses reuse the connection to the INBOX of the account. When the listener is enabled, the
+ * mailbox of an account starts listening for new messages the first time it is read. The handler
+ * of a mailbox is the one passed when the mailbox is created.
+ */
+@Component
+public class ImapMailboxes {
+
+  /** Flag to indicate if the mailboxes listen for new messages between the scheduled reads. */
+  @Value("${direct.imap.listener.enabled:false}")
+  private Boolean listenerEnabled;
+
+  /** The interval between reads of the listener when the server does not support IDLE. */
+  @Value("${direct.imap.poll-interval-ms:60000}")
+  private long pollIntervalMs;
+
+  @Value("${direct.imap.reconnect.initial-delay-ms:1000}")
+  private long initialBackoffMs;
+
+  @Value("${direct.imap.reconnect.max-delay-ms:300000}")
+  private long maxBackoffMs;
+
+  @Value("${direct.imap.connection-timeout-ms:30000}")
+  private long connectionTimeoutMs;
+
+  private final Map<String, ImapMailbox> mailboxes = new ConcurrentHashMap<>();
+
+  /**
+   * Method to get the mailbox of a Direct account. A mailbox created with another password is
+   * closed and replaced.
+   *
+   * @param host The IMAP host.
+   * @param port The IMAP port.
+   * @param username The Direct account.
+   * @param password The password of the account.
+   * @param handler The handler of the new messages, used when the mailbox is created.
+   * @return The mailbox.
+   */
+  public ImapMailbox getMailbox(
+      String host, int port, String username, String password, MessageHandler handler) {
+
+    ImapMailbox mailbox =
+        mailboxes.compute(
+            host + ":" + port + ":" + username,
+            (key, existing) -> {
+              if (existing != null && existing.hasPassword(password)) {
+                return existing;
+              }
+
+              if (existing != null) {
+                existing.close();
+              }
+
+              return new ImapMailbox(
+                  host,
+                  port,
+                  username,
+                  password,
+                  getProperties(),
+                  handler,
+                  pollIntervalMs,
+                  initialBackoffMs,
+                  maxBackoffMs);
+            });
+
+    if (Boolean.TRUE.equals(listenerEnabled)) {
+      mailbox.startListening();
+    }
+
+    return mailbox;
+  }
+
+  private Properties getProperties() {
+
+    Properties props = new Properties();
+    props.put("mail.imap.auth", "true");
+    props.put("mail.imap.ssl.enable", "true");
+    props.put("mail.imap.ssl.trust", "*");
+    props.put("mail.imap.connectiontimeout", String.valueOf(connectionTimeoutMs));
+    props.put("mail.imap.timeout", String.valueOf(connectionTimeoutMs));
+
+    return props;
+  }
+
+  @PreDestroy
+  public void close() {
+    mailboxes.values().forEach(ImapMailbox::close);
+    mailboxes.clear();
+  }
+}
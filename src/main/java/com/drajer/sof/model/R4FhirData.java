@@ -1,7 +1,9 @@
 package com.drajer.sof.model;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.hl7.fhir.r4.model.Address;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Condition;
@@ -31,6 +33,9 @@ public class R4FhirData extends FhirData {
   private Patient patient;
   private Practitioner practitioner;
   private List<Practitioner> practitionersList;
+
+  // Index of the practitioners by id, built when the first practitioner is looked up.
+  private volatile PractitionerIndex practitionerIndex;
   private Encounter encounter;
   private Location location;
   private List<Location> locationList;
@@ -100,12 +105,25 @@ public class R4FhirData extends FhirData {
   public Practitioner getPractitionerById(String id) {
 
     logger.debug("Id for retrieving practitioner = {}", id);
-    for (Practitioner pr : practitionersList) {
 
-      if (pr.getId().contains(id)) return pr;
+    List<Practitioner> practitioners = practitionersList;
+    if (id == null || practitioners == null) {
+      return null;
+    }
+
+    PractitionerIndex index = practitionerIndex;
+    if (index == null || !index.isCurrent(practitioners)) {
+
+      synchronized (this) {
+        index = practitionerIndex;
+        if (index == null || !index.isCurrent(practitioners)) {
+          index = new PractitionerIndex(practitioners);
+          practitionerIndex = index;
+        }
+      }
     }
 
-    return null;
+    return index.practitionersById.get(id);
   }
 
   public R4FhirData() {
@@ -161,6 +179,7 @@ public class R4FhirData extends FhirData {
 
   public void setPractitionersList(List<Practitioner> practitionersList) {
     this.practitionersList = practitionersList;
+    this.practitionerIndex = null;
   }
 
   public Encounter getEncounter() {
@@ -398,4 +417,34 @@ public class R4FhirData extends FhirData {
         + jurisdictions
         + "]";
   }
+
+  /**
+   * The practitioners by the id part of their id, so that resolving the practitioners referenced by
+   * the Encounter does not scan the practitioners for every reference. When several practitioners
+   * have the same id, the first one of the list is returned. Practitioners are only added to the
+   * list while the data is loaded, so the size of the list tells if it changed since the index was
+   * built.
+   */
+  private static final class PractitionerIndex {
+
+    private final List<Practitioner> practitioners;
+    private final int size;
+    private final Map<String, Practitioner> practitionersById = new HashMap<>();
+
+    private PractitionerIndex(List<Practitioner> practitioners) {
+
+      this.practitioners = practitioners;
+      this.size = practitioners.size();
+
+      for (Practitioner pr : practitioners) {
+        if (pr != null && pr.getIdElement().getIdPart() != null) {
+          practitionersById.putIfAbsent(pr.getIdElement().getIdPart(), pr);
+        }
+      }
+    }
+
+    private boolean isCurrent(List<Practitioner> list) {
+      return list == practitioners && list.size() == size;
+    }
+  }
 }
@@ -45,8 +45,8 @@ public class LoadingQueryR4Bundle {
     Bundle bundle =
         r4ResourcesData.getCommonResources(r4FhirData, start, end, launchDetails, client, context);
 
-    Encounter encounter =
-        (Encounter) r4ResourcesData.getResourceFromBundle(bundle, Encounter.class);
+    // The Encounter added to the Bundle by getCommonResources.
+    Encounter encounter = r4FhirData.getEncounter();
 
     r4ResourcesData.loadPractitionersLocationAndOrganization(
         context, client, launchDetails, r4FhirData, encounter, bundle, start, end);
@@ -0,0 +1,165 @@
+package com.drajer.sof.utils;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.apache.ApacheRestfulClientFactory;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ *
+ * <h1>FhirClientEndpoint</h1>
+ *
+ * This class holds the HTTP connection pool and the HAPI client factory of a FHIR server, for one
+ * authentication identity. The factory is configured once, so the connections of the pool are kept
+ * alive between the requests, and the server is validated only once. The clients created by the
+ * endpoint are light handles on the shared pool, which can carry their own interceptors for the
+ * request id and the access token of a request.
+ */
+public class FhirClientEndpoint {
+
+  private static final Logger logger = LoggerFactory.getLogger(FhirClientEndpoint.class);
+
+  private static final String START_TIME = "fhir.client.start-time";
+
+  private final String baseUrl;
+  private final String authIdentity;
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient httpClient;
+  private final ApacheRestfulClientFactory clientFactory;
+
+  private final LongAdder requestCount = new LongAdder();
+  private final LongAdder totalLatencyNanos = new LongAdder();
+  private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+  /**
+   * Constructor for the endpoint.
+   *
+   * @param context The FhirContext of the clients.
+   * @param baseUrl The base URL of the FHIR server.
+   * @param authIdentity The identity used to authenticate, can be null.
+   * @param requestConfig The timeouts of the requests.
+   * @param maxPerRoute The maximum number of connections to the server.
+   * @param maxTotal The maximum number of connections of the pool.
+   * @param connectionTtlMs The time after which a connection is no longer reused.
+   * @param validationMode The validation of the server, the default mode is used when null.
+   */
+  public FhirClientEndpoint(
+      FhirContext context,
+      String baseUrl,
+      String authIdentity,
+      RequestConfig requestConfig,
+      int maxPerRoute,
+      int maxTotal,
+      long connectionTtlMs,
+      ServerValidationModeEnum validationMode) {
+    this.baseUrl = baseUrl;
+    this.authIdentity = authIdentity;
+
+    connectionManager =
+        new PoolingHttpClientConnectionManager(connectionTtlMs, TimeUnit.MILLISECONDS);
+    connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+    connectionManager.setMaxTotal(maxTotal);
+
+    HttpRequestInterceptor start =
+        (request, httpContext) -> httpContext.setAttribute(START_TIME, System.nanoTime());
+    HttpResponseInterceptor end =
+        (response, httpContext) -> {
+          Object startTime = httpContext.getAttribute(START_TIME);
+          if (startTime != null) {
+            recordLatency(System.nanoTime() - (Long) startTime);
+          }
+        };
+
+    httpClient =
+        HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .disableCookieManagement()
+            .addInterceptorFirst(start)
+            .addInterceptorLast(end)
+            .build();
+
+    clientFactory = new ApacheRestfulClientFactory(context);
+    clientFactory.setHttpClient(httpClient);
+    if (validationMode != null) {
+      clientFactory.setServerValidationMode(validationMode);
+    }
+  }
+
+  /**
+   * Method to create a client of the FHIR server using the pooled connections.
+   *
+   * @return The client.
+   */
+  public IGenericClient newGenericClient() {
+    return clientFactory.newGenericClient(baseUrl);
+  }
+
+  private void recordLatency(long nanos) {
+    requestCount.increment();
+    totalLatencyNanos.add(nanos);
+    maxLatencyNanos.accumulateAndGet(nanos, Math::max);
+  }
+
+  public String getBaseUrl() {
+    return baseUrl;
+  }
+
+  public String getAuthIdentity() {
+    return authIdentity;
+  }
+
+  /** @return The leased, available and pending connections of the pool. */
+  public PoolStats getPoolStats() {
+    return connectionManager.getTotalStats();
+  }
+
+  public long getRequestCount() {
+    return requestCount.sum();
+  }
+
+  public double getAverageLatencyMs() {
+    long count = requestCount.sum();
+    return count == 0 ? 0 : totalLatencyNanos.sum() / (count * 1_000_000.0);
+  }
+
+  public double getMaxLatencyMs() {
+    return maxLatencyNanos.get() / 1_000_000.0;
+  }
+
+  public void close() {
+    try {
+      httpClient.close();
+    } catch (IOException e) {
+      logger.debug(" Error closing the connection pool of {}", baseUrl, e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    PoolStats stats = getPoolStats();
+    return String.format(
+        "%s leased=%d available=%d pending=%d max=%d requests=%d avgLatencyMs=%.1f",
+        baseUrl,
+        stats.getLeased(),
+        stats.getAvailable(),
+        stats.getPending(),
+        stats.getMax(),
+        getRequestCount(),
+        getAverageLatencyMs());
+  }
+}
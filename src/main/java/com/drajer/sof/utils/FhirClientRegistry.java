@@ -0,0 +1,221 @@
+package com.drajer.sof.utils;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PreDestroy;
+import org.apache.http.client.config.RequestConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>FhirClientRegistry</h1>
+ *
+ * This class holds one FhirClientEndpoint per FHIR server and authentication identity, so that the
+ * clients of a server share a configured connection pool instead of reconfiguring the client
+ * factory of the FhirContext for every client. The statistics of the pools and the latency of the
+ * requests of each endpoint are registered as metrics when a MeterRegistry is available.
+ */
+@Component
+public class FhirClientRegistry {
+
+  private static final Logger logger = LoggerFactory.getLogger(FhirClientRegistry.class);
+
+  private static final String METRIC_PREFIX = "fhir.client.";
+
+  @Value("${socket.timeout:3}")
+  private Integer socketTimeout;
+
+  @Value("${connection.timeout:3}")
+  private Integer connectionTimeout;
+
+  @Value("${pool.max.per.route:10}")
+  private Integer poolMaxPerRoute;
+
+  @Value("${pool.max.total:100}")
+  private Integer poolMaxTotal;
+
+  @Value("${connection.request.time.out:30}")
+  private Integer connectionReqTimeOut;
+
+  /** The time after which a pooled connection is closed instead of reused. */
+  @Value("${fhir.client.connection-ttl-ms:60000}")
+  private long connectionTtlMs;
+
+  @Autowired(required = false)
+  private MeterRegistry meterRegistry;
+
+  private final Map<EndpointKey, FhirClientEndpoint> endpoints = new ConcurrentHashMap<>();
+
+  /**
+   * Method to get the endpoint of a FHIR server, using the configured socket timeout and the
+   * default validation of the server.
+   *
+   * @param context The FhirContext of the clients.
+   * @param baseUrl The base URL of the FHIR server.
+   * @param authIdentity The identity used to authenticate, for example the client id, can be null.
+   * @return The endpoint.
+   */
+  public FhirClientEndpoint getEndpoint(FhirContext context, String baseUrl, String authIdentity) {
+    return getEndpoint(context, baseUrl, authIdentity, socketTimeout, null);
+  }
+
+  /**
+   * Method to get the endpoint of a FHIR server. The clients with a different socket timeout or
+   * validation mode use separate endpoints, since both are set on the shared client factory.
+   *
+   * @param context The FhirContext of the clients.
+   * @param baseUrl The base URL of the FHIR server.
+   * @param authIdentity The identity used to authenticate, can be null.
+   * @param socketTimeoutSeconds The socket timeout of the requests.
+   * @param validationMode The validation of the server, the default mode is used when null.
+   * @return The endpoint.
+   */
+  public FhirClientEndpoint getEndpoint(
+      FhirContext context,
+      String baseUrl,
+      String authIdentity,
+      int socketTimeoutSeconds,
+      ServerValidationModeEnum validationMode) {
+
+    EndpointKey key =
+        new EndpointKey(
+            context.getVersion().getVersion().name(),
+            baseUrl,
+            authIdentity,
+            socketTimeoutSeconds,
+            validationMode);
+
+    return endpoints.computeIfAbsent(key, k -> createEndpoint(context, k));
+  }
+
+  /** @return The endpoints created so far. */
+  public List<FhirClientEndpoint> getEndpoints() {
+    return new ArrayList<>(endpoints.values());
+  }
+
+  private FhirClientEndpoint createEndpoint(FhirContext context, EndpointKey key) {
+
+    logger.info(" Creating the connection pool of {} for {}", key.baseUrl, key.authIdentity);
+
+    RequestConfig requestConfig =
+        RequestConfig.custom()
+            .setSocketTimeout(key.socketTimeoutSeconds * 1000)
+            .setConnectTimeout(connectionTimeout * 1000)
+            .setConnectionRequestTimeout(connectionReqTimeOut * 1000)
+            .build();
+
+    FhirClientEndpoint endpoint =
+        new FhirClientEndpoint(
+            context,
+            key.baseUrl,
+            key.authIdentity,
+            requestConfig,
+            poolMaxPerRoute,
+            poolMaxTotal,
+            connectionTtlMs,
+            key.validationMode);
+
+    if (meterRegistry != null) {
+      registerMetrics(endpoint);
+    }
+
+    return endpoint;
+  }
+
+  private void registerMetrics(FhirClientEndpoint endpoint) {
+
+    Tags tags =
+        Tags.of(
+            "endpoint",
+            endpoint.getBaseUrl(),
+            "identity",
+            Objects.toString(endpoint.getAuthIdentity(), ""));
+
+    Gauge.builder(METRIC_PREFIX + "connections.leased", endpoint, e -> e.getPoolStats().getLeased())
+        .tags(tags)
+        .register(meterRegistry);
+    Gauge.builder(
+            METRIC_PREFIX + "connections.available", endpoint, e -> e.getPoolStats().getAvailable())
+        .tags(tags)
+        .register(meterRegistry);
+    Gauge.builder(
+            METRIC_PREFIX + "connections.pending", endpoint, e -> e.getPoolStats().getPending())
+        .tags(tags)
+        .register(meterRegistry);
+    FunctionCounter.builder(
+            METRIC_PREFIX + "requests", endpoint, FhirClientEndpoint::getRequestCount)
+        .tags(tags)
+        .register(meterRegistry);
+    Gauge.builder(
+            METRIC_PREFIX + "latency.average.ms", endpoint, FhirClientEndpoint::getAverageLatencyMs)
+        .tags(tags)
+        .register(meterRegistry);
+    Gauge.builder(METRIC_PREFIX + "latency.max.ms", endpoint, FhirClientEndpoint::getMaxLatencyMs)
+        .tags(tags)
+        .register(meterRegistry);
+  }
+
+  @PreDestroy
+  public void close() {
+    endpoints.values().forEach(FhirClientEndpoint::close);
+    endpoints.clear();
+  }
+
+  /** The key of an endpoint. */
+  private static final class EndpointKey {
+
+    private final String fhirVersion;
+    private final String baseUrl;
+    private final String authIdentity;
+    private final int socketTimeoutSeconds;
+    private final ServerValidationModeEnum validationMode;
+
+    EndpointKey(
+        String fhirVersion,
+        String baseUrl,
+        String authIdentity,
+        int socketTimeoutSeconds,
+        ServerValidationModeEnum validationMode) {
+      this.fhirVersion = fhirVersion;
+      this.baseUrl = baseUrl;
+      this.authIdentity = authIdentity;
+      this.socketTimeoutSeconds = socketTimeoutSeconds;
+      this.validationMode = validationMode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof EndpointKey)) {
+        return false;
+      }
+      EndpointKey other = (EndpointKey) o;
+      return fhirVersion.equals(other.fhirVersion)
+          && Objects.equals(baseUrl, other.baseUrl)
+          && Objects.equals(authIdentity, other.authIdentity)
+          && socketTimeoutSeconds == other.socketTimeoutSeconds
+          && validationMode == other.validationMode;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(fhirVersion, baseUrl, authIdentity, socketTimeoutSeconds, validationMode);
+    }
+  }
+}
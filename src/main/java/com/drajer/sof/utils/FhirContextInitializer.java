@@ -6,7 +6,6 @@ import ca.uhn.fhir.model.dstu2.resource.Bundle;
 import ca.uhn.fhir.model.dstu2.resource.Bundle.Entry;
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
-import ca.uhn.fhir.rest.client.api.IRestfulClientFactory;
 import ca.uhn.fhir.rest.client.interceptor.BearerTokenAuthInterceptor;
 import ca.uhn.fhir.rest.client.interceptor.LoggingInterceptor;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
@@ -20,6 +19,7 @@ import com.drajer.sof.model.LaunchDetails;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Supplier;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
@@ -73,23 +73,13 @@ public class FhirContextInitializer {
   @Value("${ecr.fhir.skip.triggerquery.resources:}")
   private String skipTriggerResource;
 
-  @Value("${socket.timeout:3}")
-  private Integer socketTimeout;
-
-  @Value("${connection.timeout:3}")
-  private Integer connectionTimeout;
-
-  @Value("${pool.max.per.route:10}")
-  private Integer poolMaxPerRoute;
-
-  @Value("${pool.max.total:100}")
-  private Integer poolMaxTotal;
-
-  @Value("${connection.request.time.out:30}")
-  private Integer connectionReqTimeOut;
+  /** The socket timeout of the clients of the launches. */
+  private static final int LAUNCH_SOCKET_TIMEOUT = 60;
 
   @Autowired FHIRRetryTemplate retryTemplate;
 
+  @Autowired FhirClientRegistry clientRegistry;
+
   public FhirContextInitializer(FHIRRetryTemplate retryTemplate) {
     this.retryTemplate = retryTemplate;
   }
@@ -125,24 +115,68 @@ public class FhirContextInitializer {
    */
   public IGenericClient createClient(
       FhirContext context, String url, String accessToken, String requestId) {
+    return createClient(context, url, accessToken, null, requestId);
+  }
+
+  /**
+   * Creates a GenericClient with standard intercepters used throughout the services.
+   *
+   * @param url the base URL of the FHIR server to connect to
+   * @param accessToken the name of the key to use to generate the token
+   * @param unauthorizedHandler called when the server rejects the token, can be null
+   * @param requestId the prefix for all X-Request-ID values used with this new client
+   * @return a Generic Client
+   */
+  public IGenericClient createClient(
+      FhirContext context,
+      String url,
+      String accessToken,
+      Runnable unauthorizedHandler,
+      String requestId) {
+    return createClient(
+        clientRegistry.getEndpoint(context, url, null),
+        () -> accessToken,
+        unauthorizedHandler,
+        requestId);
+  }
+
+  /**
+   * Creates a GenericClient using the pooled connections of the endpoint, with standard
+   * intercepters used throughout the services. The token is read from the supplier for every
+   * request, so the client remains usable when the token is refreshed.
+   *
+   * @param endpoint the endpoint of the FHIR server to connect to
+   * @param tokenSupplier the supplier of the access token, the token can be null
+   * @param requestId the prefix for all X-Request-ID values used with this new client
+   * @return a Generic Client
+   */
+  public IGenericClient createClient(
+      FhirClientEndpoint endpoint, Supplier<String> tokenSupplier, String requestId) {
+    return createClient(endpoint, tokenSupplier, null, requestId);
+  }
+
+  /**
+   * Creates a GenericClient using the pooled connections of the endpoint, with standard
+   * intercepters used throughout the services. The unauthorized handler is called when the server
+   * answers a request with 401, so that the rejected token is not reused.
+   *
+   * @param endpoint the endpoint of the FHIR server to connect to
+   * @param tokenSupplier the supplier of the access token, the token can be null
+   * @param unauthorizedHandler called when the server rejects the token, can be null
+   * @param requestId the prefix for all X-Request-ID values used with this new client
+   * @return a Generic Client
+   */
+  public IGenericClient createClient(
+      FhirClientEndpoint endpoint,
+      Supplier<String> tokenSupplier,
+      Runnable unauthorizedHandler,
+      String requestId) {
     logger.trace("Initializing the Client");
 
     FhirClient client =
-        new FhirClient(context.newRestfulGenericClient(url), requestId, EventTypes.QueryType.NONE);
-
-    IRestfulClientFactory restfulClientFactory = context.getRestfulClientFactory();
-    restfulClientFactory.setSocketTimeout(socketTimeout * 1000);
-    restfulClientFactory.setConnectTimeout(connectionTimeout * 1000);
-    restfulClientFactory.setPoolMaxPerRoute(poolMaxPerRoute * 1000);
-    restfulClientFactory.setPoolMaxTotal(poolMaxTotal * 1000);
-    restfulClientFactory.setConnectionRequestTimeout(connectionReqTimeOut * 1000);
-
-    if (accessToken != null && !accessToken.equalsIgnoreCase("")) {
-      client.registerInterceptor(new BearerTokenAuthInterceptor(accessToken));
-      // client.registerInterceptor(new LoggingInterceptor(true));
-    } else {
-      logger.debug("AccessToken not supplied for %{}", url);
-    }
+        new FhirClient(endpoint.newGenericClient(), requestId, EventTypes.QueryType.NONE);
+
+    client.registerInterceptor(new TokenSupplierInterceptor(tokenSupplier, unauthorizedHandler));
 
     if (logger.isDebugEnabled()) {
       client.registerInterceptor(new LoggingInterceptor(true));
@@ -161,12 +195,17 @@ public class FhirContextInitializer {
   public IGenericClient createClient(
       FhirContext context, LaunchDetails launchDetails, EventTypes.QueryType type) {
     logger.trace("Initializing the Client");
+
+    FhirClientEndpoint endpoint =
+        clientRegistry.getEndpoint(
+            context,
+            launchDetails.getEhrServerURL(),
+            launchDetails.getClientId(),
+            LAUNCH_SOCKET_TIMEOUT,
+            null);
+
     FhirClient client =
-        new FhirClient(
-            context.newRestfulGenericClient(launchDetails.getEhrServerURL()),
-            launchDetails.getxRequestId(),
-            type);
-    context.getRestfulClientFactory().setSocketTimeout(60 * 1000);
+        new FhirClient(endpoint.newGenericClient(), launchDetails.getxRequestId(), type);
 
     BearerTokenAuthInterceptor bearerTokenAuthInterceptor =
         new EcrOAuthBearerTokenInterceptor(launchDetails);
@@ -3,6 +3,7 @@ package com.drajer.sof.utils;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import com.drajer.bsa.ehr.service.impl.FhirReferenceResolver;
 import com.drajer.cda.parser.CdaParserConstants;
 import com.drajer.cdafromr4.CdaFhirUtilities;
 import com.drajer.ecrapp.service.WorkflowService;
@@ -11,11 +12,14 @@ import com.drajer.sof.model.LaunchDetails;
 import com.drajer.sof.model.R4FhirData;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.r4.model.*;
@@ -36,6 +40,8 @@ public class R4ResourcesData {
 
   @Autowired FhirContextInitializer fhirContextInitializer;
 
+  @Autowired FhirReferenceResolver referenceResolver;
+
   private final Logger logger = LoggerFactory.getLogger(R4ResourcesData.class);
 
   private static final String OBSERVATION = "Observation";
@@ -1239,19 +1245,6 @@ public class R4ResourcesData {
     return bundle;
   }
 
-  public Resource getResourceFromBundle(Bundle bundle, Class<?> resource) {
-    try {
-      for (BundleEntryComponent entry : bundle.getEntry()) {
-        if (entry.getResource() != null && entry.getResource().getClass() == resource) {
-          return entry.getResource();
-        }
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting the Resource from Bundle", e);
-    }
-    return null;
-  }
-
   public void loadMedicationsData(
       FhirContext context,
       IGenericClient client,
@@ -1378,27 +1371,24 @@ public class R4ResourcesData {
 
         List<Practitioner> practitionerList = new ArrayList<>();
 
-        Map<String, String> practitionerMap = new HashMap<>();
-
-        List<EncounterParticipantComponent> participants = encounter.getParticipant();
+        Set<String> practitionerIds = new LinkedHashSet<>();
 
-        for (EncounterParticipantComponent participant : participants) {
+        for (EncounterParticipantComponent participant : encounter.getParticipant()) {
           if (participant.getIndividual() != null) {
             Reference practitionerReference = participant.getIndividual();
-            String practitionerID = practitionerReference.getReferenceElement().getIdPart();
-            if (!practitionerMap.containsKey(practitionerID)) {
-              Practitioner practitioner =
-                  (Practitioner)
-                      fhirContextInitializer.getResouceById(
-                          launchDetails, client, context, "Practitioner", practitionerID);
-              if (practitioner != null) {
-                practitionerList.add(practitioner);
-                practitionerMap.put(practitionerID, practitioner.getResourceType().name());
-                BundleEntryComponent practitionerEntry =
-                    new BundleEntryComponent().setResource(practitioner);
-                bundle.addEntry(practitionerEntry);
-              }
-            }
+            practitionerIds.add(practitionerReference.getReferenceElement().getIdPart());
+          }
+        }
+
+        // Retrieve all the Practitioners together instead of one request per participant.
+        for (Resource res :
+            resolveReferences(launchDetails, client, context, "Practitioner", practitionerIds)) {
+          if (res instanceof Practitioner) {
+            Practitioner practitioner = (Practitioner) res;
+            practitionerList.add(practitioner);
+            BundleEntryComponent practitionerEntry =
+                new BundleEntryComponent().setResource(practitioner);
+            bundle.addEntry(practitionerEntry);
           }
         }
         if (!practitionerList.isEmpty()) {
@@ -1430,25 +1420,23 @@ public class R4ResourcesData {
       // Add Locations
       if (Boolean.TRUE.equals(encounter.hasLocation())) {
         List<Location> locationList = new ArrayList<>();
+        Set<String> locationIds = new LinkedHashSet<>();
         List<EncounterLocationComponent> enocunterLocations = encounter.getLocation();
         for (EncounterLocationComponent location : enocunterLocations) {
           if (location.getLocation() != null) {
             Reference locationReference = location.getLocation();
-            Location locationResource =
-                (Location)
-                    fhirContextInitializer.getResouceById(
-                        launchDetails,
-                        client,
-                        context,
-                        "Location",
-                        locationReference.getReferenceElement().getIdPart());
-            if (locationResource != null && locationResource.hasAddress()) {
-              locationList.add(locationResource);
-              BundleEntryComponent locationEntry =
-                  new BundleEntryComponent().setResource(locationResource);
-              bundle.addEntry(locationEntry);
-              r4FhirData.setLocation(locationResource);
-            }
+            locationIds.add(locationReference.getReferenceElement().getIdPart());
+          }
+        }
+        for (Resource res :
+            resolveReferences(launchDetails, client, context, "Location", locationIds)) {
+          if (res instanceof Location && ((Location) res).hasAddress()) {
+            Location locationResource = (Location) res;
+            locationList.add(locationResource);
+            BundleEntryComponent locationEntry =
+                new BundleEntryComponent().setResource(locationResource);
+            bundle.addEntry(locationEntry);
+            r4FhirData.setLocation(locationResource);
           }
         }
         r4FhirData.setLocationList(locationList);
@@ -1462,6 +1450,34 @@ public class R4ResourcesData {
     }
   }
 
+  /**
+   * The method retrieves the referenced resources of the resource type, batching the requests when
+   * it is enabled for the EHR queries.
+   */
+  private Collection<Resource> resolveReferences(
+      LaunchDetails launchDetails,
+      IGenericClient client,
+      FhirContext context,
+      String resourceName,
+      Set<String> ids) {
+
+    if (ids.isEmpty()
+        || Boolean.TRUE.equals(
+            fhirContextInitializer.checkSkipResource(resourceName, (FhirClient) client))) {
+      return Collections.emptyList();
+    }
+
+    return referenceResolver
+        .resolve(
+            client,
+            resourceName,
+            ids,
+            (type, id) ->
+                (Resource)
+                    fhirContextInitializer.getResouceById(launchDetails, client, context, type, id))
+        .values();
+  }
+
   public DocumentReference constructR4DocumentReference(
       String rrXml,
       String patientId,
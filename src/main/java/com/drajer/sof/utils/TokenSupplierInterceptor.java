@@ -0,0 +1,54 @@
+package com.drajer.sof.utils;
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import java.util.function.Supplier;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ *
+ *
+ * <h1>TokenSupplierInterceptor</h1>
+ *
+ * This interceptor adds the bearer token returned by the supplier to every request of a client, so
+ * that a client can keep being used after its access token was refreshed. No Authorization header
+ * is added when the supplier returns an empty token. When the server answers with 401, the
+ * unauthorized handler is called so that the rejected token can be discarded.
+ */
+public class TokenSupplierInterceptor implements IClientInterceptor {
+
+  private final Supplier<String> tokenSupplier;
+
+  private final Runnable unauthorizedHandler;
+
+  public TokenSupplierInterceptor(Supplier<String> tokenSupplier) {
+    this(tokenSupplier, null);
+  }
+
+  public TokenSupplierInterceptor(Supplier<String> tokenSupplier, Runnable unauthorizedHandler) {
+    this.tokenSupplier = tokenSupplier;
+    this.unauthorizedHandler = unauthorizedHandler;
+  }
+
+  @Override
+  public void interceptRequest(IHttpRequest theRequest) {
+
+    String token = tokenSupplier.get();
+
+    if (StringUtils.isNotBlank(token)) {
+      theRequest.addHeader(
+          Constants.HEADER_AUTHORIZATION, Constants.HEADER_AUTHORIZATION_VALPREFIX_BEARER + token);
+    }
+  }
+
+  @Override
+  public void interceptResponse(IHttpResponse theResponse) {
+
+    if (unauthorizedHandler != null
+        && theResponse.getStatus() == Constants.STATUS_HTTP_401_CLIENT_UNAUTHORIZED) {
+      unauthorizedHandler.run();
+    }
+  }
+}
@@ -0,0 +1,3 @@
+-- Version of the HealthcareSetting configuration used by the HealthcareSettingCache.
+
+ALTER TABLE healthcare_setting ADD COLUMN IF NOT EXISTS config_version integer;
@@ -0,0 +1,18 @@
+-- Queue of the eICRs waiting to be sent using Direct, drained by the DirectOutboundQueueJob.
+
+CREATE TABLE IF NOT EXISTS direct_outbound_queue (
+  id uuid NOT NULL PRIMARY KEY,
+  ph_message_id uuid,
+  hs_id integer NOT NULL,
+  correlation_id TEXT,
+  recipient_address TEXT NOT NULL,
+  payload TEXT NOT NULL,
+  status TEXT NOT NULL,
+  attempts integer NOT NULL,
+  next_attempt_ts timestamp NOT NULL,
+  last_error TEXT,
+  version integer NOT NULL,
+  last_updated_ts timestamp NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_direct_outbound_queue_next_attempt_ts ON direct_outbound_queue (status, next_attempt_ts);
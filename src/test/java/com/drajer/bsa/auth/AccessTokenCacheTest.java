@@ -0,0 +1,147 @@
+package com.drajer.bsa.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.drajer.bsa.model.FhirServerDetails;
+import com.drajer.bsa.model.HealthcareSetting;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class AccessTokenCacheTest {
+
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private final Function<FhirServerDetails, JSONObject> retriever = fsd -> newToken(3600);
+
+  private JSONObject newToken(long expiresIn) {
+    JSONObject token = new JSONObject();
+    token.put("access_token", "token-" + requests.incrementAndGet());
+    token.put("expires_in", expiresIn);
+    return token;
+  }
+
+  private static HealthcareSetting newSetting(Integer id, String clientId) {
+    HealthcareSetting hs = new HealthcareSetting();
+    hs.setId(id);
+    hs.setClientId(clientId);
+    hs.setFhirServerBaseURL("http://localhost/fhir");
+    hs.setAuthType("SofBackend");
+    return hs;
+  }
+
+  @Test
+  public void testTokenIsCachedPerServer() {
+
+    AccessTokenCache cache = new AccessTokenCache(true, 60, false);
+    HealthcareSetting hs = newSetting(1, "client");
+
+    JSONObject first = cache.getToken(hs, retriever);
+    JSONObject second = cache.getToken(hs, retriever);
+
+    assertEquals("token-1", first.getString("access_token"));
+    assertEquals("token-1", second.getString("access_token"));
+    assertNotSame(first, second);
+    assertTrue(second.getLong("expires_in") <= 3600);
+    assertEquals(1, requests.get());
+
+    assertEquals("token-2", cache.getToken(newSetting(2, "client"), retriever).get("access_token"));
+    assertEquals("token-3", cache.getToken(newSetting(1, "other"), retriever).get("access_token"));
+    assertEquals(3, cache.size());
+
+    cache.invalidate(hs);
+    assertEquals("token-4", cache.getToken(hs, retriever).getString("access_token"));
+  }
+
+  @Test
+  public void testDisabledAndShortLivedTokensAreNotCached() {
+
+    AccessTokenCache disabled = new AccessTokenCache(false, 60, true);
+    HealthcareSetting hs = newSetting(1, "client");
+
+    disabled.getToken(hs, retriever);
+    disabled.getToken(hs, retriever);
+    assertEquals(2, requests.get());
+
+    AccessTokenCache cache = new AccessTokenCache(true, 60, false);
+    cache.getToken(hs, fsd -> newToken(30));
+    cache.getToken(hs, fsd -> newToken(30));
+    assertEquals(4, requests.get());
+    assertEquals(0, cache.size());
+
+    assertNull(cache.getToken(hs, fsd -> null));
+  }
+
+  @Test
+  public void testConcurrentRequestsAreCoalesced() throws Exception {
+
+    AccessTokenCache cache = new AccessTokenCache(true, 60, false);
+    HealthcareSetting hs = newSetting(1, "client");
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    Function<FhirServerDetails, JSONObject> slowRetriever =
+        fsd -> {
+          started.countDown();
+          try {
+            release.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return newToken(3600);
+        };
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    try {
+      List<Future<JSONObject>> results = new ArrayList<>();
+      results.add(executor.submit(() -> cache.getToken(hs, slowRetriever)));
+      started.await(5, TimeUnit.SECONDS);
+      for (int i = 0; i < 3; i++) {
+        results.add(executor.submit(() -> cache.getToken(hs, slowRetriever)));
+      }
+      Thread.sleep(100);
+      release.countDown();
+
+      for (Future<JSONObject> result : results) {
+        assertEquals("token-1", result.get().getString("access_token"));
+      }
+      assertEquals(1, requests.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testUsedTokenIsRefreshedBeforeExpiration() throws Exception {
+
+    AccessTokenCache cache = new AccessTokenCache(true, 60, true);
+    HealthcareSetting hs = newSetting(1, "client");
+
+    try {
+      // The refresh is scheduled one second after the token is retrieved.
+      assertEquals("token-1", cache.getToken(hs, fsd -> newToken(61)).getString("access_token"));
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (requests.get() < 2 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+
+      assertEquals(2, requests.get());
+      assertEquals("token-2", cache.getToken(hs, fsd -> newToken(61)).getString("access_token"));
+    } finally {
+      cache.shutdown();
+    }
+  }
+}
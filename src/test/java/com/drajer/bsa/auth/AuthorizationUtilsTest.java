@@ -0,0 +1,62 @@
+package com.drajer.bsa.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.drajer.bsa.model.FhirServerDetails;
+import com.drajer.bsa.model.HealthcareSetting;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AuthorizationUtilsTest {
+
+  private AuthorizationUtils authorizationUtils;
+
+  private AuthorizationService backendAuthorizationService;
+
+  private HealthcareSetting hs;
+
+  private int requests;
+
+  @Before
+  public void setUp() {
+
+    backendAuthorizationService = mock(AuthorizationService.class);
+    when(backendAuthorizationService.getAuthorizationToken(any(FhirServerDetails.class)))
+        .thenAnswer(
+            invocation -> {
+              JSONObject token = new JSONObject();
+              token.put("access_token", "token-" + ++requests);
+              token.put("expires_in", 3600);
+              return token;
+            });
+
+    authorizationUtils = new AuthorizationUtils();
+    authorizationUtils.backendAuthorizationService = backendAuthorizationService;
+    authorizationUtils.accessTokenCache = new AccessTokenCache(true, 60, false);
+
+    hs = new HealthcareSetting();
+    hs.setId(1);
+    hs.setClientId("client");
+    hs.setFhirServerBaseURL("http://localhost/fhir");
+    hs.setAuthType("SofBackend");
+  }
+
+  @Test
+  public void testRejectedTokenIsNotReused() {
+
+    assertEquals("token-1", authorizationUtils.getToken(hs).getString("access_token"));
+    assertEquals("token-1", authorizationUtils.getToken(hs).getString("access_token"));
+    verify(backendAuthorizationService, times(1)).getAuthorizationToken(hs);
+
+    authorizationUtils.invalidateToken(hs);
+
+    assertEquals("token-2", authorizationUtils.getToken(hs).getString("access_token"));
+    verify(backendAuthorizationService, times(2)).getAuthorizationToken(hs);
+  }
+}
@@ -0,0 +1,151 @@
+package com.drajer.bsa.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import com.drajer.bsa.kar.model.HealthcareSettingOperationalKnowledgeArtifacts;
+import com.drajer.bsa.kar.model.KnowledgeArtifactStatus;
+import com.drajer.bsa.model.HealthcareSetting;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class HealthcareSettingCacheTest {
+
+  private static final String URL = "http://localhost/fhir";
+
+  private static HealthcareSetting newSetting(Integer id, String url, Integer version) {
+
+    HealthcareSetting hs = new HealthcareSetting();
+    hs.setId(id);
+    hs.setFhirServerBaseURL(url);
+    hs.setConfigVersion(version);
+
+    KnowledgeArtifactStatus stat = new KnowledgeArtifactStatus();
+    stat.setVersionUniqueKarId("kar|1.0.0");
+
+    HealthcareSettingOperationalKnowledgeArtifacts kars =
+        new HealthcareSettingOperationalKnowledgeArtifacts();
+    kars.setId(id);
+    kars.addArtifactStatus(stat);
+    hs.setKars(kars);
+
+    return hs;
+  }
+
+  @Test
+  public void testCachedSettingIsCopied() {
+
+    HealthcareSettingCache cache = new HealthcareSettingCache(true, 60);
+    HealthcareSetting hs = newSetting(1, URL, null);
+    cache.put(hs);
+
+    HealthcareSetting byUrl = cache.getByUrl(URL, url -> 0);
+    HealthcareSetting byId = cache.getById(1, id -> 0);
+
+    assertNotNull(byUrl);
+    assertNotSame(hs, byUrl);
+    assertNotSame(byUrl, byId);
+    assertNotSame(hs.getKars(), byUrl.getKars());
+    assertEquals(URL, byId.getFhirServerBaseURL());
+    assertNotNull(byUrl.getArtifactStatus("kar|1.0.0"));
+
+    byUrl.setEhrAccessToken("token");
+    assertNull(cache.getById(1, id -> 0).getEhrAccessToken());
+
+    assertNull(cache.getByUrl("http://other/fhir", url -> 0));
+    assertNull(cache.getById(2, id -> 0));
+  }
+
+  @Test
+  public void testVersionIsCheckedAfterInterval() {
+
+    AtomicInteger checks = new AtomicInteger();
+
+    HealthcareSettingCache cache = new HealthcareSettingCache(true, 60);
+    cache.put(newSetting(1, URL, 3));
+    assertNotNull(
+        cache.getById(
+            1,
+            id -> {
+              checks.incrementAndGet();
+              return 4;
+            }));
+    assertEquals(0, checks.get());
+
+    HealthcareSettingCache checked = new HealthcareSettingCache(true, 0);
+    checked.put(newSetting(1, URL, 3));
+    assertNotNull(checked.getByUrl(URL, url -> 3));
+    assertNull(checked.getByUrl(URL, url -> 4));
+    assertEquals(0, checked.size());
+
+    checked.put(newSetting(1, URL, 3));
+    assertNull(checked.getById(1, id -> null));
+    assertEquals(0, checked.size());
+  }
+
+  @Test
+  public void testAccessTokenIsUpdatedWithoutVersionChange() {
+
+    HealthcareSettingCache cache = new HealthcareSettingCache(true, 0);
+    cache.put(newSetting(1, URL, 2));
+
+    HealthcareSetting hs = newSetting(1, URL, 2);
+    hs.setEhrAccessToken("token");
+    hs.setEhrAccessTokenExpiryDuration(300);
+    cache.updateAccessToken(hs);
+
+    HealthcareSetting cached = cache.getById(1, id -> 2);
+    assertNotNull(cached);
+    assertNotSame(hs, cached);
+    assertEquals("token", cached.getEhrAccessToken());
+    assertEquals(300, cached.getEhrAccessTokenExpiryDuration());
+    assertNotNull(cached.getArtifactStatus("kar|1.0.0"));
+
+    cache.updateAccessToken(newSetting(2, URL, 1));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testInvalidateAndDisabledCache() {
+
+    HealthcareSettingCache cache = new HealthcareSettingCache(true, 60);
+    cache.put(newSetting(1, URL, 1));
+    cache.invalidate(1);
+    assertNull(cache.getByUrl(URL, url -> 1));
+    assertEquals(0, cache.size());
+
+    HealthcareSettingCache disabled = new HealthcareSettingCache(false, 60);
+    disabled.put(newSetting(1, URL, 1));
+    assertNull(disabled.getById(1, id -> 1));
+    assertEquals(0, disabled.size());
+  }
+
+  @Test
+  public void testSettingIsInvalidatedAgainAfterTransaction() {
+
+    HealthcareSettingCache cache = new HealthcareSettingCache(true, 60);
+    cache.put(newSetting(1, URL, 1));
+
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      cache.invalidateOnCompletion(1);
+      assertEquals(0, cache.size());
+
+      // Another thread caches the setting as it was before the transaction commits.
+      cache.put(newSetting(1, URL, 1));
+
+      for (TransactionSynchronization sync :
+          TransactionSynchronizationManager.getSynchronizations()) {
+        sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+      }
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    assertEquals(0, cache.size());
+  }
+}
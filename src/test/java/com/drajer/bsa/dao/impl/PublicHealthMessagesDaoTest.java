@@ -0,0 +1,135 @@
+package com.drajer.bsa.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.drajer.bsa.model.PublicHealthMessage;
+import com.drajer.ecrapp.config.SpringConfiguration;
+import com.drajer.ecrapp.dao.KeysetPage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = SpringConfiguration.class)
+@AutoConfigureTestDatabase
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+public class PublicHealthMessagesDaoTest {
+
+  private static final String FHIR_SERVER_URL = "http://localhost/fhir";
+  private static final String KAR_UNIQUE_ID = "ersd|1.0.0";
+
+  @Autowired private PublicHealthMessagesDaoImpl phDao;
+
+  private PublicHealthMessage saveMessage(int version, String triggerMatchStatus) {
+
+    PublicHealthMessage message = new PublicHealthMessage();
+    message.setFhirServerBaseUrl(FHIR_SERVER_URL);
+    message.setPatientId("12742571");
+    message.setEncounterId("97953900");
+    message.setNotifiedResourceId("97953900");
+    message.setNotifiedResourceType("Encounter");
+    message.setNotificationId("notification-1");
+    message.setKarUniqueId(KAR_UNIQUE_ID);
+    message.setSubmittedDataId("eicr-doc-" + version);
+    message.setSubmittedVersionNumber(version);
+    message.setSubmittedCdaData("<ClinicalDocument/>");
+    message.setTriggerMatchStatus(triggerMatchStatus);
+
+    return phDao.saveOrUpdate(message);
+  }
+
+  private Map<String, String> getSearchParams() {
+
+    Map<String, String> searchParams = new HashMap<>();
+    searchParams.put(PublicHealthMessagesDaoImpl.FHIR_SERVER_URL, FHIR_SERVER_URL);
+    searchParams.put(PublicHealthMessagesDaoImpl.PATIENT_ID, "12742571");
+    searchParams.put(PublicHealthMessagesDaoImpl.KAR_UNIQUE_ID, KAR_UNIQUE_ID);
+    return searchParams;
+  }
+
+  @Test
+  public void testGetMaxVersionIdAndLatestTriggerMatchStatus() {
+
+    PublicHealthMessage first = saveMessage(1, "{\"version\":1}");
+    saveMessage(3, "{\"version\":3}");
+    saveMessage(2, "{\"version\":2}");
+
+    assertEquals(Integer.valueOf(3), phDao.getMaxVersionId(first));
+    assertEquals("{\"version\":3}", phDao.getLatestTriggerMatchStatus(getSearchParams()));
+
+    Map<String, String> otherPatient = getSearchParams();
+    otherPatient.put(PublicHealthMessagesDaoImpl.PATIENT_ID, "other");
+    assertNull(phDao.getLatestTriggerMatchStatus(otherPatient));
+  }
+
+  @Test
+  public void testMetadataAndResponseUpdate() {
+
+    PublicHealthMessage saved = saveMessage(1, "{}");
+
+    PublicHealthMessage metadata = phDao.getMetadataBySubmittedDataId("eicr-doc-1");
+
+    assertNotNull(metadata);
+    assertEquals(saved.getId(), metadata.getId());
+    assertEquals(FHIR_SERVER_URL, metadata.getFhirServerBaseUrl());
+    assertEquals(Integer.valueOf(1), metadata.getSubmittedVersionNumber());
+    assertNull(metadata.getSubmittedCdaData());
+    assertNull(metadata.getTriggerMatchStatus());
+
+    metadata.setCdaResponseData("<ClinicalDocument/>");
+    metadata.setResponseDataId("rr-doc-1");
+    metadata.setResponseProcessingStatus("SUCCESS");
+    phDao.updateResponse(metadata);
+
+    PublicHealthMessage updated = phDao.getMetadataBySubmittedDataId("eicr-doc-1");
+    assertEquals("rr-doc-1", updated.getResponseDataId());
+    assertEquals("SUCCESS", updated.getResponseProcessingStatus());
+  }
+
+  @Test
+  public void testKeysetPages() {
+
+    saveMessage(1, "{}");
+    saveMessage(2, "{}");
+    saveMessage(3, "{}");
+
+    List<PublicHealthMessage> firstPage = new ArrayList<>();
+    String cursor =
+        phDao.getPublicHealthMessages(
+            getSearchParams(), KeysetPage.after(null, 2, false, UUID::fromString), firstPage::add);
+
+    assertEquals(2, firstPage.size());
+    assertNotNull(cursor);
+    assertEquals("<ClinicalDocument/>", firstPage.get(0).getSubmittedCdaData());
+
+    List<PublicHealthMessage> lastPage = new ArrayList<>();
+    assertNull(
+        phDao.getPublicHealthMessages(
+            getSearchParams(), KeysetPage.after(cursor, 2, true, UUID::fromString), lastPage::add));
+
+    assertEquals(1, lastPage.size());
+    assertNull(lastPage.get(0).getSubmittedCdaData());
+    assertNotNull(lastPage.get(0).getSubmittedDataId());
+
+    HashSet<String> dataIds = new HashSet<>();
+    firstPage.forEach(message -> dataIds.add(message.getSubmittedDataId()));
+    assertTrue(dataIds.add(lastPage.get(0).getSubmittedDataId()));
+  }
+}
@@ -0,0 +1,104 @@
+package com.drajer.bsa.ehr.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.Test;
+
+public class EhrResourceCacheTest {
+
+  private static final String BASE_URL = "http://localhost/fhir";
+
+  @Test
+  public void testResourceIsCachedById() {
+
+    EhrResourceCache cache = new EhrResourceCache(true, 100, 300, "Patient|Encounter", false);
+
+    Patient patient = new Patient();
+    patient.setId("12742571");
+    cache.putResource(BASE_URL, "Patient", "12742571", patient);
+
+    Resource cached = cache.getResource(BASE_URL, "Patient", "12742571");
+    assertNotNull(cached);
+    assertNotSame(patient, cached);
+    assertNull(cache.getResource("http://other/fhir", "Patient", "12742571"));
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void testDisabledCacheAndUncachedTypes() {
+
+    EhrResourceCache disabled = new EhrResourceCache(false, 100, 300, "Patient", false);
+    disabled.putResource(BASE_URL, "Patient", "1", new Patient());
+    assertNull(disabled.getResource(BASE_URL, "Patient", "1"));
+
+    EhrResourceCache cache = new EhrResourceCache(true, 100, 300, "Patient", false);
+    cache.putResource(BASE_URL, "Observation", "1", new Observation());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEntriesAreEvicted() {
+
+    EhrResourceCache cache = new EhrResourceCache(true, 2, 300, "Patient", false);
+
+    cache.putResource(BASE_URL, "Patient", "1", new Patient());
+    cache.putResource(BASE_URL, "Patient", "2", new Patient());
+    cache.getResource(BASE_URL, "Patient", "1");
+    cache.putResource(BASE_URL, "Patient", "3", new Patient());
+
+    assertEquals(2, cache.size());
+    assertNotNull(cache.getResource(BASE_URL, "Patient", "1"));
+    assertNull(cache.getResource(BASE_URL, "Patient", "2"));
+  }
+
+  @Test
+  public void testExpiredEntriesAreNotReturned() {
+
+    EhrResourceCache cache = new EhrResourceCache(true, 100, 0, "Patient", false);
+
+    cache.putResource(BASE_URL, "Patient", "1", new Patient());
+    sleep(10);
+
+    assertNull(cache.getResource(BASE_URL, "Patient", "1"));
+  }
+
+  @Test
+  public void testNewerSearchResultInvalidatesCachedResource() {
+
+    EhrResourceCache cache = new EhrResourceCache(true, 100, 300, "Patient", true);
+
+    Patient older = new Patient();
+    older.setId("1");
+    older.getMeta().setLastUpdated(new Date(1000));
+    cache.putResource(BASE_URL, "Patient", "1", older);
+
+    Patient newer = new Patient();
+    newer.setId("1");
+    newer.getMeta().setLastUpdated(new Date(2000));
+
+    List<Resource> results = new ArrayList<>();
+    results.add(newer);
+    cache.putSearchResults(BASE_URL, "Patient?_id=1", results);
+
+    assertNull(cache.getResource(BASE_URL, "Patient", "1"));
+    assertEquals(1, cache.getSearchResults(BASE_URL, "Patient?_id=1").size());
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package com.drajer.bsa.ehr.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.IGetPage;
+import ca.uhn.fhir.rest.gclient.IGetPageTyped;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import java.util.ArrayList;
+import java.util.List;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Observation;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class FhirBundlePaginatorTest {
+
+  private IGenericClient client;
+  private IGetPage getPage;
+  private List<Bundle> pages;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void init() {
+
+    client = Mockito.mock(IGenericClient.class);
+    getPage = Mockito.mock(IGetPage.class);
+    when(client.loadPage()).thenReturn(getPage);
+
+    pages = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      Bundle page = new Bundle();
+      for (int j = 0; j < 10; j++) {
+        Observation obs = new Observation();
+        obs.setId("obs-" + i + "-" + j);
+        page.addEntry().setResource(obs);
+      }
+      pages.add(page);
+    }
+
+    for (int i = 0; i < pages.size() - 1; i++) {
+      pages.get(i).addLink().setRelation(IBaseBundle.LINK_NEXT).setUrl("http://next/" + (i + 1));
+
+      IGetPageTyped<Bundle> typed = Mockito.mock(IGetPageTyped.class);
+      when(typed.execute()).thenReturn(pages.get(i + 1));
+      when(getPage.next(pages.get(i))).thenReturn(typed);
+    }
+  }
+
+  @Test
+  public void testAllPagesAreCollected() {
+
+    FhirBundlePaginator paginator = new FhirBundlePaginator(false, 1000, 100000, "", "");
+
+    List<BundleEntryComponent> entries =
+        paginator.getAllEntries(client, pages.get(0), "Observation");
+
+    assertEquals(50, entries.size());
+    assertEquals(10, pages.get(0).getEntry().size());
+  }
+
+  @Test
+  public void testAllPagesAreCollectedWithPrefetch() {
+
+    FhirBundlePaginator paginator = new FhirBundlePaginator(true, 1000, 100000, "", "");
+
+    List<Integer> pageSizes = new ArrayList<>();
+    List<BundleEntryComponent> entries =
+        paginator.getAllEntries(
+            client, pages.get(0), "Observation", page -> pageSizes.add(page.size()));
+    paginator.shutdown();
+
+    assertEquals(50, entries.size());
+    assertEquals(5, pageSizes.size());
+  }
+
+  @Test
+  public void testResourceLimitsAreApplied() {
+
+    FhirBundlePaginator paginator =
+        new FhirBundlePaginator(false, 1000, 100000, "Observation:2", "Condition:5");
+
+    assertEquals(20, paginator.getAllEntries(client, pages.get(0), "Observation").size());
+    assertEquals(5, paginator.getMaxEntries("Condition"));
+
+    paginator = new FhirBundlePaginator(false, 1000, 25, "", "");
+
+    assertEquals(25, paginator.getAllEntries(client, pages.get(0), "Observation").size());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testPageLoadFailureIsRethrown() {
+
+    IGetPageTyped<Bundle> failing = Mockito.mock(IGetPageTyped.class);
+    when(failing.execute()).thenThrow(new InternalErrorException("Page 3 failed"));
+    when(getPage.next(pages.get(2))).thenReturn(failing);
+
+    for (boolean prefetch : new boolean[] {false, true}) {
+
+      FhirBundlePaginator paginator = new FhirBundlePaginator(prefetch, 1000, 100000, "", "");
+      List<Integer> pageSizes = new ArrayList<>();
+
+      try {
+        paginator.getAllEntries(
+            client, pages.get(0), "Observation", page -> pageSizes.add(page.size()));
+        fail("Expected the page load failure to be rethrown");
+      } catch (InternalErrorException e) {
+        assertTrue(e.getMessage().contains("Page 3 failed"));
+      } finally {
+        paginator.shutdown();
+      }
+
+      assertEquals(3, pageSizes.size());
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package com.drajer.bsa.ehr.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.MethodNotAllowedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Practitioner;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class FhirReferenceResolverTest {
+
+  private static final String BASE_URL = "http://localhost/fhir";
+
+  private IGenericClient client;
+  private List<String> reads;
+  private BiFunction<String, String, Resource> reader;
+
+  @Before
+  public void init() {
+
+    client = Mockito.mock(IGenericClient.class, Mockito.RETURNS_DEEP_STUBS);
+    when(client.getServerBase()).thenReturn(BASE_URL);
+
+    reads = new ArrayList<>();
+    reader =
+        (type, id) -> {
+          synchronized (reads) {
+            reads.add(id);
+          }
+          return createPractitioner(id);
+        };
+  }
+
+  @Test
+  public void testReferencesAreReadOnceWhenBatchingIsDisabled() {
+
+    FhirReferenceResolver resolver =
+        new FhirReferenceResolver(
+            false, "search", 50, 4, new FhirBundlePaginator(), new EhrResourceCache());
+
+    Map<String, Resource> resolved =
+        resolver.resolve(client, "Practitioner", Arrays.asList("1", "2", "1"), reader);
+
+    assertEquals(2, resolved.size());
+    assertEquals(2, reads.size());
+  }
+
+  @Test
+  public void testReferencesAreRetrievedUsingIdSearch() {
+
+    Bundle bundle = new Bundle();
+    bundle.addEntry().setResource(createPractitioner("1"));
+    bundle.addEntry().setResource(createPractitioner("2"));
+    when(client
+            .search()
+            .byUrl("Practitioner?_id=1,2&_count=2")
+            .returnBundle(Bundle.class)
+            .execute())
+        .thenReturn(bundle);
+
+    FhirReferenceResolver resolver =
+        new FhirReferenceResolver(
+            true, "search", 50, 4, new FhirBundlePaginator(), new EhrResourceCache());
+
+    Map<String, Resource> resolved =
+        resolver.resolve(client, "Practitioner", Arrays.asList("1", "2"), reader);
+    resolver.shutdown();
+
+    assertEquals(2, resolved.size());
+    assertTrue(reads.isEmpty());
+  }
+
+  @Test
+  public void testIndividualReadsWhenBatchedRequestFails() {
+
+    when(client.search()).thenThrow(new MethodNotAllowedException("Search not supported"));
+
+    FhirReferenceResolver resolver =
+        new FhirReferenceResolver(
+            true, "search", 50, 4, new FhirBundlePaginator(), new EhrResourceCache());
+
+    Map<String, Resource> resolved =
+        resolver.resolve(client, "Practitioner", Arrays.asList("1", "2", "3"), reader);
+    assertEquals(3, resolved.size());
+    assertEquals(3, reads.size());
+
+    // The server is not asked for a batched request again.
+    resolved = resolver.resolve(client, "Practitioner", Arrays.asList("4", "5"), reader);
+    resolver.shutdown();
+
+    assertEquals(2, resolved.size());
+    verify(client, times(1)).search();
+  }
+
+  @Test
+  public void testBatchedRequestIsRetriedAfterTransientFailure() {
+
+    when(client.search()).thenThrow(new InternalErrorException("Server unavailable"));
+
+    FhirReferenceResolver resolver =
+        new FhirReferenceResolver(
+            true, "search", 50, 4, new FhirBundlePaginator(), new EhrResourceCache());
+
+    Map<String, Resource> resolved =
+        resolver.resolve(client, "Practitioner", Arrays.asList("1", "2", "3"), reader);
+    assertEquals(3, resolved.size());
+    assertEquals(3, reads.size());
+
+    // The server is asked for a batched request again.
+    resolved = resolver.resolve(client, "Practitioner", Arrays.asList("4", "5"), reader);
+    resolver.shutdown();
+
+    assertEquals(2, resolved.size());
+    verify(client, times(2)).search();
+  }
+
+  private static Practitioner createPractitioner(String id) {
+    Practitioner practitioner = new Practitioner();
+    practitioner.setId(id);
+    return practitioner;
+  }
+}
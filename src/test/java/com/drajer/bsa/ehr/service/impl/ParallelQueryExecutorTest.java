@@ -0,0 +1,183 @@
+package com.drajer.bsa.ehr.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.drajer.bsa.kar.model.FhirQueryFilter;
+import com.drajer.bsa.model.KarProcessingData;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.junit.After;
+import org.junit.Test;
+
+public class ParallelQueryExecutorTest {
+
+  private ParallelQueryExecutor executor = new ParallelQueryExecutor(4, 30);
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void testAllQueriesAreExecuted() {
+
+    Map<String, FhirQueryFilter> queries = new HashMap<>();
+    for (int i = 0; i < 10; i++) {
+      queries.put("dr-" + i, new FhirQueryFilter("Observation?patient=1"));
+    }
+
+    List<String> executed = Collections.synchronizedList(new ArrayList<>());
+    executor.execute(
+        "http://localhost/fhir", queries, id -> null, (id, query) -> executed.add(id));
+
+    assertEquals(10, executed.size());
+  }
+
+  @Test
+  public void testRelatedQueriesAreExecutedAfterTheirDependencies() {
+
+    Map<String, FhirQueryFilter> queries = new HashMap<>();
+    queries.put("encounters", new FhirQueryFilter("Encounter?patient=1"));
+
+    FhirQueryFilter related = new FhirQueryFilter("Encounter?patient=1");
+    related.setRelatedDataId("encounters");
+    queries.put("related-encounters", related);
+
+    FhirQueryFilter chained = new FhirQueryFilter("Encounter?patient=1");
+    queries.put("chained-encounters", chained);
+
+    List<String> executed = Collections.synchronizedList(new ArrayList<>());
+    executor.execute(
+        "http://localhost/fhir",
+        queries,
+        id -> "chained-encounters".equals(id) ? "related-encounters" : null,
+        (id, query) -> {
+          if ("encounters".equals(id)) {
+            sleep(100);
+          }
+          executed.add(id);
+        });
+
+    assertEquals(3, executed.size());
+    assertTrue(executed.indexOf("encounters") < executed.indexOf("related-encounters"));
+    assertTrue(executed.indexOf("related-encounters") < executed.indexOf("chained-encounters"));
+  }
+
+  @Test
+  public void testFailedQueryDoesNotBlockOtherQueries() {
+
+    Map<String, FhirQueryFilter> queries = new HashMap<>();
+    queries.put("conditions", new FhirQueryFilter("Condition?patient=1"));
+
+    FhirQueryFilter related = new FhirQueryFilter("Condition?patient=1");
+    related.setRelatedDataId("conditions");
+    queries.put("related-conditions", related);
+
+    List<String> executed = Collections.synchronizedList(new ArrayList<>());
+    executor.execute(
+        "http://localhost/fhir",
+        queries,
+        id -> null,
+        (id, query) -> {
+          if ("conditions".equals(id)) {
+            throw new IllegalStateException("EHR unavailable");
+          }
+          executed.add(id);
+        });
+
+    assertEquals(Collections.singletonList("related-conditions"), executed);
+  }
+
+  @Test
+  public void testQueriesCompletingAfterTimeoutDoNotAddResources() {
+
+    ParallelQueryExecutor shortTimeout = new ParallelQueryExecutor(2, 1);
+    KarProcessingData kd = new KarProcessingData();
+
+    Map<String, FhirQueryFilter> queries = new HashMap<>();
+    queries.put("fast", new FhirQueryFilter("Patient?_id=1"));
+    queries.put("slow", new FhirQueryFilter("Encounter?patient=1"));
+
+    CountDownLatch slowDone = new CountDownLatch(1);
+    KarProcessingData.QueryResultGate gate = kd.openQueryResultGate();
+    try {
+      shortTimeout.execute(
+          "http://localhost/fhir",
+          queries,
+          id -> null,
+          (id, query) ->
+              kd.runWithQueryResultGate(
+                  gate,
+                  () -> {
+                    if ("slow".equals(id)) {
+                      sleep(1500);
+                      kd.addResourceByType(ResourceType.Encounter, new Encounter().setId("2"));
+                      slowDone.countDown();
+                    } else {
+                      kd.addResourceByType(ResourceType.Patient, new Patient().setId("1"));
+                    }
+                  }));
+    } finally {
+      kd.closeQueryResultGate(gate);
+    }
+
+    Set<Resource> patients = kd.getResourcesByType(ResourceType.Patient);
+    assertEquals(1, patients.size());
+
+    await(slowDone);
+    assertTrue(kd.getResourcesByType(ResourceType.Encounter).isEmpty());
+
+    shortTimeout.shutdown();
+  }
+
+  @Test
+  public void testResourcesAreCopiedOnlyWhileQueriesAreRunning() {
+
+    KarProcessingData kd = new KarProcessingData();
+    kd.addResourceByType(ResourceType.Patient, new Patient().setId("1"));
+
+    assertSame(
+        kd.getResourcesByType(ResourceType.Patient), kd.getResourcesByType(ResourceType.Patient));
+
+    KarProcessingData.QueryResultGate gate = kd.openQueryResultGate();
+    Set<Resource> patients = kd.getResourcesByType(ResourceType.Patient);
+
+    // The returned resources are a copy which is not modified by the running queries.
+    kd.runWithQueryResultGate(
+        gate, () -> kd.addResourceByType(ResourceType.Patient, new Patient().setId("2")));
+    assertEquals(1, patients.size());
+
+    kd.closeQueryResultGate(gate);
+    assertEquals(2, kd.getResourcesByType(ResourceType.Patient).size());
+    assertSame(
+        kd.getResourcesByType(ResourceType.Patient), kd.getResourcesByType(ResourceType.Patient));
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
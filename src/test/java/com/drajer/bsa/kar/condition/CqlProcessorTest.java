@@ -1,10 +1,13 @@
 package com.drajer.bsa.kar.condition;
 
+import static org.junit.Assert.assertEquals;
+
 import com.drajer.bsa.kar.action.SubmitReport;
 import com.drajer.bsa.kar.model.BsaAction;
 import com.drajer.bsa.model.KarProcessingData;
 import com.drajer.ecrapp.config.SpringConfiguration;
 import java.io.File;
+import org.cqframework.cql.elm.execution.VersionedIdentifier;
 import org.hl7.fhir.r4.model.CanonicalType;
 import org.hl7.fhir.r4.model.Coding;
 import org.hl7.fhir.r4.model.Endpoint;
@@ -51,4 +54,21 @@ public class CqlProcessorTest {
     KarProcessingData kd = new KarProcessingData();
     // processor.evaluateExpression(bsaCondition, action, kd);
   }
+
+  @Test
+  public void testLibraryIdentifier() {
+
+    VersionedIdentifier id =
+        CqlEvaluationContext.getLibraryIdentifier(
+            "http://hl7.org/fhir/us/ecr/Library/RuleFilters|1.0.0");
+
+    assertEquals("http://hl7.org/fhir/us/ecr", id.getSystem());
+    assertEquals("RuleFilters", id.getId());
+    assertEquals("1.0.0", id.getVersion());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidLibraryUrl() {
+    CqlEvaluationContext.getLibraryIdentifier("http://hl7.org/fhir/us/ecr/Measure/RuleFilters");
+  }
 }
@@ -0,0 +1,82 @@
+package com.drajer.bsa.kar.condition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.drajer.bsa.kar.model.KnowledgeArtifact;
+import java.util.ArrayList;
+import java.util.List;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencds.cqf.cql.engine.runtime.Code;
+import org.opencds.cqf.cql.engine.terminology.TerminologyProvider;
+import org.opencds.cqf.cql.engine.terminology.ValueSetInfo;
+
+public class KarTerminologyProviderTest {
+
+  private static final String SNOMED = "http://snomed.info/sct";
+  private static final String LOINC = "http://loinc.org";
+  private static final String LABS_VS = "http://example.org/ValueSet/labs";
+  private static final String OTHER_VS = "http://example.org/ValueSet/other";
+
+  private TerminologyProvider delegate;
+  private KarTerminologyProvider provider;
+
+  @Before
+  public void init() {
+
+    ValueSet labs = new ValueSet();
+    labs.setUrl(LABS_VS);
+    labs.getExpansion().addContains().setSystem(LOINC).setCode("94500-6");
+    labs.getExpansion().addContains().setSystem(SNOMED).setCode("840539006");
+
+    KnowledgeArtifact kar = new KnowledgeArtifact();
+    kar.addDependentValueSet(labs);
+
+    delegate = mock(TerminologyProvider.class);
+    provider = new KarTerminologyProvider(kar.getValueSetIndex(), delegate);
+  }
+
+  @Test
+  public void testInKarValueSet() {
+
+    ValueSetInfo labs = new ValueSetInfo().withId(LABS_VS);
+
+    assertTrue(provider.in(new Code().withSystem(LOINC).withCode("94500-6"), labs));
+    assertFalse(provider.in(new Code().withSystem(SNOMED).withCode("94500-6"), labs));
+    verify(delegate, never()).in(any(), any());
+  }
+
+  @Test
+  public void testExpandKarValueSet() {
+
+    ValueSetInfo labs = new ValueSetInfo().withId(LABS_VS);
+
+    List<Code> codes = new ArrayList<>();
+    provider.expand(labs).forEach(codes::add);
+
+    assertEquals(2, codes.size());
+    assertTrue(codes.stream().anyMatch(c -> LOINC.equals(c.getSystem())));
+    assertSame(provider.expand(labs), provider.expand(labs));
+    verify(delegate, never()).expand(any());
+  }
+
+  @Test
+  public void testOtherValueSet() {
+
+    ValueSetInfo other = new ValueSetInfo().withId(OTHER_VS);
+    Code code = new Code().withSystem(LOINC).withCode("94500-6");
+    when(delegate.in(code, other)).thenReturn(true);
+
+    assertTrue(provider.in(code, other));
+    verify(delegate).in(code, other);
+  }
+}
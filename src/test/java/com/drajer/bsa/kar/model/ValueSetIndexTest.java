@@ -0,0 +1,79 @@
+package com.drajer.bsa.kar.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.drajer.bsa.utils.BsaServiceUtils;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValueSetIndexTest {
+
+  private static final String SNOMED = "http://snomed.info/sct";
+  private static final String LOINC = "http://loinc.org";
+  private static final String DIAGNOSES_VS = "http://example.org/ValueSet/diagnoses";
+  private static final String LABS_VS = "http://example.org/ValueSet/labs";
+
+  private KnowledgeArtifact kar;
+  private ValueSet diagnoses;
+
+  @Before
+  public void init() {
+
+    diagnoses = new ValueSet();
+    diagnoses.setUrl(DIAGNOSES_VS);
+    diagnoses.getCompose().addInclude().setSystem(SNOMED).addConcept().setCode("840539006");
+
+    ValueSet labs = new ValueSet();
+    labs.setUrl(LABS_VS);
+    labs.getExpansion().addContains().setSystem(LOINC).setCode("94500-6");
+    labs.getExpansion().addContains().setSystem(SNOMED).setCode("840539006");
+
+    kar = new KnowledgeArtifact();
+    kar.addDependentValueSet(diagnoses);
+    kar.addDependentValueSet(labs);
+  }
+
+  @Test
+  public void testCodeMembership() {
+
+    ValueSetIndex index = kar.getValueSetIndex();
+
+    assertEquals(2, index.size());
+    assertTrue(index.isIndexed(DIAGNOSES_VS));
+    assertTrue(index.contains(DIAGNOSES_VS, SNOMED, "840539006"));
+    assertTrue(index.contains(LABS_VS, LOINC, "94500-6"));
+    assertFalse(index.contains(DIAGNOSES_VS, LOINC, "94500-6"));
+    assertFalse(index.contains(DIAGNOSES_VS, LOINC, null));
+  }
+
+  @Test
+  public void testValueSetsForCode() {
+
+    ValueSetIndex index = kar.getValueSetIndex();
+
+    assertEquals(2, index.getValueSetsForCode(SNOMED, "840539006").size());
+    assertEquals(1, index.getValueSetsForCode(LOINC, "94500-6").size());
+    assertTrue(index.getValueSetsForCode(LOINC, "0000-0").isEmpty());
+
+    CodeableConcept cc = new CodeableConcept();
+    cc.addCoding().setSystem(LOINC).setCode("94500-6");
+    assertTrue(index.getValueSetsForCodeableConcept(cc).contains(LABS_VS));
+  }
+
+  @Test
+  public void testIndexMatchesValueSetScan() {
+
+    ValueSetIndex index = kar.getValueSetIndex();
+
+    assertEquals(
+        BsaServiceUtils.isCodePresentInValueSet(diagnoses, SNOMED, "840539006"),
+        BsaServiceUtils.isCodePresentInValueSet(index, diagnoses, SNOMED, "840539006"));
+    assertEquals(
+        BsaServiceUtils.isCodePresentInValueSet(diagnoses, SNOMED, "0000"),
+        BsaServiceUtils.isCodePresentInValueSet(index, diagnoses, SNOMED, "0000"));
+  }
+}
@@ -0,0 +1,113 @@
+package com.drajer.bsa.routing.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.drajer.bsa.dao.DirectOutboundQueueDao;
+import com.drajer.bsa.dao.HealthcareSettingsDao;
+import com.drajer.bsa.dao.PublicHealthMessagesDao;
+import com.drajer.bsa.model.DirectOutboundMessage;
+import com.drajer.bsa.model.HealthcareSetting;
+import java.util.Date;
+import java.util.UUID;
+import javax.mail.MessagingException;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class DirectOutboundQueueJobTest {
+
+  private static final String RECIPIENT = "pha@direct.example.org";
+  private static final String PAYLOAD = "<ClinicalDocument/>";
+
+  private DirectOutboundQueueJob job;
+  private HealthcareSetting hs;
+  private DirectOutboundMessage message;
+
+  @Before
+  public void setUp() {
+
+    job = new DirectOutboundQueueJob();
+    job.queueDao = mock(DirectOutboundQueueDao.class);
+    job.hsDao = mock(HealthcareSettingsDao.class);
+    job.phDao = mock(PublicHealthMessagesDao.class);
+    job.directTransport = mock(DirectTransportImpl.class);
+
+    ReflectionTestUtils.setField(job, "maxAttempts", 3);
+    ReflectionTestUtils.setField(job, "initialRetryDelayMs", 1000L);
+    ReflectionTestUtils.setField(job, "maxRetryDelayMs", 3000L);
+
+    hs = new HealthcareSetting();
+    when(job.hsDao.getHealthcareSettingById(1)).thenReturn(hs);
+
+    message = new DirectOutboundMessage();
+    message.setId(UUID.randomUUID());
+    message.setPhMessageId(UUID.randomUUID());
+    message.setHsId(1);
+    message.setRecipientAddress(RECIPIENT);
+    message.setPayload(PAYLOAD);
+    message.setCorrelationId("correlation-1");
+    message.setStatus(DirectOutboundMessage.Status.SENDING);
+  }
+
+  @Test
+  public void testRetryDelay() {
+
+    assertEquals(1000L, DirectOutboundQueueJob.getRetryDelay(1, 1000L, 3000L));
+    assertEquals(2000L, DirectOutboundQueueJob.getRetryDelay(2, 1000L, 3000L));
+    assertEquals(3000L, DirectOutboundQueueJob.getRetryDelay(3, 1000L, 3000L));
+    assertEquals(3000L, DirectOutboundQueueJob.getRetryDelay(100, 1000L, 3000L));
+  }
+
+  @Test
+  public void testSent() throws Exception {
+
+    when(job.directTransport.sendEicr(hs, RECIPIENT, PAYLOAD, "correlation-1")).thenReturn(true);
+
+    job.send(message);
+
+    verify(job.queueDao).delete(message);
+    verify(job.phDao)
+        .updateSubmissionStatus(eq(message.getPhMessageId()), eq("SENT"), any(Date.class));
+  }
+
+  @Test
+  public void testRetried() throws Exception {
+
+    when(job.directTransport.sendEicr(hs, RECIPIENT, PAYLOAD, "correlation-1"))
+        .thenThrow(new MessagingException("Connection refused"));
+
+    long start = System.currentTimeMillis();
+    job.send(message);
+
+    assertEquals(DirectOutboundMessage.Status.PENDING, message.getStatus());
+    assertEquals(1, message.getAttempts());
+    assertEquals("Connection refused", message.getLastError());
+    assertTrue(message.getNextAttemptTime().getTime() >= start + 1000L);
+    verify(job.queueDao).updateAttempt(message);
+    verify(job.queueDao, never()).delete(message);
+    verify(job.phDao, never()).updateSubmissionStatus(any(), any(), any());
+  }
+
+  @Test
+  public void testFailedAfterMaxAttempts() throws Exception {
+
+    message.setAttempts(2);
+    when(job.directTransport.sendEicr(hs, RECIPIENT, PAYLOAD, "correlation-1"))
+        .thenThrow(new MessagingException("Connection refused"));
+
+    job.send(message);
+
+    assertEquals(DirectOutboundMessage.Status.FAILED, message.getStatus());
+    assertEquals(3, message.getAttempts());
+    verify(job.queueDao).updateAttempt(message);
+    verify(job.phDao).updateSubmissionStatus(eq(message.getPhMessageId()), eq("FAILED"), isNull());
+  }
+}
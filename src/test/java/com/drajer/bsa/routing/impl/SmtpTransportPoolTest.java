@@ -0,0 +1,92 @@
+package com.drajer.bsa.routing.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class SmtpTransportPoolTest {
+
+  private static final String USER = "ehr@direct.example.org";
+  private static final String PASSWORD = "secret";
+  private static final String RECIPIENT = "pha@direct.example.org";
+
+  private GreenMail greenMail;
+  private SmtpTransportPool pool;
+  private int port;
+
+  @Before
+  public void setUp() {
+
+    greenMail = new GreenMail(ServerSetupTest.SMTP);
+    greenMail.start();
+    greenMail.setUser(USER, USER, PASSWORD);
+    port = ServerSetupTest.SMTP.getPort();
+
+    pool = new SmtpTransportPool();
+    ReflectionTestUtils.setField(pool, "maxIdle", 2);
+    ReflectionTestUtils.setField(pool, "idleTimeoutMs", 60000L);
+    ReflectionTestUtils.setField(pool, "connectionTimeoutMs", 5000L);
+    ReflectionTestUtils.setField(pool, "timeoutMs", 5000L);
+    ReflectionTestUtils.setField(pool, "sslEnabled", Boolean.FALSE);
+  }
+
+  @After
+  public void tearDown() {
+    pool.close();
+    greenMail.stop();
+  }
+
+  private void send(String subject) throws MessagingException {
+
+    pool.send(
+        "localhost",
+        port,
+        USER,
+        PASSWORD,
+        session -> {
+          MimeMessage message = new MimeMessage(session);
+          message.setFrom(new InternetAddress(USER));
+          message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(RECIPIENT));
+          message.setSubject(subject);
+          message.setText("<ClinicalDocument/>");
+          return message;
+        });
+  }
+
+  @Test
+  public void testConnectionReused() throws Exception {
+
+    send("eICR 1");
+    send("eICR 2");
+    send("eICR 3");
+
+    assertEquals(3, greenMail.getReceivedMessages().length);
+    assertEquals(1, pool.getIdleCount("localhost", port, USER));
+  }
+
+  @Test
+  public void testClosedConnectionReplaced() throws Exception {
+
+    send("eICR 1");
+
+    greenMail.stop();
+    greenMail = new GreenMail(ServerSetupTest.SMTP);
+    greenMail.start();
+    greenMail.setUser(USER, USER, PASSWORD);
+
+    send("eICR 2");
+
+    assertEquals(1, greenMail.getReceivedMessages().length);
+    assertEquals("eICR 2", greenMail.getReceivedMessages()[0].getSubject());
+    assertEquals(1, pool.getIdleCount("localhost", port, USER));
+  }
+}
@@ -0,0 +1,41 @@
+package com.drajer.bsa.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class NotificationConcurrencyLimiterTest {
+
+  private static final String FHIR_URL = "http://localhost/fhir";
+  private static final String OTHER_FHIR_URL = "http://other/fhir";
+
+  @Test
+  public void testLimitIsAppliedPerHealthcareSetting() {
+
+    NotificationConcurrencyLimiter limiter = new NotificationConcurrencyLimiter(2);
+
+    assertTrue(limiter.tryAcquire(FHIR_URL));
+    assertTrue(limiter.tryAcquire(FHIR_URL));
+    assertFalse(limiter.tryAcquire(FHIR_URL));
+    assertTrue(limiter.tryAcquire(OTHER_FHIR_URL));
+    assertEquals(2, limiter.getActiveCount(FHIR_URL));
+
+    limiter.release(FHIR_URL);
+
+    assertEquals(1, limiter.getActiveCount(FHIR_URL));
+    assertTrue(limiter.tryAcquire(FHIR_URL));
+  }
+
+  @Test
+  public void testNoLimit() {
+
+    NotificationConcurrencyLimiter limiter = new NotificationConcurrencyLimiter(0);
+
+    for (int i = 0; i < 100; i++) {
+      assertTrue(limiter.tryAcquire(FHIR_URL));
+    }
+    assertEquals(0, limiter.getActiveCount(FHIR_URL));
+  }
+}
@@ -0,0 +1,61 @@
+package com.drajer.bsa.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import ca.uhn.fhir.context.FhirContext;
+import java.util.List;
+import org.hl7.fhir.exceptions.FHIRException;
+import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Condition;
+import org.hl7.fhir.r4.model.ExpressionNode;
+import org.junit.Test;
+
+public class FhirPathEvaluatorTest {
+
+  private static final String LOINC_CODE = "code.coding.where(system = 'http://loinc.org').code";
+
+  private final FhirPathEvaluator evaluator = new FhirPathEvaluator(FhirContext.forR4(), 2);
+
+  private Condition getCondition() {
+
+    Condition condition = new Condition();
+    condition.setCode(
+        new CodeableConcept()
+            .addCoding(new Coding("http://loinc.org", "94309-2", null))
+            .addCoding(new Coding("http://snomed.info/sct", "840539006", null)));
+
+    return condition;
+  }
+
+  @Test
+  public void testCompiledExpression() {
+
+    ExpressionNode compiled = evaluator.compile(LOINC_CODE);
+
+    List<Base> result = evaluator.evaluate(getCondition(), compiled);
+
+    assertEquals(1, result.size());
+    assertEquals("94309-2", result.get(0).primitiveValue());
+  }
+
+  @Test
+  public void testCachedExpressions() {
+
+    Condition condition = getCondition();
+
+    assertEquals(1, evaluator.evaluate(condition, LOINC_CODE).size());
+    assertEquals(1, evaluator.evaluate(condition, LOINC_CODE).size());
+    assertEquals(1, evaluator.getCacheSize());
+
+    assertEquals(2, evaluator.evaluate(condition, "code.coding").size());
+    assertEquals(1, evaluator.evaluate(condition, "code").size());
+    assertEquals(2, evaluator.getCacheSize());
+  }
+
+  @Test(expected = FHIRException.class)
+  public void testInvalidExpression() {
+    evaluator.compile("code.where(");
+  }
+}
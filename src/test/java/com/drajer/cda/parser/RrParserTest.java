@@ -0,0 +1,93 @@
+package com.drajer.cda.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.drajer.test.util.TestUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class RrParserTest {
+
+  private static final String RR_FILE = "R4/Misc/TestRRXml.xml";
+
+  private final RrParser parser = new RrParser();
+
+  @Test
+  public void testParse() {
+
+    CdaRrModel model = parser.parse(TestUtils.getFileContentAsString(RR_FILE));
+
+    assertNotNull(model);
+    assertEquals("cf359edf-d41c-4279-abd2-5e89a879c626", model.getRrDocId().getRootValue());
+    assertEquals("69550923-8b72-475c-b64b-5f7c44a78e4f", model.getEicrDocId().getRootValue());
+    assertEquals("RRVS4", model.getReportableType());
+    assertEquals("CD", model.getReportableStatus().getXpath());
+    assertNull(model.getSetId());
+    assertEquals("PT-471325", model.getPatientId().getExtValue());
+    assertEquals("9937012", model.getEncounterId().getExtValue());
+  }
+
+  @Test
+  public void testParseSelectsFirstMatchInDocumentOrder() {
+
+    String rr =
+        "<ClinicalDocument><id root=\"rr\"/>"
+            + "<component><observation>"
+            + "<templateId root=\"2.16.840.1.113883.10.20.15.2.3.19\"/>"
+            + "<value nullFlavor=\"NI\"/><value code=\"RRVS1\"/>"
+            + "<entryRelationship><observation>"
+            + "<templateId root=\"2.16.840.1.113883.10.20.15.2.3.19\"/><value code=\"RRVS2\"/>"
+            + "</observation></entryRelationship>"
+            + "</observation></component>"
+            + "<reference><externalDocument nullFlavor=\"NI\">"
+            + "<templateId root=\"2.16.840.1.113883.10.20.15.2.3.10\"/><id root=\"ignored\"/>"
+            + "</externalDocument><externalDocument>"
+            + "<id root=\"eicr\"/><setId extension=\"123|456\"/>"
+            + "<templateId root=\"2.16.840.1.113883.10.20.15.2.3.10\"/>"
+            + "</externalDocument></reference></ClinicalDocument>";
+
+    CdaRrModel model = parser.parse(rr);
+
+    assertEquals("rr", model.getRrDocId().getRootValue());
+    assertEquals("eicr", model.getEicrDocId().getRootValue());
+    assertEquals("RRVS1", model.getReportableType());
+    assertEquals("123", model.getPatId());
+    assertEquals("456", model.getEnctId());
+    assertNull(model.getPatientId());
+  }
+
+  @Test
+  public void testParseInvalidDocuments() {
+
+    assertNull(parser.parse("<ClinicalDocument><id"));
+    assertNull(parser.parse("<!DOCTYPE foo [<!ENTITY x \"y\">]><ClinicalDocument/>"));
+  }
+
+  @Test
+  public void testConcurrentParse() throws Exception {
+
+    String rr = TestUtils.getFileContentAsString(RR_FILE);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    try {
+      List<Future<CdaRrModel>> results = new ArrayList<>();
+      for (int i = 0; i < 32; i++) {
+        results.add(executor.submit(() -> parser.parse(rr)));
+      }
+
+      for (Future<CdaRrModel> result : results) {
+        CdaRrModel model = result.get();
+        assertEquals("69550923-8b72-475c-b64b-5f7c44a78e4f", model.getEicrDocId().getRootValue());
+        assertEquals("RRVS4", model.getReportableType());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.drajer.cda.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import org.junit.Test;
+
+public class CdaXmlWriterTest {
+
+  private static final String ESCAPED_TEXT = "Fever & \"chills\" <3 days>";
+
+  @Test
+  public void testHeaderElements() {
+
+    StringBuilder expected = new StringBuilder();
+    expected.append(CdaGeneratorUtils.getXmlHeaderForClinicalDocument());
+    expected.append(CdaGeneratorUtils.getXmlForII("1.2.3"));
+    expected.append(CdaGeneratorUtils.getXmlForII("1.2.3", "ext"));
+    expected.append(CdaGeneratorUtils.getXmlForIIWithElName("setId", "1.2.3"));
+    expected.append(CdaGeneratorUtils.getXmlForIIWithElName("setId", "1.2.3", "1"));
+    expected.append(CdaGeneratorUtils.getXmlForTemplateId("2.16.840.1.113883.10.20.22.2.5.1"));
+    expected.append(
+        CdaGeneratorUtils.getXmlForTemplateId("2.16.840.1.113883.10.20.22.2.5.1", "2015-08-01"));
+    expected.append(CdaGeneratorUtils.getXmlForValue("versionNumber", "2"));
+    expected.append(CdaGeneratorUtils.getXmlForEffectiveTime("effectiveTime", "20210101"));
+    expected.append(CdaGeneratorUtils.getEndXMLHeaderForCdaDocument());
+
+    StringBuilder actual = new StringBuilder();
+    new CdaXmlWriter(actual)
+        .clinicalDocumentHeader()
+        .ii("1.2.3")
+        .ii("1.2.3", "ext")
+        .iiWithElName("setId", "1.2.3")
+        .iiWithElName("setId", "1.2.3", "1")
+        .templateId("2.16.840.1.113883.10.20.22.2.5.1")
+        .templateId("2.16.840.1.113883.10.20.22.2.5.1", "2015-08-01")
+        .value("versionNumber", "2")
+        .effectiveTime("effectiveTime", "20210101")
+        .endClinicalDocument();
+
+    assertEquals(expected.toString(), actual.toString());
+  }
+
+  @Test
+  public void testEscapedElements() {
+
+    StringBuilder expected = new StringBuilder();
+    expected.append(CdaGeneratorUtils.getXmlForStartElement("section"));
+    expected.append(CdaGeneratorUtils.getXmlForText("title", ESCAPED_TEXT));
+    expected.append(CdaGeneratorUtils.getXmlForCD("code", "A&B"));
+    expected.append(CdaGeneratorUtils.getXmlForCD("code", "A&B", "2.16.840.1.113883.6.1"));
+    expected.append(
+        CdaGeneratorUtils.getXmlForCD(
+            "code", "A&B", "2.16.840.1.113883.6.1", "LOINC", ESCAPED_TEXT));
+    expected.append(
+        CdaGeneratorUtils.getXmlForCD("code", "A&B", "2.16.840.1.113883.6.1", "LOINC", ""));
+    expected.append(CdaGeneratorUtils.getXmlForEndElement("section"));
+
+    StringWriter actual = new StringWriter();
+    CdaXmlWriter writer = new CdaXmlWriter(actual);
+    writer
+        .startElement("section")
+        .text("title", ESCAPED_TEXT)
+        .cd("code", "A&B")
+        .cd("code", "A&B", "2.16.840.1.113883.6.1")
+        .cd("code", "A&B", "2.16.840.1.113883.6.1", "LOINC", ESCAPED_TEXT)
+        .cd("code", "A&B", "2.16.840.1.113883.6.1", "LOINC", "")
+        .endElement("section");
+    writer.flush();
+
+    assertEquals(expected.toString(), actual.toString());
+  }
+
+  @Test
+  public void testNullValues() {
+
+    StringBuilder expected = new StringBuilder();
+    expected.append(CdaGeneratorUtils.getXmlForText("title", null));
+    expected.append(CdaGeneratorUtils.getXmlForCD("code", null, null));
+    expected.append(CdaGeneratorUtils.getXmlForII(null));
+    expected.append(CdaGeneratorUtils.getXmlForValue("value", null));
+
+    StringBuilder actual = new StringBuilder();
+    new CdaXmlWriter(actual)
+        .text("title", null)
+        .cd("code", null, null)
+        .ii(null)
+        .value("value", null);
+
+    assertEquals(expected.toString(), actual.toString());
+  }
+}
@@ -0,0 +1,152 @@
+package com.drajer.cdafromr4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.drajer.ecrapp.util.ApplicationUtils;
+import com.drajer.sof.model.LaunchDetails;
+import com.drajer.sof.model.R4FhirData;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Condition;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Immunization;
+import org.hl7.fhir.r4.model.Location;
+import org.hl7.fhir.r4.model.Medication;
+import org.hl7.fhir.r4.model.MedicationRequest;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Practitioner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+public class CdaBodyGeneratorTest {
+
+  private static final String BUNDLE =
+      "src/test/resources/SampleTestData/r4-loading-query-bundle-sample1.json";
+
+  // The ids generated for the entries differ between two eICRs.
+  private static final String GUID = "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}";
+
+  private Bundle bundle;
+  private LaunchDetails details;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+
+    TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+
+    bundle = new ApplicationUtils().readBundleFromFile(BUNDLE);
+
+    details = new LaunchDetails();
+    details.setLaunchPatientId("12742571");
+    details.setEncounterId("97953900");
+    details.setAssigningAuthorityId("2.16.840.1.113883.1.1.1.1.1");
+  }
+
+  @After
+  public void tearDown() {
+
+    CdaBodyGenerator.setSectionExecutor(null);
+    MDC.clear();
+
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testParallelBodyIsIdenticalToSequentialBody() {
+
+    String sequential = CdaBodyGenerator.generateCdaBody(getFhirData(), details);
+
+    executor = Executors.newFixedThreadPool(4);
+    CdaBodyGenerator.setSectionExecutor(executor);
+
+    String parallel = CdaBodyGenerator.generateCdaBody(getFhirData(), details);
+
+    assertTrue(sequential.contains("<structuredBody>"));
+    assertEquals(sequential.replaceAll(GUID, ""), parallel.replaceAll(GUID, ""));
+  }
+
+  @Test
+  public void testSectionsAreGeneratedByCallerWhenExecutorIsShutDown() {
+
+    String sequential = CdaBodyGenerator.generateCdaBody(getFhirData(), details);
+
+    executor = Executors.newFixedThreadPool(1);
+    executor.shutdown();
+    CdaBodyGenerator.setSectionExecutor(executor);
+
+    String parallel = CdaBodyGenerator.generateCdaBody(getFhirData(), details);
+
+    assertEquals(sequential.replaceAll(GUID, ""), parallel.replaceAll(GUID, ""));
+  }
+
+  @Test
+  public void testMdcIsNotLeftOnSectionThreads() throws Exception {
+
+    MDC.put("xRequestId", "request-1");
+
+    executor = Executors.newFixedThreadPool(1);
+    CdaBodyGenerator.setSectionExecutor(executor);
+    CdaBodyGenerator.generateCdaBody(getFhirData(), details);
+
+    assertEquals("request-1", MDC.get("xRequestId"));
+    assertNull(executor.submit(() -> MDC.get("xRequestId")).get());
+  }
+
+  @Test
+  public void testMdcOfCallerIsKeptWhenSectionsAreGeneratedByCaller() {
+
+    MDC.put("xRequestId", "request-1");
+
+    executor = Executors.newFixedThreadPool(1);
+    executor.shutdown();
+    CdaBodyGenerator.setSectionExecutor(executor);
+    CdaBodyGenerator.generateCdaBody(getFhirData(), details);
+
+    assertEquals("request-1", MDC.get("xRequestId"));
+  }
+
+  private R4FhirData getFhirData() {
+
+    R4FhirData data = new R4FhirData();
+    data.setData(bundle);
+
+    for (BundleEntryComponent ent : bundle.getEntry()) {
+
+      if (ent.getResource() instanceof Patient) {
+        data.setPatient((Patient) ent.getResource());
+      } else if (ent.getResource() instanceof Encounter) {
+        data.setEncounter((Encounter) ent.getResource());
+      } else if (ent.getResource() instanceof Practitioner) {
+        data.setPractitioner((Practitioner) ent.getResource());
+      } else if (ent.getResource() instanceof Location) {
+        data.setLocation((Location) ent.getResource());
+      } else if (ent.getResource() instanceof Organization) {
+        data.setOrganization((Organization) ent.getResource());
+      } else if (ent.getResource() instanceof Condition) {
+        data.getConditions().add((Condition) ent.getResource());
+      } else if (ent.getResource() instanceof Observation) {
+        data.getLabResults().add((Observation) ent.getResource());
+      } else if (ent.getResource() instanceof Immunization) {
+        data.getImmunizations().add((Immunization) ent.getResource());
+      } else if (ent.getResource() instanceof MedicationRequest) {
+        data.getMedicationRequests().add((MedicationRequest) ent.getResource());
+      } else if (ent.getResource() instanceof Medication) {
+        data.getMedicationList().add((Medication) ent.getResource());
+      }
+    }
+
+    return data;
+  }
+}
@@ -0,0 +1,144 @@
+package com.drajer.cdafromr4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.drajer.cda.utils.CdaGeneratorUtils;
+import com.drajer.eca.model.ActionRepo;
+import com.drajer.ecrapp.model.Eicr;
+import com.drajer.ecrapp.service.EicrRRService;
+import com.drajer.ecrapp.util.ApplicationUtils;
+import com.drajer.sof.model.LaunchDetails;
+import com.drajer.sof.model.R4FhirData;
+import java.io.StringWriter;
+import java.util.TimeZone;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Condition;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Immunization;
+import org.hl7.fhir.r4.model.Location;
+import org.hl7.fhir.r4.model.Medication;
+import org.hl7.fhir.r4.model.MedicationRequest;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Practitioner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CdaEicrGeneratorFromR4Test {
+
+  private static final String BUNDLE =
+      "src/test/resources/SampleTestData/r4-loading-query-bundle-sample1.json";
+
+  // The ids generated for the document and the entries differ between two eICRs.
+  private static final String GUID = "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}";
+
+  // The effective time of the document is the time the eICR was created.
+  private static final String CURRENT_TIME = "\\d{14}[+-]\\d{4}";
+
+  private Bundle bundle;
+  private LaunchDetails details;
+  private EicrRRService previousRRService;
+
+  @Before
+  public void setUp() {
+
+    TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+
+    bundle = new ApplicationUtils().readBundleFromFile(BUNDLE);
+
+    details = new LaunchDetails();
+    details.setLaunchPatientId("12742571");
+    details.setEncounterId("97953900");
+    details.setAssigningAuthorityId("2.16.840.1.113883.1.1.1.1.1");
+    details.setSetId("12742571|97953900");
+    details.setVersionNumber(1);
+
+    EicrRRService rrService = mock(EicrRRService.class);
+    when(rrService.getMaxVersionId(any(Eicr.class))).thenReturn(0);
+
+    previousRRService = ActionRepo.getInstance().getEicrRRService();
+    ActionRepo.getInstance().setEicrRRService(rrService);
+  }
+
+  @After
+  public void tearDown() {
+    ActionRepo.getInstance().setEicrRRService(previousRRService);
+  }
+
+  @Test
+  public void testStreamedEicrIsIdenticalToStringEicr() {
+
+    // The eICR assembled from the String API of the header and body generators.
+    R4FhirData stringData = getFhirData();
+    stringData.prepareJurisdicationData();
+    String expected =
+        CdaHeaderGenerator.createCdaHeader(stringData, details, new Eicr())
+            + CdaBodyGenerator.generateCdaBody(stringData, details)
+            + CdaGeneratorUtils.getEndXMLHeaderForCdaDocument();
+
+    String converted =
+        CdaEicrGeneratorFromR4.convertR4FhirBundletoCdaEicr(getFhirData(), details, new Eicr());
+
+    StringWriter streamed = new StringWriter();
+    CdaEicrGeneratorFromR4.writeR4FhirBundleAsCdaEicr(getFhirData(), details, new Eicr(), streamed);
+
+    assertTrue(converted.contains("<structuredBody>"));
+    assertEquals(normalize(expected), normalize(converted));
+    assertEquals(normalize(expected), normalize(streamed.toString()));
+  }
+
+  @Test
+  public void testBufferIsReusedAcrossEicrs() {
+
+    String first =
+        CdaEicrGeneratorFromR4.convertR4FhirBundletoCdaEicr(getFhirData(), details, new Eicr());
+    String second =
+        CdaEicrGeneratorFromR4.convertR4FhirBundletoCdaEicr(getFhirData(), details, new Eicr());
+
+    assertEquals(normalize(first), normalize(second));
+  }
+
+  private static String normalize(String eicr) {
+    return eicr.replaceAll(GUID, "").replaceAll(CURRENT_TIME, "");
+  }
+
+  private R4FhirData getFhirData() {
+
+    R4FhirData data = new R4FhirData();
+    data.setData(bundle);
+
+    for (BundleEntryComponent ent : bundle.getEntry()) {
+
+      if (ent.getResource() instanceof Patient) {
+        data.setPatient((Patient) ent.getResource());
+      } else if (ent.getResource() instanceof Encounter) {
+        data.setEncounter((Encounter) ent.getResource());
+      } else if (ent.getResource() instanceof Practitioner) {
+        data.setPractitioner((Practitioner) ent.getResource());
+      } else if (ent.getResource() instanceof Location) {
+        data.setLocation((Location) ent.getResource());
+      } else if (ent.getResource() instanceof Organization) {
+        data.setOrganization((Organization) ent.getResource());
+      } else if (ent.getResource() instanceof Condition) {
+        data.getConditions().add((Condition) ent.getResource());
+      } else if (ent.getResource() instanceof Observation) {
+        data.getLabResults().add((Observation) ent.getResource());
+      } else if (ent.getResource() instanceof Immunization) {
+        data.getImmunizations().add((Immunization) ent.getResource());
+      } else if (ent.getResource() instanceof MedicationRequest) {
+        data.getMedicationRequests().add((MedicationRequest) ent.getResource());
+      } else if (ent.getResource() instanceof Medication) {
+        data.getMedicationList().add((Medication) ent.getResource());
+      }
+    }
+
+    return data;
+  }
+}
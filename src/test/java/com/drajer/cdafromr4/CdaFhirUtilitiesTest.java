@@ -3,9 +3,11 @@ package com.drajer.cdafromr4;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import com.drajer.sof.model.R4FhirData;
 import com.drajer.test.util.TestUtils;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -27,6 +29,7 @@ import org.hl7.fhir.r4.model.Encounter;
 import org.hl7.fhir.r4.model.Encounter.EncounterLocationComponent;
 import org.hl7.fhir.r4.model.Location;
 import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Practitioner;
 import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.ResourceFactory;
@@ -261,6 +264,39 @@ public class CdaFhirUtilitiesTest {
     assertNull(testLocation);
   }
 
+  @Test
+  public void testGetPractitionerById_indexUpdatedWhenListChanges() {
+
+    List<Practitioner> practitioners = new ArrayList<>();
+    R4FhirData data = new R4FhirData();
+    data.setPractitionersList(practitioners);
+
+    assertNull(data.getPractitionerById("1234"));
+
+    Practitioner pr = new Practitioner();
+    pr.setId("Practitioner/1234");
+    practitioners.add(pr);
+
+    assertSame(pr, data.getPractitionerById("1234"));
+  }
+
+  @Test
+  public void testGetPractitionerById_exactIdMatch() {
+
+    Practitioner pr1 = new Practitioner();
+    pr1.setId("Practitioner/1234");
+    Practitioner pr2 = new Practitioner();
+    pr2.setId("http://localhost/fhir/Practitioner/123/_history/1");
+
+    R4FhirData data = new R4FhirData();
+    data.setPractitionersList(Arrays.asList(pr1, pr2));
+
+    assertSame(pr2, data.getPractitionerById("123"));
+    assertSame(pr1, data.getPractitionerById("1234"));
+    assertNull(data.getPractitionerById("12"));
+    assertNull(data.getPractitionerById("999"));
+  }
+
   @Test
   public void testGetCodingXmlForMappedConceptDomain() {
     String expectedResult =
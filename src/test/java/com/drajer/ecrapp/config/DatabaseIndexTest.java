@@ -0,0 +1,188 @@
+package com.drajer.ecrapp.config;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.hibernate5.LocalSessionFactoryBuilder;
+
+/**
+ * Verifies that the queries of the DAOs use the indexes created by the migrations. The schema is
+ * created from the entity mappings in a separate in-memory database, the migrations are applied and
+ * the plan of each query is checked using EXPLAIN.
+ */
+public class DatabaseIndexTest {
+
+  private static DriverManagerDataSource dataSource;
+  private static SessionFactory sessionFactory;
+
+  @BeforeClass
+  public static void migrate() {
+
+    dataSource =
+        new DriverManagerDataSource(
+            "jdbc:h2:mem:indexes;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "sa");
+
+    Properties properties = new Properties();
+    properties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+    properties.put("hibernate.hbm2ddl.auto", "create");
+    properties.put("hibernate.id.new_generator_mappings", "true");
+
+    sessionFactory =
+        new LocalSessionFactoryBuilder(dataSource)
+            .scanPackages(HibernateConfiguration.ENTITY_PACKAGES)
+            .addProperties(properties)
+            .buildSessionFactory();
+
+    FlywayConfiguration.createFlyway(
+            dataSource,
+            "classpath:db/migration-h2",
+            "classpath:db/migration",
+            "classpath:db/vendor/{vendor}")
+        .migrate();
+  }
+
+  @AfterClass
+  public static void close() {
+    sessionFactory.close();
+  }
+
+  @Test
+  public void testPublicHealthMessageQueries() throws SQLException {
+
+    String notifiedResource =
+        " WHERE fhir_server_base_url = 'url' AND notified_resource_id = 'enc'"
+            + " AND notified_resource_type = 'Encounter' AND patient_id = 'pat'"
+            + " AND kar_unique_id = 'kar'";
+
+    assertUsesIndex(
+        "SELECT MAX(submitted_version_number) FROM ph_messages" + notifiedResource,
+        "idx_ph_messages_notified_resource");
+    assertUsesIndex(
+        "SELECT trigger_match_status FROM ph_messages"
+            + notifiedResource
+            + " ORDER BY submitted_version_number DESC LIMIT 1",
+        "idx_ph_messages_notified_resource");
+    assertUsesIndex(
+        "SELECT * FROM ph_messages WHERE fhir_server_base_url = 'url' AND patient_id = 'pat'"
+            + " AND encounter_id = 'enc'",
+        "idx_ph_messages_encounter");
+    assertUsesIndex(
+        "SELECT * FROM ph_messages WHERE submitted_data_id = 'id'",
+        "idx_ph_messages_submitted_data_id");
+    assertUsesIndex(
+        "SELECT * FROM ph_messages WHERE submitted_message_id = 'id'",
+        "idx_ph_messages_submitted_message_id");
+    assertUsesIndex(
+        "SELECT * FROM ph_messages WHERE response_message_id = 'id'",
+        "idx_ph_messages_response_message_id");
+    assertUsesIndex(
+        "SELECT * FROM ph_messages WHERE correlation_id = 'id'", "idx_ph_messages_correlation_id");
+    assertUsesIndex(
+        "SELECT * FROM ph_messages WHERE x_request_id = 'id' ORDER BY id DESC",
+        "idx_ph_messages_x_request_id");
+  }
+
+  @Test
+  public void testEicrQueries() throws SQLException {
+
+    assertUsesIndex(
+        "SELECT * FROM eicr WHERE fhir_server_url = 'url' AND launch_patient_id = 'pat'"
+            + " AND encounter_id = 'enc' ORDER BY doc_version DESC",
+        "idx_eicr_encounter");
+    assertUsesIndex("SELECT * FROM eicr WHERE eicr_doc_id = 'id'", "idx_eicr_eicr_doc_id");
+    assertUsesIndex(
+        "SELECT * FROM eicr WHERE response_doc_id = 'id' ORDER BY id DESC",
+        "idx_eicr_response_doc_id");
+    assertUsesIndex(
+        "SELECT * FROM eicr WHERE x_correlation_id = 'id'", "idx_eicr_x_correlation_id");
+    assertUsesIndex(
+        "SELECT * FROM eicr WHERE x_req_id = 'id' ORDER BY id DESC", "idx_eicr_x_req_id");
+    assertUsesIndex("SELECT * FROM eicr WHERE set_id = 'id'", "idx_eicr_set_id");
+  }
+
+  @Test
+  public void testNotificationContextQueries() throws SQLException {
+
+    assertUsesIndex(
+        "SELECT * FROM notification_context WHERE fhir_server_base_url = 'url'",
+        "idx_notification_context_resource");
+    assertUsesIndex(
+        "SELECT COUNT(*) FROM notification_context"
+            + " WHERE notification_processing_status = 'IN_PROGRESS'",
+        "idx_notification_context_status");
+    assertUsesIndex(
+        "SELECT * FROM kar_execution_state"
+            + " WHERE nc_id = '00000000-0000-0000-0000-000000000000'",
+        "idx_kar_execution_state_nc_id");
+  }
+
+  @Test
+  public void testLaunchDetailsQueries() throws SQLException {
+
+    assertUsesIndex(
+        "SELECT * FROM launch_details WHERE launch_state = 1", "idx_launch_details_launch_state");
+    assertNoTableScan(
+        "SELECT * FROM launch_details WHERE ehr_server_url = 'url' AND launch_patient_id = 'pat'"
+            + " AND encounter_id = 'enc'");
+  }
+
+  @Test
+  public void testSchedulerQueries() throws SQLException {
+
+    assertNoTableScan(
+        "SELECT * FROM scheduled_tasks WHERE task_name = 'EICRTask'"
+            + " AND task_instance LIKE '42!_%' ESCAPE '!'");
+    assertNoTableScan(
+        "SELECT * FROM scheduled_tasks WHERE task_name = 'EICRTask'"
+            + " AND (task_instance LIKE '42!_%' ESCAPE '!'"
+            + " OR task_instance LIKE 'CREATE!_EICR!_42!_%' ESCAPE '!')");
+  }
+
+  @Test
+  public void testPurgeQueries() throws SQLException {
+
+    assertUsesIndex(
+        "SELECT id FROM ph_messages WHERE last_updated_ts < CURRENT_TIMESTAMP"
+            + " AND response_data_id IS NOT NULL LIMIT 500",
+        "idx_ph_messages_last_updated_ts");
+    assertUsesIndex(
+        "SELECT id FROM notification_context WHERE last_updated_ts < CURRENT_TIMESTAMP LIMIT 500",
+        "idx_notification_context_last_updated_ts");
+  }
+
+  private static void assertUsesIndex(String query, String index) throws SQLException {
+
+    String plan = explain(query);
+    assertTrue(plan, plan.toUpperCase().contains("." + index.toUpperCase() + ":"));
+  }
+
+  private static void assertNoTableScan(String query) throws SQLException {
+
+    String plan = explain(query);
+    assertFalse(plan, plan.contains(".tableScan"));
+  }
+
+  private static String explain(String query) throws SQLException {
+
+    try (Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery("EXPLAIN " + query)) {
+
+      StringBuilder plan = new StringBuilder();
+      while (rs.next()) {
+        plan.append(rs.getString(1));
+      }
+      return plan.toString();
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package com.drajer.ecrapp.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+public class TriggerCodeSetTest {
+
+  @Test
+  public void testMembership() {
+
+    Set<String> codes =
+        new HashSet<>(
+            Arrays.asList(
+                "http://snomed.info/sct|840539006",
+                "http://loinc.org|94500-6",
+                "http://loinc.org|94500-6",
+                "http://hl7.org/fhir/sid/icd-10-cm|U07.1"));
+
+    TriggerCodeSet triggerCodes = TriggerCodeSet.of(codes);
+
+    assertEquals(3, triggerCodes.size());
+    assertTrue(triggerCodes.contains("http://loinc.org|94500-6"));
+    assertTrue(triggerCodes.contains("http://hl7.org/fhir/sid/icd-10-cm|U07.1"));
+    assertFalse(triggerCodes.contains("http://loinc.org|0000-0"));
+    assertFalse(triggerCodes.contains(null));
+    assertEquals(codes, triggerCodes);
+  }
+
+  @Test
+  public void testEmpty() {
+
+    assertTrue(TriggerCodeSet.of(null).isEmpty());
+    assertTrue(TriggerCodeSet.of(new HashSet<>()).isEmpty());
+    assertFalse(TriggerCodeSet.empty().contains("http://loinc.org|94500-6"));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testImmutable() {
+
+    TriggerCodeSet.of(Arrays.asList("http://loinc.org|94500-6")).add("http://loinc.org|0000-0");
+  }
+}
@@ -0,0 +1,58 @@
+package com.drajer.ecrapp.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+import org.junit.Test;
+
+public class KeysetPageTest {
+
+  @Test
+  public void testFirstPage() {
+
+    KeysetPage page = KeysetPage.after(null, 10, true, UUID::fromString);
+
+    assertTrue(page.isFirst());
+    assertEquals(10, page.getPageSize());
+    assertTrue(page.isSummary());
+  }
+
+  @Test
+  public void testCursorKeepsNanoseconds() {
+
+    Timestamp lastUpdated = Timestamp.valueOf("2024-03-01 10:15:30.123456789");
+    UUID id = UUID.randomUUID();
+
+    KeysetPage page =
+        KeysetPage.after(KeysetPage.toCursor(lastUpdated, id), 10, false, UUID::fromString);
+
+    assertFalse(page.isFirst());
+    assertEquals(lastUpdated, page.getLastUpdated());
+    assertEquals(id, page.getLastId());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidCursor() {
+    KeysetPage.after("bm90LWEtY3Vyc29y", 10, false, UUID::fromString);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidPageSize() {
+    KeysetPage.after(null, 0, false, UUID::fromString);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidCursorId() {
+    Timestamp lastUpdated = Timestamp.valueOf("2024-03-01 10:15:30");
+    KeysetPage.after(KeysetPage.toCursor(lastUpdated, "not-a-uuid"), 10, false, UUID::fromString);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidCursorNumericId() {
+    Timestamp lastUpdated = Timestamp.valueOf("2024-03-01 10:15:30");
+    KeysetPage.after(KeysetPage.toCursor(lastUpdated, "abc"), 10, false, Integer::valueOf);
+  }
+}
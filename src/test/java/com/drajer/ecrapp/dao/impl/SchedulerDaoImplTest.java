@@ -0,0 +1,53 @@
+package com.drajer.ecrapp.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.drajer.eca.model.EventTypes.EcrActionTypes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+public class SchedulerDaoImplTest {
+
+  private static final String UUID_PATTERN = "____________________________________";
+  private static final String UUID = "0b7e5d1c-3a4f-4c2e-9d8b-6f1a2b3c4d5e";
+
+  @Test
+  public void testTaskInstancePatternsOfLaunch() {
+    List<String> patterns = SchedulerDaoImpl.getTaskInstancePatterns("", "42");
+
+    assertEquals(EcrActionTypes.values().length + 1, patterns.size());
+    assertEquals("42!_%", patterns.get(0));
+    assertTrue(patterns.contains("CREATE!_EICR!_42!_" + UUID_PATTERN));
+    assertTrue(patterns.contains("RR!_CHECK!_42!_" + UUID_PATTERN));
+    assertEquals(patterns, SchedulerDaoImpl.getTaskInstancePatterns(null, "42"));
+  }
+
+  @Test
+  public void testTaskInstancePatternsOfAction() {
+    assertEquals(
+        Arrays.asList("42!_CREATE!_EICR!_" + UUID_PATTERN, "CREATE!_EICR!_42!_" + UUID_PATTERN),
+        SchedulerDaoImpl.getTaskInstancePatterns("CREATE_EICR", "42"));
+    assertEquals(
+        Arrays.asList("%!_CREATE!_EICR!_" + UUID_PATTERN, "CREATE!_EICR!_%!_" + UUID_PATTERN),
+        SchedulerDaoImpl.getTaskInstancePatterns("CREATE_EICR", null));
+  }
+
+  @Test
+  public void testTaskInstancePatternsOfAllTasks() {
+    assertTrue(SchedulerDaoImpl.getTaskInstancePatterns(null, "").isEmpty());
+  }
+
+  @Test
+  public void testTimerOfActionPattern() {
+    Pattern pattern = SchedulerDaoImpl.getTimerOfActionPattern("CREATE_EICR");
+
+    assertTrue(pattern.matcher("42_CREATE_EICR_" + UUID).matches());
+    assertTrue(pattern.matcher("CREATE_EICR_42_" + UUID).matches());
+    assertFalse(pattern.matcher("42_CREATE_EICR_AFTER_RECHECK_" + UUID).matches());
+    assertFalse(pattern.matcher("CREATE_EICR_AFTER_RECHECK_42_" + UUID).matches());
+  }
+}
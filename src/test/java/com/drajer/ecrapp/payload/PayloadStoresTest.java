@@ -0,0 +1,156 @@
+package com.drajer.ecrapp.payload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class PayloadStoresTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static String getPayload() {
+
+    StringBuilder payload = new StringBuilder("<ClinicalDocument>");
+    for (int i = 0; i < 200; i++) {
+      payload.append("<entry><code code=\"").append(i).append("\"/></entry>");
+    }
+    return payload.append("</ClinicalDocument>").toString();
+  }
+
+  @Test
+  public void testNoStore() {
+
+    PayloadStores stores = new PayloadStores(PayloadStores.NONE, folder.getRoot().getPath(), 0);
+    String payload = getPayload();
+
+    assertFalse(stores.isEnabled());
+    assertSame(payload, stores.store(payload));
+    assertSame(payload, stores.load(payload));
+    assertEquals(null, stores.store(null));
+    assertEquals(null, stores.load(null));
+  }
+
+  @Test
+  public void testInlineGzipStore() {
+
+    PayloadStores stores =
+        new PayloadStores(InlineGzipPayloadStore.TYPE, folder.getRoot().getPath(), 1024);
+    String payload = getPayload();
+
+    String reference = stores.store(payload);
+
+    assertTrue(reference.startsWith("payload:gzip:"));
+    assertTrue(reference.length() < payload.length() / 4);
+    assertEquals(payload, stores.load(reference));
+
+    // Short payloads are kept in the column.
+    assertEquals("<ClinicalDocument/>", stores.store("<ClinicalDocument/>"));
+  }
+
+  @Test
+  public void testFileSystemStore() throws IOException {
+
+    PayloadStores stores =
+        new PayloadStores(FileSystemPayloadStore.TYPE, folder.getRoot().getPath(), 0);
+    String payload = getPayload();
+
+    String reference = stores.store(payload);
+
+    assertTrue(reference.startsWith("payload:file:"));
+    assertEquals(reference, stores.store(payload));
+    assertEquals(payload, stores.load(reference));
+
+    try (Stream<Path> files = Files.walk(folder.getRoot().toPath())) {
+      assertEquals(1, files.filter(Files::isRegularFile).count());
+    }
+
+    // References of another store type remain readable after the store is changed.
+    stores = new PayloadStores(InlineGzipPayloadStore.TYPE, folder.getRoot().getPath(), 0);
+    assertEquals(payload, stores.load(reference));
+  }
+
+  @Test
+  public void testDeleteFileSystemPayload() throws IOException {
+
+    PayloadStores stores =
+        new PayloadStores(FileSystemPayloadStore.TYPE, folder.getRoot().getPath(), 0);
+    String payload = getPayload();
+    String reference = stores.store(payload);
+
+    Path file;
+    try (Stream<Path> files = Files.walk(folder.getRoot().toPath())) {
+      file = files.filter(Files::isRegularFile).findFirst().get();
+    }
+    Date stored = new Date(Files.getLastModifiedTime(file).toMillis());
+
+    // The payload stored again after the purge started is kept.
+    assertFalse(stores.delete(reference, stored));
+    assertTrue(Files.exists(file));
+
+    assertTrue(stores.delete(reference, new Date(stored.getTime() + 1)));
+    assertFalse(Files.exists(file));
+    assertFalse(stores.delete(reference, new Date(stored.getTime() + 1)));
+
+    // Payloads held by the column have nothing to delete.
+    stores = new PayloadStores(InlineGzipPayloadStore.TYPE, folder.getRoot().getPath(), 0);
+    assertFalse(stores.delete(stores.store(payload), new Date()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidFileReference() {
+
+    PayloadStores stores =
+        new PayloadStores(FileSystemPayloadStore.TYPE, folder.getRoot().getPath(), 0);
+    stores.load("payload:file:../../etc/passwd");
+  }
+
+  @Test
+  public void testPayloadOfRolledBackTransactionIsDeleted() throws IOException {
+
+    PayloadStores stores =
+        new PayloadStores(FileSystemPayloadStore.TYPE, folder.getRoot().getPath(), 0);
+    String payload = getPayload();
+
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      stores.store(payload);
+      rollback();
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    try (Stream<Path> files = Files.walk(folder.getRoot().toPath())) {
+      assertEquals(0, files.filter(Files::isRegularFile).count());
+    }
+
+    // A payload stored again by another transaction is kept.
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      String reference = stores.store(payload);
+      assertEquals(reference, stores.store(payload));
+      rollback();
+      assertEquals(payload, stores.load(reference));
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  private static void rollback() {
+    for (TransactionSynchronization sync :
+        TransactionSynchronizationManager.getSynchronizations()) {
+      sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+    }
+  }
+}
@@ -0,0 +1,287 @@
+package com.drajer.ecrapp.purge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.drajer.bsa.dao.NotificationContextDao;
+import com.drajer.bsa.dao.impl.PublicHealthMessagesDaoImpl;
+import com.drajer.bsa.model.NotificationContext;
+import com.drajer.bsa.model.PublicHealthMessage;
+import com.drajer.ecrapp.config.SpringConfiguration;
+import com.drajer.ecrapp.payload.FileSystemPayloadStore;
+import com.drajer.ecrapp.payload.PayloadStores;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.hibernate.SessionFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = SpringConfiguration.class)
+@AutoConfigureTestDatabase
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+public class PurgeJobTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Autowired private PurgeJob purgeJob;
+
+  @Autowired private PublicHealthMessagesDaoImpl phDao;
+
+  @Autowired private NotificationContextDao ncDao;
+
+  @Autowired private SessionFactory sessionFactory;
+
+  @Autowired private PayloadStores payloadStores;
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(purgeJob, "enabled", Boolean.TRUE);
+    ReflectionTestUtils.setField(purgeJob, "batchSize", 1);
+    ReflectionTestUtils.setField(purgeJob, "batchDelayMs", 0L);
+    ReflectionTestUtils.setField(purgeJob, "archiveEnabled", Boolean.TRUE);
+    ReflectionTestUtils.setField(purgeJob, "archiveDirectory", folder.getRoot().getPath());
+    ReflectionTestUtils.setField(purgeJob, "phMessagesRetentionDays", 30);
+    ReflectionTestUtils.setField(purgeJob, "notificationContextRetentionDays", 0);
+  }
+
+  private void saveMessage(String submittedDataId, String responseDataId, int ageDays) {
+    saveMessage(submittedDataId, responseDataId, ageDays, "<ClinicalDocument/>");
+  }
+
+  private void saveMessage(
+      String submittedDataId, String responseDataId, int ageDays, String submittedCdaData) {
+
+    PublicHealthMessage message = new PublicHealthMessage();
+    message.setFhirServerBaseUrl("http://localhost/fhir");
+    message.setPatientId("12742571");
+    message.setEncounterId("97953900");
+    message.setNotifiedResourceId("97953900");
+    message.setNotifiedResourceType("Encounter");
+    message.setNotificationId("notification-1");
+    message.setSubmittedDataId(submittedDataId);
+    message.setSubmittedCdaData(submittedCdaData);
+    message.setResponseDataId(responseDataId);
+    phDao.saveOrUpdate(message);
+
+    sessionFactory.getCurrentSession().flush();
+    sessionFactory
+        .getCurrentSession()
+        .doWork(
+            connection -> {
+              try (PreparedStatement statement =
+                  connection.prepareStatement(
+                      "UPDATE ph_messages SET last_updated_ts = ? WHERE submitted_data_id = ?")) {
+                statement.setTimestamp(
+                    1,
+                    new Timestamp(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(ageDays)));
+                statement.setString(2, submittedDataId);
+                statement.executeUpdate();
+              }
+            });
+  }
+
+  private int countMessages(String submittedDataId) {
+
+    return sessionFactory
+        .getCurrentSession()
+        .doReturningWork(
+            connection -> {
+              try (PreparedStatement statement =
+                  connection.prepareStatement(
+                      "SELECT COUNT(*) FROM ph_messages WHERE submitted_data_id = ?")) {
+                statement.setString(1, submittedDataId);
+                try (ResultSet rs = statement.executeQuery()) {
+                  rs.next();
+                  return rs.getInt(1);
+                }
+              }
+            });
+  }
+
+  @Test
+  public void testPurgeMessages() throws Exception {
+
+    saveMessage("old-with-rr-1", "rr-1", 60);
+    saveMessage("old-with-rr-2", "rr-2", 60);
+    saveMessage("old-awaiting-rr", null, 60);
+    saveMessage("recent-with-rr", "rr-3", 1);
+
+    assertEquals(2, purgeJob.purge());
+
+    assertEquals(0, countMessages("old-with-rr-1"));
+    assertEquals(0, countMessages("old-with-rr-2"));
+    assertEquals(1, countMessages("old-awaiting-rr"));
+    assertEquals(1, countMessages("recent-with-rr"));
+
+    File[] archives = folder.getRoot().listFiles();
+    assertEquals(1, archives.length);
+    assertTrue(archives[0].getName().startsWith("ph_messages-"));
+
+    List<String> lines;
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(archives[0].toPath())),
+                StandardCharsets.UTF_8))) {
+      lines = reader.lines().collect(Collectors.toList());
+    }
+
+    assertEquals(2, lines.size());
+    assertTrue(lines.get(0).contains("\"submitted_cda_data\":\"<ClinicalDocument/>\""));
+  }
+
+  @Test
+  public void testNotificationContextsWithDeferredJobsAreKept() {
+
+    ReflectionTestUtils.setField(purgeJob, "phMessagesRetentionDays", 0);
+    ReflectionTestUtils.setField(purgeJob, "notificationContextRetentionDays", 30);
+
+    UUID eligible = saveNotificationContext(60);
+    UUID withJob = saveNotificationContext(60);
+    UUID deferred = saveNotificationContext(60);
+    UUID recent = saveNotificationContext(1);
+
+    saveScheduledTask("BsaNotificationJob", withJob.toString());
+    saveScheduledTask("BsaNotificationJob", deferred + "_1");
+
+    assertEquals(1, purgeJob.purge());
+
+    assertEquals(0, countNotificationContexts(eligible));
+    assertEquals(1, countNotificationContexts(withJob));
+    assertEquals(1, countNotificationContexts(deferred));
+    assertEquals(1, countNotificationContexts(recent));
+  }
+
+  private UUID saveNotificationContext(int ageDays) {
+
+    NotificationContext nc = new NotificationContext();
+    nc.setTriggerEvent("encounter-start");
+    nc.setFhirServerBaseUrl("http://localhost/fhir");
+    nc.setPatientId("12742571");
+    nc.setNotificationResourceId("97953900");
+    nc.setNotificationResourceType("Encounter");
+    nc.setNotificationData("{}");
+    ncDao.saveOrUpdate(nc);
+
+    sessionFactory.getCurrentSession().flush();
+    sessionFactory
+        .getCurrentSession()
+        .doWork(
+            connection -> {
+              try (PreparedStatement statement =
+                  connection.prepareStatement(
+                      "UPDATE notification_context SET last_updated_ts = ? WHERE id = ?")) {
+                statement.setTimestamp(
+                    1,
+                    new Timestamp(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(ageDays)));
+                statement.setObject(2, nc.getId());
+                statement.executeUpdate();
+              }
+            });
+
+    return nc.getId();
+  }
+
+  private void saveScheduledTask(String taskName, String taskInstance) {
+
+    sessionFactory
+        .getCurrentSession()
+        .doWork(
+            connection -> {
+              try (PreparedStatement statement =
+                  connection.prepareStatement(
+                      "INSERT INTO scheduled_tasks (task_name, task_instance, execution_time,"
+                          + " picked, version) VALUES (?, ?, ?, FALSE, 1)")) {
+                statement.setString(1, taskName);
+                statement.setString(2, taskInstance);
+                statement.setTimestamp(
+                    3, new Timestamp(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)));
+                statement.executeUpdate();
+              }
+            });
+  }
+
+  private int countNotificationContexts(UUID id) {
+
+    return sessionFactory
+        .getCurrentSession()
+        .doReturningWork(
+            connection -> {
+              try (PreparedStatement statement =
+                  connection.prepareStatement(
+                      "SELECT COUNT(*) FROM notification_context WHERE id = ?")) {
+                statement.setObject(1, id);
+                try (ResultSet rs = statement.executeQuery()) {
+                  rs.next();
+                  return rs.getInt(1);
+                }
+              }
+            });
+  }
+
+  @Test
+  public void testPurgeDeletesUnreferencedPayloadFiles() throws Exception {
+
+    File payloads = folder.newFolder("payloads");
+    payloadStores.configure(FileSystemPayloadStore.TYPE, payloads.getPath(), 0);
+    ReflectionTestUtils.setField(purgeJob, "archiveEnabled", Boolean.FALSE);
+
+    try {
+      String shared = "<ClinicalDocument>shared</ClinicalDocument>";
+      saveMessage("old-unique", "rr-1", 60, "<ClinicalDocument>unique</ClinicalDocument>");
+      saveMessage("old-shared", "rr-2", 60, shared);
+      saveMessage("recent-shared", "rr-3", 1, shared);
+
+      // The payloads were stored before the purge started.
+      List<Path> files = getFiles(payloads);
+      for (Path file : files) {
+        Files.setLastModifiedTime(
+            file, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+      }
+      assertEquals(2, files.size());
+
+      assertEquals(2, purgeJob.purge());
+
+      files = getFiles(payloads);
+      assertEquals(1, files.size());
+      assertEquals(DigestUtils.sha256Hex(shared) + ".gz", files.get(0).getFileName().toString());
+    } finally {
+      payloadStores.configure(PayloadStores.NONE, payloads.getPath(), 1024);
+    }
+  }
+
+  private static List<Path> getFiles(File directory) throws Exception {
+    try (Stream<Path> files = Files.walk(directory.toPath())) {
+      return files.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package com.drajer.routing.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.icegreen.greenmail.store.MailFolder;
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImapMailboxTest {
+
+  private static final String USER = "rr@direct.example.org";
+  private static final String PASSWORD = "secret";
+  private static final String SENDER = "pha@direct.example.org";
+
+  private GreenMail greenMail;
+  private GreenMailUser user;
+  private ImapMailbox mailbox;
+  private List<String> subjects;
+  private CountDownLatch received;
+
+  @Before
+  public void setUp() {
+
+    greenMail = new GreenMail(ServerSetupTest.SMTP_IMAP);
+    greenMail.start();
+    user = greenMail.setUser(USER, USER, PASSWORD);
+
+    subjects = new CopyOnWriteArrayList<>();
+    received = new CountDownLatch(1);
+
+    Properties props = new Properties();
+    props.put("mail.imap.auth", "true");
+
+    mailbox =
+        new ImapMailbox(
+            "localhost",
+            ServerSetupTest.IMAP.getPort(),
+            USER,
+            PASSWORD,
+            props,
+            this::handle,
+            100,
+            100,
+            1000);
+  }
+
+  @After
+  public void tearDown() {
+    mailbox.close();
+    greenMail.stop();
+  }
+
+  private void handle(Message message) throws Exception {
+    subjects.add(message.getSubject());
+    received.countDown();
+  }
+
+  private void sendResponse(String subject) {
+    GreenMailUtil.sendAttachmentEmail(
+        USER,
+        SENDER,
+        subject,
+        "Reportability Response",
+        "<ClinicalDocument/>".getBytes(StandardCharsets.UTF_8),
+        "application/xml",
+        "RR.xml",
+        "Reportability Response",
+        ServerSetupTest.SMTP);
+  }
+
+  @Test
+  public void testReadNewMessagesOnce() throws Exception {
+
+    sendResponse("RR 1");
+    sendResponse("RR 2");
+
+    assertEquals(2, mailbox.read());
+    assertEquals(0, mailbox.read());
+
+    sendResponse("RR 3");
+
+    assertEquals(1, mailbox.read());
+    assertEquals(3, subjects.size());
+    assertEquals("RR 3", subjects.get(2));
+  }
+
+  @Test
+  public void testMessagesExpunged() throws Exception {
+
+    sendResponse("RR 1");
+
+    assertEquals(1, mailbox.read());
+
+    MailFolder inbox = greenMail.getManagers().getImapHostManager().getInbox(user);
+    assertEquals(0, inbox.getMessageCount());
+  }
+
+  @Test
+  public void testListener() throws Exception {
+
+    mailbox.startListening();
+    sendResponse("RR 1");
+
+    assertTrue(received.await(10, TimeUnit.SECONDS));
+    assertEquals("RR 1", subjects.get(0));
+  }
+
+  @Test
+  public void testListenerWithReadTimeout() throws Exception {
+
+    Properties props = new Properties();
+    props.put("mail.imap.auth", "true");
+    props.put("mail.imap.timeout", "500");
+
+    ImapMailbox timed =
+        new ImapMailbox(
+            "localhost",
+            ServerSetupTest.IMAP.getPort(),
+            USER,
+            PASSWORD,
+            props,
+            this::handle,
+            100,
+            100,
+            1000);
+
+    try {
+      timed.startListening();
+
+      // Let the read timeout expire a few times while the inbox is quiet.
+      Thread.sleep(1500);
+      sendResponse("RR 1");
+
+      assertTrue(received.await(10, TimeUnit.SECONDS));
+      assertEquals("RR 1", subjects.get(0));
+      assertTrue(timed.isListening());
+    } finally {
+      timed.close();
+    }
+  }
+
+  @Test
+  public void testReconnect() throws Exception {
+
+    sendResponse("RR 1");
+    assertEquals(1, mailbox.read());
+
+    greenMail.stop();
+    greenMail = new GreenMail(ServerSetupTest.SMTP_IMAP);
+    greenMail.start();
+    greenMail.setUser(USER, USER, PASSWORD);
+
+    sendResponse("RR 2");
+
+    int count;
+    try {
+      count = mailbox.read();
+    } catch (MessagingException e) {
+      // The read fails when the closed connection is detected, the next read reconnects.
+      count = mailbox.read();
+    }
+
+    assertEquals(1, count);
+    assertEquals("RR 2", subjects.get(1));
+  }
+}
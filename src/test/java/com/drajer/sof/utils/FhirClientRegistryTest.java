@@ -0,0 +1,122 @@
+package com.drajer.sof.utils;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import java.util.concurrent.atomic.AtomicReference;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class FhirClientRegistryTest {
+
+  private static final String PATIENT =
+      "{\"resourceType\":\"Patient\",\"id\":\"12742571\",\"active\":true}";
+
+  private final FhirContext context = FhirContext.forCached(FhirVersionEnum.R4);
+
+  private WireMockServer wireMockServer;
+  private FhirClientRegistry registry;
+  private String baseUrl;
+
+  @Before
+  public void setUp() {
+
+    wireMockServer = new WireMockServer(wireMockConfig().dynamicPort());
+    wireMockServer.start();
+    wireMockServer.stubFor(
+        get(urlEqualTo("/fhir/Patient/12742571"))
+            .willReturn(
+                aResponse()
+                    .withStatus(200)
+                    .withHeader("Content-Type", "application/fhir+json")
+                    .withBody(PATIENT)));
+
+    baseUrl = "http://localhost:" + wireMockServer.port() + "/fhir";
+
+    registry = new FhirClientRegistry();
+    ReflectionTestUtils.setField(registry, "socketTimeout", 5);
+    ReflectionTestUtils.setField(registry, "connectionTimeout", 5);
+    ReflectionTestUtils.setField(registry, "poolMaxPerRoute", 4);
+    ReflectionTestUtils.setField(registry, "poolMaxTotal", 4);
+    ReflectionTestUtils.setField(registry, "connectionReqTimeOut", 5);
+    ReflectionTestUtils.setField(registry, "connectionTtlMs", 60000L);
+  }
+
+  @After
+  public void tearDown() {
+    registry.close();
+    wireMockServer.stop();
+  }
+
+  @Test
+  public void testEndpointPerIdentity() {
+
+    FhirClientEndpoint endpoint = registry.getEndpoint(context, baseUrl, "client-1");
+
+    assertSame(endpoint, registry.getEndpoint(context, baseUrl, "client-1"));
+    assertNotSame(endpoint, registry.getEndpoint(context, baseUrl, "client-2"));
+    assertNotSame(endpoint, registry.getEndpoint(context, baseUrl, null));
+    assertEquals(3, registry.getEndpoints().size());
+  }
+
+  @Test
+  public void testEndpointPerTimeoutAndValidationMode() {
+
+    // The default socket timeout is 5 seconds.
+    FhirClientEndpoint endpoint = registry.getEndpoint(context, baseUrl, "client-1");
+
+    assertSame(endpoint, registry.getEndpoint(context, baseUrl, "client-1", 5, null));
+    assertNotSame(endpoint, registry.getEndpoint(context, baseUrl, "client-1", 60, null));
+    assertNotSame(
+        endpoint,
+        registry.getEndpoint(context, baseUrl, "client-1", 5, ServerValidationModeEnum.NEVER));
+    assertEquals(3, registry.getEndpoints().size());
+  }
+
+  @Test
+  public void testPooledConnectionAndTokenSupplier() {
+
+    FhirClientEndpoint endpoint =
+        registry.getEndpoint(context, baseUrl, "client-1", 5, ServerValidationModeEnum.NEVER);
+
+    AtomicReference<String> token = new AtomicReference<>("token-1");
+
+    IGenericClient client = endpoint.newGenericClient();
+    client.registerInterceptor(new TokenSupplierInterceptor(token::get));
+
+    client.read().resource(Patient.class).withId("12742571").execute();
+
+    token.set("token-2");
+    Patient patient = client.read().resource(Patient.class).withId("12742571").execute();
+
+    assertEquals("12742571", patient.getIdElement().getIdPart());
+    wireMockServer.verify(
+        1,
+        getRequestedFor(urlEqualTo("/fhir/Patient/12742571"))
+            .withHeader("Authorization", equalTo("Bearer token-1")));
+    wireMockServer.verify(
+        1,
+        getRequestedFor(urlEqualTo("/fhir/Patient/12742571"))
+            .withHeader("Authorization", equalTo("Bearer token-2")));
+
+    // Both requests used the same connection, which is back in the pool.
+    assertEquals(2, endpoint.getRequestCount());
+    assertEquals(0, endpoint.getPoolStats().getLeased());
+    assertEquals(1, endpoint.getPoolStats().getAvailable());
+  }
+}
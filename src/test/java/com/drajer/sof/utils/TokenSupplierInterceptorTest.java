@@ -0,0 +1,58 @@
+package com.drajer.sof.utils;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import org.junit.Test;
+
+public class TokenSupplierInterceptorTest {
+
+  @Test
+  public void testTokenIsAddedToRequest() {
+
+    IHttpRequest request = mock(IHttpRequest.class);
+
+    new TokenSupplierInterceptor(() -> "token").interceptRequest(request);
+    new TokenSupplierInterceptor(() -> "").interceptRequest(request);
+
+    verify(request, times(1)).addHeader(Constants.HEADER_AUTHORIZATION, "Bearer token");
+  }
+
+  @Test
+  public void testUnauthorizedHandlerIsCalledOnlyOn401() {
+
+    Runnable unauthorizedHandler = mock(Runnable.class);
+    TokenSupplierInterceptor interceptor =
+        new TokenSupplierInterceptor(() -> "token", unauthorizedHandler);
+
+    IHttpResponse ok = mock(IHttpResponse.class);
+    when(ok.getStatus()).thenReturn(200);
+    IHttpResponse forbidden = mock(IHttpResponse.class);
+    when(forbidden.getStatus()).thenReturn(403);
+
+    interceptor.interceptResponse(ok);
+    interceptor.interceptResponse(forbidden);
+    verify(unauthorizedHandler, never()).run();
+
+    IHttpResponse unauthorized = mock(IHttpResponse.class);
+    when(unauthorized.getStatus()).thenReturn(401);
+
+    interceptor.interceptResponse(unauthorized);
+    verify(unauthorizedHandler, times(1)).run();
+  }
+
+  @Test
+  public void testUnauthorizedResponseWithoutHandler() {
+
+    IHttpResponse unauthorized = mock(IHttpResponse.class);
+    when(unauthorized.getStatus()).thenReturn(401);
+
+    new TokenSupplierInterceptor(() -> "token").interceptResponse(unauthorized);
+  }
+}
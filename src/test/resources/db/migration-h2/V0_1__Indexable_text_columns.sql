@@ -0,0 +1,29 @@
+-- H2 maps TEXT columns to CLOB, which cannot be indexed. The indexed columns are changed to
+-- VARCHAR, which behaves like the PostgreSQL TEXT type, before the indexes are created.
+
+ALTER TABLE ph_messages ALTER COLUMN fhir_server_base_url VARCHAR NOT NULL;
+ALTER TABLE ph_messages ALTER COLUMN patient_id VARCHAR NOT NULL;
+ALTER TABLE ph_messages ALTER COLUMN encounter_id VARCHAR NOT NULL;
+ALTER TABLE ph_messages ALTER COLUMN notified_resource_id VARCHAR NOT NULL;
+ALTER TABLE ph_messages ALTER COLUMN notified_resource_type VARCHAR NOT NULL;
+ALTER TABLE ph_messages ALTER COLUMN kar_unique_id VARCHAR;
+ALTER TABLE ph_messages ALTER COLUMN submitted_data_id VARCHAR;
+ALTER TABLE ph_messages ALTER COLUMN submitted_message_id VARCHAR;
+ALTER TABLE ph_messages ALTER COLUMN response_message_id VARCHAR;
+ALTER TABLE ph_messages ALTER COLUMN correlation_id VARCHAR;
+ALTER TABLE ph_messages ALTER COLUMN x_request_id VARCHAR;
+
+ALTER TABLE eicr ALTER COLUMN fhir_server_url VARCHAR;
+ALTER TABLE eicr ALTER COLUMN launch_patient_id VARCHAR;
+ALTER TABLE eicr ALTER COLUMN encounter_id VARCHAR;
+ALTER TABLE eicr ALTER COLUMN eicr_doc_id VARCHAR;
+ALTER TABLE eicr ALTER COLUMN response_doc_id VARCHAR;
+ALTER TABLE eicr ALTER COLUMN x_correlation_id VARCHAR;
+ALTER TABLE eicr ALTER COLUMN x_req_id VARCHAR;
+ALTER TABLE eicr ALTER COLUMN set_id VARCHAR;
+
+ALTER TABLE notification_context ALTER COLUMN fhir_server_base_url VARCHAR NOT NULL;
+ALTER TABLE notification_context ALTER COLUMN patient_id VARCHAR NOT NULL;
+ALTER TABLE notification_context ALTER COLUMN notification_resource_id VARCHAR NOT NULL;
+ALTER TABLE notification_context ALTER COLUMN notification_resource_type VARCHAR NOT NULL;
+ALTER TABLE notification_context ALTER COLUMN notification_processing_status VARCHAR;